@@ -73,6 +73,13 @@ public class KPolygon implements PolygonHolder, Shape {
 	public long trackerCounter = -1;
 	public boolean trackerAddedStatus = false;
 
+	// If true, a KPolygonEdgeIndex is made the first time that this polygon
+	// is tested against a line or point. Off by default since the index goes
+	// stale if the points are changed in place without calling calcAll.
+	public boolean edgeIndexEnabled = false;
+	// null until it's needed, and reset whenever the points move.
+	public KPolygonEdgeIndex edgeIndex;
+
 	public KPolygon()
 	{
 	}
@@ -146,6 +153,7 @@ public class KPolygon implements PolygonHolder, Shape {
 		radius = polygon.getRadius();
 		radiusSq = polygon.getRadiusSq();
 		center = new Vector2f(polygon.getCenter());
+		edgeIndexEnabled = polygon.isEdgeIndexEnabled();
 	}
 	public static KPolygon createRect(double x, double y, double x2, double y2){
 		return createRect((float) x, (float) y, (float) x2, (float) y2);
@@ -274,6 +282,11 @@ public class KPolygon implements PolygonHolder, Shape {
 	public Vector2f getClosestIntersectionToFirstFromSecond(float x1, float y1,
 			float x2, float y2)
 	{
+		KPolygonEdgeIndex index = getEdgeIndex();
+		if (index != null)
+		{
+			return index.getClosestIntersectionToFirstFromSecond(points, x1, y1, x2, y2);
+		}
 		Vector2f closestIntersectionPoint = null;
 		float closestIntersectionDistanceSq = Float.MAX_VALUE;
 		int nextI;
@@ -385,6 +398,11 @@ public class KPolygon implements PolygonHolder, Shape {
 	// [Glassner:RayTracing]
 	public boolean contains(double x, double y)
 	{
+		KPolygonEdgeIndex index = getEdgeIndex();
+		if (index != null)
+		{
+			return index.contains(points, x, y);
+		}
 		Vector2f pointIBefore = (points.size() != 0
 				? points.get(points.size() - 1) : null);
 		int crossings = 0;
@@ -613,87 +631,144 @@ public class KPolygon implements PolygonHolder, Shape {
 		{
 			return false;
 		}
-		float ax = x2 - x1;
-		float ay = y2 - y1;
+		KPolygonEdgeIndex index = getEdgeIndex();
+		if (index != null)
+		{
+			return index.intersectsLine(points, x1, y1, x2, y2);
+		}
 		Vector2f pointIBefore = points.get(points.size() - 1);
 		for (int i = 0; i < points.size(); i++)
 		{
 			Vector2f pointI = points.get(i);
-			float x3 = pointIBefore.x;
-			float y3 = pointIBefore.y;
-			float x4 = pointI.x;
-			float y4 = pointI.y;
-
-			float bx = x3 - x4;
-			float by = y3 - y4;
-			float cx = x1 - x3;
-			float cy = y1 - y3;
-
-			float alphaNumerator = by * cx - bx * cy;
-			float commonDenominator = ay * bx - ax * by;
-			if (commonDenominator > 0)
+			if (edgeIntersectsLine(x1, y1, x2, y2, pointIBefore.x, pointIBefore.y, pointI.x, pointI.y))
 			{
-				if (alphaNumerator < 0 || alphaNumerator > commonDenominator)
-				{
-					pointIBefore = pointI;
-					continue;
-				}
-			} else if (commonDenominator < 0)
+				return true;
+			}
+			pointIBefore = pointI;
+		}
+		return false;
+	}
+
+	/**
+	 * The test that intersectsLine does on each edge, from (x3, y3) to
+	 * (x4, y4).
+	 */
+	public static boolean edgeIntersectsLine(float x1, float y1, float x2, float y2, float x3, float y3, float x4, float y4)
+	{
+		float ax = x2 - x1;
+		float ay = y2 - y1;
+		float bx = x3 - x4;
+		float by = y3 - y4;
+		float cx = x1 - x3;
+		float cy = y1 - y3;
+
+		float alphaNumerator = by * cx - bx * cy;
+		float commonDenominator = ay * bx - ax * by;
+		if (commonDenominator > 0)
+		{
+			if (alphaNumerator < 0 || alphaNumerator > commonDenominator)
 			{
-				if (alphaNumerator > 0 || alphaNumerator < commonDenominator)
-				{
-					pointIBefore = pointI;
-					continue;
-				}
+				return false;
 			}
-			float betaNumerator = ax * cy - ay * cx;
-			if (commonDenominator > 0)
+		} else if (commonDenominator < 0)
+		{
+			if (alphaNumerator > 0 || alphaNumerator < commonDenominator)
 			{
-				if (betaNumerator < 0 || betaNumerator > commonDenominator)
-				{
-					pointIBefore = pointI;
-					continue;
-				}
-			} else if (commonDenominator < 0)
+				return false;
+			}
+		}
+		float betaNumerator = ax * cy - ay * cx;
+		if (commonDenominator > 0)
+		{
+			if (betaNumerator < 0 || betaNumerator > commonDenominator)
 			{
-				if (betaNumerator > 0 || betaNumerator < commonDenominator)
-				{
-					pointIBefore = pointI;
-					continue;
-				}
+				return false;
+			}
+		} else if (commonDenominator < 0)
+		{
+			if (betaNumerator > 0 || betaNumerator < commonDenominator)
+			{
+				return false;
 			}
-			if (commonDenominator == 0)
+		}
+		if (commonDenominator == 0)
+		{
+			// This code wasn't in Franklin Antonio's method. It was added
+			// by Keith Woodward.
+			// The lines are parallel.
+			// Check if they're collinear.
+			float collinearityTestForP3 = x1 * (y2 - y3) + x2 * (y3 - y1)
+					+ x3 * (y1 - y2); // see
+										// http://mathworld.wolfram.com/Collinear.html
+			// If p3 is collinear with p1 and p2 then p4 will also be
+			// collinear, since p1-p2 is parallel with p3-p4
+			if (collinearityTestForP3 == 0)
 			{
-				// This code wasn't in Franklin Antonio's method. It was added
-				// by Keith Woodward.
-				// The lines are parallel.
-				// Check if they're collinear.
-				float collinearityTestForP3 = x1 * (y2 - y3) + x2 * (y3 - y1)
-						+ x3 * (y1 - y2); // see
-											// http://mathworld.wolfram.com/Collinear.html
-				// If p3 is collinear with p1 and p2 then p4 will also be
-				// collinear, since p1-p2 is parallel with p3-p4
-				if (collinearityTestForP3 == 0)
+				// The lines are collinear. Now check if they overlap.
+				if (x1 >= x3 && x1 <= x4 || x1 <= x3 && x1 >= x4 ||
+						x2 >= x3 && x2 <= x4 || x2 <= x3 && x2 >= x4 ||
+						x3 >= x1 && x3 <= x2 || x3 <= x1 && x3 >= x2)
 				{
-					// The lines are collinear. Now check if they overlap.
-					if (x1 >= x3 && x1 <= x4 || x1 <= x3 && x1 >= x4 ||
-							x2 >= x3 && x2 <= x4 || x2 <= x3 && x2 >= x4 ||
-							x3 >= x1 && x3 <= x2 || x3 <= x1 && x3 >= x2)
+					if (y1 >= y3 && y1 <= y4 || y1 <= y3 && y1 >= y4 ||
+							y2 >= y3 && y2 <= y4 || y2 <= y3 && y2 >= y4 ||
+							y3 >= y1 && y3 <= y2 || y3 <= y1 && y3 >= y2)
 					{
-						if (y1 >= y3 && y1 <= y4 || y1 <= y3 && y1 >= y4 ||
-								y2 >= y3 && y2 <= y4 || y2 <= y3 && y2 >= y4 ||
-								y3 >= y1 && y3 <= y2 || y3 <= y1 && y3 >= y2)
-						{
-							return true;
-						}
+						return true;
 					}
 				}
-				pointIBefore = pointI;
-				continue;
 			}
-			return true;
+			return false;
 		}
-		return false;
+		return true;
+	}
+
+	/**
+	 * Returns the KPolygonEdgeIndex, making it if it hasn't been made since
+	 * the points last moved, or null if the index isn't enabled.
+	 * The index is also re-made if points have been added or removed, but
+	 * not if they've been moved in place without calling calcAll or
+	 * resetEdgeIndex.
+	 */
+	public KPolygonEdgeIndex getEdgeIndex()
+	{
+		if (edgeIndexEnabled == false)
+		{
+			return null;
+		}
+		KPolygonEdgeIndex index = edgeIndex;
+		if (index == null || index.numEdges != points.size())
+		{
+			index = new KPolygonEdgeIndex(points);
+			edgeIndex = index;
+		}
+		return index;
+	}
+
+	public boolean isEdgeIndexEnabled()
+	{
+		return edgeIndexEnabled;
+	}
+
+	/**
+	 * Turns on the KPolygonEdgeIndex, which speeds up intersectsLine, contains
+	 * and getClosestIntersectionToFirstFromSecond on polygons with hundreds
+	 * or thousands of points. Only enable it if calcAll (or resetEdgeIndex) is
+	 * called whenever the points are changed in place.
+	 */
+	public void setEdgeIndexEnabled(boolean edgeIndexEnabled)
+	{
+		this.edgeIndexEnabled = edgeIndexEnabled;
+		edgeIndex = null;
+	}
+
+	/**
+	 * Throws away the KPolygonEdgeIndex. This is done by calcAll and the
+	 * methods that move the points, but if the points are changed some other
+	 * way without calling calcAll then this needs to be called.
+	 */
+	public void resetEdgeIndex()
+	{
+		edgeIndex = null;
 	}
 
 	public void calcCenter()
@@ -760,6 +835,7 @@ public class KPolygon implements PolygonHolder, Shape {
 
 	public void calcAll()
 	{
+		edgeIndex = null;
 		this.calcArea();
 		this.calcCenter();
 		this.calcRadius();
@@ -810,6 +886,7 @@ public class KPolygon implements PolygonHolder, Shape {
 
 	public void rotate(float angle, float x, float y)
 	{
+		edgeIndex = null;
 		for (int i = 0; i < points.size(); i++)
 		{
 			Vector2f p = points.get(i);
@@ -832,6 +909,7 @@ public class KPolygon implements PolygonHolder, Shape {
 
 	public void translate(float x, float y)
 	{
+		edgeIndex = null;
 		for (int i = 0; i < points.size(); i++)
 		{
 			points.get(i).x += x;
@@ -848,6 +926,7 @@ public class KPolygon implements PolygonHolder, Shape {
 
 	public void translateTo(float x, float y)
 	{
+		edgeIndex = null;
 		float xIncrement = x - center.x;
 		float yIncrement = y - center.y;
 		center.x = x;
@@ -871,6 +950,7 @@ public class KPolygon implements PolygonHolder, Shape {
 
 	public void scale(double xMultiplier, double yMultiplier, double x, double y)
 	{
+		edgeIndex = null;
 		double incX;
 		double incY;
 		for (int i = 0; i < points.size(); i++)
@@ -947,6 +1027,7 @@ public class KPolygon implements PolygonHolder, Shape {
 
 	public void reversePointOrder()
 	{
+		edgeIndex = null;
 		counterClockWise = !counterClockWise;
 		ArrayList<Vector2f> tempPoints = new ArrayList<Vector2f>(points.size());
 		for (int i = points.size() - 1; i >= 0; i--)
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom;
+
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * A uniform grid over a KPolygon's edges so that intersectsLine, contains and
+ * getClosestIntersectionToFirstFromSecond only test the edges near the query
+ * instead of all of them, which matters for polygons with thousands of points.
+ *
+ * Edge e goes from point e to point e + 1 (or 0 for the last edge) and is put
+ * in every cell and every row of cells that its bounding box overlaps. Line
+ * queries test the edges in the cells that the line passes through, padded a
+ * little so that rounding can't make them miss any, and contains counts the
+ * crossings of the edges in the row of cells containing the point. The same
+ * per-edge tests as KPolygon's are used, so the results are the same as
+ * testing every edge.
+ *
+ * KPolygon makes one lazily if KPolygon.setEdgeIndexEnabled(true) has been
+ * called, and throws it away whenever its points move. Since all of the
+ * fields are final, threads can share one without locking.
+ *
+ * @author Keith Woodward
+ */
+public class KPolygonEdgeIndex {
+	public final int numEdges;
+	public final float minX;
+	public final float minY;
+	public final float maxX;
+	public final float maxY;
+	public final int numRows;
+	public final int numCols;
+	public final float cellWidth;
+	public final float cellHeight;
+	// how much line queries are padded by.
+	public final float padX;
+	public final float padY;
+	// the edges in cell (row*numCols + col) are cellEdges[cellStarts[cell]]
+	// to cellEdges[cellStarts[cell + 1] - 1], and similarly for rows.
+	public final int[] cellStarts;
+	public final int[] cellEdges;
+	public final int[] rowStarts;
+	public final int[] rowEdges;
+
+	public KPolygonEdgeIndex(ArrayList<Vector2f> points){
+		numEdges = points.size();
+		float minX = Float.MAX_VALUE;
+		float minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int i = 0; i < numEdges; i++){
+			Vector2f p = points.get(i);
+			minX = Math.min(minX, p.x);
+			minY = Math.min(minY, p.y);
+			maxX = Math.max(maxX, p.x);
+			maxY = Math.max(maxY, p.y);
+		}
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		// about one cell per edge, as square as possible.
+		float width = maxX - minX;
+		float height = maxY - minY;
+		int numCols = 1;
+		int numRows = 1;
+		if (width > 0 && height > 0){
+			numCols = (int)Math.round(Math.sqrt(numEdges*width/height));
+			numRows = (int)Math.round(Math.sqrt(numEdges*height/width));
+		}else if (width > 0){
+			numCols = numEdges;
+		}else if (height > 0){
+			numRows = numEdges;
+		}
+		this.numCols = Math.max(1, Math.min(numEdges, numCols));
+		this.numRows = Math.max(1, Math.min(numEdges, numRows));
+		cellWidth = (width > 0 ? width/this.numCols : 1);
+		cellHeight = (height > 0 ? height/this.numRows : 1);
+		padX = cellWidth*0.01f + (Math.abs(minX) + Math.abs(maxX))*0.00001f;
+		padY = cellHeight*0.01f + (Math.abs(minY) + Math.abs(maxY))*0.00001f;
+
+		// count the edges in each cell and row, then fill them in.
+		int[] cellStarts = new int[this.numRows*this.numCols + 1];
+		int[] rowStarts = new int[this.numRows + 1];
+		for (int e = 0; e < numEdges; e++){
+			Vector2f p = points.get(e);
+			Vector2f p2 = points.get(e + 1 == numEdges ? 0 : e + 1);
+			int minCol = getCol(Math.min(p.x, p2.x));
+			int maxCol = getCol(Math.max(p.x, p2.x));
+			int minRow = getRow(Math.min(p.y, p2.y));
+			int maxRow = getRow(Math.max(p.y, p2.y));
+			for (int row = minRow; row <= maxRow; row++){
+				rowStarts[row + 1]++;
+				for (int col = minCol; col <= maxCol; col++){
+					cellStarts[row*this.numCols + col + 1]++;
+				}
+			}
+		}
+		for (int i = 1; i < cellStarts.length; i++){
+			cellStarts[i] += cellStarts[i - 1];
+		}
+		for (int i = 1; i < rowStarts.length; i++){
+			rowStarts[i] += rowStarts[i - 1];
+		}
+		int[] cellEdges = new int[cellStarts[cellStarts.length - 1]];
+		int[] rowEdges = new int[rowStarts[rowStarts.length - 1]];
+		int[] cellCounts = new int[cellStarts.length];
+		int[] rowCounts = new int[rowStarts.length];
+		for (int e = 0; e < numEdges; e++){
+			Vector2f p = points.get(e);
+			Vector2f p2 = points.get(e + 1 == numEdges ? 0 : e + 1);
+			int minCol = getCol(Math.min(p.x, p2.x));
+			int maxCol = getCol(Math.max(p.x, p2.x));
+			int minRow = getRow(Math.min(p.y, p2.y));
+			int maxRow = getRow(Math.max(p.y, p2.y));
+			for (int row = minRow; row <= maxRow; row++){
+				rowEdges[rowStarts[row] + rowCounts[row]] = e;
+				rowCounts[row]++;
+				for (int col = minCol; col <= maxCol; col++){
+					int cell = row*this.numCols + col;
+					cellEdges[cellStarts[cell] + cellCounts[cell]] = e;
+					cellCounts[cell]++;
+				}
+			}
+		}
+		this.cellStarts = cellStarts;
+		this.cellEdges = cellEdges;
+		this.rowStarts = rowStarts;
+		this.rowEdges = rowEdges;
+	}
+
+	public int getCol(double x){
+		int col = (int)((x - minX)/cellWidth);
+		if (x < minX){
+			return 0;
+		}else if (col >= numCols){
+			return numCols - 1;
+		}
+		return col;
+	}
+
+	public int getRow(double y){
+		int row = (int)((y - minY)/cellHeight);
+		if (y < minY){
+			return 0;
+		}else if (row >= numRows){
+			return numRows - 1;
+		}
+		return row;
+	}
+
+	/**
+	 * Same as KPolygon.contains(x, y), but only counts the crossings of the
+	 * edges in the row of cells containing y.
+	 */
+	public boolean contains(ArrayList<Vector2f> points, double x, double y){
+		if (y < minY || y > maxY){
+			return false;
+		}
+		int row = getRow(y);
+		int crossings = 0;
+		for (int k = rowStarts[row]; k < rowStarts[row + 1]; k++){
+			int e = rowEdges[k];
+			Vector2f pointIBefore = points.get(e);
+			Vector2f pointI = points.get(e + 1 == numEdges ? 0 : e + 1);
+			if (((pointIBefore.y <= y && y < pointI.y)
+					|| (pointI.y <= y && y < pointIBefore.y))
+					&& x < ((pointI.x - pointIBefore.x)
+							/ (pointI.y - pointIBefore.y) * (y - pointIBefore.y)
+							+ pointIBefore.x))
+			{
+				crossings++;
+			}
+		}
+		return (crossings % 2 != 0);
+	}
+
+	/**
+	 * Same as KPolygon.intersectsLine, but only tests the edges in the cells
+	 * that the line passes through. An edge in more than one of them may be
+	 * tested more than once.
+	 */
+	public boolean intersectsLine(ArrayList<Vector2f> points, float x1, float y1, float x2, float y2){
+		float lineMinY = Math.min(y1, y2);
+		float lineMaxY = Math.max(y1, y2);
+		if (lineMaxY + padY < minY || lineMinY - padY > maxY || Math.max(x1, x2) + padX < minX || Math.min(x1, x2) - padX > maxX){
+			return false;
+		}
+		int minRow = getRow(lineMinY - padY);
+		int maxRow = getRow(lineMaxY + padY);
+		for (int row = minRow; row <= maxRow; row++){
+			int minCol = getCol(getLineMinXInRow(row, x1, y1, x2, y2) - padX);
+			int maxCol = getCol(getLineMaxXInRow(row, x1, y1, x2, y2) + padX);
+			for (int cell = row*numCols + minCol; cell <= row*numCols + maxCol; cell++){
+				for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++){
+					int e = cellEdges[k];
+					Vector2f p = points.get(e);
+					Vector2f p2 = points.get(e + 1 == numEdges ? 0 : e + 1);
+					if (KPolygon.edgeIntersectsLine(x1, y1, x2, y2, p.x, p.y, p2.x, p2.y)){
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Same as KPolygon.getClosestIntersectionToFirstFromSecond, but only tests
+	 * the edges in the cells that the line passes through. If two edges'
+	 * intersections are equally close then the one from the lower-numbered
+	 * edge is returned, the same as when all of the edges are tested in order.
+	 */
+	public Vector2f getClosestIntersectionToFirstFromSecond(ArrayList<Vector2f> points, float x1, float y1, float x2, float y2){
+		Vector2f closestIntersectionPoint = null;
+		float closestIntersectionDistanceSq = Float.MAX_VALUE;
+		int closestEdge = -1;
+		float lineMinY = Math.min(y1, y2);
+		float lineMaxY = Math.max(y1, y2);
+		if (lineMaxY + padY < minY || lineMinY - padY > maxY || Math.max(x1, x2) + padX < minX || Math.min(x1, x2) - padX > maxX){
+			return null;
+		}
+		int minRow = getRow(lineMinY - padY);
+		int maxRow = getRow(lineMaxY + padY);
+		for (int row = minRow; row <= maxRow; row++){
+			int minCol = getCol(getLineMinXInRow(row, x1, y1, x2, y2) - padX);
+			int maxCol = getCol(getLineMaxXInRow(row, x1, y1, x2, y2) + padX);
+			for (int cell = row*numCols + minCol; cell <= row*numCols + maxCol; cell++){
+				for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++){
+					int e = cellEdges[k];
+					if (e == closestEdge){
+						continue;
+					}
+					Vector2f p = points.get(e);
+					Vector2f p2 = points.get(e + 1 == numEdges ? 0 : e + 1);
+					if (Vector2fUtils.linesIntersect(x1, y1, x2, y2, p.x, p.y, p2.x, p2.y)){
+						Vector2f currentIntersectionPoint = Vector2fUtils.getLineLineIntersection(x1, y1, x2, y2, p.x, p.y, p2.x, p2.y);
+						if (currentIntersectionPoint == null){
+							continue;
+						}
+						float currentIntersectionDistanceSq = currentIntersectionPoint.distanceSquared(x1, y1);
+						if (currentIntersectionDistanceSq < closestIntersectionDistanceSq || (currentIntersectionDistanceSq == closestIntersectionDistanceSq && e < closestEdge)){
+							closestIntersectionPoint = currentIntersectionPoint;
+							closestIntersectionDistanceSq = currentIntersectionDistanceSq;
+							closestEdge = e;
+						}
+					}
+				}
+			}
+		}
+		return closestIntersectionPoint;
+	}
+
+	/**
+	 * Returns the smallest x of the part of the line within the row's
+	 * y range, padded by padY.
+	 */
+	protected float getLineMinXInRow(int row, float x1, float y1, float x2, float y2){
+		if (y1 == y2){
+			return Math.min(x1, x2);
+		}
+		return Math.min(getLineXAtClampedY(row*cellHeight + minY - padY, x1, y1, x2, y2), getLineXAtClampedY((row + 1)*cellHeight + minY + padY, x1, y1, x2, y2));
+	}
+
+	protected float getLineMaxXInRow(int row, float x1, float y1, float x2, float y2){
+		if (y1 == y2){
+			return Math.max(x1, x2);
+		}
+		return Math.max(getLineXAtClampedY(row*cellHeight + minY - padY, x1, y1, x2, y2), getLineXAtClampedY((row + 1)*cellHeight + minY + padY, x1, y1, x2, y2));
+	}
+
+	/**
+	 * Returns the x of the line at y, or at whichever end of the line is
+	 * nearer if y is beyond it.
+	 */
+	protected float getLineXAtClampedY(float y, float x1, float y1, float x2, float y2){
+		float t = (y - y1)/(y2 - y1);
+		if (t <= 0){
+			return x1;
+		}else if (t >= 1){
+			return x2;
+		}
+		return x1 + t*(x2 - x1);
+	}
+
+	public int getNumRows(){
+		return numRows;
+	}
+
+	public int getNumCols(){
+		return numCols;
+	}
+}
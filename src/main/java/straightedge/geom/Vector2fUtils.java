@@ -200,16 +200,24 @@ public class Vector2fUtils {
 			double x2, double y2,
 			double distance)
 	{
-		Vector2f p = newVector2f();
+		return createPointToward(x, y, x2, y2, distance, newVector2f());
+	}
+
+	public static Vector2f createPointToward(
+			double x, double y,
+			double x2, double y2,
+			double distance,
+			Vector2f result)
+	{
 		double xDiff = (x2 - x);
 		double yDiff = (y2 - y);
 		double ptDist = Math.sqrt(xDiff * xDiff + yDiff * yDiff);
 		double distOnPtDist = distance / ptDist;
 		double xDist = xDiff * distOnPtDist;
 		double yDist = yDiff * distOnPtDist;
-		p.x = (float) (x + xDist);
-		p.y = (float) (y + yDist);
-		return p;
+		result.x = (float) (x + xDist);
+		result.y = (float) (y + yDist);
+		return result;
 	}
 
 	public static Vector2f createPointToward(
@@ -220,6 +228,15 @@ public class Vector2fUtils {
 		return createPointToward(v1.x, v1.y, v2.x, v2.y, distance);
 	}
 
+	public static Vector2f createPointToward(
+			Vector2f v1,
+			Vector2f v2,
+			double distance,
+			Vector2f result)
+	{
+		return createPointToward(v1.x, v1.y, v2.x, v2.y, distance, result);
+	}
+
 	public static double ptLineDist(Vector2f start, Vector2f end, Vector2f p)
 	{
 		return ptLineDist(start.x, start.y, end.x, end.y, p.x, p.y);
@@ -563,6 +580,26 @@ public class Vector2fUtils {
 
 	public static Vector2f getLineLineIntersection(double x1, double y1,
 			double x2, double y2, double x3, double y3, double x4, double y4)
+	{
+		return getLineLineIntersection(x1, y1, x2, y2, x3, y3, x4, y4,
+				newVector2f());
+	}
+
+	/**
+	 * Same as getLineLineIntersection but the intersection is written into
+	 * result rather than a new Vector2f. Returns result, or null if the lines
+	 * are parallel in which case result is unchanged.
+	 */
+	public static Vector2f getLineLineIntersection(Vector2f p1, Vector2f p2,
+			Vector2f p3, Vector2f p4, Vector2f result)
+	{
+		return getLineLineIntersection(p1.x, p1.y, p2.x, p2.y, p3.x, p3.y, p4.x,
+				p4.y, result);
+	}
+
+	public static Vector2f getLineLineIntersection(double x1, double y1,
+			double x2, double y2, double x3, double y3, double x4, double y4,
+			Vector2f result)
 	{
 		double det1And2 = det(x1, y1, x2, y2);
 		double det3And4 = det(x3, y3, x4, y4);
@@ -584,8 +621,9 @@ public class Vector2fUtils {
 		double y = (det(det1And2, y1LessY2,
 				det3And4, y3LessY4) /
 				det1Less2And3Less4);
-
-		return newVector2f(x, y);
+		result.x = (float) x;
+		result.y = (float) y;
+		return result;
 	}
 
 	protected static double det(double a, double b, double c, double d)
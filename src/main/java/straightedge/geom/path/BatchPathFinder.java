@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Calculates many paths at once by splitting the requests over a ForkJoinPool.
+ * Each worker thread reuses its own PathSearchContext so the KNodes of the
+ * shared NodeConnector graph are only read. No obstacles should be added or
+ * removed while a batch is being calculated.
+ *
+ * Requests can optionally be merged so that agents heading between nearby
+ * points only cause one search. See setDedupeDist.
+ *
+ * @author Keith Woodward
+ */
+public class BatchPathFinder<T extends PathBlockingObstacle> {
+	public ForkJoinPool pool;
+	// If negative, every request is searched. Otherwise a request whose start
+	// and end points are both within this distance of an earlier request's
+	// (and which has the same max distances) is merged with that request.
+	// Merged requests get a copy of the earlier request's path with their own
+	// start and end points, as long as the new first and last legs aren't
+	// blocked by an obstacle. If they are, the request is searched on its own.
+	public double dedupeDist = -1;
+	// Tasks with this many requests or fewer are not split any further.
+	public int maxRequestsPerTask = 4;
+	// The number of requests in the last batch that were answered by copying
+	// another request's path rather than searching.
+	public int numDedupedRequests;
+
+	ThreadLocal<PathSearchContext<T>> contexts = new ThreadLocal<PathSearchContext<T>>(){
+		protected PathSearchContext<T> initialValue(){
+			return new PathSearchContext<T>();
+		}
+	};
+
+	public BatchPathFinder(){
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BatchPathFinder(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	/**
+	 * @param requests
+	 * @param nodeConnector
+	 * @param obstaclesTileArray
+	 * @return the PathData for each request, in the same order as the requests.
+	 * Each request gets its own PathData whose path starts at the request's
+	 * start point and ends at its end point.
+	 */
+	public ArrayList<PathData> calc(List<PathRequest> requests, NodeConnector<T> nodeConnector, SpatialIndex<T> obstaclesTileArray){
+		int[] leaderIndexes = new int[requests.size()];
+		int numLeaders = findLeaders(requests, leaderIndexes);
+		int[] leaders = new int[numLeaders];
+		int[] followers = new int[requests.size() - numLeaders];
+		int numFollowers = 0;
+		numLeaders = 0;
+		for (int i = 0; i < requests.size(); i++){
+			if (leaderIndexes[i] == i){
+				leaders[numLeaders] = i;
+				numLeaders++;
+			}else{
+				followers[numFollowers] = i;
+				numFollowers++;
+			}
+		}
+		PathData[] pathDatas = new PathData[requests.size()];
+		boolean[] copied = new boolean[requests.size()];
+		// The leaders are searched first so that the followers can copy their paths.
+		if (leaders.length > 0){
+			pool.invoke(new CalcTask(requests, leaders, leaderIndexes, pathDatas, copied, 0, leaders.length, nodeConnector, obstaclesTileArray));
+		}
+		if (followers.length > 0){
+			pool.invoke(new CalcTask(requests, followers, leaderIndexes, pathDatas, copied, 0, followers.length, nodeConnector, obstaclesTileArray));
+		}
+		numDedupedRequests = 0;
+		for (int i = 0; i < copied.length; i++){
+			if (copied[i]){
+				numDedupedRequests++;
+			}
+		}
+		return new ArrayList<PathData>(Arrays.asList(pathDatas));
+	}
+
+	/**
+	 * Sets leaderIndexes[i] to the index of the earlier request that request i
+	 * is merged with, or to i if it has to be searched itself.
+	 * The requests' start points are put in a grid with a cell width of
+	 * dedupeDist so that only the requests in the neighbouring cells need
+	 * to be compared.
+	 * @return the number of requests that lead themselves.
+	 */
+	protected int findLeaders(List<PathRequest> requests, int[] leaderIndexes){
+		if (dedupeDist < 0){
+			for (int i = 0; i < requests.size(); i++){
+				leaderIndexes[i] = i;
+			}
+			return requests.size();
+		}
+		// With a dedupeDist of zero only identical points are merged, so any cell width works.
+		double cellWidth = (dedupeDist > 0 ? dedupeDist : 1);
+		HashMap<Long, ArrayList<Integer>> leadersByCell = new HashMap<Long, ArrayList<Integer>>();
+		int numLeaders = 0;
+		for (int i = 0; i < requests.size(); i++){
+			PathRequest request = requests.get(i);
+			int col = (int)Math.floor(request.getStart().x/cellWidth);
+			int row = (int)Math.floor(request.getStart().y/cellWidth);
+			int leaderIndex = -1;
+			for (int r = row - 1; r <= row + 1; r++){
+				for (int c = col - 1; c <= col + 1; c++){
+					ArrayList<Integer> cellLeaders = leadersByCell.get(getCellKey(c, r));
+					if (cellLeaders == null){
+						continue;
+					}
+					for (int j = 0; j < cellLeaders.size(); j++){
+						int index = cellLeaders.get(j);
+						if ((leaderIndex == -1 || index < leaderIndex) && canMerge(requests.get(index), request)){
+							leaderIndex = index;
+						}
+					}
+				}
+			}
+			if (leaderIndex == -1){
+				leaderIndex = i;
+				Long key = getCellKey(col, row);
+				ArrayList<Integer> cellLeaders = leadersByCell.get(key);
+				if (cellLeaders == null){
+					cellLeaders = new ArrayList<Integer>();
+					leadersByCell.put(key, cellLeaders);
+				}
+				cellLeaders.add(i);
+				numLeaders++;
+			}
+			leaderIndexes[i] = leaderIndex;
+		}
+		return numLeaders;
+	}
+
+	protected static Long getCellKey(int col, int row){
+		return Long.valueOf(((long)col << 32) | (row & 0xFFFFFFFFL));
+	}
+
+	protected boolean canMerge(PathRequest leader, PathRequest request){
+		return leader.getMaxTempNodeConnectionDist() == request.getMaxTempNodeConnectionDist() &&
+				leader.getMaxSearchDistStartToEnd() == request.getMaxSearchDistStartToEnd() &&
+				leader.getStart().distance(request.getStart()) <= dedupeDist &&
+				leader.getEnd().distance(request.getEnd()) <= dedupeDist;
+	}
+
+	/**
+	 * Makes a copy of the leader's path that starts at the request's start
+	 * point and ends at its end point. Returns null if the leader's search
+	 * failed or if the new first or last leg of the path is blocked, since
+	 * then the request has to be searched on its own.
+	 */
+	protected PathData copyPathData(PathRequest request, PathData leaderPathData, PathSearchContext<T> context, SpatialIndex<T> obstaclesTileArray){
+		if (leaderPathData.isError()){
+			return null;
+		}
+		Vector2f start = request.getStart();
+		Vector2f end = request.getEnd();
+		if (start.distance(end) > request.getMaxSearchDistStartToEnd()){
+			return null;
+		}
+		ArrayList<Vector2f> points = leaderPathData.getPoints();
+		int lastIndex = points.size() - 1;
+		if (context.lineBlocked(start, (lastIndex == 1 ? end : points.get(1)), obstaclesTileArray)){
+			return null;
+		}
+		if (lastIndex > 1 && context.lineBlocked(points.get(lastIndex - 1), end, obstaclesTileArray)){
+			return null;
+		}
+		ArrayList<Vector2f> newPoints = new ArrayList<Vector2f>(points);
+		ArrayList<KNode> newNodes = new ArrayList<KNode>(leaderPathData.getNodes());
+		newPoints.set(0, start);
+		newPoints.set(lastIndex, end);
+		newNodes.set(0, new KNode(start));
+		newNodes.set(lastIndex, new KNode(end));
+		return new PathData(newPoints, newNodes);
+	}
+
+	@SuppressWarnings("serial")
+	protected class CalcTask extends RecursiveAction{
+		List<PathRequest> requests;
+		int[] requestIndexes;
+		int[] leaderIndexes;
+		PathData[] pathDatas;
+		boolean[] copied;
+		int startIndex;
+		int endIndex;
+		NodeConnector<T> nodeConnector;
+		SpatialIndex<T> obstaclesTileArray;
+
+		public CalcTask(List<PathRequest> requests, int[] requestIndexes, int[] leaderIndexes, PathData[] pathDatas, boolean[] copied, int startIndex, int endIndex, NodeConnector<T> nodeConnector, SpatialIndex<T> obstaclesTileArray){
+			this.requests = requests;
+			this.requestIndexes = requestIndexes;
+			this.leaderIndexes = leaderIndexes;
+			this.pathDatas = pathDatas;
+			this.copied = copied;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+			this.nodeConnector = nodeConnector;
+			this.obstaclesTileArray = obstaclesTileArray;
+		}
+
+		protected void compute(){
+			if (endIndex - startIndex <= maxRequestsPerTask){
+				PathSearchContext<T> context = contexts.get();
+				for (int i = startIndex; i < endIndex; i++){
+					int requestIndex = requestIndexes[i];
+					PathRequest request = requests.get(requestIndex);
+					int leaderIndex = leaderIndexes[requestIndex];
+					if (leaderIndex != requestIndex){
+						PathData pathData = copyPathData(request, pathDatas[leaderIndex], context, obstaclesTileArray);
+						if (pathData != null){
+							pathDatas[requestIndex] = pathData;
+							copied[requestIndex] = true;
+							continue;
+						}
+					}
+					pathDatas[requestIndex] = context.calc(request.getStart(), request.getEnd(), request.getMaxTempNodeConnectionDist(), request.getMaxSearchDistStartToEnd(), nodeConnector, obstaclesTileArray);
+				}
+				return;
+			}
+			int midIndex = (startIndex + endIndex) >>> 1;
+			invokeAll(new CalcTask(requests, requestIndexes, leaderIndexes, pathDatas, copied, startIndex, midIndex, nodeConnector, obstaclesTileArray),
+					new CalcTask(requests, requestIndexes, leaderIndexes, pathDatas, copied, midIndex, endIndex, nodeConnector, obstaclesTileArray));
+		}
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public double getDedupeDist() {
+		return dedupeDist;
+	}
+
+	public void setDedupeDist(double dedupeDist) {
+		this.dedupeDist = dedupeDist;
+	}
+
+	public int getMaxRequestsPerTask() {
+		return maxRequestsPerTask;
+	}
+
+	public void setMaxRequestsPerTask(int maxRequestsPerTask) {
+		this.maxRequestsPerTask = maxRequestsPerTask;
+	}
+
+	public int getNumDedupedRequests() {
+		return numDedupedRequests;
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Connects the nodes of a whole set of obstacles at once using a ForkJoinPool,
+ * rather than calling NodeConnector.addObstacle for each obstacle in turn.
+ *
+ * The obstacles' nodes are split up by the TileArray tile that they're in and
+ * each tile is a unit of work. It's done in two passes: first every node's
+ * contained flag is worked out, then each node is tested against the nodes
+ * that come before it in the obstacle list (the same order that
+ * NodeConnector.addObstacle would have connected them in). Finally the found
+ * connections are merged on the calling thread and each node's connectedNodes
+ * list is sorted by obstacle order and point number, so the result doesn't
+ * depend on the thread scheduling.
+ *
+ * The connections made are the same as those made by adding the obstacles
+ * one by one in the same order using NodeConnector.addObstacle.
+ *
+ * @author Keith Woodward
+ */
+public class BulkNodeConnector<T extends PathBlockingObstacle> {
+	public NodeConnector<T> nodeConnector;
+	public ForkJoinPool pool;
+	// Tasks with this many tiles or fewer are not split any further.
+	public int maxTilesPerTask = 1;
+
+	public BulkNodeConnector(NodeConnector<T> nodeConnector){
+		this(nodeConnector, ForkJoinPool.commonPool());
+	}
+
+	public BulkNodeConnector(NodeConnector<T> nodeConnector, ForkJoinPool pool){
+		this.nodeConnector = nodeConnector;
+		this.pool = pool;
+	}
+
+	/**
+	 * Remakes all of the node connections between the obstacles.
+	 * Note that the tileArray must contain exactly the given obstacles.
+	 *
+	 * @param obstacles in the order that they would be added to the NodeConnector.
+	 * @param tileArray
+	 * @param maxConnectionDistance
+	 */
+	public void connectAll(Collection<T> obstacles, TileArray<T> tileArray, double maxConnectionDistance){
+		ArrayList<T> obstacleList = new ArrayList<T>(obstacles);
+		IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes = new IdentityHashMap<PathBlockingObstacle, Integer>();
+		for (int i = 0; i < obstacleList.size(); i++){
+			T obst = obstacleList.get(i);
+			obstacleIndexes.put(obst, i);
+			nodeConnector.resetObstacleNodes(obst);
+		}
+
+		// put each node in the tile that its point is in.
+		int numTiles = tileArray.getNumRows()*tileArray.getNumCols();
+		ArrayList<ArrayList<KNodeOfObstacle>> nodesByTile = new ArrayList<ArrayList<KNodeOfObstacle>>(numTiles);
+		for (int i = 0; i < numTiles; i++){
+			nodesByTile.add(new ArrayList<KNodeOfObstacle>());
+		}
+		for (int i = 0; i < obstacleList.size(); i++){
+			ArrayList<KNodeOfObstacle> nodes = obstacleList.get(i).getNodes();
+			for (int j = 0; j < nodes.size(); j++){
+				KNodeOfObstacle node = nodes.get(j);
+				nodesByTile.get(getTileIndex(tileArray, node.getPoint())).add(node);
+			}
+		}
+
+		BuildData buildData = new BuildData(nodesByTile, obstacleIndexes, tileArray, maxConnectionDistance);
+		pool.invoke(new ContainedTask(buildData, 0, numTiles));
+		pool.invoke(new ConnectTask(buildData, 0, numTiles));
+
+		// merge the connections found by each task.
+		for (int i = 0; i < obstacleList.size(); i++){
+			ArrayList<KNodeOfObstacle> nodes = obstacleList.get(i).getNodes();
+			for (int j = 0; j < nodes.size(); j++){
+				KNodeOfObstacle node = nodes.get(j);
+				ArrayList<KNodeOfObstacle> earlierReachableNodes = buildData.earlierReachableNodes[node.getNodeID()];
+				if (earlierReachableNodes == null){
+					continue;
+				}
+				for (int k = 0; k < earlierReachableNodes.size(); k++){
+					KNodeOfObstacle node2 = earlierReachableNodes.get(k);
+					node.getConnectedNodes().add(node2);
+					node2.getConnectedNodes().add(node);
+				}
+			}
+		}
+		NodeOrderComparator comparator = new NodeOrderComparator(obstacleIndexes);
+		for (int i = 0; i < obstacleList.size(); i++){
+			ArrayList<KNodeOfObstacle> nodes = obstacleList.get(i).getNodes();
+			for (int j = 0; j < nodes.size(); j++){
+				Collections.sort(nodes.get(j).getConnectedNodes(), comparator);
+			}
+		}
+	}
+
+	protected int getTileIndex(TileArray<T> tileArray, Vector2f p){
+		return tileArray.getRowIndex(p.y)*tileArray.getNumCols() + tileArray.getColIndex(p.x);
+	}
+
+	/**
+	 * Works out if the node is inside another obstacle's innerPolygon and
+	 * sets its contained flag to what it would be after adding the
+	 * obstacles one by one. That is, concave nodes are only checked against
+	 * obstacles added after their own, and are otherwise left UNKNOWN.
+	 */
+	protected void calcContained(KNodeOfObstacle node, BuildData buildData, ArrayList<T> nearbyObstacles){
+		Vector2f p = node.getPoint();
+		int obstacleIndex = buildData.obstacleIndexes.get(node.getObstacle());
+		for (int i = 0; i < nearbyObstacles.size(); i++){
+			T obst = nearbyObstacles.get(i);
+			if (obst == node.getObstacle()){
+				continue;
+			}
+			if (node.isConcave() && buildData.obstacleIndexes.get(obst) < obstacleIndex){
+				continue;
+			}
+			KPolygon poly = obst.getInnerPolygon();
+			if (poly.getCenter().distanceSquared(p) <= poly.getRadiusSq() && poly.contains(p)){
+				node.setContained(KNodeOfObstacle.TRUE_VALUE);
+				return;
+			}
+		}
+		if (node.isConcave() == false){
+			node.setContained(KNodeOfObstacle.FALSE_VALUE);
+		}
+	}
+
+	/**
+	 * Finds the nodes that come before this node in the obstacle order that
+	 * can be connected to it.
+	 */
+	protected ArrayList<KNodeOfObstacle> findEarlierReachableNodes(KNodeOfObstacle node, BuildData buildData, ArrayList<T> nearbyObstacles, ArrayList<ObstAndDist> obstAndDists){
+		ArrayList<KNodeOfObstacle> reachableNodes = null;
+		Vector2f p = node.getPoint();
+		int obstacleIndex = buildData.obstacleIndexes.get(node.getObstacle());
+		double maxConnectionDistance = buildData.maxConnectionDistance;
+
+		obstAndDists.clear();
+		for (int n = 0; n < nearbyObstacles.size(); n++){
+			PathBlockingObstacle obst = nearbyObstacles.get(n);
+			double dist = p.distance(obst.getInnerPolygon().getCenter()) - obst.getInnerPolygon().getRadius();
+			obstAndDists.add(new ObstAndDist(obst, dist));
+		}
+		Collections.sort(obstAndDists);
+
+		for (int k = 0; k < nearbyObstacles.size(); k++){
+			PathBlockingObstacle testOb2 = nearbyObstacles.get(k);
+			int obstacleIndex2 = buildData.obstacleIndexes.get(testOb2);
+			if (obstacleIndex2 > obstacleIndex){
+				continue;
+			}
+			ArrayList<KNodeOfObstacle> testOb2Nodes = testOb2.getNodes();
+			NodeLoop:
+			for (int m = 0; m < testOb2Nodes.size(); m++){
+				KNodeOfObstacle node2 = testOb2Nodes.get(m);
+				if (obstacleIndex2 == obstacleIndex && m >= node.getPointNum()){
+					break;
+				}
+				if (node2.isConcave() || node2.getContained() == KNodeOfObstacle.TRUE_VALUE){
+					continue;
+				}
+				Vector2f p2 = node2.getPoint();
+				double nodeToNode2Dist = p.distance(p2);
+				if (nodeToNode2Dist > maxConnectionDistance){
+					continue;
+				}
+				if (nodeConnector.isConnectionPossibleAndUseful(node, node.getPointNum(), node.getObstacle().getNodes(), node2, m, testOb2Nodes) == false){
+					continue;
+				}
+				if (testOb2.getInnerPolygon().intersectsLine(p, p2)){
+					continue;
+				}
+				for (int n = 0; n < obstAndDists.size(); n++){
+					if (obstAndDists.get(n).getDist() > nodeToNode2Dist){
+						break;
+					}
+					PathBlockingObstacle testOb3 = obstAndDists.get(n).getObst();
+					if (testOb3 == testOb2){
+						continue;
+					}
+					KPolygon innerPolygon = testOb3.getInnerPolygon();
+					if (innerPolygon.intersectionPossible(p, p2) && innerPolygon.intersectsLine(p, p2)){
+						continue NodeLoop;
+					}
+				}
+				if (reachableNodes == null){
+					reachableNodes = new ArrayList<KNodeOfObstacle>();
+				}
+				reachableNodes.add(node2);
+			}
+		}
+		obstAndDists.clear();
+		return reachableNodes;
+	}
+
+	protected class BuildData{
+		ArrayList<ArrayList<KNodeOfObstacle>> nodesByTile;
+		IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes;
+		TileArray<T> tileArray;
+		double maxConnectionDistance;
+		// indexed by node id, each task only writes to the nodes in its own tiles.
+		ArrayList<KNodeOfObstacle>[] earlierReachableNodes;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public BuildData(ArrayList<ArrayList<KNodeOfObstacle>> nodesByTile, IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes, TileArray<T> tileArray, double maxConnectionDistance){
+			this.nodesByTile = nodesByTile;
+			this.obstacleIndexes = obstacleIndexes;
+			this.tileArray = tileArray;
+			this.maxConnectionDistance = maxConnectionDistance;
+			earlierReachableNodes = new ArrayList[nodeConnector.getNodeIDCapacity()];
+		}
+	}
+
+	@SuppressWarnings("serial")
+	protected abstract class TileTask extends RecursiveAction{
+		BuildData buildData;
+		int startTileIndex;
+		int endTileIndex;
+
+		public TileTask(BuildData buildData, int startTileIndex, int endTileIndex){
+			this.buildData = buildData;
+			this.startTileIndex = startTileIndex;
+			this.endTileIndex = endTileIndex;
+		}
+
+		protected void compute(){
+			if (endTileIndex - startTileIndex > maxTilesPerTask){
+				int midTileIndex = (startTileIndex + endTileIndex) >>> 1;
+				invokeAll(makeTask(startTileIndex, midTileIndex), makeTask(midTileIndex, endTileIndex));
+				return;
+			}
+			ArrayList<T> nearbyObstacles = new ArrayList<T>();
+			TileArrayQueryContext queryContext = new TileArrayQueryContext();
+			ArrayList<ObstAndDist> obstAndDists = new ArrayList<ObstAndDist>();
+			for (int i = startTileIndex; i < endTileIndex; i++){
+				ArrayList<KNodeOfObstacle> nodes = buildData.nodesByTile.get(i);
+				for (int j = 0; j < nodes.size(); j++){
+					KNodeOfObstacle node = nodes.get(j);
+					Vector2f p = node.getPoint();
+					nearbyObstacles.clear();
+					buildData.tileArray.getAllWithin(p.x, p.y, buildData.maxConnectionDistance, nearbyObstacles, queryContext);
+					processNode(node, nearbyObstacles, obstAndDists);
+				}
+			}
+		}
+
+		protected abstract TileTask makeTask(int startTileIndex, int endTileIndex);
+		protected abstract void processNode(KNodeOfObstacle node, ArrayList<T> nearbyObstacles, ArrayList<ObstAndDist> obstAndDists);
+	}
+
+	@SuppressWarnings("serial")
+	protected class ContainedTask extends TileTask{
+		public ContainedTask(BuildData buildData, int startTileIndex, int endTileIndex){
+			super(buildData, startTileIndex, endTileIndex);
+		}
+
+		protected TileTask makeTask(int startTileIndex, int endTileIndex){
+			return new ContainedTask(buildData, startTileIndex, endTileIndex);
+		}
+
+		protected void processNode(KNodeOfObstacle node, ArrayList<T> nearbyObstacles, ArrayList<ObstAndDist> obstAndDists){
+			calcContained(node, buildData, nearbyObstacles);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	protected class ConnectTask extends TileTask{
+		public ConnectTask(BuildData buildData, int startTileIndex, int endTileIndex){
+			super(buildData, startTileIndex, endTileIndex);
+		}
+
+		protected TileTask makeTask(int startTileIndex, int endTileIndex){
+			return new ConnectTask(buildData, startTileIndex, endTileIndex);
+		}
+
+		protected void processNode(KNodeOfObstacle node, ArrayList<T> nearbyObstacles, ArrayList<ObstAndDist> obstAndDists){
+			if (node.isConcave() || node.getContained() == KNodeOfObstacle.TRUE_VALUE){
+				return;
+			}
+			buildData.earlierReachableNodes[node.getNodeID()] = findEarlierReachableNodes(node, buildData, nearbyObstacles, obstAndDists);
+		}
+	}
+
+	// Orders nodes by their obstacle's position in the obstacle list, then by point number.
+	protected static class NodeOrderComparator implements Comparator<KNode>{
+		IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes;
+
+		public NodeOrderComparator(IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes){
+			this.obstacleIndexes = obstacleIndexes;
+		}
+
+		public int compare(KNode node, KNode node2){
+			KNodeOfObstacle nodeOfObstacle = (KNodeOfObstacle)node;
+			KNodeOfObstacle nodeOfObstacle2 = (KNodeOfObstacle)node2;
+			int obstacleIndex = obstacleIndexes.get(nodeOfObstacle.getObstacle());
+			int obstacleIndex2 = obstacleIndexes.get(nodeOfObstacle2.getObstacle());
+			if (obstacleIndex != obstacleIndex2){
+				return (obstacleIndex < obstacleIndex2 ? -1 : 1);
+			}
+			return (nodeOfObstacle.getPointNum() < nodeOfObstacle2.getPointNum() ? -1 : (nodeOfObstacle.getPointNum() == nodeOfObstacle2.getPointNum() ? 0 : 1));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import java.util.*;
+
+/**
+ * A frozen copy of the NodeConnector's node connections stored in
+ * compressed sparse row form: node coordinates are in the xs and ys arrays,
+ * and the neighbours of node i are neighbours[offsets[i]] to
+ * neighbours[offsets[i+1]-1], with the matching edge lengths precomputed in
+ * edgeLengths. This is much more cache-friendly than following the KNodes'
+ * connectedNodes lists, so A* runs faster over it. See CompactPathFinder.
+ *
+ * Note that the graph is kept as well as the KNode graph, not instead of it.
+ * The NodeConnector still needs the KNodes to add and remove obstacles and to
+ * connect the start and end points, and the nodes array refers to them so
+ * that paths can be returned as KNodes. So making a CompactNavigationGraph
+ * adds about getApproxSizeInBytes() to the heap rather than saving memory.
+ *
+ * The graph doesn't change when obstacles are added or removed, so a new
+ * one needs to be made after doing that.
+ *
+ * @author Keith Woodward
+ */
+public class CompactNavigationGraph<T extends PathBlockingObstacle> {
+	public int numNodes;
+	public float[] xs;
+	public float[] ys;
+	public int[] offsets;
+	public int[] neighbours;
+	public float[] edgeLengths;
+	// Used to map search results back to the original nodes.
+	public KNodeOfObstacle[] nodes;
+	// indexesByNodeID[node.getNodeID()] is the node's index in this graph, or -1.
+	public int[] indexesByNodeID;
+
+	/**
+	 * @param obstacles all of the obstacles that have been added to the
+	 * NodeConnector, for example ObstacleManager.getTileBag().
+	 */
+	public CompactNavigationGraph(Collection<T> obstacles){
+		int maxNodeID = -1;
+		for (T obst : obstacles){
+			ArrayList<KNodeOfObstacle> obstNodes = obst.getNodes();
+			for (int j = 0; j < obstNodes.size(); j++){
+				KNodeOfObstacle node = obstNodes.get(j);
+				if (node.getNodeID() == -1){
+					throw new IllegalArgumentException("KNode at "+node.getPoint()+" has no nodeID. Obstacles must be added using the NodeConnector before the graph is made.");
+				}
+				maxNodeID = Math.max(maxNodeID, node.getNodeID());
+				numNodes++;
+			}
+		}
+		indexesByNodeID = new int[maxNodeID + 1];
+		Arrays.fill(indexesByNodeID, -1);
+		nodes = new KNodeOfObstacle[numNodes];
+		xs = new float[numNodes];
+		ys = new float[numNodes];
+		offsets = new int[numNodes + 1];
+		int index = 0;
+		int numEdges = 0;
+		for (T obst : obstacles){
+			ArrayList<KNodeOfObstacle> obstNodes = obst.getNodes();
+			for (int j = 0; j < obstNodes.size(); j++){
+				KNodeOfObstacle node = obstNodes.get(j);
+				nodes[index] = node;
+				xs[index] = node.getPoint().x;
+				ys[index] = node.getPoint().y;
+				indexesByNodeID[node.getNodeID()] = index;
+				numEdges += node.getConnectedNodes().size();
+				index++;
+			}
+		}
+		neighbours = new int[numEdges];
+		edgeLengths = new float[numEdges];
+		int edgeIndex = 0;
+		for (int i = 0; i < numNodes; i++){
+			offsets[i] = edgeIndex;
+			ArrayList<KNode> connectedNodes = nodes[i].getConnectedNodes();
+			for (int j = 0; j < connectedNodes.size(); j++){
+				KNode node2 = connectedNodes.get(j);
+				int index2 = getIndex(node2);
+				if (index2 == -1){
+					throw new IllegalArgumentException("KNode at "+node2.getPoint()+" is connected to the node at "+nodes[i].getPoint()+" but its obstacle is not in the given obstacles.");
+				}
+				neighbours[edgeIndex] = index2;
+				// Vector2f.distance is used so that path lengths are exactly the same as PathFinder's.
+				edgeLengths[edgeIndex] = nodes[i].getPoint().distance(node2.getPoint());
+				edgeIndex++;
+			}
+		}
+		offsets[numNodes] = edgeIndex;
+	}
+
+	/**
+	 * @return the index of the node in this graph or -1 if it's not in the graph.
+	 */
+	public int getIndex(KNode node){
+		int nodeID = node.getNodeID();
+		if (nodeID < 0 || nodeID >= indexesByNodeID.length){
+			return -1;
+		}
+		int index = indexesByNodeID[nodeID];
+		if (index == -1 || nodes[index] != node){
+			return -1;
+		}
+		return index;
+	}
+
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	public int getNumEdges() {
+		return neighbours.length;
+	}
+
+	public KNodeOfObstacle getNode(int index){
+		return nodes[index];
+	}
+
+	/**
+	 * @return the approximate number of bytes used by this graph's arrays.
+	 */
+	public long getApproxSizeInBytes(){
+		return 4L*(xs.length + ys.length + offsets.length + neighbours.length + edgeLengths.length + indexesByNodeID.length) + 4L*nodes.length;
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Does the same A* search as PathFinder but over a CompactNavigationGraph
+ * rather than the KNodes' connectedNodes lists. The start and end nodes are
+ * still connected using the NodeConnector, and the resulting PathData
+ * contains the original KNodes.
+ *
+ * Like PathSearchContext, each thread should use its own CompactPathFinder.
+ * The graph must be re-made after obstacles are added or removed.
+ *
+ * @author Keith Woodward
+ */
+public class CompactPathFinder<T extends PathBlockingObstacle> extends PathSearchContext<T> {
+	public CompactNavigationGraph<T> graph;
+
+	public CompactPathFinder(CompactNavigationGraph<T> graph){
+		this.graph = graph;
+	}
+
+	// Graph nodes are at their graph index, the start node is at
+	// graph.getNumNodes() and the end node is one after that.
+	protected PathData search(double maxSearchDistStartToEnd, NodeConnector<T> nodeConnector){
+		int startIndex = graph.getNumNodes();
+		int endIndex = startIndex + 1;
+		ensureCapacity(startIndex + NUM_RESERVED_INDEXES);
+		incrementSearchCounter();
+		for (int i = 0; i < endReachableNodes.size(); i++){
+			endConnectionStamps[getGraphIndex(endReachableNodes.get(i))] = searchCounter;
+		}
+		float endX = endNode.getPoint().x;
+		float endY = endNode.getPoint().y;
+		stamps[startIndex] = searchCounter;
+		gCosts[startIndex] = 0;
+		parents[startIndex] = -1;
+		openList.makeEmpty();
+
+		float[] xs = graph.xs;
+		float[] ys = graph.ys;
+		int[] offsets = graph.offsets;
+		int[] neighbours = graph.neighbours;
+		float[] edgeLengths = graph.edgeLengths;
+		int currentIndex = startIndex;
+		while (true){
+			statuses[currentIndex] = KNode.CLOSED;
+			if (currentIndex == startIndex){
+				Vector2f p = startNode.getPoint();
+				for (int i = 0; i < startReachableNodes.size(); i++){
+					int index = getGraphIndex(startReachableNodes.get(i));
+					processReachableIndex(currentIndex, index, distance(p.x, p.y, xs[index], ys[index]), endX, endY, maxSearchDistStartToEnd);
+				}
+			}else{
+				for (int i = offsets[currentIndex]; i < offsets[currentIndex + 1]; i++){
+					int index = neighbours[i];
+					processReachableIndex(currentIndex, index, edgeLengths[i], endX, endY, maxSearchDistStartToEnd);
+				}
+				if (endConnectionStamps[currentIndex] == searchCounter){
+					processReachableIndex(currentIndex, endIndex, distance(xs[currentIndex], ys[currentIndex], endX, endY), endX, endY, maxSearchDistStartToEnd);
+				}
+			}
+			if (openList.isEmpty()){
+				return new PathData(PathData.Result.ERROR4);
+			}
+			currentIndex = openList.deleteMin();
+			if (currentIndex == endIndex){
+				break;
+			}
+		}
+		return makeCompactPathData(startIndex, endIndex);
+	}
+
+	protected void processReachableIndex(int currentIndex, int index, float dist, float endX, float endY, double maxSearchDistStartToEnd){
+		int status = getStatus(index);
+		if (status == KNode.CLOSED){
+			return;
+		}
+		double newGCost = gCosts[currentIndex] + dist;
+		if (status == KNode.UNPROCESSED){
+			double hCost = (index < graph.getNumNodes() ? distance(graph.xs[index], graph.ys[index], endX, endY) : 0);
+			double fCost = newGCost + hCost;
+			if (fCost <= maxSearchDistStartToEnd){
+				stamps[index] = searchCounter;
+				statuses[index] = KNode.OPEN;
+				parents[index] = currentIndex;
+				gCosts[index] = newGCost;
+				hCosts[index] = hCost;
+				fCosts[index] = fCost;
+				openList.add(index, fCost);
+			}
+		}else if (newGCost < gCosts[index]){
+			parents[index] = currentIndex;
+			gCosts[index] = newGCost;
+			fCosts[index] = newGCost + hCosts[index];
+			openList.decreaseKey(index, fCosts[index]);
+		}
+	}
+
+	// Same as Vector2f.distance, which squares in double precision, so that
+	// path lengths match PathFinder's exactly.
+	protected static float distance(float x, float y, float x2, float y2){
+		double dx = x - x2;
+		double dy = y - y2;
+		return (float)Math.sqrt((float)(dx*dx + dy*dy));
+	}
+
+	protected int getGraphIndex(KNode node){
+		int index = graph.getIndex(node);
+		if (index == -1){
+			throw new IllegalStateException("KNode at "+node.getPoint()+" is not in the CompactNavigationGraph. The graph must be re-made after obstacles are added or removed.");
+		}
+		return index;
+	}
+
+	protected PathData makeCompactPathData(int startIndex, int endIndex){
+		int index = endIndex;
+		while (index != -1){
+			KNode node = (index == startIndex ? startNode : (index == endIndex ? endNode : graph.getNode(index)));
+			pathNodes.add(node);
+			pathPoints.add(node.getPoint());
+			index = parents[index];
+		}
+		Collections.reverse(pathNodes);
+		Collections.reverse(pathPoints);
+		PathData pathData = new PathData(new ArrayList<Vector2f>(pathPoints), new ArrayList<KNode>(pathNodes));
+		pathNodes.clear();
+		pathPoints.clear();
+		return pathData;
+	}
+
+	public CompactNavigationGraph<T> getGraph() {
+		return graph;
+	}
+
+	public void setGraph(CompactNavigationGraph<T> graph) {
+		this.graph = graph;
+	}
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * An abstract graph on top of the NodeConnector's node graph for hierarchical
+ * path finding. The TileArray's tiles are grouped into square clusters, each
+ * clusterSize tiles wide. A node is in the cluster that its point is in, and
+ * it's a portal if it is connected to a node in another cluster.
+ * For each cluster the shortest distances between its portals, using only
+ * connections between nodes in the cluster, are precomputed. The distance
+ * from one portal to another is left out if going through a third portal is
+ * just as short, which leaves far fewer edges between the portals.
+ *
+ * Any path through the node graph is made of connections between clusters,
+ * which are portal to portal, and paths within a cluster, so searching the
+ * portals with the precomputed distances gives paths as short as PathFinder's.
+ * See HierarchicalPathFinder.
+ *
+ * A cluster with p portals stores p*p distances and takes time proportional
+ * to p*p*p to find its edges, so clusters with more than maxPortalsPerCluster
+ * portals aren't abstracted. Searches go through all of their nodes' connections
+ * instead, which is still correct but skips fewer nodes. Smaller clusters or a
+ * larger maxConnectionDistance in the ObstacleManager both lower the number
+ * of portals per cluster.
+ *
+ * When obstacles are added, removed or moved the clusters around them
+ * are marked dirty. ObstacleManager does this if the graph is set using
+ * ObstacleManager.setHierarchicalGraph. The dirty clusters are only rebuilt
+ * by calling update, which should be done after changing the obstacles and
+ * before searching. HierarchicalPathFinder never updates the graph itself,
+ * so many threads can search it at once, but while any cluster is dirty it
+ * falls back to the normal search.
+ * This class is not thread-safe.
+ *
+ * @author Keith Woodward
+ */
+public class HierarchicalGraph<T extends PathBlockingObstacle> {
+	public TileArray<T> tileArray;
+	public NodeConnector<T> nodeConnector;
+	// The width and height of a cluster in tiles.
+	public int clusterSize;
+	// Clusters with more portals than this aren't abstracted, see the class comment.
+	public int maxPortalsPerCluster = DEFAULT_MAX_PORTALS_PER_CLUSTER;
+	public static final int DEFAULT_MAX_PORTALS_PER_CLUSTER = 64;
+	public int numClusterRows;
+	public int numClusterCols;
+	public Cluster[][] clusters;	// rows, columns
+	public boolean anyDirty;
+	// portalIndexes[nodeID] is the node's index in its cluster's nodes array if it's a portal, or -1.
+	public int[] portalIndexes = new int[0];
+	public long numClustersRebuilt;
+
+	// Scratch for rebuilding clusters.
+	int[] localIndexes = new int[0];
+	double[] dists = new double[0];
+	IndexedBinaryHeap openList = new IndexedBinaryHeap();
+	ArrayList<KNodeOfObstacle> clusterNodes = new ArrayList<KNodeOfObstacle>();
+	ArrayList<KNodeOfObstacle> nonPortalNodes = new ArrayList<KNodeOfObstacle>();
+	TileArrayQueryContext addedSharedObstacles = new TileArrayQueryContext();
+
+	public HierarchicalGraph(TileArray<T> tileArray, NodeConnector<T> nodeConnector, int clusterSize){
+		if (clusterSize < 1){
+			throw new IllegalArgumentException("clusterSize == "+clusterSize+" but it must be at least 1.");
+		}
+		this.tileArray = tileArray;
+		this.nodeConnector = nodeConnector;
+		this.clusterSize = clusterSize;
+		numClusterRows = (tileArray.getNumRows() + clusterSize - 1)/clusterSize;
+		numClusterCols = (tileArray.getNumCols() + clusterSize - 1)/clusterSize;
+		clusters = new Cluster[numClusterRows][numClusterCols];
+		for (int i = 0; i < numClusterRows; i++){
+			for (int j = 0; j < numClusterCols; j++){
+				clusters[i][j] = new Cluster(i, j);
+			}
+		}
+		anyDirty = true;
+	}
+
+	public HierarchicalGraph(ObstacleManager<T> obstacleManager, int clusterSize){
+		this(obstacleManager.getTileBag().getTileArray(), obstacleManager.getNodeConnector(), clusterSize);
+	}
+
+	public int getClusterRow(Vector2f p){
+		return tileArray.getRowIndex(p.y)/clusterSize;
+	}
+
+	public int getClusterCol(Vector2f p){
+		return tileArray.getColIndex(p.x)/clusterSize;
+	}
+
+	public Cluster getCluster(Vector2f p){
+		return clusters[getClusterRow(p)][getClusterCol(p)];
+	}
+
+	public boolean isPortal(KNode node){
+		return getPortalIndex(node) != -1;
+	}
+
+	public int getPortalIndex(KNode node){
+		int nodeID = node.getNodeID();
+		if (nodeID < 0 || nodeID >= portalIndexes.length){
+			return -1;
+		}
+		return portalIndexes[nodeID];
+	}
+
+	/**
+	 * Marks the clusters overlapping the square around the circle as needing to be rebuilt.
+	 */
+	public void markDirty(Vector2f center, double radius){
+		int botRow = tileArray.getRowIndex(center.y - radius)/clusterSize;
+		int topRow = tileArray.getRowIndex(center.y + radius)/clusterSize;
+		int leftCol = tileArray.getColIndex(center.x - radius)/clusterSize;
+		int rightCol = tileArray.getColIndex(center.x + radius)/clusterSize;
+		for (int i = botRow; i <= topRow; i++){
+			for (int j = leftCol; j <= rightCol; j++){
+				clusters[i][j].dirty = true;
+			}
+		}
+		anyDirty = true;
+	}
+
+	public void markAllDirty(){
+		for (int i = 0; i < numClusterRows; i++){
+			for (int j = 0; j < numClusterCols; j++){
+				clusters[i][j].dirty = true;
+			}
+		}
+		anyDirty = true;
+	}
+
+	/**
+	 * Rebuilds the dirty clusters.
+	 */
+	public void update(){
+		if (anyDirty == false){
+			return;
+		}
+		int capacity = nodeConnector.getNodeIDCapacity();
+		if (portalIndexes.length < capacity){
+			int oldLength = portalIndexes.length;
+			portalIndexes = Arrays.copyOf(portalIndexes, Math.max(capacity, oldLength*2));
+			Arrays.fill(portalIndexes, oldLength, portalIndexes.length, -1);
+			localIndexes = new int[portalIndexes.length];
+		}
+		// Clear all of the old portals first since the nodeIDs of removed
+		// obstacles may have been given to nodes in other dirty clusters.
+		for (int i = 0; i < numClusterRows; i++){
+			for (int j = 0; j < numClusterCols; j++){
+				Cluster cluster = clusters[i][j];
+				if (cluster.dirty){
+					for (int k = 0; k < cluster.numPortals; k++){
+						int nodeID = cluster.portalNodeIDs[k];
+						if (nodeID < portalIndexes.length && portalIndexes[nodeID] == k){
+							portalIndexes[nodeID] = -1;
+						}
+					}
+				}
+			}
+		}
+		for (int i = 0; i < numClusterRows; i++){
+			for (int j = 0; j < numClusterCols; j++){
+				if (clusters[i][j].dirty){
+					rebuild(clusters[i][j]);
+				}
+			}
+		}
+		anyDirty = false;
+	}
+
+	protected void rebuild(Cluster cluster){
+		numClustersRebuilt++;
+		// Find the nodes in the cluster, with the portals first.
+		clusterNodes.clear();
+		nonPortalNodes.clear();
+		addedSharedObstacles.reset();
+		int maxRow = Math.min(tileArray.getNumRows(), (cluster.row + 1)*clusterSize);
+		int maxCol = Math.min(tileArray.getNumCols(), (cluster.col + 1)*clusterSize);
+		for (int i = cluster.row*clusterSize; i < maxRow; i++){
+			for (int j = cluster.col*clusterSize; j < maxCol; j++){
+				TileArray<T>.Tile<T> tile = tileArray.getTile(i, j);
+				Bag<T> containedObstacles = tile.getContainedObstacles();
+				for (int k = 0; k < containedObstacles.size(); k++){
+					addClusterNodes(cluster, containedObstacles.get(k));
+				}
+				Bag<T> sharedObstacles = tile.getSharedObstacles();
+				for (int k = 0; k < sharedObstacles.size(); k++){
+					T obst = sharedObstacles.get(k);
+					if (addedSharedObstacles.add(obst)){
+						addClusterNodes(cluster, obst);
+					}
+				}
+			}
+		}
+		int numPortals = clusterNodes.size();
+		clusterNodes.addAll(nonPortalNodes);
+		nonPortalNodes.clear();
+		int numNodes = clusterNodes.size();
+		cluster.nodes = clusterNodes.toArray(new KNodeOfObstacle[numNodes]);
+		cluster.numPortals = numPortals;
+		cluster.portalNodeIDs = new int[numPortals];
+		for (int i = 0; i < numNodes; i++){
+			localIndexes[cluster.nodes[i].getNodeID()] = i;
+		}
+		for (int i = 0; i < numPortals; i++){
+			cluster.portalNodeIDs[i] = cluster.nodes[i].getNodeID();
+			portalIndexes[cluster.portalNodeIDs[i]] = i;
+		}
+		clusterNodes.clear();
+		cluster.tooManyPortals = numPortals > maxPortalsPerCluster;
+		if (cluster.tooManyPortals){
+			cluster.portalDists = new double[0];
+			cluster.portalEdgeOffsets = new int[numPortals + 1];
+			cluster.portalEdgeTargets = new int[0];
+			cluster.portalEdgeDists = new double[0];
+			cluster.dirty = false;
+			return;
+		}
+
+		// Dijkstra from each portal using only the connections within the cluster.
+		cluster.portalDists = new double[numPortals*numPortals];
+		if (dists.length < numNodes){
+			dists = new double[Math.max(numNodes, dists.length*2)];
+		}
+		for (int i = 0; i < numPortals; i++){
+			Arrays.fill(dists, 0, numNodes, Double.MAX_VALUE);
+			dists[i] = 0;
+			openList.makeEmpty();
+			openList.add(i, 0);
+			while (openList.isEmpty() == false){
+				int currentIndex = openList.deleteMin();
+				KNode node = cluster.nodes[currentIndex];
+				ArrayList<KNode> connectedNodes = node.getConnectedNodes();
+				for (int k = 0; k < connectedNodes.size(); k++){
+					KNode node2 = connectedNodes.get(k);
+					if (getCluster(node2.getPoint()) != cluster){
+						continue;
+					}
+					int index2 = localIndexes[node2.getNodeID()];
+					double newDist = dists[currentIndex] + node.getPoint().distance(node2.getPoint());
+					if (newDist < dists[index2]){
+						if (dists[index2] == Double.MAX_VALUE){
+							openList.add(index2, newDist);
+						}else{
+							openList.decreaseKey(index2, newDist);
+						}
+						dists[index2] = newDist;
+					}
+				}
+			}
+			System.arraycopy(dists, 0, cluster.portalDists, i*numPortals, numPortals);
+		}
+		makePortalEdges(cluster);
+		cluster.dirty = false;
+	}
+
+	// Keeps the portal to portal distances that aren't just as short going through another portal.
+	protected void makePortalEdges(Cluster cluster){
+		int numPortals = cluster.numPortals;
+		double[] portalDists = cluster.portalDists;
+		cluster.portalEdgeOffsets = new int[numPortals + 1];
+		int numEdges = 0;
+		int[] targets = new int[numPortals*2];
+		for (int i = 0; i < numPortals; i++){
+			cluster.portalEdgeOffsets[i] = numEdges;
+			int rowOffset = i*numPortals;
+			TargetLoop:
+			for (int j = 0; j < numPortals; j++){
+				double dist = portalDists[rowOffset + j];
+				if (j == i || dist == Double.MAX_VALUE){
+					continue;
+				}
+				// Since both legs must be longer than zero, the edges that replace
+				// this one are shorter so they can't also be replaced by this one.
+				for (int k = 0; k < numPortals; k++){
+					double dist2 = portalDists[rowOffset + k];
+					double dist3 = portalDists[k*numPortals + j];
+					if (k != i && k != j && dist2 > 0 && dist3 > 0 && dist2 + dist3 <= dist){
+						continue TargetLoop;
+					}
+				}
+				if (numEdges == targets.length){
+					targets = Arrays.copyOf(targets, numEdges*2);
+				}
+				targets[numEdges] = j;
+				numEdges++;
+			}
+		}
+		cluster.portalEdgeOffsets[numPortals] = numEdges;
+		cluster.portalEdgeTargets = Arrays.copyOf(targets, numEdges);
+		cluster.portalEdgeDists = new double[numEdges];
+		for (int i = 0; i < numPortals; i++){
+			for (int e = cluster.portalEdgeOffsets[i]; e < cluster.portalEdgeOffsets[i + 1]; e++){
+				cluster.portalEdgeDists[e] = portalDists[i*numPortals + cluster.portalEdgeTargets[e]];
+			}
+		}
+	}
+
+	protected void addClusterNodes(Cluster cluster, T obst){
+		ArrayList<KNodeOfObstacle> nodes = obst.getNodes();
+		for (int i = 0; i < nodes.size(); i++){
+			KNodeOfObstacle node = nodes.get(i);
+			if (node.getNodeID() == -1 || node.isConcave() || node.getContained() == KNodeOfObstacle.TRUE_VALUE){
+				continue;
+			}
+			if (getCluster(node.getPoint()) != cluster){
+				continue;
+			}
+			boolean portal = false;
+			ArrayList<KNode> connectedNodes = node.getConnectedNodes();
+			for (int k = 0; k < connectedNodes.size(); k++){
+				if (getCluster(connectedNodes.get(k).getPoint()) != cluster){
+					portal = true;
+					break;
+				}
+			}
+			if (portal){
+				clusterNodes.add(node);
+			}else{
+				nonPortalNodes.add(node);
+			}
+		}
+	}
+
+	public int getNumPortalEdges(){
+		update();
+		int numPortalEdges = 0;
+		for (int i = 0; i < numClusterRows; i++){
+			for (int j = 0; j < numClusterCols; j++){
+				numPortalEdges += clusters[i][j].portalEdgeTargets.length;
+			}
+		}
+		return numPortalEdges;
+	}
+
+	public int getNumPortals(){
+		update();
+		int numPortals = 0;
+		for (int i = 0; i < numClusterRows; i++){
+			for (int j = 0; j < numClusterCols; j++){
+				numPortals += clusters[i][j].numPortals;
+			}
+		}
+		return numPortals;
+	}
+
+	public TileArray<T> getTileArray() {
+		return tileArray;
+	}
+
+	public NodeConnector<T> getNodeConnector() {
+		return nodeConnector;
+	}
+
+	public int getClusterSize() {
+		return clusterSize;
+	}
+
+	public int getMaxPortalsPerCluster() {
+		return maxPortalsPerCluster;
+	}
+
+	public void setMaxPortalsPerCluster(int maxPortalsPerCluster) {
+		this.maxPortalsPerCluster = maxPortalsPerCluster;
+		markAllDirty();
+	}
+
+	public boolean isDirty() {
+		return anyDirty;
+	}
+
+	public long getNumClustersRebuilt() {
+		return numClustersRebuilt;
+	}
+
+	public static class Cluster{
+		public int row;
+		public int col;
+		// The nodes in the cluster, portals first.
+		public KNodeOfObstacle[] nodes = new KNodeOfObstacle[0];
+		public int numPortals;
+		public int[] portalNodeIDs = new int[0];
+		// portalDists[i*numPortals + j] is the shortest distance within the cluster
+		// from portal i to portal j, or Double.MAX_VALUE if there's no path.
+		public double[] portalDists = new double[0];
+		// The portal edges that are kept, portal i's are from portalEdgeOffsets[i]
+		// up to portalEdgeOffsets[i + 1].
+		public int[] portalEdgeOffsets = new int[1];
+		public int[] portalEdgeTargets = new int[0];
+		public double[] portalEdgeDists = new double[0];
+		public boolean dirty = true;
+		// True if the cluster has more than maxPortalsPerCluster portals, in
+		// which case there are no portal distances or edges.
+		public boolean tooManyPortals;
+
+		public Cluster(int row, int col){
+			this.row = row;
+			this.col = col;
+		}
+
+		public double getPortalDist(int portalIndex, int portalIndex2){
+			return portalDists[portalIndex*numPortals + portalIndex2];
+		}
+
+		public KNodeOfObstacle[] getNodes() {
+			return nodes;
+		}
+
+		public int getNumPortals() {
+			return numPortals;
+		}
+
+		public boolean isDirty() {
+			return dirty;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Hierarchical path finding using a HierarchicalGraph.
+ *
+ * Long queries are searched with A* where the clusters that the start and
+ * end nodes connect to are searched normally, but in all other clusters only
+ * the portals are searched, using the graph's precomputed distances between
+ * portals and the connections between clusters. Then only the clusters along
+ * the resulting corridor are searched with A* to fill in the path between
+ * each pair of portals.
+ *
+ * The paths are as short as PathFinder's, but for long paths far fewer
+ * nodes are expanded since nodes in the middle of clusters are skipped.
+ * Queries where the start and end are fewer than minClusterSeparation
+ * clusters apart use the normal search in PathSearchContext.
+ *
+ * Like PathSearchContext, many threads can use their own
+ * HierarchicalPathFinder at once since the HierarchicalGraph is only read.
+ * Call HierarchicalGraph.update after changing the obstacles, otherwise
+ * every query uses the normal search until the graph is updated.
+ *
+ * @author Keith Woodward
+ */
+public class HierarchicalPathFinder<T extends PathBlockingObstacle> extends PathSearchContext<T> {
+	public HierarchicalGraph<T> graph;
+	public int minClusterSeparation = 2;
+
+	// The clusters containing the start and end nodes' reachable nodes, which are searched normally.
+	ArrayList<HierarchicalGraph.Cluster> searchedClusters = new ArrayList<HierarchicalGraph.Cluster>();
+	// True if the node at the index was reached from its parent using the cluster's portal distances.
+	boolean[] reachedThroughCluster;
+
+	// For searching a cluster between two portals.
+	IndexedBinaryHeap refineOpenList = new IndexedBinaryHeap();
+	int refineCounter = 0;
+	int[] refineStamps;
+	double[] refineCosts;
+	int[] refineParents;
+	ArrayList<KNode> refinePathNodes = new ArrayList<KNode>();
+
+	public long numAbstractNodesExpanded;
+	public long numRefinedNodesExpanded;
+
+	public HierarchicalPathFinder(HierarchicalGraph<T> graph){
+		super();
+		this.graph = graph;
+	}
+
+	@Override
+	protected PathData search(double maxSearchDistStartToEnd, NodeConnector<T> nodeConnector){
+		Vector2f start = startNode.getPoint();
+		Vector2f end = endNode.getPoint();
+		if (graph.isDirty() || (Math.abs(graph.getClusterRow(start) - graph.getClusterRow(end)) < minClusterSeparation &&
+				Math.abs(graph.getClusterCol(start) - graph.getClusterCol(end)) < minClusterSeparation)){
+			return super.search(maxSearchDistStartToEnd, nodeConnector);
+		}
+		ensureCapacity(nodeConnector.getNodeIDCapacity() + NUM_RESERVED_INDEXES);
+		incrementSearchCounter();
+		searchedClusters.clear();
+		for (int i = 0; i < startReachableNodes.size(); i++){
+			addSearchedCluster(startReachableNodes.get(i));
+		}
+		for (int i = 0; i < endReachableNodes.size(); i++){
+			addSearchedCluster(endReachableNodes.get(i));
+			endConnectionStamps[getIndex(endReachableNodes.get(i))] = searchCounter;
+		}
+		nodesByIndex[START_INDEX] = startNode;
+		nodesByIndex[END_INDEX] = endNode;
+		stamps[START_INDEX] = searchCounter;
+		gCosts[START_INDEX] = 0;
+		parents[START_INDEX] = -1;
+		openList.makeEmpty();
+
+		int currentIndex = START_INDEX;
+		while (true){
+			statuses[currentIndex] = KNode.CLOSED;
+			if (currentIndex == START_INDEX){
+				for (int i = 0; i < startReachableNodes.size(); i++){
+					KNode node = startReachableNodes.get(i);
+					processNode(currentIndex, node, startNode.getPoint().distance(node.getPoint()), false, maxSearchDistStartToEnd);
+				}
+			}else{
+				numAbstractNodesExpanded++;
+				KNode node = nodesByIndex[currentIndex];
+				HierarchicalGraph.Cluster cluster = graph.getCluster(node.getPoint());
+				ArrayList<KNode> connectedNodes = node.getConnectedNodes();
+				if (cluster.tooManyPortals || searchedClusters.contains(cluster)){
+					for (int i = 0; i < connectedNodes.size(); i++){
+						KNode node2 = connectedNodes.get(i);
+						processNode(currentIndex, node2, node.getPoint().distance(node2.getPoint()), false, maxSearchDistStartToEnd);
+					}
+				}else{
+					// Only portals are reached in the other abstracted clusters.
+					int portalIndex = graph.getPortalIndex(node);
+					for (int e = cluster.portalEdgeOffsets[portalIndex]; e < cluster.portalEdgeOffsets[portalIndex + 1]; e++){
+						processNode(currentIndex, cluster.nodes[cluster.portalEdgeTargets[e]], cluster.portalEdgeDists[e], true, maxSearchDistStartToEnd);
+					}
+					for (int i = 0; i < connectedNodes.size(); i++){
+						KNode node2 = connectedNodes.get(i);
+						if (graph.getCluster(node2.getPoint()) != cluster){
+							processNode(currentIndex, node2, node.getPoint().distance(node2.getPoint()), false, maxSearchDistStartToEnd);
+						}
+					}
+				}
+				if (endConnectionStamps[currentIndex] == searchCounter){
+					processNode(currentIndex, endNode, node.getPoint().distance(end), false, maxSearchDistStartToEnd);
+				}
+			}
+			if (openList.isEmpty()){
+				return new PathData(PathData.Result.ERROR4);
+			}
+			currentIndex = openList.deleteMin();
+			if (currentIndex == END_INDEX){
+				break;
+			}
+		}
+		return makeRefinedPathData();
+	}
+
+	protected void addSearchedCluster(KNode node){
+		HierarchicalGraph.Cluster cluster = graph.getCluster(node.getPoint());
+		if (searchedClusters.contains(cluster) == false){
+			searchedClusters.add(cluster);
+		}
+	}
+
+	protected void processNode(int currentIndex, KNode node, double edgeCost, boolean throughCluster, double maxSearchDistStartToEnd){
+		int index = getIndex(node);
+		int status = getStatus(index);
+		if (status == KNode.CLOSED){
+			return;
+		}
+		double newGCost = gCosts[currentIndex] + edgeCost;
+		if (status == KNode.UNPROCESSED){
+			double hCost = node.getPoint().distance(endNode.getPoint());
+			double fCost = newGCost + hCost;
+			if (fCost <= maxSearchDistStartToEnd){
+				stamps[index] = searchCounter;
+				statuses[index] = KNode.OPEN;
+				nodesByIndex[index] = node;
+				parents[index] = currentIndex;
+				reachedThroughCluster[index] = throughCluster;
+				gCosts[index] = newGCost;
+				hCosts[index] = hCost;
+				fCosts[index] = fCost;
+				openList.add(index, fCost);
+			}
+		}else if (newGCost < gCosts[index]){
+			parents[index] = currentIndex;
+			reachedThroughCluster[index] = throughCluster;
+			gCosts[index] = newGCost;
+			fCosts[index] = newGCost + hCosts[index];
+			openList.decreaseKey(index, fCosts[index]);
+		}
+	}
+
+	// Fills in the parts of the path that went through the clusters' portal distances.
+	protected PathData makeRefinedPathData(){
+		int index = END_INDEX;
+		while (index != -1){
+			KNode node = nodesByIndex[index];
+			int parentIndex = parents[index];
+			if (parentIndex != -1 && reachedThroughCluster[index]){
+				refine(nodesByIndex[parentIndex], node, graph.getCluster(node.getPoint()));
+				// refinePathNodes has the path backwards without the parent.
+				pathNodes.addAll(refinePathNodes);
+			}else{
+				pathNodes.add(node);
+			}
+			index = parentIndex;
+		}
+		Collections.reverse(pathNodes);
+		for (int i = 0; i < pathNodes.size(); i++){
+			pathPoints.add(pathNodes.get(i).getPoint());
+		}
+		PathData pathData = new PathData(new ArrayList<Vector2f>(pathPoints), new ArrayList<KNode>(pathNodes));
+		pathNodes.clear();
+		pathPoints.clear();
+		return pathData;
+	}
+
+	// A* from node to node2 using only the connections within the cluster.
+	// Puts the path from node2 back to, but not including, node in refinePathNodes.
+	protected void refine(KNode node, KNode node2, HierarchicalGraph.Cluster cluster){
+		refinePathNodes.clear();
+		refineCounter++;
+		if (refineCounter == Integer.MAX_VALUE){
+			Arrays.fill(refineStamps, 0);
+			refineCounter = 1;
+		}
+		Vector2f target = node2.getPoint();
+		int targetIndex = getIndex(node2);
+		int startIndex = getIndex(node);
+		refineStamps[startIndex] = refineCounter;
+		refineCosts[startIndex] = 0;
+		refineParents[startIndex] = -1;
+		refineOpenList.makeEmpty();
+		refineOpenList.add(startIndex, node.getPoint().distance(target));
+		while (refineOpenList.isEmpty() == false){
+			int currentIndex = refineOpenList.deleteMin();
+			if (currentIndex == targetIndex){
+				break;
+			}
+			numRefinedNodesExpanded++;
+			KNode currentNode = nodesByIndex[currentIndex];
+			ArrayList<KNode> connectedNodes = currentNode.getConnectedNodes();
+			for (int i = 0; i < connectedNodes.size(); i++){
+				KNode connectedNode = connectedNodes.get(i);
+				if (graph.getCluster(connectedNode.getPoint()) != cluster){
+					continue;
+				}
+				int index = getIndex(connectedNode);
+				double newCost = refineCosts[currentIndex] + currentNode.getPoint().distance(connectedNode.getPoint());
+				if (refineStamps[index] != refineCounter){
+					refineStamps[index] = refineCounter;
+					nodesByIndex[index] = connectedNode;
+					refineCosts[index] = newCost;
+					refineParents[index] = currentIndex;
+					refineOpenList.add(index, newCost + connectedNode.getPoint().distance(target));
+				}else if (newCost < refineCosts[index] && refineOpenList.contains(index)){
+					refineCosts[index] = newCost;
+					refineParents[index] = currentIndex;
+					refineOpenList.decreaseKey(index, newCost + connectedNode.getPoint().distance(target));
+				}
+			}
+		}
+		if (refineStamps[targetIndex] != refineCounter){
+			throw new IllegalStateException("No path within the cluster from "+node.getPoint()+" to "+target+". The HierarchicalGraph may be out of date.");
+		}
+		int index = targetIndex;
+		while (index != startIndex){
+			refinePathNodes.add(nodesByIndex[index]);
+			index = refineParents[index];
+		}
+	}
+
+	@Override
+	protected void ensureCapacity(int capacity){
+		super.ensureCapacity(capacity);
+		int newLength = stamps.length;
+		if (reachedThroughCluster != null && reachedThroughCluster.length == newLength){
+			return;
+		}
+		reachedThroughCluster = reachedThroughCluster == null ? new boolean[newLength] : Arrays.copyOf(reachedThroughCluster, newLength);
+		refineStamps = refineStamps == null ? new int[newLength] : Arrays.copyOf(refineStamps, newLength);
+		refineCosts = refineCosts == null ? new double[newLength] : Arrays.copyOf(refineCosts, newLength);
+		refineParents = refineParents == null ? new int[newLength] : Arrays.copyOf(refineParents, newLength);
+	}
+
+	public void resetCounters(){
+		numAbstractNodesExpanded = 0;
+		numRefinedNodesExpanded = 0;
+	}
+
+	public HierarchicalGraph<T> getGraph() {
+		return graph;
+	}
+
+	public int getMinClusterSeparation() {
+		return minClusterSeparation;
+	}
+
+	public void setMinClusterSeparation(int minClusterSeparation) {
+		this.minClusterSeparation = minClusterSeparation;
+	}
+
+	public long getNumAbstractNodesExpanded() {
+		return numAbstractNodesExpanded;
+	}
+
+	public long getNumRefinedNodesExpanded() {
+		return numRefinedNodesExpanded;
+	}
+}
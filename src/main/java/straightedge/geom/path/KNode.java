@@ -50,6 +50,11 @@ public class KNode implements Comparable{
 	public double hCost;		// distance straight to endPoint.
 	public double fCost;		// gCost+hCost. This is what the the A* algorithm uses to sort the openList in PathFinder.
 	public ArrayList<KNode> tempConnectedNodes;
+	// Dense id given out by the NodeConnector that owns this node, used to
+	// index per-search arrays in PathSearchContext. -1 if no id is assigned.
+	public int nodeID = -1;
+	// Index used by PathFinder's open list. Only valid while the node is OPEN.
+	public int pathFinderIndex = -1;
 
 	public int trackerID = -1;
 	public long trackerCounter = -1;
@@ -87,6 +92,22 @@ public class KNode implements Comparable{
 		this.point = p;
 	}
 
+	public int getNodeID() {
+		return nodeID;
+	}
+
+	public void setNodeID(int nodeID) {
+		this.nodeID = nodeID;
+	}
+
+	public int getPathFinderIndex() {
+		return pathFinderIndex;
+	}
+
+	public void setPathFinderIndex(int pathFinderIndex) {
+		this.pathFinderIndex = pathFinderIndex;
+	}
+
 	public ArrayList<KNode> getConnectedNodes() {
 		return connectedNodes;
 	}
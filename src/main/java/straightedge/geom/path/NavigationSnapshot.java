@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Saves an ObstacleManager's obstacles and node connections to a binary file
+ * so that they can be loaded again without re-running NodeConnector.addObstacle,
+ * which needs many line-intersection tests.
+ *
+ * File layout (big-endian):
+ *   int magic, int version, long payloadLength, long payloadCRC32, payload.
+ * The payload holds the maxConnectionDistance, the TileArray dimensions, each
+ * obstacle's outer and inner polygon points and its nodes' concave and
+ * contained flags, then each node's connections as indexes into the list of
+ * all nodes.
+ *
+ * Snapshots with the wrong magic number or version, or whose checksum doesn't
+ * match, are rejected with an IOException.
+ *
+ * @author Keith Woodward
+ */
+public class NavigationSnapshot {
+	public static final int MAGIC = 0x53544544;
+	public static final int VERSION = 1;
+	public static final int HEADER_LENGTH = 4 + 4 + 8 + 8;
+
+	/**
+	 * Writes the obstacleManager's obstacles and node connections to the file.
+	 * Any kind of PathBlockingObstacle can be written, but only its outer and
+	 * inner polygons and its nodes are saved, so read gives back
+	 * PathBlockingObstacleImpls.
+	 */
+	public static <T extends PathBlockingObstacle> void write(ObstacleManager<T> obstacleManager, File file) throws IOException{
+		TileBag<T> tileBag = obstacleManager.getTileBag();
+		TileArray<T> tileArray = tileBag.getTileArray();
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+		out.writeDouble(obstacleManager.getMaxConnectionDistance());
+		out.writeFloat(tileArray.getBotLeft().x);
+		out.writeFloat(tileArray.getBotLeft().y);
+		out.writeFloat(tileArray.getTileWidthAndHeight());
+		out.writeInt(tileArray.getNumRows());
+		out.writeInt(tileArray.getNumCols());
+
+		// Give each node an index in the order that they're written.
+		IdentityHashMap<KNode, Integer> nodeIndexes = new IdentityHashMap<KNode, Integer>();
+		ArrayList<KNodeOfObstacle> allNodes = new ArrayList<KNodeOfObstacle>();
+		out.writeInt(tileBag.size());
+		for (int i = 0; i < tileBag.size(); i++){
+			T obst = tileBag.get(i);
+			writePolygon(out, obst.getOuterPolygon());
+			writePolygon(out, obst.getInnerPolygon());
+			ArrayList<KNodeOfObstacle> nodes = obst.getNodes();
+			out.writeInt(nodes.size());
+			for (int j = 0; j < nodes.size(); j++){
+				KNodeOfObstacle node = nodes.get(j);
+				out.writeBoolean(node.isConcave());
+				out.writeByte(node.getContained());
+				nodeIndexes.put(node, allNodes.size());
+				allNodes.add(node);
+			}
+		}
+		out.writeInt(allNodes.size());
+		for (int i = 0; i < allNodes.size(); i++){
+			ArrayList<KNode> connectedNodes = allNodes.get(i).getConnectedNodes();
+			out.writeInt(connectedNodes.size());
+			for (int j = 0; j < connectedNodes.size(); j++){
+				Integer index = nodeIndexes.get(connectedNodes.get(j));
+				if (index == null){
+					throw new IllegalStateException("A node of an obstacle is connected to a node that is not in the ObstacleManager. Node point == "+connectedNodes.get(j).getPoint());
+				}
+				out.writeInt(index);
+			}
+		}
+		out.close();
+		byte[] payload = byteArrayOutputStream.toByteArray();
+		CRC32 crc32 = new CRC32();
+		crc32.update(payload);
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(payload.length);
+		header.putLong(crc32.getValue());
+		header.flip();
+		FileOutputStream fileOutputStream = new FileOutputStream(file);
+		try{
+			FileChannel channel = fileOutputStream.getChannel();
+			while (header.hasRemaining()){
+				channel.write(header);
+			}
+			ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+			while (payloadBuffer.hasRemaining()){
+				channel.write(payloadBuffer);
+			}
+		}finally{
+			fileOutputStream.close();
+		}
+	}
+
+	protected static void writePolygon(DataOutputStream out, KPolygon polygon) throws IOException{
+		ArrayList<Vector2f> points = polygon.getPoints();
+		out.writeInt(points.size());
+		for (int i = 0; i < points.size(); i++){
+			out.writeFloat(points.get(i).x);
+			out.writeFloat(points.get(i).y);
+		}
+	}
+
+	/**
+	 * Memory-maps the file and makes a new ObstacleManager, TileBag and
+	 * KNode connections from it. No intersection tests are done.
+	 * The obstacles are always PathBlockingObstacleImpls, whatever kind
+	 * of obstacles were written.
+	 */
+	public static ObstacleManager<PathBlockingObstacleImpl> read(File file) throws IOException{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() < HEADER_LENGTH){
+				throw new IOException("Navigation snapshot "+file+" is too short to be valid.");
+			}
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return read(buffer, file.toString());
+		}finally{
+			randomAccessFile.close();
+		}
+	}
+
+	protected static ObstacleManager<PathBlockingObstacleImpl> read(ByteBuffer buffer, String name) throws IOException{
+		int magic = buffer.getInt();
+		if (magic != MAGIC){
+			throw new IOException("Navigation snapshot "+name+" has the wrong magic number, it's not a navigation snapshot.");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION){
+			throw new IOException("Navigation snapshot "+name+" has version "+version+" but only version "+VERSION+" can be read. It needs to be re-made.");
+		}
+		long payloadLength = buffer.getLong();
+		long expectedCRC32 = buffer.getLong();
+		if (payloadLength != buffer.remaining()){
+			throw new IOException("Navigation snapshot "+name+" has a payload of "+buffer.remaining()+" bytes but "+payloadLength+" bytes were expected.");
+		}
+		CRC32 crc32 = new CRC32();
+		crc32.update(buffer.duplicate());
+		if (crc32.getValue() != expectedCRC32){
+			throw new IOException("Navigation snapshot "+name+" failed its checksum test, it's corrupt.");
+		}
+
+		try{
+			double maxConnectionDistance = buffer.getDouble();
+			Vector2f botLeft = new Vector2f(buffer.getFloat(), buffer.getFloat());
+			float tileWidthAndHeight = buffer.getFloat();
+			int numRows = buffer.getInt();
+			int numCols = buffer.getInt();
+			TileBag<PathBlockingObstacleImpl> tileBag = new TileBag<PathBlockingObstacleImpl>(botLeft, tileWidthAndHeight, numRows, numCols);
+			ObstacleManager<PathBlockingObstacleImpl> obstacleManager = new ObstacleManager<PathBlockingObstacleImpl>(tileBag, maxConnectionDistance);
+			NodeConnector<PathBlockingObstacleImpl> nodeConnector = obstacleManager.getNodeConnector();
+
+			int numObstacles = buffer.getInt();
+			ArrayList<KNodeOfObstacle> allNodes = new ArrayList<KNodeOfObstacle>();
+			for (int i = 0; i < numObstacles; i++){
+				KPolygon outerPolygon = readPolygon(buffer);
+				KPolygon innerPolygon = readPolygon(buffer);
+				PathBlockingObstacleImpl obst = new PathBlockingObstacleImpl(outerPolygon, innerPolygon);
+				int numNodes = buffer.getInt();
+				if (numNodes != obst.getNodes().size()){
+					throw new IOException("Navigation snapshot "+name+" has "+numNodes+" nodes for an obstacle with "+obst.getNodes().size()+" points.");
+				}
+				tileBag.add(obst);
+				// gives the nodes their ids.
+				nodeConnector.resetObstacleNodes(obst);
+				for (int j = 0; j < numNodes; j++){
+					KNodeOfObstacle node = obst.getNodes().get(j);
+					node.concave = (buffer.get() != 0);
+					node.setContained(buffer.get());
+					allNodes.add(node);
+				}
+			}
+			int numNodes = buffer.getInt();
+			if (numNodes != allNodes.size()){
+				throw new IOException("Navigation snapshot "+name+" has "+numNodes+" node connection lists but "+allNodes.size()+" nodes.");
+			}
+			for (int i = 0; i < numNodes; i++){
+				ArrayList<KNode> connectedNodes = allNodes.get(i).getConnectedNodes();
+				int numConnectedNodes = buffer.getInt();
+				connectedNodes.ensureCapacity(numConnectedNodes);
+				for (int j = 0; j < numConnectedNodes; j++){
+					connectedNodes.add(allNodes.get(buffer.getInt()));
+				}
+			}
+			return obstacleManager;
+		}catch (BufferUnderflowException e){
+			throw new IOException("Navigation snapshot "+name+" ended unexpectedly.", e);
+		}catch (IndexOutOfBoundsException e){
+			throw new IOException("Navigation snapshot "+name+" has an invalid node index.", e);
+		}
+	}
+
+	protected static KPolygon readPolygon(ByteBuffer buffer){
+		int numPoints = buffer.getInt();
+		ArrayList<Vector2f> points = new ArrayList<Vector2f>(numPoints);
+		for (int i = 0; i < numPoints; i++){
+			points.add(new Vector2f(buffer.getFloat(), buffer.getFloat()));
+		}
+		return new KPolygon(points, false);
+	}
+}
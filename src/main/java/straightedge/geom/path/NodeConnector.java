@@ -31,6 +31,7 @@
 package straightedge.geom.path;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -38,8 +39,8 @@ import com.jme3.math.Vector2f;
 
 import straightedge.geom.KPolygon;
 import straightedge.geom.Vector2fUtils;
-import straightedge.geom.util.TileArray;
-import straightedge.geom.util.TileArray.Tile;
+import straightedge.geom.util.SpatialIndex;
+import straightedge.geom.util.TileArrayQueryContext;
 import straightedge.geom.util.TileBag;
 
 /**
@@ -49,11 +50,51 @@ import straightedge.geom.util.TileBag;
 public class NodeConnector<T extends PathBlockingObstacle>{
 	// This list is cleared after each method call rather than created anew, to avoid creating new lists all the time.
 	ArrayList<ObstAndDist> obstAndDists = new ArrayList<ObstAndDist>();
+	// Re-used by the methods that look up the obstacles near a node in a
+	// SpatialIndex, so that each call doesn't make a new list.
+	ArrayList<T> obstaclesNearNode = new ArrayList<T>();
+	TileArrayQueryContext queryContext = new TileArrayQueryContext();
+	// Dense KNode ids handed out to the nodes of added obstacles. The ids of
+	// removed obstacles' nodes are recycled so the id range stays compact.
+	int nodeIDCapacity = 0;
+	int[] freeNodeIDs = new int[16];
+	int numFreeNodeIDs = 0;
+
 	public NodeConnector(){
 	}
 
+	protected void assignNodeID(KNode node){
+		if (numFreeNodeIDs > 0){
+			numFreeNodeIDs--;
+			node.setNodeID(freeNodeIDs[numFreeNodeIDs]);
+		}else{
+			node.setNodeID(nodeIDCapacity);
+			nodeIDCapacity++;
+		}
+	}
+
+	protected void releaseNodeID(KNode node){
+		if (node.getNodeID() == -1){
+			return;
+		}
+		if (numFreeNodeIDs == freeNodeIDs.length){
+			freeNodeIDs = Arrays.copyOf(freeNodeIDs, freeNodeIDs.length*2);
+		}
+		freeNodeIDs[numFreeNodeIDs] = node.getNodeID();
+		numFreeNodeIDs++;
+		node.setNodeID(-1);
+	}
+
+	/**
+	 * @return one more than the largest node id given out so far, so that
+	 * per-node arrays of this length can be indexed by KNode.getNodeID().
+	 */
+	public int getNodeIDCapacity(){
+		return nodeIDCapacity;
+	}
+
 //	CodeTimer ct = new CodeTimer("NodeConnector.reConnectNode", CodeTimer.Output.Millis, CodeTimer.Output.Millis);
-	public void reConnectNode(KNodeOfObstacle node, double maxConnectionDistance, TileArray<T> tileArray){
+	public void reConnectNode(KNodeOfObstacle node, double maxConnectionDistance, SpatialIndex<T> tileArray){
 //		ct.setEnabled(false);
 //		ct.click("startNode.clearConnectedNodes();");
 		node.clearConnectedNodes();
@@ -64,8 +105,10 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 			return;
 		}
 		//		ct.click("getAllWithin");
-		ArrayList<T> obstaclesToIntersect = tileArray.getAllWithin(node.getPoint(), maxConnectionDistance);
-		reConnectNodeAfterChecks(node, maxConnectionDistance, obstaclesToIntersect);
+		Vector2f p = node.getPoint();
+		tileArray.getAllWithin(p.x, p.y, maxConnectionDistance, obstaclesNearNode, queryContext);
+		reConnectNodeAfterChecks(node, maxConnectionDistance, obstaclesNearNode);
+		obstaclesNearNode.clear();
 	}
 
 	public void reConnectNode(KNodeOfObstacle node, double maxConnectionDistance, List<T> obstacles){
@@ -200,19 +243,9 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 //		ct.lastClick();
 	}
 
-	protected boolean tileArrayContainsObstacle(TileArray tileArray, T obst){
-		Tile[][] tiles = tileArray.getTiles();
-		for (int i = 0; i < tileArray.getNumRows(); i++){
-			for (int j = 0; j < tileArray.getNumCols(); j++){
-				if (tiles[i][j].getContainedObstacles().contains(obst)){
-					return true;
-				}
-				if (tiles[i][j].getSharedObstacles().contains(obst)){
-					return true;
-				}
-			}
-		}
-		return false;
+	protected boolean tileArrayContainsObstacle(SpatialIndex<T> tileArray, T obst){
+		KPolygon poly = obst.getPolygon();
+		return tileArray.getAllWithin(poly.getCenter(), poly.getRadius()).contains(obst);
 	}
 
 	public void addObstacle(T obst, TileBag tileBag, double maxConnectionDistance){
@@ -220,7 +253,7 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 	}
 
 	// note that the tileArray must already contain the obstacle.
-	public void addObstacle(T obst, TileArray tileArray, double maxConnectionDistance){
+	public void addObstacle(T obst, SpatialIndex<T> tileArray, double maxConnectionDistance){
 		assert tileArrayContainsObstacle(tileArray, obst);
 		resetObstacleNodes(obst);
 		KPolygon poly = obst.getInnerPolygon();
@@ -339,6 +372,7 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 		for (int j = 0; j < removedObstacle.getNodes().size(); j++){
 			KNodeOfObstacle node = removedObstacle.getNodes().get(j);
 			node.clearConnectedNodes();
+			releaseNodeID(node);
 		}
 	}
 
@@ -748,14 +782,34 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 //	}
 
 
-	public ArrayList<KNode> makeReachableNodesFor(KNode node, double maxConnectionDistance, TileArray<T> grid){
-		ArrayList<T> obstaclesToIntersect = grid.getAllWithin(node.getPoint(), maxConnectionDistance);
-		return makeReachableNodesFor(node, maxConnectionDistance, obstaclesToIntersect);
+	public ArrayList<KNode> makeReachableNodesFor(KNode node, double maxConnectionDistance, SpatialIndex<T> grid){
+		Vector2f p = node.getPoint();
+		grid.getAllWithin(p.x, p.y, maxConnectionDistance, obstaclesNearNode, queryContext);
+		ArrayList<KNode> reachableNodes = makeReachableNodesFor(node, maxConnectionDistance, obstaclesNearNode);
+		obstaclesNearNode.clear();
+		return reachableNodes;
 	}
 
 //	CodeTimer codeTimer = new CodeTimer("makeReachableNodesFor");
 	ArrayList<ObstDistAndQuad> obstDistAndQuads = new ArrayList<ObstDistAndQuad>();
 	public ArrayList<KNode> makeReachableNodesFor(KNode node, double maxConnectionDistance, List<T> obstaclesToIntersect){
+		return makeReachableNodesFor(node, maxConnectionDistance, obstaclesToIntersect, obstDistAndQuads, new ArrayList<KNode>());
+	}
+
+	/**
+	 * Finds the obstacle nodes that can be connected to the given node.
+	 * The obstacle nodes' connections are only read, not changed, so as long
+	 * as each thread passes in its own obstDistAndQuads and reachableNodes lists
+	 * this method can be called concurrently.
+	 *
+	 * @param node
+	 * @param maxConnectionDistance
+	 * @param obstaclesToIntersect
+	 * @param obstDistAndQuads scratch list, cleared before returning.
+	 * @param reachableNodes the list that reachable nodes are appended to.
+	 * @return reachableNodes
+	 */
+	public ArrayList<KNode> makeReachableNodesFor(KNode node, double maxConnectionDistance, List<T> obstaclesToIntersect, ArrayList<ObstDistAndQuad> obstDistAndQuads, ArrayList<KNode> reachableNodes){
 //		codeTimer.click("clear");
 		// To optimise the line-obstacle intersection testing, order the obstacle list
 		// by their distance to the startNode, smallest first.
@@ -788,7 +842,6 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 		double maxConnectionDistanceSq = maxConnectionDistance*maxConnectionDistance;
 
 		// Test for straight lines between the startNode and nodes of obstacles that don't intersect any obstacles.
-		ArrayList<KNode> reachableNodes = new ArrayList<KNode>();
 		for (int k = 0; k < obstDistAndQuads.size(); k++){
 			ObstDistAndQuad obstDistAndQuad = obstDistAndQuads.get(k);
 			PathBlockingObstacle testOb2 = obstDistAndQuad.getObst();
@@ -1082,6 +1135,9 @@ public class NodeConnector<T extends PathBlockingObstacle>{
 			node.getConnectedNodes().clear();
 			node.getTempConnectedNodes().clear();
 			node.resetContainedToUnknown();
+			if (node.getNodeID() == -1){
+				assignNodeID(node);
+			}
 		}
 	}
 
@@ -34,16 +34,15 @@ package straightedge.geom.path;
  * This class is just used to help sort the obstacle lists.
  * @author Keith
  */
-public class ObstAndDist implements Comparable{
+public class ObstAndDist implements Comparable<ObstAndDist>{
 	public PathBlockingObstacle obst;
 	public double dist;
 	public ObstAndDist(PathBlockingObstacle obst, double dist){
 		this.obst = obst;
 		this.dist = dist;
 	}
-	public int compareTo(Object ob){
-		assert ob instanceof ObstAndDist : ob;
-		double obDist = ((ObstAndDist)ob).getDist();
+	public int compareTo(ObstAndDist ob){
+		double obDist = ob.getDist();
 		if (dist > obDist){
 			return 1;
 		}else if (dist < obDist){
@@ -33,6 +33,9 @@ package straightedge.geom.path;
 import straightedge.geom.util.*;
 import straightedge.geom.*;
 import java.util.*;
+
+import com.jme3.math.Vector2f;
+
 /**
  *
  * @author Keith
@@ -42,6 +45,14 @@ public class ObstacleManager<T extends PathBlockingObstacle>{
 	public NodeConnector<T> nodeConnector;
 	public double maxConnectionDistance;
 
+	// Counters for the work done by moveObstacle, see resetMoveCounters.
+	public long numEdgesInvalidated;
+	public long numEdgesRetested;
+	public long numNodesReconnected;
+
+	// Optional, marked dirty around the obstacles that are added, removed or moved.
+	public HierarchicalGraph<T> hierarchicalGraph;
+
 	public ObstacleManager(TileBag tileBag, double maxConnectionDistance){
 		this.tileBag = tileBag;
 		this.maxConnectionDistance = maxConnectionDistance;
@@ -60,6 +71,10 @@ public class ObstacleManager<T extends PathBlockingObstacle>{
 	public void addObstacle(T obst){
 		tileBag.add(obst);
 		nodeConnector.addObstacle(obst, tileBag, maxConnectionDistance);
+		if (hierarchicalGraph != null){
+			KPolygon poly = obst.getInnerPolygon();
+			hierarchicalGraph.markDirty(poly.getCenter(), poly.getRadius() + maxConnectionDistance);
+		}
 	}
 
 	public void removeObstacle(T obst){
@@ -86,6 +101,9 @@ public class ObstacleManager<T extends PathBlockingObstacle>{
 			}
 		}
 		nodeConnector.reConnectNodesAroundRemovedObstacle(obst, nodesToBeReconnected, nearByObstacles, maxConnectionDistance);
+		if (hierarchicalGraph != null){
+			hierarchicalGraph.markDirty(poly.getCenter(), poly.getRadius() + maxConnectionDistance);
+		}
 
 		long endTime = System.nanoTime();
 		System.out.println(this.getClass().getSimpleName()+".removeObstacle running time = "+((endTime - startTime)/1000000000f));
@@ -107,6 +125,219 @@ public class ObstacleManager<T extends PathBlockingObstacle>{
 		System.out.println(this.getClass().getSimpleName()+".remakeConnectionsBetweenAllObstacles addObstacle running time = "+((endTime - startTime)/1000000000f));
 	}
 
+	/**
+	 * Moves and rotates the obstacle, which must already have been added.
+	 * This gives the same connections as removing the obstacle, moving it and
+	 * adding it again, but only the connections that could be affected are
+	 * touched:
+	 * - the obstacle's own nodes are reconnected,
+	 * - existing connections that cross the obstacle's new innerPolygon are removed,
+	 * - node pairs whose line crossed the old innerPolygon are re-tested,
+	 * - nodes that were inside the old innerPolygon and no longer are get reconnected.
+	 * The obstacle is moved within the TileBag's TileArray, its position in the
+	 * TileBag's Bag doesn't change.
+	 *
+	 * @param obst
+	 * @param dx
+	 * @param dy
+	 * @param dRotation the angle to rotate the obstacle by, around its innerPolygon's center.
+	 */
+	public void moveObstacle(T obst, float dx, float dy, float dRotation){
+		TileArray<T> tileArray = tileBag.getTileArray();
+		KPolygon innerPolygon = obst.getInnerPolygon();
+		KPolygon outerPolygon = obst.getOuterPolygon();
+		KPolygon oldInnerPolygon = innerPolygon.copy();
+
+		// Remove the obstacle's own connections and move it.
+		for (KNodeOfObstacle node : obst.getNodes()){
+			numEdgesInvalidated += node.getConnectedNodes().size();
+			node.clearConnectedNodes();
+		}
+		tileArray.remove(obst);
+		if (dRotation != 0){
+			float axleX = innerPolygon.getCenter().x;
+			float axleY = innerPolygon.getCenter().y;
+			innerPolygon.rotate(dRotation, axleX, axleY);
+			outerPolygon.rotate(dRotation, axleX, axleY);
+		}
+		innerPolygon.translate(dx, dy);
+		outerPolygon.translate(dx, dy);
+		for (KNodeOfObstacle node : obst.getNodes()){
+			Vector2f point = outerPolygon.getPoint(node.getPointNum());
+			node.getPoint().x = point.x;
+			node.getPoint().y = point.y;
+			node.resetContainedToUnknown();
+		}
+		tileArray.add(obst);
+
+		// The swept area is bounded by a circle around both the old and new innerPolygons.
+		Vector2f oldCenter = oldInnerPolygon.getCenter();
+		Vector2f newCenter = innerPolygon.getCenter();
+		double centersDist = oldCenter.distance(newCenter);
+		double sweptRadius = (centersDist + oldInnerPolygon.getRadius() + innerPolygon.getRadius())/2;
+		Vector2f sweptCenter;
+		if (centersDist == 0){
+			sweptCenter = newCenter.clone();
+			sweptRadius = Math.max(oldInnerPolygon.getRadius(), innerPolygon.getRadius());
+		}else{
+			float fraction = (float)((sweptRadius - oldInnerPolygon.getRadius())/centersDist);
+			sweptCenter = new Vector2f(oldCenter.x + (newCenter.x - oldCenter.x)*fraction, oldCenter.y + (newCenter.y - oldCenter.y)*fraction);
+			sweptRadius = Math.max(sweptRadius, Math.max(oldInnerPolygon.getRadius(), innerPolygon.getRadius()));
+		}
+		double sweptRadiusSq = sweptRadius*sweptRadius;
+		ArrayList<T> nearByObstacles = tileArray.getAllWithin(sweptCenter, sweptRadius + maxConnectionDistance);
+		if (hierarchicalGraph != null){
+			hierarchicalGraph.markDirty(sweptCenter, sweptRadius + maxConnectionDistance);
+		}
+
+		// Update the contained flags of nodes that were inside the old polygon or are inside the new one.
+		ArrayList<KNodeOfObstacle> freedNodes = new ArrayList<KNodeOfObstacle>();
+		for (T nearByObstacle : nearByObstacles){
+			if (nearByObstacle == obst){
+				continue;
+			}
+			for (KNodeOfObstacle node : nearByObstacle.getNodes()){
+				Vector2f p = node.getPoint();
+				if (node.getContained() == KNodeOfObstacle.TRUE_VALUE && oldCenter.distanceSquared(p) <= oldInnerPolygon.getRadiusSq() && oldInnerPolygon.contains(p)){
+					node.resetContainedToUnknown();
+				}
+				if (newCenter.distanceSquared(p) <= innerPolygon.getRadiusSq() && innerPolygon.contains(p)){
+					numEdgesInvalidated += node.getConnectedNodes().size();
+					node.setContained(KNodeOfObstacle.TRUE_VALUE);
+					node.clearConnectedNodes();
+				}else if (node.getContained() == KNodeOfObstacle.UNKNOWN_VALUE && node.isConcave() == false){
+					freedNodes.add(node);
+				}
+			}
+		}
+
+		// Remove the connections that now cross the new polygon.
+		for (T nearByObstacle : nearByObstacles){
+			if (nearByObstacle == obst){
+				continue;
+			}
+			for (KNodeOfObstacle node : nearByObstacle.getNodes()){
+				ArrayList<KNode> reachableNodes = node.getConnectedNodes();
+				for (int k = 0; k < reachableNodes.size(); k++){
+					KNode node2 = reachableNodes.get(k);
+					Vector2f p = node.getPoint();
+					Vector2f p2 = node2.getPoint();
+					if (Vector2fUtils.ptSegDistSq(p.x, p.y, p2.x, p2.y, sweptCenter.x, sweptCenter.y) > sweptRadiusSq){
+						continue;
+					}
+					if (innerPolygon.intersectionPossible(p, p2) && innerPolygon.intersectsLine(p, p2)){
+						reachableNodes.remove(k);
+						node2.getConnectedNodes().remove(node);
+						numEdgesInvalidated++;
+						k--;
+					}
+				}
+			}
+		}
+
+		// Reconnect the moved obstacle's nodes and the nodes that are no longer contained.
+		for (KNodeOfObstacle node : obst.getNodes()){
+			nodeConnector.reConnectNode(node, maxConnectionDistance, tileArray);
+			numNodesReconnected++;
+		}
+		for (KNodeOfObstacle node : freedNodes){
+			nodeConnector.reConnectNode(node, maxConnectionDistance, tileArray);
+			numNodesReconnected++;
+		}
+
+		// Re-test the pairs of nodes whose connection was blocked by the old polygon.
+		double maxConnectionDistanceSq = maxConnectionDistance*maxConnectionDistance;
+		double oldPolygonReachSq = (oldInnerPolygon.getRadius() + maxConnectionDistance);
+		oldPolygonReachSq *= oldPolygonReachSq;
+		ArrayList<KNodeOfObstacle> nodeList = new ArrayList<KNodeOfObstacle>();
+		for (T nearByObstacle : nearByObstacles){
+			if (nearByObstacle == obst){
+				continue;
+			}
+			for (KNodeOfObstacle node : nearByObstacle.getNodes()){
+				if (node.isConcave() || node.getContained() == KNodeOfObstacle.TRUE_VALUE || freedNodes.contains(node)){
+					continue;
+				}
+				if (oldCenter.distanceSquared(node.getPoint()) < oldPolygonReachSq){
+					nodeList.add(node);
+				}
+			}
+		}
+		ArrayList<KNodeOfObstacle> otherNodesToConnect = new ArrayList<KNodeOfObstacle>();
+		for (int i = nodeList.size() - 1; i >= 0; i--){
+			KNodeOfObstacle node = nodeList.get(i);
+			Vector2f p = node.getPoint();
+			otherNodesToConnect.clear();
+			for (int j = 0; j < i; j++){
+				KNodeOfObstacle node2 = nodeList.get(j);
+				Vector2f p2 = node2.getPoint();
+				if (p.distanceSquared(p2) > maxConnectionDistanceSq){
+					continue;
+				}
+				if (oldInnerPolygon.intersectionPossible(p, p2) == false || oldInnerPolygon.intersectsLine(p, p2) == false){
+					continue;
+				}
+				// Lines that cross the new polygon are still blocked so don't need re-testing.
+				if (innerPolygon.intersectionPossible(p, p2) && innerPolygon.intersectsLine(p, p2)){
+					continue;
+				}
+				if (node.getConnectedNodes().contains(node2)){
+					continue;
+				}
+				otherNodesToConnect.add(node2);
+			}
+			if (otherNodesToConnect.size() > 0){
+				numEdgesRetested += otherNodesToConnect.size();
+				nodeConnector.reConnectNode(node, otherNodesToConnect, nearByObstacles);
+			}
+		}
+	}
+
+	public void resetMoveCounters(){
+		numEdgesInvalidated = 0;
+		numEdgesRetested = 0;
+		numNodesReconnected = 0;
+	}
+
+	public long getNumEdgesInvalidated() {
+		return numEdgesInvalidated;
+	}
+
+	public long getNumEdgesRetested() {
+		return numEdgesRetested;
+	}
+
+	public long getNumNodesReconnected() {
+		return numNodesReconnected;
+	}
+
+	/**
+	 * Same as addObstacles, but the node connections of all obstacles are
+	 * remade at once on many threads using a BulkNodeConnector.
+	 * The result is the same as adding the obstacles one by one.
+	 */
+	public void addObstaclesInBulk(Collection<T> newObstacles){
+		for (T obst : newObstacles){
+			tileBag.add(obst);
+		}
+		new BulkNodeConnector<T>(nodeConnector).connectAll(tileBag.getBag(), tileBag.getTileArray(), maxConnectionDistance);
+		if (hierarchicalGraph != null){
+			hierarchicalGraph.markAllDirty();
+		}
+	}
+
+	/**
+	 * Same as remakeConnectionsBetweenAllObstacles, but done on many threads
+	 * using a BulkNodeConnector.
+	 */
+	public void remakeConnectionsBetweenAllObstaclesInBulk(double maxConnectionDistance){
+		this.maxConnectionDistance = maxConnectionDistance;
+		new BulkNodeConnector<T>(nodeConnector).connectAll(tileBag.getBag(), tileBag.getTileArray(), maxConnectionDistance);
+		if (hierarchicalGraph != null){
+			hierarchicalGraph.markAllDirty();
+		}
+	}
+
 	public TileBag<T> getTileBag() {
 		return tileBag;
 	}
@@ -119,5 +350,22 @@ public class ObstacleManager<T extends PathBlockingObstacle>{
 		return nodeConnector;
 	}
 
+	public HierarchicalGraph<T> getHierarchicalGraph() {
+		return hierarchicalGraph;
+	}
+
+	/**
+	 * Sets the HierarchicalGraph whose clusters are marked dirty as obstacles
+	 * are added, removed or moved. It should use this ObstacleManager's
+	 * TileArray and NodeConnector. Call HierarchicalGraph.update after
+	 * changing the obstacles to rebuild the dirty clusters.
+	 */
+	public void setHierarchicalGraph(HierarchicalGraph<T> hierarchicalGraph) {
+		this.hierarchicalGraph = hierarchicalGraph;
+		if (hierarchicalGraph != null){
+			hierarchicalGraph.markAllDirty();
+		}
+	}
+
 
 }
@@ -51,11 +51,18 @@ import com.jme3.math.Vector2f;
 public class PathFinder {
 	public KNode startNode;
 	public KNode endNode;
-	public BinaryHeap<KNode> openList;
+	// The open list holds each open node's index in nodesByIndex, so that
+	// decreasing a node's f-cost doesn't need a linear search.
+	public IndexedBinaryHeap openList;
+	KNode[] nodesByIndex = new KNode[64];
+	int numIndexedNodes = 0;
 
 	// Tracker is used in conjunction with the KNodes to detect if the Nodes are
 	// in the open or closed state.
 	Tracker tracker = new Tracker();
+	// Re-used by calc to hold the obstacles between start and end.
+	Bag<PathBlockingObstacle> obstaclesBetweenStartAndEnd = new Bag<PathBlockingObstacle>();
+	TileArrayQueryContext queryContext = new TileArrayQueryContext();
 
 	// for debugging only:
 	public boolean debug = false;
@@ -66,14 +73,14 @@ public class PathFinder {
 
 	public PathFinder()
 	{
-		openList = new BinaryHeap<KNode>();
+		openList = new IndexedBinaryHeap();
 		startNode = new KNode();
 		endNode = new KNode();
 	}
 
-	public PathData calc(Vector2f start, Vector2f end,
-			double maxTempNodeConnectionDist, NodeConnector nodeConnector,
-			List obstacles)
+	public <T extends PathBlockingObstacle> PathData calc(Vector2f start, Vector2f end,
+			double maxTempNodeConnectionDist, NodeConnector<T> nodeConnector,
+			List<T> obstacles)
 	{
 		return calc(start, end, maxTempNodeConnectionDist, Double.MAX_VALUE,
 				nodeConnector, obstacles);
@@ -98,9 +105,9 @@ public class PathFinder {
 	 *            returned.
 	 * @return
 	 */
-	public PathData calc(Vector2f start, Vector2f end,
+	public <T extends PathBlockingObstacle> PathData calc(Vector2f start, Vector2f end,
 			double maxTempNodeConnectionDist, double maxSearchDistStartToEnd,
-			NodeConnector nodeConnector, List obstacles)
+			NodeConnector<T> nodeConnector, List<T> obstacles)
 	{
 		assert tempReachableNodesExist(obstacles) == false;
 		double startToEndDist = start.distance(end);
@@ -130,8 +137,7 @@ public class PathFinder {
 		boolean intersection = false;
 		ObstacleLoop: for (int i = 0; i < obstacles.size(); i++)
 		{
-			KPolygon innerPolygon = ((PathBlockingObstacle) obstacles.get(i))
-					.getInnerPolygon();
+			KPolygon innerPolygon = obstacles.get(i).getInnerPolygon();
 			// Test if polygon intersects the line from start to end
 			if (innerPolygon.intersectionPossible(start, end)
 					&& innerPolygon.intersectsLine(start, end))
@@ -191,7 +197,7 @@ public class PathFinder {
 		}
 
 		// Here we start the A* algorithm!
-		openList.makeEmpty();
+		clearOpenList();
 		while (true)
 		{
 			// put the current node in the closedSet and take it out of the
@@ -215,14 +221,14 @@ public class PathFinder {
 					reachableNode.calcFCost();
 					if (reachableNode.getFCost() <= maxSearchDistStartToEnd)
 					{
-						openList.add(reachableNode);
+						addToOpenList(reachableNode);
 						reachableNode.setPathFinderStatus(KNode.OPEN, tracker);
 					}
 				} else if (reachableNode
 						.getPathFinderStatus(tracker) == KNode.OPEN)
 				{
 					assert reachableNode
-							.getGCost() != reachableNode.G_COST_NOT_CALCULATED_FLAG;
+							.getGCost() != KNode.G_COST_NOT_CALCULATED_FLAG;
 					double currentGCost = reachableNode.getGCost();
 					double newGCost = currentNode.getGCost() + currentNode
 							.getPoint().distance(reachableNode.getPoint());
@@ -233,8 +239,7 @@ public class PathFinder {
 						reachableNode.calcFCost();
 						// Since the g-cost of the node has changed,
 						// must re-sort the list to reflect this.
-						int index = openList.indexOf(reachableNode);
-						openList.percolateUp(index);
+						openList.decreaseKey(reachableNode.getPathFinderIndex(), reachableNode.getFCost());
 					}
 				}
 			}
@@ -252,14 +257,14 @@ public class PathFinder {
 					reachableNode.calcFCost();
 					if (reachableNode.getFCost() <= maxSearchDistStartToEnd)
 					{
-						openList.add(reachableNode);
+						addToOpenList(reachableNode);
 						reachableNode.setPathFinderStatus(KNode.OPEN, tracker);
 					}
 				} else if (reachableNode
 						.getPathFinderStatus(tracker) == KNode.OPEN)
 				{
 					assert reachableNode
-							.getGCost() != reachableNode.G_COST_NOT_CALCULATED_FLAG;
+							.getGCost() != KNode.G_COST_NOT_CALCULATED_FLAG;
 					double currentGCost = reachableNode.getGCost();
 					double newGCost = currentNode.getGCost() + currentNode
 							.getPoint().distance(reachableNode.getPoint());
@@ -270,8 +275,7 @@ public class PathFinder {
 						reachableNode.calcFCost();
 						// Since the g-cost of the node has changed,
 						// must re-sort the list to reflect this.
-						int index = openList.indexOf(reachableNode);
-						openList.percolateUp(index);
+						openList.decreaseKey(reachableNode.getPathFinderIndex(), reachableNode.getFCost());
 					}
 				}
 			}
@@ -285,7 +289,7 @@ public class PathFinder {
 				return pathData;
 			}
 
-			currentNode = openList.peekMin();
+			currentNode = nodesByIndex[openList.peekMin()];
 			if (currentNode == endNode)
 			{
 				// System.out.println(this.getClass().getSimpleName()+":
@@ -299,26 +303,26 @@ public class PathFinder {
 		return pathData;
 	}
 
-	public PathData calc(Vector2f start, Vector2f end,
-			double maxTempNodeConnectionDist, NodeConnector nodeConnector,
-			TileBag obstaclesTileBag)
+	public <T extends PathBlockingObstacle> PathData calc(Vector2f start, Vector2f end,
+			double maxTempNodeConnectionDist, NodeConnector<T> nodeConnector,
+			TileBag<T> obstaclesTileBag)
 	{
 		return calc(start, end, maxTempNodeConnectionDist, Double.MAX_VALUE,
 				nodeConnector, obstaclesTileBag.getTileArray());
 	}
 
-	public PathData calc(Vector2f start, Vector2f end,
+	public <T extends PathBlockingObstacle> PathData calc(Vector2f start, Vector2f end,
 			double maxTempNodeConnectionDist, double maxSearchDistStartToEnd,
-			NodeConnector nodeConnector, TileBag obstaclesTileBag)
+			NodeConnector<T> nodeConnector, TileBag<T> obstaclesTileBag)
 	{
 		return calc(start, end, maxTempNodeConnectionDist,
 				maxSearchDistStartToEnd, nodeConnector,
 				obstaclesTileBag.getTileArray());
 	}
 
-	public PathData calc(Vector2f start, Vector2f end,
-			double maxTempNodeConnectionDist, NodeConnector nodeConnector,
-			TileArray obstaclesTileArray)
+	public <T extends PathBlockingObstacle> PathData calc(Vector2f start, Vector2f end,
+			double maxTempNodeConnectionDist, NodeConnector<T> nodeConnector,
+			SpatialIndex<T> obstaclesTileArray)
 	{
 		return calc(start, end, maxTempNodeConnectionDist, Double.MAX_VALUE,
 				nodeConnector, obstaclesTileArray);
@@ -345,9 +349,9 @@ public class PathFinder {
 	 *            returned.
 	 * @return
 	 */
-	public PathData calc(Vector2f start, Vector2f end,
+	public <T extends PathBlockingObstacle> PathData calc(Vector2f start, Vector2f end,
 			double maxTempNodeConnectionDist, double maxSearchDistStartToEnd,
-			NodeConnector nodeConnector, TileArray obstaclesTileArray)
+			NodeConnector<T> nodeConnector, SpatialIndex<T> obstaclesTileArray)
 	{
 		double startToEndDist = start.distance(end);
 		if (startToEndDist > maxSearchDistStartToEnd)
@@ -357,9 +361,11 @@ public class PathFinder {
 			PathData pathData = new PathData(PathData.Result.ERROR1);
 			return pathData;
 		}
-		Vector2f midPoint = Vector2fUtils.midPoint(start, end);
-		ArrayList obstacles = obstaclesTileArray.getAllWithin(midPoint,
-				startToEndDist / 2f);
+		Bag<PathBlockingObstacle> obstacles = obstaclesBetweenStartAndEnd;
+		obstacles.clear();
+		obstaclesTileArray.getAllWithin((start.x + end.x) / 2f,
+				(start.y + end.y) / 2f, startToEndDist / 2f, obstacles,
+				queryContext);
 		assert tempReachableNodesExist(obstacles) == false;
 
 		startNode.clearForReuse();
@@ -376,8 +382,7 @@ public class PathFinder {
 		boolean intersection = false;
 		ObstacleLoop: for (int i = 0; i < obstacles.size(); i++)
 		{
-			KPolygon innerPolygon = ((PathBlockingObstacle) obstacles.get(i))
-					.getInnerPolygon();
+			KPolygon innerPolygon = obstacles.get(i).getInnerPolygon();
 			// Test if polygon intersects the line from start to end
 			if (innerPolygon.intersectionPossible(start, end)
 					&& innerPolygon.intersectsLine(start, end))
@@ -386,6 +391,7 @@ public class PathFinder {
 				break ObstacleLoop;
 			}
 		}
+		obstacles.clear();
 		if (intersection == false)
 		{
 			// No intersections, so the straight-line path is fine!
@@ -437,7 +443,7 @@ public class PathFinder {
 		}
 
 		// Here we start the A* algorithm!
-		openList.makeEmpty();
+		clearOpenList();
 		while (true)
 		{
 			// put the current node in the closedSet and take it out of the
@@ -461,14 +467,14 @@ public class PathFinder {
 					reachableNode.calcFCost();
 					if (reachableNode.getFCost() <= maxSearchDistStartToEnd)
 					{
-						openList.add(reachableNode);
+						addToOpenList(reachableNode);
 						reachableNode.setPathFinderStatus(KNode.OPEN, tracker);
 					}
 				} else if (reachableNode
 						.getPathFinderStatus(tracker) == KNode.OPEN)
 				{
 					assert reachableNode
-							.getGCost() != reachableNode.G_COST_NOT_CALCULATED_FLAG;
+							.getGCost() != KNode.G_COST_NOT_CALCULATED_FLAG;
 					double currentGCost = reachableNode.getGCost();
 					double newGCost = currentNode.getGCost() + currentNode
 							.getPoint().distance(reachableNode.getPoint());
@@ -479,8 +485,7 @@ public class PathFinder {
 						reachableNode.calcFCost();
 						// Since the g-cost of the node has changed,
 						// must re-sort the list to reflect this.
-						int index = openList.indexOf(reachableNode);
-						openList.percolateUp(index);
+						openList.decreaseKey(reachableNode.getPathFinderIndex(), reachableNode.getFCost());
 					}
 				}
 			}
@@ -498,14 +503,14 @@ public class PathFinder {
 					reachableNode.calcFCost();
 					if (reachableNode.getFCost() <= maxSearchDistStartToEnd)
 					{
-						openList.add(reachableNode);
+						addToOpenList(reachableNode);
 						reachableNode.setPathFinderStatus(KNode.OPEN, tracker);
 					}
 				} else if (reachableNode
 						.getPathFinderStatus(tracker) == KNode.OPEN)
 				{
 					assert reachableNode
-							.getGCost() != reachableNode.G_COST_NOT_CALCULATED_FLAG;
+							.getGCost() != KNode.G_COST_NOT_CALCULATED_FLAG;
 					double currentGCost = reachableNode.getGCost();
 					double newGCost = currentNode.getGCost() + currentNode
 							.getPoint().distance(reachableNode.getPoint());
@@ -516,8 +521,7 @@ public class PathFinder {
 						reachableNode.calcFCost();
 						// Since the g-cost of the node has changed,
 						// must re-sort the list to reflect this.
-						int index = openList.indexOf(reachableNode);
-						openList.percolateUp(index);
+						openList.decreaseKey(reachableNode.getPathFinderIndex(), reachableNode.getFCost());
 					}
 				}
 			}
@@ -531,7 +535,7 @@ public class PathFinder {
 				return pathData;
 			}
 
-			currentNode = openList.peekMin();
+			currentNode = nodesByIndex[openList.peekMin()];
 			if (currentNode == endNode)
 			{
 				// System.out.println(this.getClass().getSimpleName()+":
@@ -545,6 +549,25 @@ public class PathFinder {
 		return pathData;
 	}
 
+	protected void addToOpenList(KNode node)
+	{
+		if (numIndexedNodes == nodesByIndex.length)
+		{
+			nodesByIndex = Arrays.copyOf(nodesByIndex, numIndexedNodes * 2);
+		}
+		node.setPathFinderIndex(numIndexedNodes);
+		nodesByIndex[numIndexedNodes] = node;
+		openList.add(numIndexedNodes, node.getFCost());
+		numIndexedNodes++;
+	}
+
+	protected void clearOpenList()
+	{
+		openList.makeEmpty();
+		Arrays.fill(nodesByIndex, 0, numIndexedNodes, null);
+		numIndexedNodes = 0;
+	}
+
 	protected void clearTempReachableNodes()
 	{
 		if (debug)
@@ -615,11 +638,10 @@ public class PathFinder {
 	}
 
 	// used only for assertion checks
-	protected boolean tempReachableNodesExist(List obstacles)
+	protected boolean tempReachableNodesExist(Collection<? extends PathBlockingObstacle> obstacles)
 	{
-		for (int i = 0; i < obstacles.size(); i++)
+		for (PathBlockingObstacle obst : obstacles)
 		{
-			PathBlockingObstacle obst = (PathBlockingObstacle) obstacles.get(i);
 			for (int j = 0; j < obst.getNodes().size(); j++)
 			{
 				KNodeOfObstacle node = obst.getNodes().get(j);
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * One path query for BatchPathFinder. The parameters are the same as those
+ * used by PathFinder.calc.
+ *
+ * @author Keith Woodward
+ */
+public class PathRequest {
+	public Vector2f start;
+	public Vector2f end;
+	public double maxTempNodeConnectionDist;
+	public double maxSearchDistStartToEnd;
+
+	public PathRequest(Vector2f start, Vector2f end, double maxTempNodeConnectionDist){
+		this(start, end, maxTempNodeConnectionDist, Double.MAX_VALUE);
+	}
+
+	public PathRequest(Vector2f start, Vector2f end, double maxTempNodeConnectionDist, double maxSearchDistStartToEnd){
+		this.start = start;
+		this.end = end;
+		this.maxTempNodeConnectionDist = maxTempNodeConnectionDist;
+		this.maxSearchDistStartToEnd = maxSearchDistStartToEnd;
+	}
+
+	public Vector2f getStart() {
+		return start;
+	}
+
+	public Vector2f getEnd() {
+		return end;
+	}
+
+	public double getMaxTempNodeConnectionDist() {
+		return maxTempNodeConnectionDist;
+	}
+
+	public double getMaxSearchDistStartToEnd() {
+		return maxSearchDistStartToEnd;
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Does the same A* search as PathFinder, but keeps all of the per-search state
+ * (costs, parents, open/closed status and the start and end node connections)
+ * in arrays owned by this context rather than in the shared KNodes.
+ * The arrays are indexed by KNode.getNodeID() which is given out by the
+ * NodeConnector when an obstacle is added.
+ *
+ * Since the navigation graph is only read, many threads can search the same
+ * NodeConnector graph at once, as long as each thread uses its own
+ * PathSearchContext and no obstacles are added or removed during the searches.
+ *
+ * @author Keith Woodward
+ */
+public class PathSearchContext<T extends PathBlockingObstacle> {
+	// Array indexes of the start and end nodes. Obstacle nodes are at nodeID + NUM_RESERVED_INDEXES.
+	public static final int START_INDEX = 0;
+	public static final int END_INDEX = 1;
+	public static final int NUM_RESERVED_INDEXES = 2;
+
+	public KNode startNode;
+	public KNode endNode;
+	public ArrayList<KNode> startReachableNodes = new ArrayList<KNode>();
+	public ArrayList<KNode> endReachableNodes = new ArrayList<KNode>();
+
+	// The per-node state is only valid if the node's stamp equals searchCounter,
+	// so nothing needs to be cleared between searches.
+	int searchCounter = 0;
+	int[] stamps;
+	int[] statuses;
+	int[] endConnectionStamps;
+	double[] gCosts;
+	double[] hCosts;
+	double[] fCosts;
+	int[] parents;
+	KNode[] nodesByIndex;
+
+	// Open list of node indexes, keyed by f-cost.
+	IndexedBinaryHeap openList = new IndexedBinaryHeap();
+
+	// This context's own scratch lists.
+	ArrayList<T> obstacles = new ArrayList<T>();
+	ArrayList<T> obstaclesNearNode = new ArrayList<T>();
+	TileArrayQueryContext queryContext = new TileArrayQueryContext();
+	ArrayList<ObstDistAndQuad> obstDistAndQuads = new ArrayList<ObstDistAndQuad>();
+	ArrayList<KNode> pathNodes = new ArrayList<KNode>();
+	ArrayList<Vector2f> pathPoints = new ArrayList<Vector2f>();
+
+	public PathSearchContext(){
+		startNode = new KNode();
+		endNode = new KNode();
+		ensureCapacity(64);
+	}
+
+	public PathData calc(Vector2f start, Vector2f end, double maxTempNodeConnectionDist, NodeConnector<T> nodeConnector, List<T> obstacles){
+		return calc(start, end, maxTempNodeConnectionDist, Double.MAX_VALUE, nodeConnector, obstacles);
+	}
+
+	/**
+	 * Same as the equivalent PathFinder.calc method.
+	 */
+	public PathData calc(Vector2f start, Vector2f end, double maxTempNodeConnectionDist, double maxSearchDistStartToEnd, NodeConnector<T> nodeConnector, List<T> obstacles){
+		double startToEndDist = start.distance(end);
+		if (startToEndDist > maxSearchDistStartToEnd){
+			return new PathData(PathData.Result.ERROR1);
+		}
+		startNode.setPoint(start);
+		endNode.setPoint(end);
+		if (straightLineBlocked(obstacles) == false){
+			return makeStraightLinePathData();
+		}
+		startReachableNodes.clear();
+		nodeConnector.makeReachableNodesFor(startNode, maxTempNodeConnectionDist, obstacles, obstDistAndQuads, startReachableNodes);
+		if (startReachableNodes.size() == 0){
+			return new PathData(PathData.Result.ERROR2);
+		}
+		endReachableNodes.clear();
+		nodeConnector.makeReachableNodesFor(endNode, maxTempNodeConnectionDist, obstacles, obstDistAndQuads, endReachableNodes);
+		if (endReachableNodes.size() == 0){
+			return new PathData(PathData.Result.ERROR3);
+		}
+		return search(maxSearchDistStartToEnd, nodeConnector);
+	}
+
+	public PathData calc(Vector2f start, Vector2f end, double maxTempNodeConnectionDist, NodeConnector<T> nodeConnector, SpatialIndex<T> obstaclesTileArray){
+		return calc(start, end, maxTempNodeConnectionDist, Double.MAX_VALUE, nodeConnector, obstaclesTileArray);
+	}
+
+	/**
+	 * Same as the equivalent PathFinder.calc method.
+	 */
+	public PathData calc(Vector2f start, Vector2f end, double maxTempNodeConnectionDist, double maxSearchDistStartToEnd, NodeConnector<T> nodeConnector, SpatialIndex<T> obstaclesTileArray){
+		double startToEndDist = start.distance(end);
+		if (startToEndDist > maxSearchDistStartToEnd){
+			return new PathData(PathData.Result.ERROR1);
+		}
+		startNode.setPoint(start);
+		endNode.setPoint(end);
+		if (lineBlocked(start, end, obstaclesTileArray) == false){
+			return makeStraightLinePathData();
+		}
+		startReachableNodes.clear();
+		obstaclesTileArray.getAllWithin(start.x, start.y, maxTempNodeConnectionDist, obstaclesNearNode, queryContext);
+		nodeConnector.makeReachableNodesFor(startNode, maxTempNodeConnectionDist, obstaclesNearNode, obstDistAndQuads, startReachableNodes);
+		obstaclesNearNode.clear();
+		if (startReachableNodes.size() == 0){
+			return new PathData(PathData.Result.ERROR2);
+		}
+		endReachableNodes.clear();
+		obstaclesTileArray.getAllWithin(end.x, end.y, maxTempNodeConnectionDist, obstaclesNearNode, queryContext);
+		nodeConnector.makeReachableNodesFor(endNode, maxTempNodeConnectionDist, obstaclesNearNode, obstDistAndQuads, endReachableNodes);
+		obstaclesNearNode.clear();
+		if (endReachableNodes.size() == 0){
+			return new PathData(PathData.Result.ERROR3);
+		}
+		return search(maxSearchDistStartToEnd, nodeConnector);
+	}
+
+	protected boolean straightLineBlocked(List<T> obstacles){
+		return lineBlocked(startNode.getPoint(), endNode.getPoint(), obstacles);
+	}
+
+	/**
+	 * Returns true if the line from start to end crosses the inner polygon of
+	 * any of the obstacles in the obstaclesTileArray, the same test that calc
+	 * uses to see if a straight path is possible.
+	 */
+	public boolean lineBlocked(Vector2f start, Vector2f end, SpatialIndex<T> obstaclesTileArray){
+		obstacles.clear();
+		obstaclesTileArray.getAllWithin((start.x + end.x)/2f, (start.y + end.y)/2f, start.distance(end)/2f, obstacles, queryContext);
+		boolean blocked = lineBlocked(start, end, obstacles);
+		obstacles.clear();
+		return blocked;
+	}
+
+	protected boolean lineBlocked(Vector2f start, Vector2f end, List<T> obstacles){
+		// Note that this assumes start and end are not both contained in the
+		// same polygon.
+		for (int i = 0; i < obstacles.size(); i++){
+			KPolygon innerPolygon = obstacles.get(i).getInnerPolygon();
+			if (innerPolygon.intersectionPossible(start, end) && innerPolygon.intersectsLine(start, end)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	protected PathData makeStraightLinePathData(){
+		ArrayList<Vector2f> points = new ArrayList<Vector2f>(2);
+		ArrayList<KNode> nodes = new ArrayList<KNode>(2);
+		points.add(startNode.getPoint());
+		points.add(endNode.getPoint());
+		// startNode and endNode are reused by the next search, so the path
+		// gets its own copies.
+		nodes.add(new KNode(startNode.getPoint()));
+		nodes.add(new KNode(endNode.getPoint()));
+		return new PathData(points, nodes);
+	}
+
+	// The A* algorithm, using startReachableNodes and endReachableNodes
+	// in place of the KNodes' tempConnectedNodes.
+	protected PathData search(double maxSearchDistStartToEnd, NodeConnector<T> nodeConnector){
+		ensureCapacity(nodeConnector.getNodeIDCapacity() + NUM_RESERVED_INDEXES);
+		incrementSearchCounter();
+		for (int i = 0; i < endReachableNodes.size(); i++){
+			endConnectionStamps[getIndex(endReachableNodes.get(i))] = searchCounter;
+		}
+		nodesByIndex[START_INDEX] = startNode;
+		nodesByIndex[END_INDEX] = endNode;
+		stamps[START_INDEX] = searchCounter;
+		gCosts[START_INDEX] = 0;
+		parents[START_INDEX] = -1;
+		openList.makeEmpty();
+
+		int currentIndex = START_INDEX;
+		while (true){
+			statuses[currentIndex] = KNode.CLOSED;
+			if (currentIndex == START_INDEX){
+				for (int i = 0; i < startReachableNodes.size(); i++){
+					processReachableNode(currentIndex, startReachableNodes.get(i), maxSearchDistStartToEnd);
+				}
+			}else{
+				ArrayList<KNode> reachableNodes = nodesByIndex[currentIndex].getConnectedNodes();
+				for (int i = 0; i < reachableNodes.size(); i++){
+					processReachableNode(currentIndex, reachableNodes.get(i), maxSearchDistStartToEnd);
+				}
+				if (endConnectionStamps[currentIndex] == searchCounter){
+					processReachableNode(currentIndex, endNode, maxSearchDistStartToEnd);
+				}
+			}
+			if (openList.isEmpty()){
+				return new PathData(PathData.Result.ERROR4);
+			}
+			currentIndex = openList.deleteMin();
+			if (currentIndex == END_INDEX){
+				break;
+			}
+		}
+		return makePathData();
+	}
+
+	protected void processReachableNode(int currentIndex, KNode reachableNode, double maxSearchDistStartToEnd){
+		int index = getIndex(reachableNode);
+		int status = getStatus(index);
+		if (status == KNode.CLOSED){
+			return;
+		}
+		double newGCost = gCosts[currentIndex] + nodesByIndex[currentIndex].getPoint().distance(reachableNode.getPoint());
+		if (status == KNode.UNPROCESSED){
+			double hCost = reachableNode.getPoint().distance(endNode.getPoint());
+			double fCost = newGCost + hCost;
+			if (fCost <= maxSearchDistStartToEnd){
+				stamps[index] = searchCounter;
+				statuses[index] = KNode.OPEN;
+				nodesByIndex[index] = reachableNode;
+				parents[index] = currentIndex;
+				gCosts[index] = newGCost;
+				hCosts[index] = hCost;
+				fCosts[index] = fCost;
+				openList.add(index, fCost);
+			}
+		}else if (newGCost < gCosts[index]){
+			parents[index] = currentIndex;
+			gCosts[index] = newGCost;
+			fCosts[index] = newGCost + hCosts[index];
+			openList.decreaseKey(index, fCosts[index]);
+		}
+	}
+
+	protected int getIndex(KNode node){
+		if (node == startNode){
+			return START_INDEX;
+		}else if (node == endNode){
+			return END_INDEX;
+		}
+		int nodeID = node.getNodeID();
+		if (nodeID == -1){
+			throw new IllegalStateException("KNode at "+node.getPoint()+" has no nodeID. Obstacles must be added using the NodeConnector before they can be searched.");
+		}
+		return nodeID + NUM_RESERVED_INDEXES;
+	}
+
+	protected int getStatus(int index){
+		if (stamps[index] == searchCounter){
+			return statuses[index];
+		}
+		return KNode.UNPROCESSED;
+	}
+
+	protected PathData makePathData(){
+		int index = END_INDEX;
+		while (index != -1){
+			KNode node = nodesByIndex[index];
+			pathNodes.add(node);
+			pathPoints.add(node.getPoint());
+			index = parents[index];
+		}
+		Collections.reverse(pathNodes);
+		Collections.reverse(pathPoints);
+		pathNodes.set(0, new KNode(startNode.getPoint()));
+		pathNodes.set(pathNodes.size() - 1, new KNode(endNode.getPoint()));
+		PathData pathData = new PathData(new ArrayList<Vector2f>(pathPoints), new ArrayList<KNode>(pathNodes));
+		pathNodes.clear();
+		pathPoints.clear();
+		return pathData;
+	}
+
+	protected void incrementSearchCounter(){
+		searchCounter++;
+		if (searchCounter == Integer.MAX_VALUE){
+			Arrays.fill(stamps, 0);
+			Arrays.fill(endConnectionStamps, 0);
+			searchCounter = 1;
+		}
+	}
+
+	protected void ensureCapacity(int capacity){
+		if (stamps != null && stamps.length >= capacity){
+			return;
+		}
+		int newLength = Math.max(capacity, stamps == null ? 0 : stamps.length*2);
+		if (stamps == null){
+			stamps = new int[newLength];
+			statuses = new int[newLength];
+			endConnectionStamps = new int[newLength];
+			gCosts = new double[newLength];
+			hCosts = new double[newLength];
+			fCosts = new double[newLength];
+			parents = new int[newLength];
+			nodesByIndex = new KNode[newLength];
+		}else{
+			stamps = Arrays.copyOf(stamps, newLength);
+			statuses = Arrays.copyOf(statuses, newLength);
+			endConnectionStamps = Arrays.copyOf(endConnectionStamps, newLength);
+			gCosts = Arrays.copyOf(gCosts, newLength);
+			hCosts = Arrays.copyOf(hCosts, newLength);
+			fCosts = Arrays.copyOf(fCosts, newLength);
+			parents = Arrays.copyOf(parents, newLength);
+			nodesByIndex = Arrays.copyOf(nodesByIndex, newLength);
+		}
+	}
+
+	public KNode getStartNode(){
+		return startNode;
+	}
+
+	public KNode getEndNode(){
+		return endNode;
+	}
+}
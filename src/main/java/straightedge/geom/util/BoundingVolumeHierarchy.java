@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * A bounding volume hierarchy of axis-aligned boxes that is bulk loaded from
+ * all of the obstacles at once, which suits maps whose obstacles don't move.
+ *
+ * The obstacles are sorted by their polygons' centers along the longer side
+ * of their bounds and split in half until there are at most maxLeafSize in a
+ * node. Each node's box is stored in flat arrays and encloses its obstacles'
+ * polygons' circles, rather than their KPolygon.getAABB, so that it finds exactly
+ * the obstacles that a TileArray would.
+ *
+ * Obstacles added after the tree is built are kept in a Bag that every query
+ * tests, until there are enough of them that add rebuilds the tree. Removing an
+ * obstacle takes it out of its leaf without shrinking the boxes. Queries are
+ * thread-safe as long as nothing is added or removed at the same time, so the
+ * TileArrayQueryContext versions are only there to implement SpatialIndex.
+ *
+ * @author Keith Woodward
+ */
+public class BoundingVolumeHierarchy<T extends PolygonHolder> implements SpatialIndex<T>{
+	public int maxLeafSize;
+	// the obstacles, grouped so that each leaf's are together.
+	public Object[] obstacles = new Object[0];
+	public int numNodes;
+	public double[] nodeMinX = new double[0];
+	public double[] nodeMinY = new double[0];
+	public double[] nodeMaxX = new double[0];
+	public double[] nodeMaxY = new double[0];
+	// the index of the node's second child, or -1 if it's a leaf. The first
+	// child always comes straight after its parent.
+	public int[] nodeSecondChild = new int[0];
+	// leaves' obstacles are obstacles[nodeStart] to obstacles[nodeStart + nodeCount - 1].
+	public int[] nodeStart = new int[0];
+	public int[] nodeCount = new int[0];
+	public Bag<T> unbuiltObstacles = new Bag<T>();
+	public int numObstacles;
+
+	public BoundingVolumeHierarchy(){
+		this(4);
+	}
+
+	public BoundingVolumeHierarchy(int maxLeafSize){
+		this.maxLeafSize = maxLeafSize;
+	}
+
+	public BoundingVolumeHierarchy(Collection<? extends T> obstacles, int maxLeafSize){
+		this.maxLeafSize = maxLeafSize;
+		build(obstacles);
+	}
+
+	/**
+	 * Replaces everything in the tree with the given obstacles.
+	 */
+	public void build(Collection<? extends T> newObstacles){
+		obstacles = newObstacles.toArray();
+		numObstacles = obstacles.length;
+		unbuiltObstacles.clear();
+		int maxNumNodes = Math.max(1, 2*obstacles.length);
+		nodeMinX = new double[maxNumNodes];
+		nodeMinY = new double[maxNumNodes];
+		nodeMaxX = new double[maxNumNodes];
+		nodeMaxY = new double[maxNumNodes];
+		nodeSecondChild = new int[maxNumNodes];
+		nodeStart = new int[maxNumNodes];
+		nodeCount = new int[maxNumNodes];
+		numNodes = 0;
+		if (obstacles.length > 0){
+			buildNode(0, obstacles.length);
+		}
+	}
+
+	/**
+	 * Rebuilds the tree from everything in it, including the obstacles added
+	 * since it was last built.
+	 */
+	@SuppressWarnings("unchecked")
+	public void rebuild(){
+		ArrayList<T> all = new ArrayList<T>(numObstacles);
+		for (int i = 0; i < numNodes; i++){
+			if (nodeSecondChild[i] == -1){
+				for (int k = nodeStart[i]; k < nodeStart[i] + nodeCount[i]; k++){
+					all.add((T)obstacles[k]);
+				}
+			}
+		}
+		all.addAll(unbuiltObstacles);
+		build(all);
+	}
+
+	protected int buildNode(int start, int end){
+		int node = numNodes;
+		numNodes++;
+		double minX = Double.MAX_VALUE;
+		double minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE;
+		double maxY = -Double.MAX_VALUE;
+		float minCenterX = Float.MAX_VALUE;
+		float minCenterY = Float.MAX_VALUE;
+		float maxCenterX = -Float.MAX_VALUE;
+		float maxCenterY = -Float.MAX_VALUE;
+		for (int i = start; i < end; i++){
+			KPolygon polygon = ((PolygonHolder)obstacles[i]).getPolygon();
+			Vector2f c = polygon.getCenter();
+			double r = polygon.getRadius();
+			minX = Math.min(minX, c.x - r);
+			minY = Math.min(minY, c.y - r);
+			maxX = Math.max(maxX, c.x + r);
+			maxY = Math.max(maxY, c.y + r);
+			minCenterX = Math.min(minCenterX, c.x);
+			minCenterY = Math.min(minCenterY, c.y);
+			maxCenterX = Math.max(maxCenterX, c.x);
+			maxCenterY = Math.max(maxCenterY, c.y);
+		}
+		nodeMinX[node] = minX;
+		nodeMinY[node] = minY;
+		nodeMaxX[node] = maxX;
+		nodeMaxY[node] = maxY;
+		if (end - start <= maxLeafSize){
+			nodeSecondChild[node] = -1;
+			nodeStart[node] = start;
+			nodeCount[node] = end - start;
+			return node;
+		}
+		Arrays.sort(obstacles, start, end, (maxCenterX - minCenterX >= maxCenterY - minCenterY ? CENTER_X_COMPARATOR : CENTER_Y_COMPARATOR));
+		int mid = (start + end)/2;
+		buildNode(start, mid);
+		nodeSecondChild[node] = buildNode(mid, end);
+		nodeStart[node] = start;
+		nodeCount[node] = end - start;
+		return node;
+	}
+
+	static final Comparator<Object> CENTER_X_COMPARATOR = new Comparator<Object>(){
+		public int compare(Object o1, Object o2){
+			return Float.compare(((PolygonHolder)o1).getPolygon().getCenter().x, ((PolygonHolder)o2).getPolygon().getCenter().x);
+		}
+	};
+	static final Comparator<Object> CENTER_Y_COMPARATOR = new Comparator<Object>(){
+		public int compare(Object o1, Object o2){
+			return Float.compare(((PolygonHolder)o1).getPolygon().getCenter().y, ((PolygonHolder)o2).getPolygon().getCenter().y);
+		}
+	};
+
+	/**
+	 * Adds the obstacle to the unbuilt obstacles, rebuilding the tree if
+	 * there are more than a quarter as many of them as there are built ones.
+	 */
+	public void add(T t){
+		unbuiltObstacles.add(t);
+		numObstacles++;
+		if (unbuiltObstacles.size() > Math.max(maxLeafSize*4, (numObstacles - unbuiltObstacles.size())/4)){
+			rebuild();
+		}
+	}
+
+	public boolean remove(T t){
+		if (unbuiltObstacles.remove(t)){
+			numObstacles--;
+			return true;
+		}
+		if (numNodes == 0){
+			return false;
+		}
+		KPolygon polygon = t.getPolygon();
+		if (remove(0, t, polygon.getCenter().x, polygon.getCenter().y)){
+			numObstacles--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the obstacle from the leaf containing it by moving the leaf's
+	 * last obstacle into its place.
+	 */
+	protected boolean remove(int node, T t, double x, double y){
+		if (x < nodeMinX[node] || x > nodeMaxX[node] || y < nodeMinY[node] || y > nodeMaxY[node]){
+			return false;
+		}
+		int secondChild = nodeSecondChild[node];
+		if (secondChild != -1){
+			return remove(node + 1, t, x, y) || remove(secondChild, t, x, y);
+		}
+		int end = nodeStart[node] + nodeCount[node];
+		for (int k = nodeStart[node]; k < end; k++){
+			if (obstacles[k] == t){
+				obstacles[k] = obstacles[end - 1];
+				obstacles[end - 1] = null;
+				nodeCount[node]--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void clear(){
+		build(new ArrayList<T>(0));
+	}
+
+	public int size(){
+		return numObstacles;
+	}
+
+	public ArrayList<T> getAllWithin(Vector2f point, double radius){
+		return getAllWithin(point.x, point.y, radius);
+	}
+
+	public ArrayList<T> getAllWithin(double x, double y, double radius){
+		ArrayList<T> nearbyObstacles = new ArrayList<T>();
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	public Bag<T> getAllWithin(double x, double y, double radius, Bag<T> nearbyObstacles){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor){
+		return findAllWithin(x, y, radius, null, visitor);
+	}
+
+	public int countAllWithin(double x, double y, double radius){
+		return findAllWithin(x, y, radius, null, null);
+	}
+
+	public <C extends Collection<? super T>> C getAllWithin(double x, double y, double radius, C nearbyObstacles, TileArrayQueryContext context){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, visitor);
+	}
+
+	public int countAllWithin(double x, double y, double radius, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, null);
+	}
+
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		int count = 0;
+		for (int k = 0; k < unbuiltObstacles.size(); k++){
+			if (isWithin(unbuiltObstacles.get(k), x, y, radius, nearbyObstacles, visitor)){
+				count++;
+			}
+		}
+		if (numNodes > 0){
+			count += findAllWithin(0, x, y, radius, nearbyObstacles, visitor);
+		}
+		return count;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected int findAllWithin(int node, double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		double dx = (x < nodeMinX[node] ? nodeMinX[node] - x : (x > nodeMaxX[node] ? x - nodeMaxX[node] : 0));
+		double dy = (y < nodeMinY[node] ? nodeMinY[node] - y : (y > nodeMaxY[node] ? y - nodeMaxY[node] : 0));
+		if (dx*dx + dy*dy > radius*radius){
+			return 0;
+		}
+		int secondChild = nodeSecondChild[node];
+		if (secondChild != -1){
+			return findAllWithin(node + 1, x, y, radius, nearbyObstacles, visitor) + findAllWithin(secondChild, x, y, radius, nearbyObstacles, visitor);
+		}
+		int count = 0;
+		int end = nodeStart[node] + nodeCount[node];
+		for (int k = nodeStart[node]; k < end; k++){
+			if (isWithin((T)obstacles[k], x, y, radius, nearbyObstacles, visitor)){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	protected boolean isWithin(T t, double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		KPolygon polygon = t.getPolygon();
+		double radiusSumSq = (radius + polygon.getRadius());
+		radiusSumSq *= radiusSumSq;
+		Vector2f polygonCenter = polygon.getCenter();
+		if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
+			if (nearbyObstacles != null){
+				nearbyObstacles.add(t);
+			}else if (visitor != null){
+				visitor.visit(t);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	public int getNumNodes(){
+		return numNodes;
+	}
+
+	public int getMaxLeafSize(){
+		return maxLeafSize;
+	}
+}
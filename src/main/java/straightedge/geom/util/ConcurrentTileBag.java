@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * A TileBag that can be added to and removed from by some threads while
+ * other threads query it.
+ *
+ * Each tile's contained and shared obstacles are kept in an array that is
+ * never changed once it's published. Adding or removing an obstacle copies
+ * the arrays of the tiles it spans and swaps the copies in, holding only the
+ * locks of the blocks of tiles that it spans, so writers to different parts
+ * of the bag don't wait for each other. Readers never lock and de-duplicate
+ * what they find using their own TileArrayQueryContext.
+ *
+ * Note that only each tile is consistent on its own: a reader sees each tile
+ * as it was at some moment during its query, but not all tiles at the same
+ * moment. Obstacles that aren't being added, removed or moved during a query
+ * are always found exactly once. But an obstacle that's moved during a query
+ * can be missed, if the reader looks at its new tile before update adds it
+ * there and at its old tile after update takes it out. Queries that must see
+ * every obstacle shouldn't overlap with calls to update.
+ *
+ * The obstacles' polygons must not be moved or changed while they're in the
+ * bag, or else a reader might see them half-changed. To move an obstacle,
+ * give it a moved copy of its polygon and call update. The holder must
+ * publish the new polygon safely, for example by keeping it in a volatile
+ * field, since readers call getPolygon without any locking. OccluderImpl's
+ * polygon field isn't volatile, so it isn't safe to swap it while other
+ * threads are querying.
+ *
+ * @author Keith Woodward
+ */
+public class ConcurrentTileBag<T extends PolygonHolder> {
+	static final Object[] EMPTY = new Object[0];
+
+	public int numRows;
+	public int numCols;
+	public float tileWidthAndHeight;
+	public Vector2f botLeft;
+	// true if an obstacle has been added that lies outside of the tiles.
+	public volatile boolean bloated;
+
+	// indexed by row*numCols + col.
+	protected AtomicReferenceArray<Object[]> containedObstacles;
+	protected AtomicReferenceArray<Object[]> sharedObstacles;
+	// Each lock guards a square block of tilesPerLockSide by tilesPerLockSide tiles.
+	protected int tilesPerLockSide;
+	protected int numLockRows;
+	protected int numLockCols;
+	protected ReentrantLock[] locks;
+	// The tiles that each obstacle was put in.
+	protected ConcurrentHashMap<T, Placement> placements = new ConcurrentHashMap<T, Placement>();
+
+	public ConcurrentTileBag(Vector2f botLeft, float tileWidthAndHeight, int numRows, int numCols){
+		this(botLeft, tileWidthAndHeight, numRows, numCols, 2);
+	}
+
+	public ConcurrentTileBag(Vector2f botLeft, float tileWidthAndHeight, int numRows, int numCols, int tilesPerLockSide){
+		this.botLeft = botLeft.clone();
+		this.tileWidthAndHeight = tileWidthAndHeight;
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.tilesPerLockSide = tilesPerLockSide;
+		containedObstacles = new AtomicReferenceArray<Object[]>(numRows*numCols);
+		sharedObstacles = new AtomicReferenceArray<Object[]>(numRows*numCols);
+		for (int i = 0; i < numRows*numCols; i++){
+			containedObstacles.set(i, EMPTY);
+			sharedObstacles.set(i, EMPTY);
+		}
+		numLockRows = (numRows + tilesPerLockSide - 1)/tilesPerLockSide;
+		numLockCols = (numCols + tilesPerLockSide - 1)/tilesPerLockSide;
+		locks = new ReentrantLock[numLockRows*numLockCols];
+		for (int i = 0; i < locks.length; i++){
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Adds the obstacle to the tiles that it spans, the same ones that
+	 * TileArray.add would put it in.
+	 *
+	 * @return false if the obstacle was already in the bag.
+	 */
+	public boolean add(T t){
+		Placement placement = makePlacement(t);
+		lock(placement, placement);
+		try{
+			if (placements.putIfAbsent(t, placement) != null){
+				return false;
+			}
+			addToTiles(t, placement);
+		}finally{
+			unlock(placement, placement);
+		}
+		if (placement.outsideBounds){
+			bloated = true;
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if the obstacle wasn't in the bag.
+	 */
+	public boolean remove(T t){
+		while (true){
+			Placement placement = placements.get(t);
+			if (placement == null){
+				return false;
+			}
+			lock(placement, placement);
+			try{
+				// if it was moved by another thread since getting the
+				// placement then try again.
+				if (placements.remove(t, placement)){
+					removeFromTiles(t, placement);
+					return true;
+				}
+			}finally{
+				unlock(placement, placement);
+			}
+		}
+	}
+
+	/**
+	 * Moves the obstacle to the tiles that its polygon now spans. It's added
+	 * to its new tiles before it's taken out of its old ones, but a query that
+	 * runs at the same time can still miss it. See the class comment.
+	 *
+	 * @return false if the obstacle wasn't in the bag.
+	 */
+	public boolean update(T t){
+		Placement newPlacement = makePlacement(t);
+		while (true){
+			Placement oldPlacement = placements.get(t);
+			if (oldPlacement == null){
+				return false;
+			}
+			lock(oldPlacement, newPlacement);
+			try{
+				if (placements.replace(t, oldPlacement, newPlacement)){
+					addToTiles(t, newPlacement);
+					removeFromTiles(t, oldPlacement);
+					break;
+				}
+			}finally{
+				unlock(oldPlacement, newPlacement);
+			}
+		}
+		if (newPlacement.outsideBounds){
+			bloated = true;
+		}
+		return true;
+	}
+
+	public boolean contains(T t){
+		return placements.containsKey(t);
+	}
+
+	public int size(){
+		return placements.size();
+	}
+
+	/**
+	 * Appends the obstacles within radius of (x, y) to nearbyObstacles, using
+	 * the same test as TileArray.getAllWithin. Each obstacle is only added once
+	 * even if it's being moved by another thread.
+	 *
+	 * @return nearbyObstacles
+	 */
+	public <C extends Collection<? super T>> C getAllWithin(double x, double y, double radius, C nearbyObstacles, TileArrayQueryContext context){
+		findAllWithin(x, y, radius, nearbyObstacles, null, context);
+		return nearbyObstacles;
+	}
+
+	/**
+	 * @return the number of obstacles visited.
+	 */
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, visitor, context);
+	}
+
+	public int countAllWithin(double x, double y, double radius, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, null, context);
+	}
+
+	/**
+	 * Convenience method that makes a new list and TileArrayQueryContext.
+	 */
+	public ArrayList<T> getAllWithin(double x, double y, double radius){
+		return getAllWithin(x, y, radius, new ArrayList<T>(), new TileArrayQueryContext());
+	}
+
+	@SuppressWarnings("unchecked")
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		context.reset();
+		int count = 0;
+		double r = radius;
+		int leftColIndexInt = TileArray.getClampedIndex((x - r) - botLeft.x, tileWidthAndHeight, numCols);
+		int rightColIndexInt = TileArray.getClampedIndex((x + r) - botLeft.x, tileWidthAndHeight, numCols);
+		int botRowIndexInt = TileArray.getClampedIndex((y - r) - botLeft.y, tileWidthAndHeight, numRows);
+		int topRowIndexInt = TileArray.getClampedIndex((y + r) - botLeft.y, tileWidthAndHeight, numRows);
+		for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
+			for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
+				int tileIndex = i*numCols + j;
+				for (int n = 0; n < 2; n++){
+					Object[] obstacles = (n == 0 ? sharedObstacles.get(tileIndex) : containedObstacles.get(tileIndex));
+					for (int k = 0; k < obstacles.length; k++){
+						T t = (T)obstacles[k];
+						KPolygon polygon = t.getPolygon();
+						double radiusSumSq = (r + polygon.getRadius());
+						radiusSumSq *= radiusSumSq;
+						Vector2f polygonCenter = polygon.getCenter();
+						// contained obstacles are de-duplicated too since
+						// one that's being moved can be in two tiles.
+						if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq && context.add(t)){
+							if (nearbyObstacles != null){
+								nearbyObstacles.add(t);
+							}else if (visitor != null){
+								visitor.visit(t);
+							}
+							count++;
+						}
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	protected Placement makePlacement(T t){
+		Vector2f c = t.getPolygon().getCenter();
+		double r = t.getPolygon().getRadius();
+		Placement placement = new Placement();
+		double leftColIndex = ((c.x - r) - botLeft.x)/tileWidthAndHeight;
+		double rightColIndex = ((c.x + r) - botLeft.x)/tileWidthAndHeight;
+		double botRowIndex = ((c.y - r) - botLeft.y)/tileWidthAndHeight;
+		double topRowIndex = ((c.y + r) - botLeft.y)/tileWidthAndHeight;
+		placement.outsideBounds = (leftColIndex < 0 || botRowIndex < 0 || rightColIndex >= numCols || topRowIndex >= numRows);
+		placement.minCol = TileArray.getClampedIndex((c.x - r) - botLeft.x, tileWidthAndHeight, numCols);
+		placement.maxCol = TileArray.getClampedIndex((c.x + r) - botLeft.x, tileWidthAndHeight, numCols);
+		placement.minRow = TileArray.getClampedIndex((c.y - r) - botLeft.y, tileWidthAndHeight, numRows);
+		placement.maxRow = TileArray.getClampedIndex((c.y + r) - botLeft.y, tileWidthAndHeight, numRows);
+		// like TileArray.add, an obstacle that fits in one tile is contained
+		// by it unless it's outside of the bounds.
+		placement.shared = (placement.minCol != placement.maxCol || placement.minRow != placement.maxRow || placement.outsideBounds);
+		return placement;
+	}
+
+	protected void addToTiles(T t, Placement placement){
+		AtomicReferenceArray<Object[]> tileObstacles = (placement.shared ? sharedObstacles : containedObstacles);
+		for (int i = placement.minRow; i <= placement.maxRow; i++){
+			for (int j = placement.minCol; j <= placement.maxCol; j++){
+				int tileIndex = i*numCols + j;
+				Object[] obstacles = tileObstacles.get(tileIndex);
+				Object[] newObstacles = Arrays.copyOf(obstacles, obstacles.length + 1);
+				newObstacles[obstacles.length] = t;
+				tileObstacles.set(tileIndex, newObstacles);
+			}
+		}
+	}
+
+	protected void removeFromTiles(T t, Placement placement){
+		AtomicReferenceArray<Object[]> tileObstacles = (placement.shared ? sharedObstacles : containedObstacles);
+		for (int i = placement.minRow; i <= placement.maxRow; i++){
+			for (int j = placement.minCol; j <= placement.maxCol; j++){
+				int tileIndex = i*numCols + j;
+				Object[] obstacles = tileObstacles.get(tileIndex);
+				for (int k = 0; k < obstacles.length; k++){
+					if (obstacles[k] == t){
+						Object[] newObstacles = (obstacles.length == 1 ? EMPTY : new Object[obstacles.length - 1]);
+						System.arraycopy(obstacles, 0, newObstacles, 0, k);
+						System.arraycopy(obstacles, k + 1, newObstacles, k, obstacles.length - k - 1);
+						tileObstacles.set(tileIndex, newObstacles);
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Locks the blocks of tiles covering both placements, in order so that
+	 * threads can't deadlock.
+	 */
+	protected void lock(Placement placement, Placement placement2){
+		int minLockRow = Math.min(placement.minRow, placement2.minRow)/tilesPerLockSide;
+		int maxLockRow = Math.max(placement.maxRow, placement2.maxRow)/tilesPerLockSide;
+		int minLockCol = Math.min(placement.minCol, placement2.minCol)/tilesPerLockSide;
+		int maxLockCol = Math.max(placement.maxCol, placement2.maxCol)/tilesPerLockSide;
+		for (int i = minLockRow; i <= maxLockRow; i++){
+			for (int j = minLockCol; j <= maxLockCol; j++){
+				locks[i*numLockCols + j].lock();
+			}
+		}
+	}
+
+	protected void unlock(Placement placement, Placement placement2){
+		int minLockRow = Math.min(placement.minRow, placement2.minRow)/tilesPerLockSide;
+		int maxLockRow = Math.max(placement.maxRow, placement2.maxRow)/tilesPerLockSide;
+		int minLockCol = Math.min(placement.minCol, placement2.minCol)/tilesPerLockSide;
+		int maxLockCol = Math.max(placement.maxCol, placement2.maxCol)/tilesPerLockSide;
+		for (int i = maxLockRow; i >= minLockRow; i--){
+			for (int j = maxLockCol; j >= minLockCol; j--){
+				locks[i*numLockCols + j].unlock();
+			}
+		}
+	}
+
+	public int getNumRows(){
+		return numRows;
+	}
+
+	public int getNumCols(){
+		return numCols;
+	}
+
+	public float getTileWidthAndHeight(){
+		return tileWidthAndHeight;
+	}
+
+	public Vector2f getBotLeft(){
+		return botLeft;
+	}
+
+	public boolean isBloated(){
+		return bloated;
+	}
+
+	/**
+	 * The block of tiles that an obstacle was put in.
+	 */
+	protected static class Placement{
+		int minRow;
+		int minCol;
+		int maxRow;
+		int maxCol;
+		boolean shared;
+		boolean outsideBounds;
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import java.util.*;
+
+/**
+ * A min binary heap of int ids, each with a double key. The heap position of
+ * each id is kept so that decreaseKey and contains are O(log n) and O(1)
+ * rather than needing a linear search like BinaryHeap.indexOf.
+ *
+ * Ids should be small non-negative ints since they index the positions array.
+ * The arrays only grow, so once the heap has reached its working size nothing
+ * is allocated by add, decreaseKey or deleteMin.
+ *
+ * @author Keith Woodward
+ */
+public class IndexedBinaryHeap {
+	// The heap is stored from index 0, children of i are at 2i+1 and 2i+2.
+	public double[] keys;
+	public int[] ids;
+	public int size;
+	// positions[id] is the id's index in the heap arrays, or -1 if not in the heap.
+	public int[] positions;
+
+	public IndexedBinaryHeap(){
+		this(64);
+	}
+
+	public IndexedBinaryHeap(int capacity){
+		capacity = Math.max(capacity, 1);
+		keys = new double[capacity];
+		ids = new int[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, -1);
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean contains(int id){
+		return id < positions.length && positions[id] != -1;
+	}
+
+	public double getKey(int id){
+		return keys[positions[id]];
+	}
+
+	/**
+	 * Adds the id, which must not already be in the heap.
+	 */
+	public void add(int id, double key){
+		assert contains(id) == false : id;
+		if (id >= positions.length){
+			int oldLength = positions.length;
+			positions = Arrays.copyOf(positions, Math.max(id + 1, oldLength*2));
+			Arrays.fill(positions, oldLength, positions.length, -1);
+		}
+		if (size == ids.length){
+			keys = Arrays.copyOf(keys, size*2);
+			ids = Arrays.copyOf(ids, size*2);
+		}
+		size++;
+		percolateUp(size - 1, id, key);
+	}
+
+	/**
+	 * Lowers the key of an id that's in the heap. Does nothing if the new key
+	 * is not smaller.
+	 */
+	public void decreaseKey(int id, double key){
+		int index = positions[id];
+		if (key >= keys[index]){
+			return;
+		}
+		percolateUp(index, id, key);
+	}
+
+	public int peekMin(){
+		if (size == 0){
+			throw new NoSuchElementException();
+		}
+		return ids[0];
+	}
+
+	public double peekMinKey(){
+		if (size == 0){
+			throw new NoSuchElementException();
+		}
+		return keys[0];
+	}
+
+	public int deleteMin(){
+		if (size == 0){
+			throw new NoSuchElementException();
+		}
+		int minID = ids[0];
+		positions[minID] = -1;
+		size--;
+		if (size > 0){
+			percolateDown(0, ids[size], keys[size]);
+		}
+		return minID;
+	}
+
+	public void makeEmpty(){
+		for (int i = 0; i < size; i++){
+			positions[ids[i]] = -1;
+		}
+		size = 0;
+	}
+
+	// Moves the hole at index up until the key fits, then puts the id there.
+	protected void percolateUp(int index, int id, double key){
+		while (index > 0){
+			int parent = (index - 1) >>> 1;
+			if (key < keys[parent]){
+				keys[index] = keys[parent];
+				ids[index] = ids[parent];
+				positions[ids[index]] = index;
+				index = parent;
+			}else{
+				break;
+			}
+		}
+		keys[index] = key;
+		ids[index] = id;
+		positions[id] = index;
+	}
+
+	// Moves the hole at index down until the key fits, then puts the id there.
+	protected void percolateDown(int index, int id, double key){
+		while (true){
+			int child = index*2 + 1;
+			if (child >= size){
+				break;
+			}
+			if (child + 1 < size && keys[child + 1] < keys[child]){
+				child++;
+			}
+			if (keys[child] < key){
+				keys[index] = keys[child];
+				ids[index] = ids[child];
+				positions[ids[index]] = index;
+				index = child;
+			}else{
+				break;
+			}
+		}
+		keys[index] = key;
+		ids[index] = id;
+		positions[id] = index;
+	}
+}
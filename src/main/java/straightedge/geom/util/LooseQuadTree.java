@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * A loose quadtree, which unlike a TileArray doesn't need a tile size to be
+ * chosen up front and doesn't put a big obstacle in every tile that it
+ * covers, so it suits maps that mix huge polygons with tiny ones.
+ *
+ * Each obstacle goes in the node containing its polygon's center at the
+ * deepest level where the polygon's radius is at most half the node's width.
+ * Each node's loose bounds are its square grown by half its width on every
+ * side, so they contain all of its obstacles and its children's obstacles, and
+ * queries skip the nodes whose loose bounds don't overlap the query circle.
+ * Since every obstacle is in exactly one node, nothing has to be
+ * de-duplicated and all of the queries are thread-safe as long as nothing is
+ * added or removed at the same time. The TileArrayQueryContext versions are
+ * only there to implement SpatialIndex.
+ *
+ * Obstacles whose centers are outside of the root's square are kept in
+ * outsideObstacles and tested in every query, like a bloated TileArray.
+ *
+ * @author Keith Woodward
+ */
+public class LooseQuadTree<T extends PolygonHolder> implements SpatialIndex<T>{
+	public Vector2f botLeft;
+	public float width;
+	public int maxDepth;
+	public Node<T> root;
+	public Bag<T> outsideObstacles = new Bag<T>();
+	public int numObstacles;
+
+	public LooseQuadTree(Vector2f botLeft, float width, int maxDepth){
+		this.botLeft = botLeft.clone();
+		this.width = width;
+		this.maxDepth = maxDepth;
+		root = new Node<T>(botLeft.x, botLeft.y, width);
+	}
+
+	/**
+	 * Makes a square tree covering the aabb, with enough levels that the
+	 * deepest nodes are about minNodeWidth wide.
+	 */
+	public LooseQuadTree(AABB aabb, float minNodeWidth){
+		this(aabb.p, Math.max(aabb.getWidth(), aabb.getHeight()), getMaxDepth(Math.max(aabb.getWidth(), aabb.getHeight()), minNodeWidth));
+	}
+
+	public LooseQuadTree(Collection<PolygonHolder> polygonHolders, float minNodeWidth){
+		this(AABB.getAABBEnclosingCenterAndRadius(polygonHolders), minNodeWidth);
+	}
+
+	protected static int getMaxDepth(float width, float minNodeWidth){
+		int depth = 0;
+		while (width > minNodeWidth*2 && depth < 16){
+			width /= 2f;
+			depth++;
+		}
+		return depth;
+	}
+
+	public void add(T t){
+		KPolygon polygon = t.getPolygon();
+		Vector2f c = polygon.getCenter();
+		numObstacles++;
+		if (isOutside(c.x, c.y)){
+			outsideObstacles.add(t);
+			return;
+		}
+		int depth = getDepth(polygon.getRadius());
+		Node<T> node = root;
+		for (int i = 0; i < depth; i++){
+			node.numObstacles++;
+			node = node.getOrMakeChild(c.x, c.y);
+		}
+		node.numObstacles++;
+		if (node.obstacles == null){
+			node.obstacles = new Bag<T>(4);
+		}
+		node.obstacles.add(t);
+	}
+
+	public boolean remove(T t){
+		KPolygon polygon = t.getPolygon();
+		Vector2f c = polygon.getCenter();
+		if (isOutside(c.x, c.y)){
+			if (outsideObstacles.remove(t)){
+				numObstacles--;
+				return true;
+			}
+			return false;
+		}
+		int depth = getDepth(polygon.getRadius());
+		Node<T> node = root;
+		for (int i = 0; i < depth && node != null; i++){
+			node = node.getChild(c.x, c.y);
+		}
+		if (node == null || node.obstacles == null || node.obstacles.remove(t) == false){
+			return false;
+		}
+		numObstacles--;
+		node = root;
+		for (int i = 0; i < depth; i++){
+			node.numObstacles--;
+			node = node.getChild(c.x, c.y);
+		}
+		node.numObstacles--;
+		return true;
+	}
+
+	public void clear(){
+		root = new Node<T>(botLeft.x, botLeft.y, width);
+		outsideObstacles.clear();
+		numObstacles = 0;
+	}
+
+	public int size(){
+		return numObstacles;
+	}
+
+	protected boolean isOutside(float x, float y){
+		return x < botLeft.x || y < botLeft.y || x > botLeft.x + width || y > botLeft.y + width;
+	}
+
+	/**
+	 * Returns the deepest level whose nodes are at least twice as wide as
+	 * the radius.
+	 */
+	protected int getDepth(double radius){
+		int depth = 0;
+		double nodeWidth = width;
+		while (depth < maxDepth && radius <= nodeWidth/4){
+			nodeWidth /= 2;
+			depth++;
+		}
+		return depth;
+	}
+
+	public ArrayList<T> getAllWithin(Vector2f point, double radius){
+		return getAllWithin(point.x, point.y, radius);
+	}
+
+	public ArrayList<T> getAllWithin(double x, double y, double radius){
+		ArrayList<T> nearbyObstacles = new ArrayList<T>();
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	public Bag<T> getAllWithin(double x, double y, double radius, Bag<T> nearbyObstacles){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor){
+		return findAllWithin(x, y, radius, null, visitor);
+	}
+
+	public int countAllWithin(double x, double y, double radius){
+		return findAllWithin(x, y, radius, null, null);
+	}
+
+	public <C extends Collection<? super T>> C getAllWithin(double x, double y, double radius, C nearbyObstacles, TileArrayQueryContext context){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, visitor);
+	}
+
+	public int countAllWithin(double x, double y, double radius, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, null);
+	}
+
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		int count = findAllWithin(outsideObstacles, x, y, radius, nearbyObstacles, visitor);
+		if (root.numObstacles > 0){
+			count += findAllWithin(root, x, y, radius, nearbyObstacles, visitor);
+		}
+		return count;
+	}
+
+	protected int findAllWithin(Node<T> node, double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		int count = 0;
+		if (node.obstacles != null){
+			count += findAllWithin(node.obstacles, x, y, radius, nearbyObstacles, visitor);
+		}
+		Node<T>[] children = node.children;
+		if (children != null){
+			for (int i = 0; i < children.length; i++){
+				Node<T> child = children[i];
+				if (child != null && child.numObstacles > 0 && child.looseBoundsOverlap(x, y, radius)){
+					count += findAllWithin(child, x, y, radius, nearbyObstacles, visitor);
+				}
+			}
+		}
+		return count;
+	}
+
+	protected int findAllWithin(Bag<T> obstacles, double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		int count = 0;
+		for (int k = 0; k < obstacles.size(); k++){
+			T t = obstacles.get(k);
+			KPolygon polygon = t.getPolygon();
+			double radiusSumSq = (radius + polygon.getRadius());
+			radiusSumSq *= radiusSumSq;
+			Vector2f polygonCenter = polygon.getCenter();
+			if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
+				if (nearbyObstacles != null){
+					nearbyObstacles.add(t);
+				}else if (visitor != null){
+					visitor.visit(t);
+				}
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public Vector2f getBotLeft(){
+		return botLeft;
+	}
+
+	public float getWidth(){
+		return width;
+	}
+
+	public int getMaxDepth(){
+		return maxDepth;
+	}
+
+	public Node<T> getRoot(){
+		return root;
+	}
+
+	public static class Node<T>{
+		public float minX;
+		public float minY;
+		public float width;
+		// null until something is added.
+		public Bag<T> obstacles;
+		// indexed by (x >= midX ? 1 : 0) + (y >= midY ? 2 : 0), null until needed.
+		public Node<T>[] children;
+		// the number of obstacles in this node and all of its descendants.
+		public int numObstacles;
+
+		public Node(float minX, float minY, float width){
+			this.minX = minX;
+			this.minY = minY;
+			this.width = width;
+		}
+
+		protected int getChildIndex(float x, float y){
+			float halfWidth = width/2f;
+			return (x >= minX + halfWidth ? 1 : 0) + (y >= minY + halfWidth ? 2 : 0);
+		}
+
+		public Node<T> getChild(float x, float y){
+			if (children == null){
+				return null;
+			}
+			return children[getChildIndex(x, y)];
+		}
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public Node<T> getOrMakeChild(float x, float y){
+			if (children == null){
+				children = new Node[4];
+			}
+			int i = getChildIndex(x, y);
+			if (children[i] == null){
+				float halfWidth = width/2f;
+				children[i] = new Node<T>(minX + ((i & 1) == 0 ? 0 : halfWidth), minY + ((i & 2) == 0 ? 0 : halfWidth), halfWidth);
+			}
+			return children[i];
+		}
+
+		/**
+		 * Returns false if the circle doesn't reach this node's square grown
+		 * by half of its width on each side.
+		 */
+		public boolean looseBoundsOverlap(double x, double y, double radius){
+			double halfWidth = width/2.0;
+			double looseMinX = minX - halfWidth;
+			double looseMinY = minY - halfWidth;
+			double looseMaxX = minX + width + halfWidth;
+			double looseMaxY = minY + width + halfWidth;
+			double dx = (x < looseMinX ? looseMinX - x : (x > looseMaxX ? x - looseMaxX : 0));
+			double dy = (y < looseMinY ? looseMinY - y : (y > looseMaxY ? y - looseMaxY : 0));
+			return dx*dx + dy*dy <= radius*radius;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Finds the PolygonHolders whose polygon's circle (its center and radius)
+ * overlaps a query circle. TileArray, TileArrayIntersections, LooseQuadTree
+ * and BoundingVolumeHierarchy all find exactly the same obstacles, so
+ * PathFinder, NodeConnector and the vision finders can be given whichever
+ * suits the map best.
+ *
+ * Obstacles should be removed before their polygons are moved and then
+ * re-added, since they're found by their current position.
+ *
+ * The methods that take a TileArrayQueryContext can be called by many threads
+ * at once, each with its own context, as long as nothing is added or removed
+ * at the same time.
+ *
+ * @author Keith Woodward
+ */
+public interface SpatialIndex<T extends PolygonHolder> {
+	public void add(T t);
+	public boolean remove(T t);
+	public void clear();
+
+	public ArrayList<T> getAllWithin(Vector2f point, double radius);
+	public ArrayList<T> getAllWithin(double x, double y, double radius);
+	/**
+	 * Appends the obstacles to nearbyObstacles, which isn't cleared first.
+	 */
+	public Bag<T> getAllWithin(double x, double y, double radius, Bag<T> nearbyObstacles);
+	/**
+	 * @return the number of obstacles visited.
+	 */
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor);
+	public int countAllWithin(double x, double y, double radius);
+
+	public <C extends Collection<? super T>> C getAllWithin(double x, double y, double radius, C nearbyObstacles, TileArrayQueryContext context);
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context);
+	public int countAllWithin(double x, double y, double radius, TileArrayQueryContext context);
+}
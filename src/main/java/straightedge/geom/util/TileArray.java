@@ -57,10 +57,10 @@ import com.jme3.math.Vector2f;
  *
  * @author Keith
  */
-public class TileArray<T extends PolygonHolder>{
+public class TileArray<T extends PolygonHolder> implements SpatialIndex<T>{
 	public int numRows;
 	public int numCols;
-	public Tile[][] tiles; // rows, columns
+	public Tile<T>[][] tiles; // rows, columns
 	public float tileWidthAndHeight;
 	// Euclidean coordinates are assumed with positive X axis to the right and positive y axis up.
 	public Vector2f botLeft;
@@ -74,6 +74,7 @@ public class TileArray<T extends PolygonHolder>{
 		init(botLeft, tileWidthAndHeight, numRows, numCols);
 	}
 
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	protected void init(Vector2f botLeft, float tileWidthAndHeight, int numRows, int numCols){
 		this.numRows = numRows;
 		this.numCols = numCols;
@@ -84,7 +85,7 @@ public class TileArray<T extends PolygonHolder>{
 		bloated = false;
 		for (int i = 0; i < numRows; i++){
 			for (int j = 0; j < numCols; j++){
-				tiles[i][j] = new Tile(this);
+				tiles[i][j] = new Tile<T>(this);
 			}
 		}
 	}
@@ -160,7 +161,7 @@ public class TileArray<T extends PolygonHolder>{
 		//System.out.println(this.getClass().getSimpleName()+": c == "+c+botRowIndex+", botRowIndex == "+botRowIndex+", topRowIndex == "+topRowIndex+", leftColIndex == "+leftColIndex+", rightColIndex == "+rightColIndex);
 		if (leftColIndexInt == rightColIndexInt && botRowIndexInt == topRowIndexInt){
 			// the obst fits in a single tile so just add it to the tile's contained obstacles.
-			Tile tile = tiles[botRowIndexInt][leftColIndexInt];
+			Tile<T> tile = tiles[botRowIndexInt][leftColIndexInt];
 			if (outsideBounds == false){
 				tile.getContainedObstacles().add(t);
 			}else{
@@ -170,7 +171,7 @@ public class TileArray<T extends PolygonHolder>{
 			// the obst spans a few tiles so add it to each tiles' shared obstacles.
 			for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
 				for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-					Tile tile = tiles[i][j];
+					Tile<T> tile = tiles[i][j];
 					tile.getSharedObstacles().add(t);
 //					System.out.println(this.getClass().getSimpleName()+": added c == "+c+", i == "+i+", j == "+j);
 				}
@@ -216,7 +217,7 @@ public class TileArray<T extends PolygonHolder>{
 		boolean removed = false;
 		if (leftColIndexInt == rightColIndexInt && botRowIndexInt == topRowIndexInt){
 			// the obst fits in a single tile so just add it to the tile's contained obstacles.
-			Tile tile = tiles[botRowIndexInt][leftColIndexInt];
+			Tile<T> tile = tiles[botRowIndexInt][leftColIndexInt];
 			boolean justRemoved = tile.getContainedObstacles().remove(t);
 			if (justRemoved == false){
 				// need to remove it from containedObstacles too in case it is outside the bounds.
@@ -230,7 +231,7 @@ public class TileArray<T extends PolygonHolder>{
 			// the obst spans a few tiles so add it to each tiles' shared obstacles.
 			for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
 				for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-					Tile tile = tiles[i][j];
+					Tile<T> tile = tiles[i][j];
 					boolean justRemoved = tile.getSharedObstacles().remove(t);
 					if (justRemoved == false){
 						// need to remove it from containedObstacles too in case it is outside the bounds.
@@ -254,109 +255,190 @@ public class TileArray<T extends PolygonHolder>{
 	public ArrayList<T> getAllWithin(double x, double y, double radius){
 //		ct.click("create ArrayList");
 		ArrayList<T> nearbyObstacles = new ArrayList<T>();
-		double r = radius;
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
 
-//		ct.click("index calcs");
+	/**
+	 * Same as getAllWithin(x, y, radius) but the obstacles are appended to
+	 * the given Bag, which is not cleared first. Callers can keep the Bag and
+	 * clear it before each query so that nothing is allocated once it has
+	 * grown big enough.
+	 *
+	 * @return nearbyObstacles
+	 */
+	public Bag<T> getAllWithin(double x, double y, double radius, Bag<T> nearbyObstacles){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
 
-		double leftColIndex = ((x - r) - botLeft.x)/tileWidthAndHeight;
-		double rightColIndex = ((x + r) - botLeft.x)/tileWidthAndHeight;
-		double botRowIndex = ((y - r) - botLeft.y)/tileWidthAndHeight;
-		double topRowIndex = ((y + r) - botLeft.y)/tileWidthAndHeight;
-//		System.out.println(this.getClass().getSimpleName()+": c == "+c+botRowIndex+", botRowIndex == "+botRowIndex+", topRowIndex == "+topRowIndex+", leftColIndex == "+leftColIndex+", rightColIndex == "+rightColIndex);
+	/**
+	 * Same as getAllWithin(x, y, radius) but each obstacle is passed to the
+	 * visitor instead of being put in a list, so nothing is allocated.
+	 *
+	 * @return the number of obstacles visited.
+	 */
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor){
+		return findAllWithin(x, y, radius, null, visitor);
+	}
 
-//		ct.click("index checks");
-		if (botRowIndex < 0){
-			botRowIndex = 0;
-		}else if (botRowIndex >= getNumRows()){
-			botRowIndex = getNumRows()-1;
-		}
-		if (topRowIndex < 0){
-			topRowIndex = 0;
-		}else if (topRowIndex >= getNumRows()){
-			topRowIndex = getNumRows() - 1;
-		}
-		if (leftColIndex < 0){
-			leftColIndex = 0;
-		}else if (leftColIndex >= getNumCols()){
-			leftColIndex = getNumCols()-1;
-		}
-		if (rightColIndex < 0){
-			rightColIndex = 0;
-		}else if (rightColIndex >= getNumCols()){
-			rightColIndex = getNumCols() - 1;
+	/**
+	 * Returns the number of obstacles that getAllWithin(x, y, radius) would
+	 * return, without collecting them.
+	 */
+	public int countAllWithin(double x, double y, double radius){
+		return findAllWithin(x, y, radius, null, null);
+	}
+
+	/**
+	 * Finds the obstacles within radius of (x, y) and adds them to
+	 * nearbyObstacles if it's not null, or else passes them to the visitor if
+	 * that's not null. The shared obstacles are de-duplicated using this
+	 * TileArray's Tracker.
+	 *
+	 * @return the number of obstacles found.
+	 */
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		int count = findAllWithin(x, y, radius, nearbyObstacles, visitor, null);
+		tracker.incrementCounter();
+		return count;
+	}
+
+	protected void addFound(T t, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		if (nearbyObstacles != null){
+			nearbyObstacles.add(t);
+		}else if (visitor != null){
+			visitor.visit(t);
 		}
+	}
 
-		int leftColIndexInt = (int)leftColIndex;
-		int rightColIndexInt = (int)rightColIndex;
-		int botRowIndexInt = (int)botRowIndex;
-		int topRowIndexInt = (int)topRowIndex;
+	/**
+	 * Same as getAllWithin(x, y, radius) except that the shared obstacles
+	 * are de-duplicated using the given TileArrayQueryContext instead of this
+	 * TileArray's Tracker, so many threads can query it at once, each with its
+	 * own context, as long as nothing is added or removed at the same time.
+	 * The obstacles are appended to nearbyObstacles, which isn't cleared first.
+	 *
+	 * @return nearbyObstacles
+	 */
+	public <C extends Collection<? super T>> C getAllWithin(double x, double y, double radius, C nearbyObstacles, TileArrayQueryContext context){
+		findAllWithin(x, y, radius, nearbyObstacles, null, context);
+		return nearbyObstacles;
+	}
 
-		//System.out.println("leftColIndex == "+leftColIndex+" rightColIndex == "+rightColIndex+" botRowIndex == "+botRowIndex+" topRowIndex == "+topRowIndex);
-//		ct.click("adds");
-		if (leftColIndexInt == rightColIndexInt && botRowIndexInt == topRowIndexInt){
-			// the obst fits in a single tile so just add it to the tile's contained obstacles.
-			Tile tile = tiles[botRowIndexInt][leftColIndexInt];
-			for (int i = 0; i < tile.getSharedObstacles().size(); i++){
-				T t = (T)tile.getSharedObstacles().get(i);
-				KPolygon polygon = t.getPolygon();
-				Vector2f polygonCenter = polygon.getCenter();
-				if (polygon.isTileArraySearchStatusAdded(tracker) == true){
-					continue;
-				}
-				double radiusSumSq = (r + polygon.getRadius());
-				radiusSumSq *= radiusSumSq;
-				if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-					nearbyObstacles.add(t);
-					polygon.setTileArraySearchStatus(true, tracker);
-				}
-			}
-			for (int i = 0; i < tile.getContainedObstacles().size(); i++){
-				T t = (T)tile.getContainedObstacles().get(i);
-				KPolygon polygon = t.getPolygon();
-				Vector2f polygonCenter = polygon.getCenter();
-				double radiusSumSq = (r + polygon.getRadius());
-				radiusSumSq *= radiusSumSq;
-				if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-					nearbyObstacles.add(t);
-				}
-			}
-		}else{
-			// the obst spans a few tiles so add it to each tiles' shared obstacles.
-			for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
-				for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-					Tile tile = tiles[i][j];
-					Bag<T> sharedObstacles = tile.getSharedObstacles();
-					for (int k = 0; k < sharedObstacles.size(); k++){
-						T t = (T)sharedObstacles.get(k);
-						KPolygon polygon = t.getPolygon();
-						if (polygon.isTileArraySearchStatusAdded(tracker) == true){
-							continue;
-						}
-						double radiusSumSq = (r + polygon.getRadius());
-						radiusSumSq *= radiusSumSq;
-						Vector2f polygonCenter = polygon.getCenter();
-						if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-							nearbyObstacles.add(t);
-							polygon.setTileArraySearchStatus(true, tracker);
-						}
+	/**
+	 * Same as getAllWithin(x, y, radius, visitor) but thread-safe like
+	 * getAllWithin(x, y, radius, nearbyObstacles, context).
+	 *
+	 * @return the number of obstacles visited.
+	 */
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, visitor, context);
+	}
+
+	/**
+	 * Same as countAllWithin(x, y, radius) but thread-safe like
+	 * getAllWithin(x, y, radius, nearbyObstacles, context).
+	 */
+	public int countAllWithin(double x, double y, double radius, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, null, context);
+	}
+
+	/**
+	 * Does the search for all of the getAllWithin and countAllWithin methods.
+	 * The shared obstacles are de-duplicated using the context, or using the
+	 * Tracker if the context is null, in which case the caller must increment
+	 * the Tracker's counter afterwards.
+	 */
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		if (context != null){
+			context.reset();
+		}
+		int count = 0;
+		double r = radius;
+		int leftColIndexInt = getClampedIndex((x - r) - botLeft.x, getNumCols());
+		int rightColIndexInt = getClampedIndex((x + r) - botLeft.x, getNumCols());
+		int botRowIndexInt = getClampedIndex((y - r) - botLeft.y, getNumRows());
+		int topRowIndexInt = getClampedIndex((y + r) - botLeft.y, getNumRows());
+		for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
+			for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
+				Tile<T> tile = tiles[i][j];
+				Bag<T> sharedObstacles = tile.getSharedObstacles();
+				for (int k = 0; k < sharedObstacles.size(); k++){
+					T t = sharedObstacles.get(k);
+					KPolygon polygon = t.getPolygon();
+					double radiusSumSq = (r + polygon.getRadius());
+					radiusSumSq *= radiusSumSq;
+					Vector2f polygonCenter = polygon.getCenter();
+					if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq && markFound(t, context)){
+						addFound(t, nearbyObstacles, visitor);
+						count++;
 					}
-					Bag<T> containedObstacles = tile.getContainedObstacles();
-					for (int k = 0; k < containedObstacles.size(); k++){
-						T t = (T)containedObstacles.get(k);
-						KPolygon polygon = t.getPolygon();
-						double radiusSumSq = (r + polygon.getRadius());
-						radiusSumSq *= radiusSumSq;
-						Vector2f polygonCenter = polygon.getCenter();
-						if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-							nearbyObstacles.add(t);
-						}
+				}
+				Bag<T> containedObstacles = tile.getContainedObstacles();
+				for (int k = 0; k < containedObstacles.size(); k++){
+					T t = containedObstacles.get(k);
+					KPolygon polygon = t.getPolygon();
+					double radiusSumSq = (r + polygon.getRadius());
+					radiusSumSq *= radiusSumSq;
+					Vector2f polygonCenter = polygon.getCenter();
+					if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
+						addFound(t, nearbyObstacles, visitor);
+						count++;
 					}
 				}
 			}
 		}
-		tracker.incrementCounter();
-//		ct.lastClick();
-		return nearbyObstacles;
+		return count;
+	}
+
+	/**
+	 * Returns true if the shared obstacle hasn't been found already in this
+	 * search, and marks it as found.
+	 */
+	protected boolean markFound(T t, TileArrayQueryContext context){
+		if (context != null){
+			return context.add(t);
+		}
+		KPolygon polygon = t.getPolygon();
+		if (polygon.isTileArraySearchStatusAdded(tracker)){
+			return false;
+		}
+		polygon.setTileArraySearchStatus(true, tracker);
+		return true;
+	}
+
+	/**
+	 * Returns the index of the row of tiles containing y, clamped to the rows in this TileArray.
+	 */
+	public int getRowIndex(double y){
+		return getClampedIndex(y - botLeft.y, getNumRows());
+	}
+
+	/**
+	 * Returns the index of the column of tiles containing x, clamped to the columns in this TileArray.
+	 */
+	public int getColIndex(double x){
+		return getClampedIndex(x - botLeft.x, getNumCols());
+	}
+
+	protected int getClampedIndex(double distFromBotLeft, int numTiles){
+		return getClampedIndex(distFromBotLeft, tileWidthAndHeight, numTiles);
+	}
+
+	/**
+	 * Returns the index of the tile distFromBotLeft along a row or column of
+	 * numTiles tiles, clamped to 0 and numTiles - 1. Shared by the other
+	 * tiled structures so they all bin points the same way.
+	 */
+	public static int getClampedIndex(double distFromBotLeft, double tileWidthAndHeight, int numTiles){
+		double index = distFromBotLeft/tileWidthAndHeight;
+		if (index < 0){
+			return 0;
+		}else if (index >= numTiles){
+			return numTiles - 1;
+		}
+		return (int)index;
 	}
 //	public ArrayList<T> getAllWithin(Vector2f point, double radius){
 ////		ct.click("create ArrayList");
@@ -581,7 +663,7 @@ public class TileArray<T extends PolygonHolder>{
 		}
 	}
 
-	public Tile getTile(int row, int col){
+	public Tile<T> getTile(int row, int col){
 		return tiles[row][col];
 	}
 
@@ -605,7 +687,7 @@ public class TileArray<T extends PolygonHolder>{
 		return tileWidthAndHeight;
 	}
 
-	public Tile[][] getTiles() {
+	public Tile<T>[][] getTiles() {
 		return tiles;
 	}
 
@@ -614,10 +696,10 @@ public class TileArray<T extends PolygonHolder>{
 	}
 
 	public class Tile<T>{
-		TileArray tileArray;
+		TileArray<?> tileArray;
 		Bag<T> containedObstacles;
 		Bag<T> sharedObstacles;
-		public Tile(TileArray tileArray){
+		public Tile(TileArray<?> tileArray){
 			this.tileArray = tileArray;
 			sharedObstacles = new Bag<T>();
 			containedObstacles = new Bag<T>();
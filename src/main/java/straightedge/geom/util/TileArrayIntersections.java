@@ -61,10 +61,10 @@ import com.jme3.math.Vector2f;
  *
  * @author Keith
  */
-public class TileArrayIntersections<T extends Occluder> {
+public class TileArrayIntersections<T extends Occluder> implements SpatialIndex<T> {
 	public int numRows;
 	public int numCols;
-	public Tile[][] tiles; // rows, columns
+	public Tile<T>[][] tiles; // rows, columns
 	public double tileWidthAndHeight;
 	// Euclidean coordinates are assumed with positive X axis to the right and positive y axis up.
 	public Vector2f botLeft;
@@ -74,10 +74,18 @@ public class TileArrayIntersections<T extends Occluder> {
 
 	Tracker tracker = new Tracker();
 
+	// Occluders registered with addMoving. Their intersections with the fixed
+	// occluders and with each other are kept in the tiles' movingIntersections,
+	// and each one's list has all of the intersections that involve it.
+	public ArrayList<T> movingOccluders = new ArrayList<T>();
+	public IdentityHashMap<T, ArrayList<VPOccluderOccluderIntersection>> movingOccluderIntersections = new IdentityHashMap<T, ArrayList<VPOccluderOccluderIntersection>>();
+	public Vector2f intersection = new Vector2f();
+
 	public TileArrayIntersections(Vector2f botLeft, float tileWidthAndHeight, int numRows, int numCols){
 		init(botLeft, tileWidthAndHeight, numRows, numCols);
 	}
 
+	@SuppressWarnings({"unchecked", "rawtypes"})
 	protected void init(Vector2f botLeft, float tileWidthAndHeight, int numRows, int numCols){
 		this.numRows = numRows;
 		this.numCols = numCols;
@@ -88,7 +96,7 @@ public class TileArrayIntersections<T extends Occluder> {
 		bloated = false;
 		for (int i = 0; i < numRows; i++){
 			for (int j = 0; j < numCols; j++){
-				tiles[i][j] = new Tile(this);
+				tiles[i][j] = new Tile<T>(this);
 			}
 		}
 	}
@@ -199,7 +207,7 @@ public class TileArrayIntersections<T extends Occluder> {
 			//System.out.println(this.getClass().getSimpleName()+": c == "+c+botRowIndex+", botRowIndex == "+botRowIndex+", topRowIndex == "+topRowIndex+", leftColIndex == "+leftColIndex+", rightColIndex == "+rightColIndex);
 			if (leftColIndexInt == rightColIndexInt && botRowIndexInt == topRowIndexInt){
 				// the obst fits in a single tile so just add it to the tile's contained obstacles.
-				Tile tile = tiles[botRowIndexInt][leftColIndexInt];
+				Tile<T> tile = tiles[botRowIndexInt][leftColIndexInt];
 				if (outsideBounds == false){
 					tile.getContainedObstacles().add(occluder);
 				}else{
@@ -209,7 +217,7 @@ public class TileArrayIntersections<T extends Occluder> {
 				// the obst spans a few tiles so add it to each tiles' shared obstacles.
 				for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
 					for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-						Tile tile = tiles[i][j];
+						Tile<T> tile = tiles[i][j];
 						tile.getSharedObstacles().add(occluder);
 	//					System.out.println(this.getClass().getSimpleName()+": added c == "+c+", i == "+i+", j == "+j);
 					}
@@ -234,10 +242,16 @@ public class TileArrayIntersections<T extends Occluder> {
 				}else if (colIndex >= getNumCols()){
 					colIndex = getNumCols()-1;
 				}
-				Tile tile = tiles[rowIndex][colIndex];
+				Tile<T> tile = tiles[rowIndex][colIndex];
 				tile.getIntersections().add(obstacleIntersectionSightPoint);
 			}
 		}
+
+		// the moving occluders' intersections with the new fixed occluder
+		for (int i = 0; i < movingOccluders.size(); i++){
+			T movingOccluder = movingOccluders.get(i);
+			addMovingIntersections(movingOccluder, movingOccluderIntersections.get(movingOccluder), occluder, null);
+		}
 	}
 
 	public boolean remove(T t){
@@ -276,7 +290,7 @@ public class TileArrayIntersections<T extends Occluder> {
 		boolean removed = false;
 		if (leftColIndexInt == rightColIndexInt && botRowIndexInt == topRowIndexInt){
 			// the obst fits in a single tile so just add it to the tile's contained obstacles.
-			Tile tile = tiles[botRowIndexInt][leftColIndexInt];
+			Tile<T> tile = tiles[botRowIndexInt][leftColIndexInt];
 			boolean justRemoved = tile.getContainedObstacles().remove(t);
 			if (justRemoved == false){
 				// need to remove it from containedObstacles too in case it is outside the bounds.
@@ -299,7 +313,7 @@ public class TileArrayIntersections<T extends Occluder> {
 			// the obst spans a few tiles so add it to each tiles' shared obstacles.
 			for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
 				for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-					Tile tile = tiles[i][j];
+					Tile<T> tile = tiles[i][j];
 					boolean justRemoved = tile.getSharedObstacles().remove(t);
 					if (justRemoved == false){
 						// need to remove it from containedObstacles too in case it is outside the bounds.
@@ -320,131 +334,396 @@ public class TileArrayIntersections<T extends Occluder> {
 				}
 			}
 		}
+		// remove the moving occluders' intersections with it
+		for (int i = 0; i < movingOccluders.size(); i++){
+			ArrayList<VPOccluderOccluderIntersection> intersections = movingOccluderIntersections.get(movingOccluders.get(i));
+			for (int k = 0; k < intersections.size(); k++){
+				VPOccluderOccluderIntersection intersection = intersections.get(k);
+				if (intersection.getOccluder2() == t){
+					getTileContaining(intersection.getPoint()).getMovingIntersections().remove(intersection);
+					intersections.remove(k);
+					k--;
+				}
+			}
+		}
 		assert getAllWithin(c, r).contains(t) == false : "c == "+c+", r == "+r;
 		return removed;
 	}
-	public ArrayList<T> getAllWithin(Vector2f point, double radius){
-		return getAllWithin(point.x, point.y, radius);
-	}
 
-	//	CodeTimer ct = new CodeTimer(this.getClass().getSimpleName()+": getAllWithin");
-	public ArrayList<T> getAllWithin(double x, double y, double radius){
-//		ct.click("create ArrayList");
-		ArrayList<T> nearbyObstacles = new ArrayList<T>();
-		double r = radius;
-
-//		ct.click("index calcs");
+	/**
+	 * Registers an occluder that moves. Its points of intersection with the
+	 * fixed occluders and the other moving occluders are worked out here and
+	 * kept up to date by updateMoving, so getIntersectionsWithinAtLeast
+	 * returns them along with the fixed occluders' intersections and
+	 * VisionFinder doesn't need to find them again for every eye.
+	 * Note that moving occluders are not returned by getAllWithin, use
+	 * getMovingOccludersWithin for them.
+	 */
+	public void addMoving(T t){
+		ArrayList<VPOccluderOccluderIntersection> intersections = new ArrayList<VPOccluderOccluderIntersection>();
+		movingOccluders.add(t);
+		movingOccluderIntersections.put(t, intersections);
+		addMovingIntersections(t, intersections, -1);
+	}
 
-		double leftColIndex = ((x - r) - botLeft.x)/tileWidthAndHeight;
-		double rightColIndex = ((x + r) - botLeft.x)/tileWidthAndHeight;
-		double botRowIndex = ((y - r) - botLeft.y)/tileWidthAndHeight;
-		double topRowIndex = ((y + r) - botLeft.y)/tileWidthAndHeight;
-//		System.out.println(this.getClass().getSimpleName()+": c == "+c+botRowIndex+", botRowIndex == "+botRowIndex+", topRowIndex == "+topRowIndex+", leftColIndex == "+leftColIndex+", rightColIndex == "+rightColIndex);
+	public boolean removeMoving(T t){
+		ArrayList<VPOccluderOccluderIntersection> intersections = movingOccluderIntersections.remove(t);
+		if (intersections == null){
+			return false;
+		}
+		removeMovingIntersections(t, intersections);
+		for (int i = 0; i < movingOccluders.size(); i++){
+			if (movingOccluders.get(i) == t){
+				movingOccluders.remove(i);
+				break;
+			}
+		}
+		return true;
+	}
 
-//		ct.click("index checks");
-		if (botRowIndex < 0){
-			botRowIndex = 0;
-		}else if (botRowIndex >= getNumRows()){
-			botRowIndex = getNumRows()-1;
+	/**
+	 * Re-calculates the intersections of a moving occluder after its polygon
+	 * has been moved, rotated or scaled.
+	 * @return false if t was not added using addMoving.
+	 */
+	public boolean updateMoving(T t){
+		ArrayList<VPOccluderOccluderIntersection> intersections = movingOccluderIntersections.get(t);
+		if (intersections == null){
+			return false;
 		}
-		if (topRowIndex < 0){
-			topRowIndex = 0;
-		}else if (topRowIndex >= getNumRows()){
-			topRowIndex = getNumRows() - 1;
+		removeMovingIntersections(t, intersections);
+		addMovingIntersections(t, intersections, -1);
+		return true;
+	}
+
+	/**
+	 * Re-calculates the intersections of all of the moving occluders, which is
+	 * quicker than calling updateMoving for each of them since each pair of
+	 * moving occluders is only intersected once.
+	 */
+	public void updateAllMoving(){
+		for (int i = 0; i < numRows; i++){
+			for (int j = 0; j < numCols; j++){
+				tiles[i][j].getMovingIntersections().clear();
+			}
 		}
-		if (leftColIndex < 0){
-			leftColIndex = 0;
-		}else if (leftColIndex >= getNumCols()){
-			leftColIndex = getNumCols()-1;
+		for (int i = 0; i < movingOccluders.size(); i++){
+			movingOccluderIntersections.get(movingOccluders.get(i)).clear();
 		}
-		if (rightColIndex < 0){
-			rightColIndex = 0;
-		}else if (rightColIndex >= getNumCols()){
-			rightColIndex = getNumCols() - 1;
+		for (int i = 0; i < movingOccluders.size(); i++){
+			T t = movingOccluders.get(i);
+			addMovingIntersections(t, movingOccluderIntersections.get(t), i);
 		}
+	}
 
-		int leftColIndexInt = (int)leftColIndex;
-		int rightColIndexInt = (int)rightColIndex;
-		int botRowIndexInt = (int)botRowIndex;
-		int topRowIndexInt = (int)topRowIndex;
-
-		//System.out.println("leftColIndex == "+leftColIndex+" rightColIndex == "+rightColIndex+" botRowIndex == "+botRowIndex+" topRowIndex == "+topRowIndex);
-//		ct.click("adds");
-		if (leftColIndexInt == rightColIndexInt && botRowIndexInt == topRowIndexInt){
-			// the obst fits in a single tile so just add it to the tile's contained obstacles.
-			Tile tile = tiles[botRowIndexInt][leftColIndexInt];
-			for (int i = 0; i < tile.getSharedObstacles().size(); i++){
-				T t = (T)tile.getSharedObstacles().get(i);
-				KPolygon polygon = t.getPolygon();
-				Vector2f polygonCenter = polygon.getCenter();
-				if (polygon.isTileArraySearchStatusAdded(tracker) == true){
-					continue;
-				}
-				double radiusSumSq = (r + polygon.getRadius());
-				radiusSumSq *= radiusSumSq;
-				if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-					nearbyObstacles.add(t);
-					polygon.setTileArraySearchStatus(true, tracker);
+	protected void removeMovingIntersections(T t, ArrayList<VPOccluderOccluderIntersection> intersections){
+		for (int i = 0; i < intersections.size(); i++){
+			VPOccluderOccluderIntersection intersection = intersections.get(i);
+			getTileContaining(intersection.getPoint()).getMovingIntersections().remove(intersection);
+			Occluder other = (intersection.getOccluder() == t ? intersection.getOccluder2() : intersection.getOccluder());
+			ArrayList<VPOccluderOccluderIntersection> otherIntersections = movingOccluderIntersections.get(other);
+			if (otherIntersections != null){
+				for (int k = 0; k < otherIntersections.size(); k++){
+					if (otherIntersections.get(k) == intersection){
+						otherIntersections.remove(k);
+						break;
+					}
 				}
 			}
-			for (int i = 0; i < tile.getContainedObstacles().size(); i++){
-				T t = (T)tile.getContainedObstacles().get(i);
-				KPolygon polygon = t.getPolygon();
-				Vector2f polygonCenter = polygon.getCenter();
-				double radiusSumSq = (r + polygon.getRadius());
-				radiusSumSq *= radiusSumSq;
-				if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-					nearbyObstacles.add(t);
-				}
+		}
+		intersections.clear();
+	}
+
+	/**
+	 * Adds the intersections of the moving occluder t with the nearby fixed
+	 * occluders and with the moving occluders after index
+	 * lastDoneMovingIndex, or all of the other moving occluders if it's -1.
+	 */
+	protected void addMovingIntersections(T t, ArrayList<VPOccluderOccluderIntersection> intersections, int lastDoneMovingIndex){
+		KPolygon polygon = t.getPolygon();
+		ArrayList<T> fixedOccluders = getAllWithin(polygon.getCenter(), polygon.getRadius());
+		for (int k = 0; k < fixedOccluders.size(); k++){
+			addMovingIntersections(t, intersections, fixedOccluders.get(k), null);
+		}
+		for (int k = (lastDoneMovingIndex == -1 ? 0 : lastDoneMovingIndex + 1); k < movingOccluders.size(); k++){
+			T t2 = movingOccluders.get(k);
+			if (t2 == t){
+				continue;
 			}
-		}else{
-			// the obst spans a few tiles so add it to each tiles' shared obstacles.
-			for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
-				for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-					Tile tile = tiles[i][j];
-					Bag<T> sharedObstacles = tile.getSharedObstacles();
-					for (int k = 0; k < sharedObstacles.size(); k++){
-						T t = (T)sharedObstacles.get(k);
-						KPolygon polygon = t.getPolygon();
-						if (polygon.isTileArraySearchStatusAdded(tracker) == true){
-							continue;
-						}
-						double radiusSumSq = (r + polygon.getRadius());
-						radiusSumSq *= radiusSumSq;
-						Vector2f polygonCenter = polygon.getCenter();
-						if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-							nearbyObstacles.add(t);
-							polygon.setTileArraySearchStatus(true, tracker);
-						}
-					}
-					Bag<T> containedObstacles = tile.getContainedObstacles();
-					for (int k = 0; k < containedObstacles.size(); k++){
-						T t = (T)containedObstacles.get(k);
-						KPolygon polygon = t.getPolygon();
-						double radiusSumSq = (r + polygon.getRadius());
-						radiusSumSq *= radiusSumSq;
-						Vector2f polygonCenter = polygon.getCenter();
-						if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
-							nearbyObstacles.add(t);
+			KPolygon polygon2 = t2.getPolygon();
+			double radiusSum = polygon.getRadius() + polygon2.getRadius();
+			if (polygon.getCenter().distanceSquared(polygon2.getCenter()) >= radiusSum*radiusSum){
+				continue;
+			}
+			addMovingIntersections(t, intersections, t2, movingOccluderIntersections.get(t2));
+		}
+	}
+
+	/**
+	 * Adds the points of intersection between the moving occluder t's edges
+	 * and occluder2, in the same way as VisionFinder.calc does for moving
+	 * occluders. If occluder2 is also moving then its list of intersections
+	 * is given as intersections2.
+	 */
+	protected void addMovingIntersections(T t, ArrayList<VPOccluderOccluderIntersection> intersections, Occluder occluder2, ArrayList<VPOccluderOccluderIntersection> intersections2){
+		KPolygon polygon = t.getPolygon();
+		KPolygon polygon2 = occluder2.getPolygon();
+		ArrayList<Vector2f> points = polygon.getPoints();
+		ArrayList<Vector2f> points2 = polygon2.getPoints();
+		for (int j = 0; j < points.size(); j++){
+			Vector2f p = points.get(j);
+			Vector2f p2 = points.get(j+1 >= points.size() ? 0 : j+1);
+			if (polygon2.intersectionPossible(p, p2) == false){
+				continue;
+			}
+			for (int m = 0; m < points2.size(); m++){
+				int nextM = (m+1 >= points2.size() ? 0 : m+1);
+				if (Vector2fUtils.linesIntersect(p, p2, points2.get(m), points2.get(nextM))){
+					if (Vector2fUtils.getLineLineIntersection(p, p2, points2.get(m), points2.get(nextM), intersection) != null){
+						VPOccluderOccluderIntersection vp = new VPOccluderOccluderIntersection(new Vector2f(intersection), t, j, occluder2, m);
+						getTileContaining(vp.getPoint()).getMovingIntersections().add(vp);
+						intersections.add(vp);
+						if (intersections2 != null){
+							intersections2.add(vp);
 						}
 					}
 				}
 			}
 		}
+	}
+
+	/**
+	 * Returns the moving occluders within radius of the point, using the same
+	 * test as getAllWithin.
+	 * @param nearbyObstacles the list that the moving occluders are appended to.
+	 * @return nearbyObstacles
+	 */
+	public <L extends List<? super T>> L getMovingOccludersWithin(double x, double y, double radius, L nearbyObstacles){
+		for (int i = 0; i < movingOccluders.size(); i++){
+			T t = movingOccluders.get(i);
+			KPolygon polygon = t.getPolygon();
+			double radiusSumSq = (radius + polygon.getRadius());
+			radiusSumSq *= radiusSumSq;
+			Vector2f polygonCenter = polygon.getCenter();
+			if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
+				nearbyObstacles.add(t);
+			}
+		}
+		return nearbyObstacles;
+	}
+
+	public ArrayList<T> getMovingOccluders() {
+		return movingOccluders;
+	}
+
+	public boolean hasMovingOccluders() {
+		return movingOccluders.isEmpty() == false;
+	}
+
+	/**
+	 * Returns the tile that the point is in, or the nearest edge tile if
+	 * it's outside of the bounds.
+	 */
+	public Tile<T> getTileContaining(Vector2f p){
+		int colIndex = (int)Math.floor((p.x - botLeft.x)/tileWidthAndHeight);
+		int rowIndex = (int)Math.floor((p.y - botLeft.y)/tileWidthAndHeight);
+		if (rowIndex < 0){
+			rowIndex = 0;
+		}else if (rowIndex >= getNumRows()){
+			rowIndex = getNumRows()-1;
+		}
+		if (colIndex < 0){
+			colIndex = 0;
+		}else if (colIndex >= getNumCols()){
+			colIndex = getNumCols()-1;
+		}
+		return tiles[rowIndex][colIndex];
+	}
+	public ArrayList<T> getAllWithin(Vector2f point, double radius){
+		return getAllWithin(point.x, point.y, radius);
+	}
+
+	//	CodeTimer ct = new CodeTimer(this.getClass().getSimpleName()+": getAllWithin");
+	public ArrayList<T> getAllWithin(double x, double y, double radius){
+//		ct.click("create ArrayList");
+		return getAllWithin(x, y, radius, new ArrayList<T>());
+	}
+
+	/**
+	 * Same as getAllWithin(x, y, radius) but the obstacles are appended to
+	 * the given list so that callers can re-use it.
+	 */
+	public <L extends ArrayList<? super T>> L getAllWithin(double x, double y, double radius, L nearbyObstacles){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	/**
+	 * Same as getAllWithin(x, y, radius) but the occluders are appended to
+	 * the given Bag, which is not cleared first. Callers can keep the Bag and
+	 * clear it before each query so that nothing is allocated once it has
+	 * grown big enough.
+	 *
+	 * @return nearbyObstacles
+	 */
+	public Bag<T> getAllWithin(double x, double y, double radius, Bag<T> nearbyObstacles){
+		findAllWithin(x, y, radius, nearbyObstacles, null);
+		return nearbyObstacles;
+	}
+
+	/**
+	 * Same as getAllWithin(x, y, radius) but each occluder is passed to the
+	 * visitor instead of being put in a list, so nothing is allocated.
+	 *
+	 * @return the number of occluders visited.
+	 */
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor){
+		return findAllWithin(x, y, radius, null, visitor);
+	}
+
+	/**
+	 * Returns the number of occluders that getAllWithin(x, y, radius) would
+	 * return, without collecting them.
+	 */
+	public int countAllWithin(double x, double y, double radius){
+		return findAllWithin(x, y, radius, null, null);
+	}
+
+	/**
+	 * Finds the occluders within radius of (x, y) and adds them to
+	 * nearbyObstacles if it's not null, or else passes them to the visitor if
+	 * that's not null. The shared occluders are de-duplicated using this
+	 * TileArrayIntersections' Tracker.
+	 *
+	 * @return the number of occluders found.
+	 */
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		int count = findAllWithin(x, y, radius, nearbyObstacles, visitor, null);
 		tracker.incrementCounter();
-//		ct.lastClick();
+		return count;
+	}
+
+	protected void addFound(T t, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor){
+		if (nearbyObstacles != null){
+			nearbyObstacles.add(t);
+		}else if (visitor != null){
+			visitor.visit(t);
+		}
+	}
+
+	/**
+	 * Same as getAllWithin(x, y, radius) except that the shared occluders
+	 * are de-duplicated using the given TileArrayQueryContext instead of this
+	 * TileArray's Tracker, so many threads can query it at once, each with its
+	 * own context, as long as nothing is added or removed at the same time.
+	 * The occluders are appended to nearbyObstacles, which isn't cleared first.
+	 *
+	 * @return nearbyObstacles
+	 */
+	public <C extends Collection<? super T>> C getAllWithin(double x, double y, double radius, C nearbyObstacles, TileArrayQueryContext context){
+		findAllWithin(x, y, radius, nearbyObstacles, null, context);
 		return nearbyObstacles;
 	}
 
 	/**
-	 * Returns an ArrayList of intersections between the KPolygons.
+	 * Same as getAllWithin(x, y, radius, visitor) but thread-safe like
+	 * getAllWithin(x, y, radius, nearbyObstacles, context).
+	 *
+	 * @return the number of occluders visited.
+	 */
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, visitor, context);
+	}
+
+	/**
+	 * Same as countAllWithin(x, y, radius) but thread-safe like
+	 * getAllWithin(x, y, radius, nearbyObstacles, context).
+	 */
+	public int countAllWithin(double x, double y, double radius, TileArrayQueryContext context){
+		return findAllWithin(x, y, radius, null, null, context);
+	}
+
+	/**
+	 * Does the search for all of the getAllWithin and countAllWithin methods.
+	 * The shared occluders are de-duplicated using the context, or using the
+	 * Tracker if the context is null, in which case the caller must increment
+	 * the Tracker's counter afterwards.
+	 */
+	protected int findAllWithin(double x, double y, double radius, Collection<? super T> nearbyObstacles, TileArrayVisitor<? super T> visitor, TileArrayQueryContext context){
+		if (context != null){
+			context.reset();
+		}
+		int count = 0;
+		double r = radius;
+		int leftColIndexInt = TileArray.getClampedIndex((x - r) - botLeft.x, tileWidthAndHeight, getNumCols());
+		int rightColIndexInt = TileArray.getClampedIndex((x + r) - botLeft.x, tileWidthAndHeight, getNumCols());
+		int botRowIndexInt = TileArray.getClampedIndex((y - r) - botLeft.y, tileWidthAndHeight, getNumRows());
+		int topRowIndexInt = TileArray.getClampedIndex((y + r) - botLeft.y, tileWidthAndHeight, getNumRows());
+		for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
+			for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
+				Tile<T> tile = tiles[i][j];
+				Bag<T> sharedObstacles = tile.getSharedObstacles();
+				for (int k = 0; k < sharedObstacles.size(); k++){
+					T t = sharedObstacles.get(k);
+					KPolygon polygon = t.getPolygon();
+					double radiusSumSq = (r + polygon.getRadius());
+					radiusSumSq *= radiusSumSq;
+					Vector2f polygonCenter = polygon.getCenter();
+					if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq && markFound(t, context)){
+						addFound(t, nearbyObstacles, visitor);
+						count++;
+					}
+				}
+				Bag<T> containedObstacles = tile.getContainedObstacles();
+				for (int k = 0; k < containedObstacles.size(); k++){
+					T t = containedObstacles.get(k);
+					KPolygon polygon = t.getPolygon();
+					double radiusSumSq = (r + polygon.getRadius());
+					radiusSumSq *= radiusSumSq;
+					Vector2f polygonCenter = polygon.getCenter();
+					if (Vector2fUtils.distanceSq(x,y,polygonCenter.x,polygonCenter.y) < radiusSumSq){
+						addFound(t, nearbyObstacles, visitor);
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns true if the shared occluder hasn't been found already in this
+	 * search, and marks it as found.
+	 */
+	protected boolean markFound(T t, TileArrayQueryContext context){
+		if (context != null){
+			return context.add(t);
+		}
+		KPolygon polygon = t.getPolygon();
+		if (polygon.isTileArraySearchStatusAdded(tracker)){
+			return false;
+		}
+		polygon.setTileArraySearchStatus(true, tracker);
+		return true;
+	}
+
+	/**
+	 * Returns an ArrayList of intersections between the KPolygons, including
+	 * those of the moving occluders registered with addMoving.
 	 * Note that the list returned may include intersections outside of radius.
 	 * @param point
 	 * @param radius
 	 * @return
 	 */
 	public ArrayList<VPOccluderOccluderIntersection> getIntersectionsWithinAtLeast(Vector2f point, double radius){
-		ArrayList<VPOccluderOccluderIntersection> nearbyIntersections = new ArrayList<VPOccluderOccluderIntersection>();
+		return getIntersectionsWithinAtLeast(point, radius, new ArrayList<VPOccluderOccluderIntersection>());
+	}
+
+	/**
+	 * Same as getIntersectionsWithinAtLeast(point, radius) but the
+	 * intersections are appended to the given list.
+	 */
+	public ArrayList<VPOccluderOccluderIntersection> getIntersectionsWithinAtLeast(Vector2f point, double radius, ArrayList<VPOccluderOccluderIntersection> nearbyIntersections){
 		Vector2f c = point;
 		double r = radius;
 		double leftColIndex = ((c.x - r) - botLeft.x)/tileWidthAndHeight;
@@ -481,12 +760,16 @@ public class TileArrayIntersections<T extends Occluder> {
 
 		for (int i = botRowIndexInt; i <= topRowIndexInt; i++){
 			for (int j = leftColIndexInt; j <= rightColIndexInt; j++){
-				Tile tile = tiles[i][j];
+				Tile<T> tile = tiles[i][j];
 				Bag<VPOccluderOccluderIntersection> intersections = tile.getIntersections();
 				for (int k = 0; k < intersections.size(); k++){
-					VPOccluderOccluderIntersection obst = (VPOccluderOccluderIntersection)intersections.get(k);
+					VPOccluderOccluderIntersection obst = intersections.get(k);
 					nearbyIntersections.add(obst);
 				}
+				Bag<VPOccluderOccluderIntersection> movingIntersections = tile.getMovingIntersections();
+				for (int k = 0; k < movingIntersections.size(); k++){
+					nearbyIntersections.add(movingIntersections.get(k));
+				}
 			}
 		}
 		return nearbyIntersections;
@@ -498,11 +781,14 @@ public class TileArrayIntersections<T extends Occluder> {
 				tiles[i][j].getContainedObstacles().clear();
 				tiles[i][j].getSharedObstacles().clear();
 				tiles[i][j].getIntersections().clear();
+				tiles[i][j].getMovingIntersections().clear();
 			}
 		}
+		movingOccluders.clear();
+		movingOccluderIntersections.clear();
 	}
 
-	public Tile getTile(int row, int col){
+	public Tile<T> getTile(int row, int col){
 		return tiles[row][col];
 	}
 
@@ -526,7 +812,7 @@ public class TileArrayIntersections<T extends Occluder> {
 		return tileWidthAndHeight;
 	}
 
-	public Tile[][] getTiles() {
+	public Tile<T>[][] getTiles() {
 		return tiles;
 	}
 
@@ -535,15 +821,17 @@ public class TileArrayIntersections<T extends Occluder> {
 	}
 
 	public class Tile<T>{
-		TileArrayIntersections tileArray;
+		TileArrayIntersections<?> tileArray;
 		Bag<T> containedObstacles;
 		Bag<T> sharedObstacles;
 		Bag<VPOccluderOccluderIntersection> intersections;
-		public Tile(TileArrayIntersections tileArray){
+		Bag<VPOccluderOccluderIntersection> movingIntersections;
+		public Tile(TileArrayIntersections<?> tileArray){
 			this.tileArray = tileArray;
 			sharedObstacles = new Bag<T>();
 			containedObstacles = new Bag<T>();
 			intersections = new Bag<VPOccluderOccluderIntersection>();
+			movingIntersections = new Bag<VPOccluderOccluderIntersection>();
 		}
 
 		public Bag<T> getContainedObstacles() {
@@ -556,6 +844,9 @@ public class TileArrayIntersections<T extends Occluder> {
 		public Bag<VPOccluderOccluderIntersection> getIntersections() {
 			return intersections;
 		}
+		public Bag<VPOccluderOccluderIntersection> getMovingIntersections() {
+			return movingIntersections;
+		}
 	}
 
 	public String toString(){
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import java.util.*;
+
+/**
+ * Holds what one caller needs to query a TileArray or TileArrayIntersections
+ * without using its Tracker, so that any number of threads can query the same
+ * TileArray at once, each with its own TileArrayQueryContext, as long as
+ * nothing is added or removed at the same time.
+ *
+ * The objects that have already been found in the current query are kept in
+ * an open-addressing identity set whose slots are stamped with the query's
+ * generation number, so starting a new query doesn't need to clear anything.
+ * Note that references to the objects found are kept until their slots are
+ * re-used or clear() is called.
+ *
+ * @author Keith Woodward
+ */
+public class TileArrayQueryContext {
+	public Object[] keys;
+	public int[] stamps;
+	public int mask;
+	public int size;
+	public int generation = 1;
+
+	public TileArrayQueryContext(){
+		this(32);
+	}
+
+	public TileArrayQueryContext(int expectedSize){
+		int capacity = 8;
+		while (capacity < expectedSize*2){
+			capacity *= 2;
+		}
+		keys = new Object[capacity];
+		stamps = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Starts a new query by forgetting the objects added in the last one.
+	 */
+	public void reset(){
+		size = 0;
+		generation++;
+		if (generation == Integer.MAX_VALUE){
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Forgets the objects added in the last query and lets go of them.
+	 */
+	public void clear(){
+		reset();
+		Arrays.fill(keys, null);
+	}
+
+	/**
+	 * Returns true if the object hadn't been added since the last reset.
+	 */
+	public boolean add(Object object){
+		if ((size + 1)*2 > keys.length){
+			grow();
+		}
+		int i = getSlot(object);
+		while (stamps[i] == generation){
+			if (keys[i] == object){
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = object;
+		stamps[i] = generation;
+		size++;
+		return true;
+	}
+
+	public boolean contains(Object object){
+		int i = getSlot(object);
+		while (stamps[i] == generation){
+			if (keys[i] == object){
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	protected int getSlot(Object object){
+		int hash = System.identityHashCode(object)*0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	protected void grow(){
+		Object[] oldKeys = keys;
+		int[] oldStamps = stamps;
+		keys = new Object[oldKeys.length*2];
+		stamps = new int[oldKeys.length*2];
+		mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++){
+			if (oldStamps[j] == generation){
+				int i = getSlot(oldKeys[j]);
+				while (stamps[i] == generation){
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				stamps[i] = generation;
+			}
+		}
+	}
+}
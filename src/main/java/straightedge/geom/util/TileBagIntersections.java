@@ -103,6 +103,18 @@ public class TileBagIntersections<T extends Occluder> implements Collection<T>{
 		return tileArray.getAllWithin(x, y, radius);
 	}
 
+	public Bag<T> getAllWithin(double x, double y, double radius, Bag<T> nearbyObstacles){
+		return tileArray.getAllWithin(x, y, radius, nearbyObstacles);
+	}
+
+	public int getAllWithin(double x, double y, double radius, TileArrayVisitor<? super T> visitor){
+		return tileArray.getAllWithin(x, y, radius, visitor);
+	}
+
+	public int countAllWithin(double x, double y, double radius){
+		return tileArray.countAllWithin(x, y, radius);
+	}
+
 	public boolean add(T t) {
 		tileArray.add(t);
 		bag.add(t);
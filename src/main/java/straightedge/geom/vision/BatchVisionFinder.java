@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Calculates the vision of many eyes at once by splitting them over a
+ * ForkJoinPool. Each worker thread has its own VisionEngine (see
+ * createVisionEngine) so the scratch lists in VisionFinder aren't shared.
+ *
+ * The intersections between the moving occluders and the fixed occluders
+ * and each other are found once per batch rather than once per eye. Then each
+ * eye is calculated with the moving occluders treated as fixed ones, so
+ * the results are the same as calling VisionFinder.calc for each eye in turn.
+ * The TileArrayIntersections and the occluders are only read, so nothing should
+ * be added, removed or moved while a batch is being calculated.
+ *
+ * @author Keith Woodward
+ */
+public class BatchVisionFinder {
+	public ForkJoinPool pool;
+	// Tasks with this many eyes or fewer are not split any further.
+	public int maxEyesPerTask = 4;
+	// The intersections of the moving occluders found in the last batch.
+	public ArrayList<VPOccluderOccluderIntersection> movingOccludersIntersectionPoints = new ArrayList<VPOccluderOccluderIntersection>();
+	public Vector2f intersection = new Vector2f();
+
+	ThreadLocal<Worker> workers = new ThreadLocal<Worker>(){
+		protected Worker initialValue(){
+			return new Worker(createVisionEngine());
+		}
+	};
+
+	public BatchVisionFinder(){
+		this(ForkJoinPool.commonPool());
+	}
+
+	public BatchVisionFinder(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	/**
+	 * Override this to use a different VisionEngine such as SweepVisionFinder.
+	 */
+	protected VisionEngine createVisionEngine(){
+		return new VisionFinder();
+	}
+
+	/**
+	 * @param eyes
+	 * @param boundaryPolygons the boundaryPolygon for each eye, in the same order as the eyes.
+	 * @param fixedOccludersTileArrayIntersections
+	 * @param movingOccluders
+	 * @return a new VisionData for each eye, in the same order as the eyes.
+	 */
+	public ArrayList<VisionData> calc(List<Vector2f> eyes, List<KPolygon> boundaryPolygons, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		ArrayList<VisionData> visionDatas = new ArrayList<VisionData>(eyes.size());
+		for (int i = 0; i < eyes.size(); i++){
+			visionDatas.add(new VisionData(eyes.get(i), boundaryPolygons.get(i)));
+		}
+		calc(visionDatas, fixedOccludersTileArrayIntersections, movingOccluders);
+		return visionDatas;
+	}
+
+	/**
+	 * Calculates each of the VisionDatas in place. Each VisionData can
+	 * re-use its results (see VisionData.setReuseResults) as normal.
+	 *
+	 * @param visionDatas
+	 * @param fixedOccludersTileArrayIntersections
+	 * @param movingOccluders
+	 */
+	public void calc(List<? extends VisionData> visionDatas, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		findMovingOccludersIntersectionPoints(fixedOccludersTileArrayIntersections, movingOccluders);
+		if (visionDatas.size() > 0){
+			pool.invoke(new CalcTask(visionDatas, 0, visionDatas.size(), fixedOccludersTileArrayIntersections, movingOccluders));
+		}
+	}
+
+	/**
+	 * Finds the points of intersection between the movingOccluders and the
+	 * fixed occluders and other movingOccluders, in the same way as VisionFinder.calc.
+	 */
+	protected void findMovingOccludersIntersectionPoints(TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		movingOccludersIntersectionPoints.clear();
+		ArrayList<Occluder> nearbyFixedOccluders = new ArrayList<Occluder>();
+		for (int i = 0; i < movingOccluders.size(); i++){
+			Occluder occluder = movingOccluders.get(i);
+			KPolygon polygon = occluder.getPolygon();
+			nearbyFixedOccluders.clear();
+			fixedOccludersTileArrayIntersections.getAllWithin(polygon.getCenter().x, polygon.getCenter().y, polygon.getRadius(), nearbyFixedOccluders);
+			fixedOccludersTileArrayIntersections.getMovingOccludersWithin(polygon.getCenter().x, polygon.getCenter().y, polygon.getRadius(), nearbyFixedOccluders);
+			ArrayList<Vector2f> polygonPoints = polygon.getPoints();
+			for (int j = 0; j < polygonPoints.size(); j++){
+				Vector2f p = polygonPoints.get(j);
+				int jPlus = (j+1 >= polygonPoints.size() ? 0 : j+1);
+				Vector2f p2 = polygonPoints.get(jPlus);
+				// first intersect with other movingPolygons
+				for (int k = i+1; k < movingOccluders.size(); k++){
+					addIntersectionPoints(occluder, j, p, p2, movingOccluders.get(k));
+				}
+				// intersect with fixedPolygons
+				for (int k = 0; k < nearbyFixedOccluders.size(); k++){
+					addIntersectionPoints(occluder, j, p, p2, nearbyFixedOccluders.get(k));
+				}
+			}
+		}
+	}
+
+	protected void addIntersectionPoints(Occluder occluder, int polygonPointNum, Vector2f p, Vector2f p2, Occluder occluder2){
+		KPolygon polygon2 = occluder2.getPolygon();
+		if (polygon2.intersectionPossible(p, p2) == false){
+			return;
+		}
+		ArrayList<Vector2f> points = polygon2.getPoints();
+		for (int m = 0; m < points.size(); m++){
+			int nextM = (m+1 >= points.size() ? 0 : m+1);
+			if (Vector2fUtils.linesIntersect(p, p2, points.get(m), points.get(nextM))){
+				if (Vector2fUtils.getLineLineIntersection(p, p2, points.get(m), points.get(nextM), intersection) != null){
+					movingOccludersIntersectionPoints.add(new VPOccluderOccluderIntersection(new Vector2f(intersection), occluder, polygonPointNum, occluder2, m));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The per-thread VisionEngine and scratch lists.
+	 */
+	protected static class Worker{
+		VisionEngine visionEngine;
+		ArrayList<Occluder> occluders = new ArrayList<Occluder>();
+		TileArrayQueryContext queryContext = new TileArrayQueryContext();
+		ArrayList<VPOccluderOccluderIntersection> fixedIntersectionPoints = new ArrayList<VPOccluderOccluderIntersection>();
+		ArrayList<VPOccluderOccluderIntersection> intersectionPoints = new ArrayList<VPOccluderOccluderIntersection>();
+
+		public Worker(VisionEngine visionEngine){
+			this.visionEngine = visionEngine;
+		}
+
+		public void calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders, List<VPOccluderOccluderIntersection> movingOccludersIntersectionPoints){
+			KPolygon boundaryPolygon = cache.getBoundaryPolygon();
+			Vector2f center = boundaryPolygon.getCenter();
+			double radius = boundaryPolygon.getRadius();
+			occluders.clear();
+			fixedOccludersTileArrayIntersections.getAllWithin(center.x, center.y, radius, occluders, queryContext);
+			fixedOccludersTileArrayIntersections.getMovingOccludersWithin(center.x, center.y, radius, occluders);
+			for (int i = 0; i < movingOccluders.size(); i++){
+				occluders.add(movingOccluders.get(i));
+			}
+			// The VisiblePoints are sorted using fields in each one that depend on the eye,
+			// so each eye gets its own copies of the shared intersection points.
+			intersectionPoints.clear();
+			fixedIntersectionPoints.clear();
+			fixedOccludersTileArrayIntersections.getIntersectionsWithinAtLeast(center, radius, fixedIntersectionPoints);
+			for (int i = 0; i < fixedIntersectionPoints.size(); i++){
+				intersectionPoints.add(copy(fixedIntersectionPoints.get(i)));
+			}
+			fixedIntersectionPoints.clear();
+			double radiusSq = radius*radius;
+			for (int i = 0; i < movingOccludersIntersectionPoints.size(); i++){
+				VPOccluderOccluderIntersection vp = movingOccludersIntersectionPoints.get(i);
+				if (center.distanceSquared(vp.getPoint()) <= radiusSq){
+					intersectionPoints.add(copy(vp));
+				}
+			}
+			visionEngine.calc(cache, occluders, intersectionPoints, Collections.<Occluder>emptyList());
+			occluders.clear();
+			intersectionPoints.clear();
+		}
+
+		protected VPOccluderOccluderIntersection copy(VPOccluderOccluderIntersection vp){
+			return new VPOccluderOccluderIntersection(vp.getPoint(), vp.getOccluder(), vp.getPolygonPointNum(), vp.getOccluder2(), vp.getPolygonPointNum2());
+		}
+	}
+
+	@SuppressWarnings("serial")
+	protected class CalcTask extends RecursiveAction{
+		List<? extends VisionData> visionDatas;
+		int startIndex;
+		int endIndex;
+		TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections;
+		List<? extends Occluder> movingOccluders;
+
+		public CalcTask(List<? extends VisionData> visionDatas, int startIndex, int endIndex, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+			this.visionDatas = visionDatas;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+			this.fixedOccludersTileArrayIntersections = fixedOccludersTileArrayIntersections;
+			this.movingOccluders = movingOccluders;
+		}
+
+		protected void compute(){
+			if (endIndex - startIndex <= maxEyesPerTask){
+				Worker worker = workers.get();
+				for (int i = startIndex; i < endIndex; i++){
+					worker.calc(visionDatas.get(i), fixedOccludersTileArrayIntersections, movingOccluders, movingOccludersIntersectionPoints);
+				}
+				return;
+			}
+			int midIndex = (startIndex + endIndex) >>> 1;
+			invokeAll(new CalcTask(visionDatas, startIndex, midIndex, fixedOccludersTileArrayIntersections, movingOccluders),
+					new CalcTask(visionDatas, midIndex, endIndex, fixedOccludersTileArrayIntersections, movingOccluders));
+		}
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	public int getMaxEyesPerTask() {
+		return maxEyesPerTask;
+	}
+
+	public void setMaxEyesPerTask(int maxEyesPerTask) {
+		this.maxEyesPerTask = maxEyesPerTask;
+	}
+
+	public ArrayList<VPOccluderOccluderIntersection> getMovingOccludersIntersectionPoints() {
+		return movingOccludersIntersectionPoints;
+	}
+}
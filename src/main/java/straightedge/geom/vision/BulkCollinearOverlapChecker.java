@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Finds and fixes the collinear overlaps of a whole set of polygons at once,
+ * rather than calling CollinearOverlapChecker.getCollinearOverlaps on each
+ * polygon with all of the others.
+ *
+ * All of the polygons' points are bucketed in a grid, and each edge is only
+ * tested against the points in the grid cells that the edge's thin
+ * collinearity zone crosses. The overlaps found are the same, and in the same
+ * order, as those found by CollinearOverlapChecker.getCollinearOverlaps.
+ *
+ * fixCollinearOverlapsInOrder moves the same points, in the same order, as
+ * CollinearOverlapChecker's all-pairs loop did, and is what
+ * CollinearOverlapChecker.fixCollinearOverlaps uses.
+ *
+ * fixCollinearOverlaps goes further. The search is split up by polygon on a
+ * ForkJoinPool. To fix the overlaps, the polygons are grouped into clusters
+ * that are linked by overlaps, and the clusters are fixed in parallel. Within
+ * a cluster the polygons are fixed in order and each overlap is checked again
+ * before moving its point, so that an overlap that was already undone by
+ * moving the other polygon's point is left alone. The points are moved across
+ * the overlapping edges with PointShuffler.shufflePointOffEdge, so the points
+ * that are moved and where they end up differ from the in-order fix.
+ *
+ * @author Keith Woodward
+ */
+public class BulkCollinearOverlapChecker {
+	public CollinearOverlapChecker collinearOverlapChecker;
+	public ForkJoinPool pool;
+	// Tasks with this many polygons or fewer are not split any further.
+	public int maxPolygonsPerTask = 32;
+	// Fixing tasks with this many clusters or fewer are not split any further.
+	public int maxClustersPerTask = 8;
+	// The number of times that the overlaps are searched for and fixed. More
+	// passes fix the overlaps that a moved point lands on, and those that a
+	// pointMoveDist move wasn't enough to get out of.
+	public int maxNumPasses = 1;
+	public int maxNumShuffleTries = 100;
+	// Each polygon's PointShuffler is seeded with this plus the polygon's index
+	// so that the result doesn't depend on the thread scheduling.
+	public long seed = 0;
+	// The grid is sized so that there's about this many points per cell.
+	public double pointsPerCell = 4;
+
+	public int numPasses;
+	// The overlaps found over all of the passes, including any found again
+	// because an earlier pass didn't fix them.
+	public int numOverlapsFound;
+	public int numClusters;
+
+	public BulkCollinearOverlapChecker(){
+		this(new CollinearOverlapChecker());
+	}
+
+	public BulkCollinearOverlapChecker(CollinearOverlapChecker collinearOverlapChecker){
+		this(collinearOverlapChecker, ForkJoinPool.commonPool());
+	}
+
+	public BulkCollinearOverlapChecker(CollinearOverlapChecker collinearOverlapChecker, ForkJoinPool pool){
+		this.collinearOverlapChecker = collinearOverlapChecker;
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the collinear overlaps of each polygon's edges with the points
+	 * of all of the other polygons, in polygon order.
+	 *
+	 * @param allPolygons
+	 * @return
+	 */
+	public ArrayList<CollinearOverlap> getCollinearOverlaps(ArrayList<KPolygon> allPolygons){
+		ArrayList<CollinearOverlap>[] overlapsByPolygon = findCollinearOverlaps(allPolygons);
+		ArrayList<CollinearOverlap> collinearOverlaps = new ArrayList<CollinearOverlap>();
+		for (int i = 0; i < overlapsByPolygon.length; i++){
+			if (overlapsByPolygon[i] != null){
+				collinearOverlaps.addAll(overlapsByPolygon[i]);
+			}
+		}
+		return collinearOverlaps;
+	}
+
+	/**
+	 * Randomly moves the offending polygon points by the
+	 * CollinearOverlapChecker's pointMoveDist so that there are no collinear
+	 * overlaps. Note that this will change the center, circularBound and area
+	 * of any polygons which have their points moved.
+	 *
+	 * @param allPolygons
+	 */
+	public void fixCollinearOverlaps(ArrayList<KPolygon> allPolygons){
+		numPasses = 0;
+		numOverlapsFound = 0;
+		numClusters = 0;
+		IdentityHashMap<KPolygon, Integer> polygonIndexes = new IdentityHashMap<KPolygon, Integer>();
+		for (int i = 0; i < allPolygons.size(); i++){
+			polygonIndexes.put(allPolygons.get(i), i);
+		}
+		while (numPasses < maxNumPasses){
+			ArrayList<CollinearOverlap>[] overlapsByPolygon = findCollinearOverlaps(allPolygons);
+			numPasses++;
+			int numOverlaps = 0;
+			for (int i = 0; i < overlapsByPolygon.length; i++){
+				if (overlapsByPolygon[i] != null){
+					numOverlaps += overlapsByPolygon[i].size();
+				}
+			}
+			if (numOverlaps == 0){
+				break;
+			}
+			ArrayList<int[]> clusters = makeClusters(overlapsByPolygon, polygonIndexes);
+			pool.invoke(new FixTask(overlapsByPolygon, clusters, 0, clusters.size()));
+			numOverlapsFound += numOverlaps;
+			numClusters += clusters.size();
+		}
+	}
+
+	/**
+	 * Fixes the overlaps in the same order as the all-pairs loop in
+	 * CollinearOverlapChecker used to: the polygons are done one after the
+	 * other, each one's overlaps are found with the points of the polygons
+	 * before it already moved, and the point of every overlap is shuffled.
+	 * Given the same PointShuffler the points end up in the same places as
+	 * with that loop, only the overlaps are found using the grid. Nothing is
+	 * done in parallel, so the pool isn't used.
+	 *
+	 * @param allPolygons
+	 * @param pointShuffler
+	 */
+	public void fixCollinearOverlapsInOrder(ArrayList<KPolygon> allPolygons, PointShuffler pointShuffler){
+		numPasses = 1;
+		numOverlapsFound = 0;
+		numClusters = 0;
+		PointGrid pointGrid = new PointGrid(allPolygons, pointsPerCell);
+		LongList candidates = new LongList();
+		// A polygon's points are only moved while its own overlaps are fixed,
+		// after which they may have left the grid cells that they're in, so
+		// the searches are widened by the furthest that any point has moved.
+		double maxMoveDist = 0;
+		float[] oldCoords = new float[0];
+		for (int i = 0; i < allPolygons.size(); i++){
+			ArrayList<CollinearOverlap> collinearOverlaps = findCollinearOverlaps(i, allPolygons, pointGrid, maxMoveDist, candidates);
+			if (collinearOverlaps == null){
+				continue;
+			}
+			numOverlapsFound += collinearOverlaps.size();
+			ArrayList<Vector2f> points = allPolygons.get(i).getPoints();
+			if (oldCoords.length < points.size()*2){
+				oldCoords = new float[points.size()*2];
+			}
+			for (int j = 0; j < points.size(); j++){
+				oldCoords[j*2] = points.get(j).x;
+				oldCoords[j*2 + 1] = points.get(j).y;
+			}
+			for (int j = 0; j < collinearOverlaps.size(); j++){
+				CollinearOverlap co = collinearOverlaps.get(j);
+				pointShuffler.shufflePoint(co.getPolygon(), co.getPointIndex());
+			}
+			for (int j = 0; j < points.size(); j++){
+				Vector2f p = points.get(j);
+				maxMoveDist = Math.max(maxMoveDist, Math.hypot(p.x - oldCoords[j*2], p.y - oldCoords[j*2 + 1]));
+			}
+		}
+	}
+
+	/**
+	 * Calls fixCollinearOverlapsInOrder with a PointShuffler that moves the
+	 * points by the CollinearOverlapChecker's pointMoveDist, seeded with seed
+	 * so that the result is the same each time.
+	 *
+	 * @param allPolygons
+	 */
+	public void fixCollinearOverlapsInOrder(ArrayList<KPolygon> allPolygons){
+		PointShuffler pointShuffler = new PointShuffler(collinearOverlapChecker.getPointMoveDist(), maxNumShuffleTries);
+		pointShuffler.rand.setSeed(seed);
+		fixCollinearOverlapsInOrder(allPolygons, pointShuffler);
+	}
+
+	/**
+	 * Groups the polygons that have overlaps with each other, using a
+	 * union-find over the polygon indexes. Each cluster lists its polygons
+	 * in order.
+	 */
+	protected ArrayList<int[]> makeClusters(ArrayList<CollinearOverlap>[] overlapsByPolygon, IdentityHashMap<KPolygon, Integer> polygonIndexes){
+		int numPolygons = overlapsByPolygon.length;
+		int[] parents = new int[numPolygons];
+		for (int i = 0; i < numPolygons; i++){
+			parents[i] = i;
+		}
+		for (int i = 0; i < numPolygons; i++){
+			ArrayList<CollinearOverlap> collinearOverlaps = overlapsByPolygon[i];
+			if (collinearOverlaps == null){
+				continue;
+			}
+			for (int j = 0; j < collinearOverlaps.size(); j++){
+				int root = findRoot(parents, i);
+				int root2 = findRoot(parents, polygonIndexes.get(collinearOverlaps.get(j).getPolygon2()));
+				if (root != root2){
+					parents[Math.max(root, root2)] = Math.min(root, root2);
+				}
+			}
+		}
+		// only the polygons with overlaps of their own need fixing.
+		int[] clusterSizes = new int[numPolygons];
+		for (int i = 0; i < numPolygons; i++){
+			if (overlapsByPolygon[i] != null){
+				clusterSizes[findRoot(parents, i)]++;
+			}
+		}
+		int[][] clustersByRoot = new int[numPolygons][];
+		ArrayList<int[]> clusters = new ArrayList<int[]>();
+		for (int i = 0; i < numPolygons; i++){
+			if (clusterSizes[i] > 0){
+				clustersByRoot[i] = new int[clusterSizes[i]];
+				clusters.add(clustersByRoot[i]);
+				clusterSizes[i] = 0;
+			}
+		}
+		for (int i = 0; i < numPolygons; i++){
+			if (overlapsByPolygon[i] != null){
+				int root = findRoot(parents, i);
+				clustersByRoot[root][clusterSizes[root]] = i;
+				clusterSizes[root]++;
+			}
+		}
+		return clusters;
+	}
+
+	protected int findRoot(int[] parents, int i){
+		while (parents[i] != i){
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Returns true if p2 lies on the line from p to pPlus, using the same
+	 * distance tests as CollinearOverlapChecker.getCollinearOverlaps.
+	 */
+	protected boolean isCollinearOverlap(Vector2f p, Vector2f pPlus, double pToPPlusDist, Vector2f p2){
+		double minDistDifference = collinearOverlapChecker.getMinDistDifference();
+		double pToP2Dist = p.distance(p2);
+		if (pToP2Dist < pToPPlusDist){
+			double pPlusToP2Dist = pPlus.distance(p2);
+			double sumDist = pPlusToP2Dist + pToP2Dist;
+			if (sumDist < pToPPlusDist + minDistDifference && sumDist > pToPPlusDist - minDistDifference){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected ArrayList<CollinearOverlap>[] findCollinearOverlaps(ArrayList<KPolygon> allPolygons){
+		PointGrid pointGrid = new PointGrid(allPolygons, pointsPerCell);
+		ArrayList<CollinearOverlap>[] overlapsByPolygon = new ArrayList[allPolygons.size()];
+		pool.invoke(new FindTask(allPolygons, pointGrid, overlapsByPolygon, 0, allPolygons.size()));
+		return overlapsByPolygon;
+	}
+
+	/**
+	 * Finds the overlaps of the polygon's edges with the points of the other
+	 * polygons, doing the same distance tests as
+	 * CollinearOverlapChecker.getCollinearOverlaps.
+	 */
+	protected ArrayList<CollinearOverlap> findCollinearOverlaps(int polygonIndex, ArrayList<KPolygon> allPolygons, PointGrid pointGrid, LongList candidates){
+		return findCollinearOverlaps(polygonIndex, allPolygons, pointGrid, 0, candidates);
+	}
+
+	/**
+	 * The same as above, but widens the search by maxMoveDist to find the
+	 * points that have moved by up to that much since the grid was made.
+	 */
+	protected ArrayList<CollinearOverlap> findCollinearOverlaps(int polygonIndex, ArrayList<KPolygon> allPolygons, PointGrid pointGrid, double maxMoveDist, LongList candidates){
+		double minDistDifference = collinearOverlapChecker.getMinDistDifference();
+		ArrayList<CollinearOverlap> collinearOverlaps = null;
+		KPolygon polygon = allPolygons.get(polygonIndex);
+		ArrayList<Vector2f> points = polygon.getPoints();
+		for (int i = 0; i < points.size(); i++){
+			Vector2f p = points.get(i);
+			int iPlus = (i+1 >= points.size() ? 0 : i+1);
+			Vector2f pPlus = points.get(iPlus);
+			double pToPPlusDist = p.distance(pPlus);
+			// Points whose distances to p and pPlus add up to within
+			// minDistDifference of pToPPlusDist are inside an ellipse around
+			// the edge, which is no wider than halfWidth from the edge. The
+			// difference is padded a little for the float distance errors.
+			double diff = minDistDifference + 1e-6*(pToPPlusDist + 1);
+			double halfWidth = Math.sqrt(diff*(2*pToPPlusDist + diff))/2;
+			candidates.clear();
+			pointGrid.getPointsNear(p.x, p.y, pPlus.x, pPlus.y, halfWidth + maxMoveDist, polygonIndex, candidates);
+			// sort them into the same order as the all-pairs search.
+			candidates.sort();
+			for (int c = 0; c < candidates.size(); c++){
+				long candidate = candidates.get(c);
+				int j = (int)(candidate >>> 32);
+				int k = (int)candidate;
+				KPolygon polygon2 = allPolygons.get(j);
+				if (isCollinearOverlap(p, pPlus, pToPPlusDist, polygon2.getPoints().get(k))){
+					if (collinearOverlaps == null){
+						collinearOverlaps = new ArrayList<CollinearOverlap>();
+					}
+					collinearOverlaps.add(new CollinearOverlap(polygon, i, iPlus, polygon2, k));
+				}
+			}
+		}
+		return collinearOverlaps;
+	}
+
+	public int getNumPasses(){
+		return numPasses;
+	}
+
+	public int getNumOverlapsFound(){
+		return numOverlapsFound;
+	}
+
+	public int getNumClusters(){
+		return numClusters;
+	}
+
+	public ForkJoinPool getPool(){
+		return pool;
+	}
+
+	/**
+	 * The points of all of the polygons bucketed by grid cell. The cells are
+	 * stored in one array, with each point packed into a long as its polygon
+	 * index and point index.
+	 */
+	public static class PointGrid{
+		public double botLeftX;
+		public double botLeftY;
+		public double cellWidthAndHeight;
+		public int numRows;
+		public int numCols;
+		// the points of cell i are at cellStarts[i] to cellStarts[i+1].
+		public int[] cellStarts;
+		public long[] cellPoints;
+
+		public PointGrid(ArrayList<KPolygon> polygons, double pointsPerCell){
+			int numPoints = 0;
+			double minX = Double.MAX_VALUE;
+			double minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE;
+			double maxY = -Double.MAX_VALUE;
+			for (int i = 0; i < polygons.size(); i++){
+				ArrayList<Vector2f> points = polygons.get(i).getPoints();
+				for (int j = 0; j < points.size(); j++){
+					Vector2f p = points.get(j);
+					minX = Math.min(minX, p.x);
+					minY = Math.min(minY, p.y);
+					maxX = Math.max(maxX, p.x);
+					maxY = Math.max(maxY, p.y);
+				}
+				numPoints += points.size();
+			}
+			if (numPoints == 0){
+				minX = minY = maxX = maxY = 0;
+			}
+			double width = maxX - minX;
+			double height = maxY - minY;
+			double numCells = Math.max(1, numPoints/pointsPerCell);
+			// the second term stops the cells getting tiny when the points are
+			// all in a thin strip.
+			cellWidthAndHeight = Math.max(Math.sqrt(width*height/numCells), Math.max(width, height)/numCells);
+			if (cellWidthAndHeight <= 0){
+				cellWidthAndHeight = 1;
+			}
+			botLeftX = minX;
+			botLeftY = minY;
+			numCols = (int)(width/cellWidthAndHeight) + 1;
+			numRows = (int)(height/cellWidthAndHeight) + 1;
+
+			// counting sort of the points by cell.
+			cellStarts = new int[numRows*numCols + 1];
+			cellPoints = new long[numPoints];
+			for (int i = 0; i < polygons.size(); i++){
+				ArrayList<Vector2f> points = polygons.get(i).getPoints();
+				for (int j = 0; j < points.size(); j++){
+					cellStarts[getCellIndex(points.get(j)) + 1]++;
+				}
+			}
+			for (int i = 1; i < cellStarts.length; i++){
+				cellStarts[i] += cellStarts[i-1];
+			}
+			int[] cellEnds = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+			for (int i = 0; i < polygons.size(); i++){
+				ArrayList<Vector2f> points = polygons.get(i).getPoints();
+				for (int j = 0; j < points.size(); j++){
+					int cellIndex = getCellIndex(points.get(j));
+					cellPoints[cellEnds[cellIndex]] = ((long)i << 32) | j;
+					cellEnds[cellIndex]++;
+				}
+			}
+		}
+
+		public int getCellIndex(Vector2f p){
+			return getRow(p.y)*numCols + getCol(p.x);
+		}
+
+		public int getCol(double x){
+			int col = (int)Math.floor((x - botLeftX)/cellWidthAndHeight);
+			return Math.max(0, Math.min(numCols - 1, col));
+		}
+
+		public int getRow(double y){
+			int row = (int)Math.floor((y - botLeftY)/cellWidthAndHeight);
+			return Math.max(0, Math.min(numRows - 1, row));
+		}
+
+		/**
+		 * Adds the points that are in the cells touched by the line from
+		 * (x1, y1) to (x2, y2) thickened by halfWidth, apart from those of the
+		 * polygon with index excludedPolygonIndex.
+		 */
+		public void getPointsNear(double x1, double y1, double x2, double y2, double halfWidth, int excludedPolygonIndex, LongList points){
+			double minX = Math.min(x1, x2) - halfWidth;
+			double maxX = Math.max(x1, x2) + halfWidth;
+			int minCol = getCol(minX);
+			int maxCol = getCol(maxX);
+			double dx = x2 - x1;
+			double dy = y2 - y1;
+			for (int col = minCol; col <= maxCol; col++){
+				// the part of the line that's within halfWidth of this column's
+				// strip, since a point can be closest to a part of the line
+				// that's outside of the strip.
+				double stripMinX = botLeftX + col*cellWidthAndHeight - halfWidth;
+				double stripMaxX = botLeftX + (col + 1)*cellWidthAndHeight + halfWidth;
+				double lineMinY;
+				double lineMaxY;
+				if (dx == 0){
+					lineMinY = Math.min(y1, y2);
+					lineMaxY = Math.max(y1, y2);
+				}else{
+					double t1 = Math.max(0, Math.min(1, (stripMinX - x1)/dx));
+					double t2 = Math.max(0, Math.min(1, (stripMaxX - x1)/dx));
+					lineMinY = y1 + Math.min(t1, t2)*dy;
+					lineMaxY = y1 + Math.max(t1, t2)*dy;
+					if (lineMinY > lineMaxY){
+						double temp = lineMinY;
+						lineMinY = lineMaxY;
+						lineMaxY = temp;
+					}
+				}
+				int minRow = getRow(lineMinY - halfWidth);
+				int maxRow = getRow(lineMaxY + halfWidth);
+				for (int row = minRow; row <= maxRow; row++){
+					int cellIndex = row*numCols + col;
+					for (int i = cellStarts[cellIndex]; i < cellStarts[cellIndex + 1]; i++){
+						long point = cellPoints[i];
+						if ((int)(point >>> 32) != excludedPolygonIndex){
+							points.add(point);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A growable list of primitive longs.
+	 */
+	public static class LongList{
+		public long[] values = new long[16];
+		public int size;
+
+		public void add(long value){
+			if (size == values.length){
+				values = Arrays.copyOf(values, size*2);
+			}
+			values[size] = value;
+			size++;
+		}
+
+		public long get(int i){
+			return values[i];
+		}
+
+		public int size(){
+			return size;
+		}
+
+		public void clear(){
+			size = 0;
+		}
+
+		public void sort(){
+			Arrays.sort(values, 0, size);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	protected class FindTask extends RecursiveAction{
+		ArrayList<KPolygon> allPolygons;
+		PointGrid pointGrid;
+		ArrayList<CollinearOverlap>[] overlapsByPolygon;
+		int startIndex;
+		int endIndex;
+
+		public FindTask(ArrayList<KPolygon> allPolygons, PointGrid pointGrid, ArrayList<CollinearOverlap>[] overlapsByPolygon, int startIndex, int endIndex){
+			this.allPolygons = allPolygons;
+			this.pointGrid = pointGrid;
+			this.overlapsByPolygon = overlapsByPolygon;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+		}
+
+		protected void compute(){
+			if (endIndex - startIndex > maxPolygonsPerTask){
+				int midIndex = (startIndex + endIndex) >>> 1;
+				invokeAll(new FindTask(allPolygons, pointGrid, overlapsByPolygon, startIndex, midIndex), new FindTask(allPolygons, pointGrid, overlapsByPolygon, midIndex, endIndex));
+				return;
+			}
+			LongList candidates = new LongList();
+			for (int i = startIndex; i < endIndex; i++){
+				overlapsByPolygon[i] = findCollinearOverlaps(i, allPolygons, pointGrid, candidates);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	protected class FixTask extends RecursiveAction{
+		ArrayList<CollinearOverlap>[] overlapsByPolygon;
+		ArrayList<int[]> clusters;
+		int startIndex;
+		int endIndex;
+
+		public FixTask(ArrayList<CollinearOverlap>[] overlapsByPolygon, ArrayList<int[]> clusters, int startIndex, int endIndex){
+			this.overlapsByPolygon = overlapsByPolygon;
+			this.clusters = clusters;
+			this.startIndex = startIndex;
+			this.endIndex = endIndex;
+		}
+
+		protected void compute(){
+			if (endIndex - startIndex > maxClustersPerTask){
+				int midIndex = (startIndex + endIndex) >>> 1;
+				invokeAll(new FixTask(overlapsByPolygon, clusters, startIndex, midIndex), new FixTask(overlapsByPolygon, clusters, midIndex, endIndex));
+				return;
+			}
+			PointShuffler pointShuffler = new PointShuffler(collinearOverlapChecker.getPointMoveDist(), maxNumShuffleTries);
+			ArrayList<CollinearOverlap> remainingOverlaps = new ArrayList<CollinearOverlap>();
+			for (int i = startIndex; i < endIndex; i++){
+				int[] cluster = clusters.get(i);
+				for (int j = 0; j < cluster.length; j++){
+					int polygonIndex = cluster[j];
+					ArrayList<CollinearOverlap> collinearOverlaps = overlapsByPolygon[polygonIndex];
+					// the points of the earlier polygons in the cluster may have
+					// been moved off this polygon's edges already.
+					remainingOverlaps.clear();
+					for (int k = 0; k < collinearOverlaps.size(); k++){
+						CollinearOverlap co = collinearOverlaps.get(k);
+						Vector2f p = co.getPolygon().getPoint(co.getPointIndex());
+						Vector2f pPlus = co.getPolygon().getPoint(co.getNextPointIndex());
+						if (isCollinearOverlap(p, pPlus, p.distance(pPlus), co.getPolygon2().getPoint(co.getPoint2Index()))){
+							remainingOverlaps.add(co);
+						}
+					}
+					pointShuffler.rand.setSeed(seed + polygonIndex);
+					for (int k = 0; k < remainingOverlaps.size(); k++){
+						CollinearOverlap co = remainingOverlaps.get(k);
+						KPolygon polygon = co.getPolygon();
+						// the point is moved across the edge so that the edge turns
+						// off of the other polygon's point.
+						pointShuffler.shufflePointOffEdge(polygon, co.getPointIndex(), co.getNextPointIndex());
+						// Turning the edge about its far end barely moves it near
+						// that end, so if the other polygon's point is there then
+						// the far end is moved too.
+						Vector2f p = polygon.getPoint(co.getPointIndex());
+						Vector2f pPlus = polygon.getPoint(co.getNextPointIndex());
+						if (isCollinearOverlap(p, pPlus, p.distance(pPlus), co.getPolygon2().getPoint(co.getPoint2Index()))){
+							pointShuffler.shufflePointOffEdge(polygon, co.getNextPointIndex(), co.getPointIndex());
+						}
+					}
+				}
+			}
+		}
+	}
+}
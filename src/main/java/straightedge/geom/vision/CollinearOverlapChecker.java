@@ -68,7 +68,7 @@ public class CollinearOverlapChecker {
 		ArrayList<Vector2f> points = polygon.getPoints();
 		for (int i = 0; i < points.size(); i++){
 			Vector2f p = points.get(i);
-			int iPlus = (i+1 >= points.size()-1 ? 0 : i+1);
+			int iPlus = (i+1 >= points.size() ? 0 : i+1);
 			Vector2f pPlus = points.get(iPlus);
 			double pToPPlusDist = p.distance(pPlus);
 			for (int j = 0; j < polygons.size(); j++){
@@ -95,33 +95,20 @@ public class CollinearOverlapChecker {
 		return collinearOverlaps;
 	}
 	/**
-	 * * Calls getCollinearOverlaps() on each polygon in allPolygons with all other polygons.
+	 * Finds the collinear overlaps of each polygon in allPolygons with all other polygons.
 	 * Randomly moves the offending polygon points by pointMoveDist so that there
 	 * are no collinear overlaps. Note that this will change the center,
 	 * circularBound and area of any polygons which have their points moved.
 	 *
+	 * The overlaps are found using a BulkCollinearOverlapChecker's point grid
+	 * rather than by testing every pair of polygons, but the points are moved
+	 * one polygon after another in the same order as the all-pairs search.
+	 * The PointShuffler is seeded the same each time, so the result is too.
+	 *
 	 * @param allPolygons
 	 */
 	public void fixCollinearOverlaps(ArrayList<KPolygon> allPolygons){
-		PointShuffler pointShuffler = new PointShuffler();
-		for (int g = 0; g < allPolygons.size(); g++){
-			ArrayList<KPolygon> otherPolys = new ArrayList<KPolygon>();
-			for (int h = 0; h < allPolygons.size(); h++){
-				if (h == g){
-					continue;
-				}
-				otherPolys.add(allPolygons.get(h));
-			}
-			CollinearOverlapChecker coc = new CollinearOverlapChecker();
-			ArrayList<CollinearOverlap> collinearOverlaps = coc.getCollinearOverlaps(allPolygons.get(g), otherPolys);
-			for (int i = 0; i < collinearOverlaps.size(); i++){
-				CollinearOverlap co = collinearOverlaps.get(i);
-				KPolygon poly = co.getPolygon();
-				assert poly.isValidNoLineIntersections() == true;
-				pointShuffler.shufflePoint(co.getPolygon(), co.getPointIndex());
-				assert poly.isValidNoLineIntersections() == true;
-			}
-		}
+		new BulkCollinearOverlapChecker(this).fixCollinearOverlapsInOrder(allPolygons);
 	}
 
 	public double getMinDistDifference() {
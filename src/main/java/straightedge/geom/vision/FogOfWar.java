@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Keeps track of which cells of a grid are visible to a team this tick and
+ * which have ever been seen (explored), for fog-of-war.
+ *
+ * The cells are packed 64 to a long, row by row, with row 0 at botLeft.y
+ * and column 0 at botLeft.x like TileArray, so the grid can be lined up with
+ * the TileArray of occluders by giving a whole number of cells per tile.
+ *
+ * Each tick, call beginTick, then add the visiblePolygons of each of the
+ * team's observers, then call endTick which returns rectangles covering the
+ * cells that became visible or stopped being visible. Only those cells
+ * need to be sent to clients. A cell is visible if its center is in any of
+ * the polygons, using the same test as KPolygon.contains. The polygons are
+ * filled a row at a time by a PolygonScanner so only the cells within each
+ * polygon's bounds are looked at.
+ *
+ * @author Keith Woodward
+ */
+public class FogOfWar {
+	public Vector2f botLeft;
+	public float cellWidthAndHeight;
+	public int numRows;
+	public int numCols;
+	public int numWordsPerRow;
+
+	public long[] visible;
+	public long[] lastVisible;
+	public long[] explored;
+	// The rows and words of visible and lastVisible that may have bits set.
+	public Bounds visibleBounds = new Bounds();
+	public Bounds lastVisibleBounds = new Bounds();
+	protected Bounds dirtyBounds = new Bounds();
+
+	// The dirty rectangles are found in blocks of this many rows by 64 columns.
+	public int dirtyBlockNumRows = 8;
+	public ArrayList<CellRect> dirtyRects = new ArrayList<CellRect>();
+	protected ArrayList<CellRect> cellRectPool = new ArrayList<CellRect>();
+
+	protected PolygonScanner polygonScanner;
+	protected PolygonScanner.SpanHandler visibleSpanHandler = new PolygonScanner.SpanHandler(){
+		public void addSpan(int row, int startCol, int endCol){
+			setRange(row, startCol, endCol);
+		}
+	};
+
+	public FogOfWar(Vector2f botLeft, float cellWidthAndHeight, int numRows, int numCols){
+		this.botLeft = botLeft.clone();
+		this.cellWidthAndHeight = cellWidthAndHeight;
+		this.numRows = numRows;
+		this.numCols = numCols;
+		numWordsPerRow = (numCols + 63) >>> 6;
+		visible = new long[numRows*numWordsPerRow];
+		lastVisible = new long[numRows*numWordsPerRow];
+		explored = new long[numRows*numWordsPerRow];
+		polygonScanner = new PolygonScanner(this.botLeft, cellWidthAndHeight, numRows, numCols);
+	}
+
+	/**
+	 * Makes a grid covering the tileArray with cellsPerTile by cellsPerTile cells in each tile.
+	 */
+	public FogOfWar(TileArray<?> tileArray, int cellsPerTile){
+		this(tileArray.getBotLeft(), tileArray.getTileWidthAndHeight()/cellsPerTile, tileArray.getNumRows()*cellsPerTile, tileArray.getNumCols()*cellsPerTile);
+	}
+
+	public FogOfWar(TileArrayIntersections<?> tileArray, int cellsPerTile){
+		this(tileArray.getBotLeft(), (float)(tileArray.getTileWidthAndHeight()/cellsPerTile), tileArray.getNumRows()*cellsPerTile, tileArray.getNumCols()*cellsPerTile);
+	}
+
+	/**
+	 * Starts a new tick, so nothing is visible until polygons are added.
+	 */
+	public void beginTick(){
+		long[] temp = lastVisible;
+		lastVisible = visible;
+		visible = temp;
+		Bounds tempBounds = lastVisibleBounds;
+		lastVisibleBounds = visibleBounds;
+		visibleBounds = tempBounds;
+		// visible now has the tick before last in it.
+		if (visibleBounds.isEmpty() == false){
+			for (int row = visibleBounds.minRow; row <= visibleBounds.maxRow; row++){
+				int rowStart = row*numWordsPerRow;
+				Arrays.fill(visible, rowStart + visibleBounds.minWord, rowStart + visibleBounds.maxWord + 1, 0L);
+			}
+		}
+		visibleBounds.clear();
+	}
+
+	public void addVisionDatas(List<? extends VisionData> visionDatas){
+		for (int i = 0; i < visionDatas.size(); i++){
+			addVisionData(visionDatas.get(i));
+		}
+	}
+
+	public void addVisionData(VisionData visionData){
+		if (visionData.getVisiblePolygon() != null){
+			addVisiblePolygon(visionData.getVisiblePolygon());
+		}
+	}
+
+	/**
+	 * Marks the cells with centers inside the polygon as visible and explored.
+	 */
+	public void addVisiblePolygon(KPolygon polygon){
+		polygonScanner.scan(polygon, visibleSpanHandler);
+	}
+
+	protected void setRange(int row, int startCol, int endCol){
+		int rowStart = row*numWordsPerRow;
+		int startWord = startCol >>> 6;
+		int endWord = endCol >>> 6;
+		long startMask = -1L << (startCol & 63);
+		long endMask = -1L >>> (63 - (endCol & 63));
+		for (int w = startWord; w <= endWord; w++){
+			long mask = -1L;
+			if (w == startWord){
+				mask &= startMask;
+			}
+			if (w == endWord){
+				mask &= endMask;
+			}
+			visible[rowStart + w] |= mask;
+			explored[rowStart + w] |= mask;
+		}
+		visibleBounds.add(row, startWord, endWord);
+	}
+
+	/**
+	 * Finishes the tick and returns rectangles covering every cell whose
+	 * visibility changed since the last tick, which includes the cells that
+	 * were explored for the first time. The rectangles are re-used by the
+	 * next call.
+	 */
+	public ArrayList<CellRect> endTick(){
+		for (int i = 0; i < dirtyRects.size(); i++){
+			cellRectPool.add(dirtyRects.get(i));
+		}
+		dirtyRects.clear();
+		Bounds bounds = dirtyBounds;
+		bounds.clear();
+		bounds.add(visibleBounds);
+		bounds.add(lastVisibleBounds);
+		if (bounds.isEmpty()){
+			return dirtyRects;
+		}
+		int firstBlockRow = bounds.minRow - (bounds.minRow % dirtyBlockNumRows);
+		for (int blockRow = firstBlockRow; blockRow <= bounds.maxRow; blockRow += dirtyBlockNumRows){
+			int blockEndRow = Math.min(Math.min(numRows - 1, bounds.maxRow), blockRow + dirtyBlockNumRows - 1);
+			int blockStartRow = Math.max(blockRow, bounds.minRow);
+			for (int w = bounds.minWord; w <= bounds.maxWord; w++){
+				long colMask = 0;
+				int minChangedRow = -1;
+				int maxChangedRow = -1;
+				for (int row = blockStartRow; row <= blockEndRow; row++){
+					int index = row*numWordsPerRow + w;
+					long changed = visible[index] ^ lastVisible[index];
+					if (changed != 0){
+						colMask |= changed;
+						if (minChangedRow == -1){
+							minChangedRow = row;
+						}
+						maxChangedRow = row;
+					}
+				}
+				if (colMask != 0){
+					CellRect rect = obtainCellRect();
+					rect.minRow = minChangedRow;
+					rect.maxRow = maxChangedRow;
+					rect.minCol = (w << 6) + Long.numberOfTrailingZeros(colMask);
+					rect.maxCol = (w << 6) + 63 - Long.numberOfLeadingZeros(colMask);
+					dirtyRects.add(rect);
+				}
+			}
+		}
+		return dirtyRects;
+	}
+
+	protected CellRect obtainCellRect(){
+		if (cellRectPool.isEmpty()){
+			return new CellRect();
+		}
+		return cellRectPool.remove(cellRectPool.size() - 1);
+	}
+
+	/**
+	 * Forgets everything that has been explored, but not what's visible this tick.
+	 */
+	public void clearExplored(){
+		System.arraycopy(visible, 0, explored, 0, explored.length);
+	}
+
+	public boolean isVisible(int row, int col){
+		return (visible[row*numWordsPerRow + (col >>> 6)] & (1L << (col & 63))) != 0;
+	}
+
+	public boolean isExplored(int row, int col){
+		return (explored[row*numWordsPerRow + (col >>> 6)] & (1L << (col & 63))) != 0;
+	}
+
+	public boolean wasVisibleLastTick(int row, int col){
+		return (lastVisible[row*numWordsPerRow + (col >>> 6)] & (1L << (col & 63))) != 0;
+	}
+
+	/**
+	 * Returns true if the cell containing the point is visible, or false if the point is outside the grid.
+	 */
+	public boolean isVisible(float x, float y){
+		int row = getRow(y);
+		int col = getCol(x);
+		return row != -1 && col != -1 && isVisible(row, col);
+	}
+
+	public boolean isExplored(float x, float y){
+		int row = getRow(y);
+		int col = getCol(x);
+		return row != -1 && col != -1 && isExplored(row, col);
+	}
+
+	/**
+	 * Returns the row containing y, or -1 if it's outside the grid.
+	 */
+	public int getRow(float y){
+		int row = (int)Math.floor((y - botLeft.y)/cellWidthAndHeight);
+		return (row < 0 || row >= numRows ? -1 : row);
+	}
+
+	/**
+	 * Returns the column containing x, or -1 if it's outside the grid.
+	 */
+	public int getCol(float x){
+		int col = (int)Math.floor((x - botLeft.x)/cellWidthAndHeight);
+		return (col < 0 || col >= numCols ? -1 : col);
+	}
+
+	public double getCellCenterX(int col){
+		return botLeft.x + (col + 0.5)*cellWidthAndHeight;
+	}
+
+	public double getCellCenterY(int row){
+		return botLeft.y + (row + 0.5)*cellWidthAndHeight;
+	}
+
+	public Vector2f getBotLeft() {
+		return botLeft;
+	}
+
+	public float getCellWidthAndHeight() {
+		return cellWidthAndHeight;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+	public long[] getVisible() {
+		return visible;
+	}
+
+	public long[] getExplored() {
+		return explored;
+	}
+
+	public ArrayList<CellRect> getDirtyRects() {
+		return dirtyRects;
+	}
+
+	/**
+	 * A rectangle of cells, from minRow to maxRow and minCol to maxCol inclusive.
+	 */
+	public static class CellRect{
+		public int minRow;
+		public int minCol;
+		public int maxRow;
+		public int maxCol;
+
+		public boolean contains(int row, int col){
+			return row >= minRow && row <= maxRow && col >= minCol && col <= maxCol;
+		}
+
+		public int getNumCells(){
+			return (maxRow - minRow + 1)*(maxCol - minCol + 1);
+		}
+
+		public String toString(){
+			return super.toString()+", minRow == "+minRow+", minCol == "+minCol+", maxRow == "+maxRow+", maxCol == "+maxCol;
+		}
+	}
+
+	/**
+	 * The rows and words of a bitset that may have bits set.
+	 */
+	public static class Bounds{
+		public int minRow;
+		public int maxRow;
+		public int minWord;
+		public int maxWord;
+
+		public Bounds(){
+			clear();
+		}
+
+		public void clear(){
+			minRow = Integer.MAX_VALUE;
+			maxRow = -1;
+			minWord = Integer.MAX_VALUE;
+			maxWord = -1;
+		}
+
+		public boolean isEmpty(){
+			return maxRow == -1;
+		}
+
+		public void add(int row, int startWord, int endWord){
+			minRow = Math.min(minRow, row);
+			maxRow = Math.max(maxRow, row);
+			minWord = Math.min(minWord, startWord);
+			maxWord = Math.max(maxWord, endWord);
+		}
+
+		public void add(Bounds bounds){
+			if (bounds.isEmpty() == false){
+				add(bounds.minRow, bounds.minWord, bounds.maxWord);
+				add(bounds.maxRow, bounds.minWord, bounds.maxWord);
+			}
+		}
+	}
+}
@@ -0,0 +1,1140 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * A VisionFinder that re-uses the last result of each VisionData when the eye
+ * has only moved a little, rather than calculating everything again.
+ *
+ * After a full calc the anchors are remembered in the VisionData's
+ * IncrementalVisionState. Anchors are the visiblePoints that aren't shadows,
+ * along with the edge that each shadow falls on. The next time, the eye's
+ * movement is checked for anything that could change which points are visible
+ * or the order that they're in:
+ * - two neighbouring anchors lining up with the eye,
+ * - an edge of a visible point turning to face away from the eye or towards it,
+ * - a shadow sliding off the end of the edge that it falls on,
+ * - an occluder edge or boundaryPolygon point moving into the area swept by a shadow,
+ * - an occluder point crossing a visible part of the boundaryPolygon,
+ * - or a visible boundaryPolygon point crossing an occluder edge.
+ * If none of those happen then the visiblePoints are the same, so only the
+ * boundaryPolygon points, the boundary intersections and the shadows are
+ * moved, which gives the same visiblePolygon that VisionFinder would have.
+ * Otherwise, or if the occluders or the boundaryPolygon's shape changed,
+ * there's a full calc.
+ *
+ * The numbers of hits and misses are counted so that maxMoveDist can be tuned.
+ * This class is not thread-safe, but the state is kept in each VisionData so
+ * one IncrementalVisionFinder can be used for many eyes.
+ *
+ * @author Keith Woodward
+ */
+public class IncrementalVisionFinder extends VisionFinder {
+	// Eye movements longer than this always get a full calc. The fixed
+	// occluders are found within this distance beyond the boundaryPolygon
+	// so that the ones near the last eye position are included too.
+	public double maxMoveDist = 10;
+	// How far the boundaryPolygon's points can move relative to the eye
+	// (from rounding when it's translated) and still be the same shape.
+	public double boundaryTolerance = 0.001;
+	public long numHits;
+	public long numMisses;
+
+	static final double CROSS_EPSILON = 1e-6;
+	static final double HULL_TOLERANCE = 1e-4;
+
+	// The circle that the fixed occluders were found within in this calc, if any.
+	protected Vector2f queryCenter = new Vector2f();
+	protected double queryRadius = -1;
+	// The moving occluders registered with the TileArrayIntersections, which
+	// are passed on as fixed occluders but need to be checked for movement.
+	protected ArrayList<Occluder> indexedMovingOccludersWithin = new ArrayList<Occluder>();
+	protected ArrayList<Occluder> checkedMovingOccluders = new ArrayList<Occluder>();
+
+	// scratch used while checking and reprojecting.
+	protected double[] ptsX = new double[6];
+	protected double[] ptsY = new double[6];
+	protected double[] hullX = new double[7];
+	protected double[] hullY = new double[7];
+	protected int hullSize;
+	protected double hullMinX;
+	protected double hullMinY;
+	protected double hullMaxX;
+	protected double hullMaxY;
+	protected int[] anchorIndexes = new int[0];
+	protected double[] itemX0 = new double[0];
+	protected double[] itemY0 = new double[0];
+	protected double[] itemX1 = new double[0];
+	protected double[] itemY1 = new double[0];
+	protected boolean[] itemOnBoundary = new boolean[0];
+	protected double[] annulusPointsX = new double[0];
+	protected double[] annulusPointsY = new double[0];
+	protected int numAnnulusPoints;
+	protected ArrayList<IncrementalVisionState.Anchor> reprojectedAnchors = new ArrayList<IncrementalVisionState.Anchor>();
+
+	public IncrementalVisionFinder(){
+	}
+
+	public IncrementalVisionFinder(double maxMoveDist){
+		this.maxMoveDist = maxMoveDist;
+	}
+
+	public VisionData calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		KPolygon boundaryPolygon = cache.getBoundaryPolygon();
+		Vector2f center = boundaryPolygon.getCenter();
+		double radius = boundaryPolygon.getRadius() + maxMoveDist;
+		fixedOccludersWithin.clear();
+		fixedOccludersIntersectionPointsWithin.clear();
+		fixedOccludersTileArrayIntersections.getAllWithin(center.x, center.y, radius, fixedOccludersWithin);
+		fixedOccludersTileArrayIntersections.getMovingOccludersWithin(center.x, center.y, radius, indexedMovingOccludersWithin);
+		fixedOccludersWithin.addAll(indexedMovingOccludersWithin);
+		fixedOccludersTileArrayIntersections.getIntersectionsWithinAtLeast(center, radius, fixedOccludersIntersectionPointsWithin);
+		queryCenter.set(center);
+		queryRadius = radius;
+		calc(cache, fixedOccludersWithin, fixedOccludersIntersectionPointsWithin, movingOccluders);
+		queryRadius = -1;
+		indexedMovingOccludersWithin.clear();
+		return cache;
+	}
+
+	public VisionData calc(VisionData cache, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders){
+		IncrementalVisionState state = cache.incrementalState;
+		if (state == null){
+			state = new IncrementalVisionState();
+			cache.incrementalState = state;
+		}
+		checkedMovingOccluders.clear();
+		checkedMovingOccluders.addAll(movingOccluders);
+		checkedMovingOccluders.addAll(indexedMovingOccludersWithin);
+		if (state.valid && reproject(cache, state, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders)){
+			numHits++;
+			return cache;
+		}
+		numMisses++;
+		super.calc(cache, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders);
+		record(cache, state, fixedOccluders, checkedMovingOccluders);
+		return cache;
+	}
+
+	/**
+	 * Remembers the result of a full calc in the state.
+	 */
+	protected void record(VisionData cache, IncrementalVisionState state, List<? extends Occluder> fixedOccluders, List<? extends Occluder> movingOccluders){
+		state.reset();
+		ArrayList<VisiblePoint> visiblePoints = cache.visiblePoints;
+		if (visiblePoints == null || cache.visiblePolygon == null){
+			return;
+		}
+		ArrayList<Vector2f> boundaryPoints = cache.boundaryPolygon.getPoints();
+		recordEyeAndBoundary(cache, state);
+		state.queryCenter.set(queryCenter);
+		state.queryRadius = queryRadius;
+		recordFixedOccluders(state, fixedOccluders);
+		int numCoords = 0;
+		for (int i = 0; i < movingOccluders.size(); i++){
+			numCoords += movingOccluders.get(i).getPolygon().getPoints().size()*2;
+		}
+		if (state.movingOccluderCoords.length < numCoords){
+			state.movingOccluderCoords = new float[numCoords];
+		}
+		int c = 0;
+		for (int i = 0; i < movingOccluders.size(); i++){
+			Occluder occluder = movingOccluders.get(i);
+			state.movingOccluders.add(occluder);
+			ArrayList<Vector2f> points = occluder.getPolygon().getPoints();
+			for (int j = 0; j < points.size(); j++){
+				state.movingOccluderCoords[c] = points.get(j).x;
+				state.movingOccluderCoords[c+1] = points.get(j).y;
+				c += 2;
+			}
+		}
+		state.numMovingOccluderCoords = c;
+
+		if (anchorIndexes.length < visiblePoints.size()){
+			anchorIndexes = new int[visiblePoints.size()*2];
+		}
+		for (int k = 0; k < visiblePoints.size(); k++){
+			VisiblePoint vp = visiblePoints.get(k);
+			int type = vp.getType();
+			if (type == VisiblePoint.SHADOW_ON_OCCLUDER || type == VisiblePoint.SHADOW_ON_BOUNDARY){
+				anchorIndexes[k] = -1;
+				continue;
+			}
+			anchorIndexes[k] = state.numAnchors;
+			IncrementalVisionState.Anchor anchor = state.obtainAnchor();
+			anchor.visiblePoint = vp;
+			anchor.x0 = vp.getPoint().x;
+			anchor.y0 = vp.getPoint().y;
+			if (type == VisiblePoint.BOUNDARY){
+				for (int i = 0; i < boundaryPoints.size(); i++){
+					if (boundaryPoints.get(i) == vp.getPoint()){
+						anchor.boundaryIndex = i;
+						break;
+					}
+				}
+			}else if (type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION){
+				anchor.boundaryIndex = findBoundaryEdgeIndex(boundaryPoints, (VPOccluderBoundaryIntersection)vp);
+			}
+			if (anchor.boundaryIndex == -1 && (type == VisiblePoint.BOUNDARY || type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION)){
+				return;
+			}
+		}
+		if (state.numAnchors < 3){
+			return;
+		}
+		for (int k = 0; k < visiblePoints.size(); k++){
+			if (anchorIndexes[k] != -1){
+				continue;
+			}
+			VisiblePoint vp = visiblePoints.get(k);
+			VPOccluder castingOccluderPoint;
+			Occluder shadowOccluder = null;
+			int shadowEdgeIndex;
+			if (vp.getType() == VisiblePoint.SHADOW_ON_OCCLUDER){
+				VPShadowOnOccluder shadow = (VPShadowOnOccluder)vp;
+				castingOccluderPoint = shadow.getCastingOccluderPoint();
+				shadowOccluder = shadow.getOccluder();
+				shadowEdgeIndex = shadow.getEdgeIndex();
+			}else{
+				VPShadowOnBoundary shadow = (VPShadowOnBoundary)vp;
+				castingOccluderPoint = shadow.getCastingOccluderPoint();
+				shadowEdgeIndex = shadow.getEdgeIndex();
+			}
+			int kMinus = (k-1 < 0 ? visiblePoints.size()-1 : k-1);
+			int kPlus = (k+1 >= visiblePoints.size() ? 0 : k+1);
+			IncrementalVisionState.Anchor anchor;
+			if (visiblePoints.get(kMinus) == castingOccluderPoint){
+				anchor = state.getAnchor(anchorIndexes[kMinus]);
+				anchor.shadowAfter = true;
+			}else if (visiblePoints.get(kPlus) == castingOccluderPoint){
+				anchor = state.getAnchor(anchorIndexes[kPlus]);
+				anchor.shadowAfter = false;
+			}else{
+				return;
+			}
+			anchor.shadowPoint = vp;
+			anchor.shadowOccluder = shadowOccluder;
+			anchor.shadowEdgeIndex = shadowEdgeIndex;
+			anchor.shadowX0 = vp.getPoint().x;
+			anchor.shadowY0 = vp.getPoint().y;
+		}
+		state.valid = true;
+	}
+
+	protected void recordEyeAndBoundary(VisionData cache, IncrementalVisionState state){
+		Vector2f eye = cache.eye;
+		ArrayList<Vector2f> boundaryPoints = cache.boundaryPolygon.getPoints();
+		state.eye.set(eye);
+		if (state.boundaryRelX.length < boundaryPoints.size()){
+			state.boundaryRelX = new float[boundaryPoints.size()];
+			state.boundaryRelY = new float[boundaryPoints.size()];
+		}
+		state.numBoundaryPoints = boundaryPoints.size();
+		for (int i = 0; i < boundaryPoints.size(); i++){
+			state.boundaryRelX[i] = boundaryPoints.get(i).x - eye.x;
+			state.boundaryRelY[i] = boundaryPoints.get(i).y - eye.y;
+		}
+		state.minEyeToBoundaryPolygonPointDist = cache.minEyeToBoundaryPolygonPointDist;
+		state.maxEyeToBoundaryPolygonPointDist = cache.maxEyeToBoundaryPolygonPointDist;
+	}
+
+	protected void recordFixedOccluders(IncrementalVisionState state, List<? extends Occluder> fixedOccluders){
+		state.fixedOccluders.clear();
+		state.fixedOccluderSet.clear();
+		for (int i = 0; i < fixedOccluders.size(); i++){
+			state.fixedOccluders.add(fixedOccluders.get(i));
+			state.fixedOccluderSet.add(fixedOccluders.get(i));
+		}
+	}
+
+	protected int findBoundaryEdgeIndex(ArrayList<Vector2f> boundaryPoints, VPOccluderBoundaryIntersection vp){
+		ArrayList<Vector2f> points = vp.getPolygon().getPoints();
+		Vector2f p3 = points.get(vp.getPolygonPointNum());
+		Vector2f p4 = points.get(vp.getPolygonPointNum()+1 >= points.size() ? 0 : vp.getPolygonPointNum()+1);
+		for (int m = 0; m < boundaryPoints.size(); m++){
+			Vector2f p = boundaryPoints.get(m);
+			Vector2f p2 = boundaryPoints.get(m+1 >= boundaryPoints.size() ? 0 : m+1);
+			if (Vector2fUtils.linesIntersect(p, p2, p3, p4) && Vector2fUtils.getLineLineIntersection(p, p2, p3, p4, intersection) != null){
+				if (intersection.x == vp.getPoint().x && intersection.y == vp.getPoint().y){
+					return m;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Tries to move the last visiblePoints to suit the new eye.
+	 * @return false if a full calc is needed.
+	 */
+	protected boolean reproject(VisionData cache, IncrementalVisionState state, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders){
+		Vector2f eye = cache.eye;
+		KPolygon boundaryPolygon = cache.boundaryPolygon;
+		ArrayList<Vector2f> boundaryPoints = boundaryPolygon.getPoints();
+		double dx = eye.x - state.eye.x;
+		double dy = eye.y - state.eye.y;
+		double moveDist = Math.sqrt(dx*dx + dy*dy);
+		if (moveDist > maxMoveDist || boundaryPoints.size() != state.numBoundaryPoints){
+			return false;
+		}
+		boolean moved = (dx != 0 || dy != 0);
+		for (int i = 0; i < boundaryPoints.size(); i++){
+			float relX = boundaryPoints.get(i).x - eye.x;
+			float relY = boundaryPoints.get(i).y - eye.y;
+			if (relX != state.boundaryRelX[i] || relY != state.boundaryRelY[i]){
+				moved = true;
+				if (Math.abs(relX - state.boundaryRelX[i]) > boundaryTolerance || Math.abs(relY - state.boundaryRelY[i]) > boundaryTolerance){
+					return false;
+				}
+			}
+		}
+		if (hasSameOccluders(state, fixedOccluders, checkedMovingOccluders) == false){
+			return false;
+		}
+
+		// work out where the anchors and shadows are now.
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			VisiblePoint vp = anchor.visiblePoint;
+			int type = vp.getType();
+			if (type == VisiblePoint.BOUNDARY){
+				Vector2f p = boundaryPoints.get(anchor.boundaryIndex);
+				anchor.x1 = p.x;
+				anchor.y1 = p.y;
+			}else if (type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION){
+				VPOccluderBoundaryIntersection boundaryIntersection = (VPOccluderBoundaryIntersection)vp;
+				ArrayList<Vector2f> points = boundaryIntersection.getPolygon().getPoints();
+				int num = boundaryIntersection.getPolygonPointNum();
+				Vector2f p = boundaryPoints.get(anchor.boundaryIndex);
+				Vector2f p2 = boundaryPoints.get(anchor.boundaryIndex+1 >= boundaryPoints.size() ? 0 : anchor.boundaryIndex+1);
+				Vector2f p3 = points.get(num);
+				Vector2f p4 = points.get(num+1 >= points.size() ? 0 : num+1);
+				if (Vector2fUtils.linesIntersect(p, p2, p3, p4) == false || Vector2fUtils.getLineLineIntersection(p, p2, p3, p4, intersection) == null){
+					return false;
+				}
+				anchor.x1 = intersection.x;
+				anchor.y1 = intersection.y;
+			}else{
+				anchor.x1 = vp.getPoint().x;
+				anchor.y1 = vp.getPoint().y;
+			}
+			if (anchor.hasShadow()){
+				// cast the ray the same way as VisionFinder.calc so the shadow points match.
+				Vector2f p = vp.getPoint();
+				double pToEyeDist = p.distance(eye);
+				Vector2fUtils.createPointToward(eye, p, pToEyeDist + boundaryPolygon.getRadius()*2, endOfRayPoint);
+				ArrayList<Vector2f> points = (anchor.shadowOccluder != null ? anchor.shadowOccluder.getPolygon().getPoints() : boundaryPoints);
+				Vector2f p3 = points.get(anchor.shadowEdgeIndex);
+				Vector2f p4 = points.get(anchor.shadowEdgeIndex+1 >= points.size() ? 0 : anchor.shadowEdgeIndex+1);
+				if (Vector2fUtils.linesIntersect(p, endOfRayPoint, p3, p4) == false || Vector2fUtils.getLineLineIntersection(p, endOfRayPoint, p3, p4, intersection) == null){
+					return false;
+				}
+				anchor.shadowX1 = intersection.x;
+				anchor.shadowY1 = intersection.y;
+			}
+		}
+
+		if (moved){
+			if (checkOrderAndFacing(cache, state) == false){
+				return false;
+			}
+			if (checkShadows(cache, state, fixedOccluders, movingOccluders) == false){
+				return false;
+			}
+			if (checkBoundary(cache, state, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders) == false){
+				return false;
+			}
+		}
+
+		// Nothing changed order so the anchors can be moved and re-sorted.
+		VisiblePointPool pool = (cache.reuseResults ? cache.visiblePointPool : null);
+		int firstIndex = 0;
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			moveAnchor(anchor, boundaryPoints, pool);
+			anchor.visiblePoint.preSortCalcs(eye);
+			if (i > 0 && anchor.visiblePoint.compareTo(state.getAnchor(firstIndex).visiblePoint) < 0){
+				firstIndex = i;
+			}
+		}
+		for (int i = 1; i < state.numAnchors; i++){
+			VisiblePoint vp = state.getAnchor((firstIndex + i - 1) % state.numAnchors).visiblePoint;
+			VisiblePoint vp2 = state.getAnchor((firstIndex + i) % state.numAnchors).visiblePoint;
+			if (vp.compareTo(vp2) >= 0){
+				// shouldn't happen, but if it does then the full calc will sort it out.
+				return false;
+			}
+		}
+		ArrayList<VisiblePoint> visiblePoints;
+		if (pool != null){
+			visiblePoints = pool.visiblePoints;
+			visiblePoints.clear();
+		}else{
+			visiblePoints = new ArrayList<VisiblePoint>(boundaryPoints.size());
+		}
+		reprojectedAnchors.clear();
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor((firstIndex + i) % state.numAnchors);
+			visiblePoints.add(anchor.visiblePoint);
+			reprojectedAnchors.add(anchor);
+		}
+		// put the shadows in the same way as VisionFinder.calc.
+		for (int j = 0; j < visiblePoints.size(); j++){
+			int jPlus = (j+1 >= visiblePoints.size() ? 0 : j+1);
+			IncrementalVisionState.Anchor anchor = reprojectedAnchors.get(j);
+			if (anchor != null && anchor.hasShadow()){
+				if (anchor.shadowAfter){
+					visiblePoints.add(jPlus, anchor.shadowPoint);
+					reprojectedAnchors.add(jPlus, null);
+				}else{
+					visiblePoints.add(j, anchor.shadowPoint);
+					reprojectedAnchors.add(j, null);
+				}
+				j++;
+			}
+		}
+		reprojectedAnchors.clear();
+		cache.visiblePoints = visiblePoints;
+		if (pool != null){
+			cache.visiblePolygon = pool.makeVisiblePolygon(visiblePoints);
+		}else{
+			cache.visiblePolygon = createPolygonFromVisiblePoints(visiblePoints);
+		}
+
+		recordEyeAndBoundary(cache, state);
+		if (state.queryRadius >= 0){
+			state.queryCenter.set(queryCenter);
+			state.queryRadius = queryRadius;
+			recordFixedOccluders(state, fixedOccluders);
+		}
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			anchor.x0 = anchor.x1;
+			anchor.y0 = anchor.y1;
+			anchor.shadowX0 = anchor.shadowX1;
+			anchor.shadowY0 = anchor.shadowY1;
+		}
+		return true;
+	}
+
+	/**
+	 * Puts the anchor's VisiblePoint and shadow at their new coordinates,
+	 * re-using them if they're from the VisiblePointPool, otherwise making
+	 * new ones like VisionFinder.calc does.
+	 */
+	protected void moveAnchor(IncrementalVisionState.Anchor anchor, ArrayList<Vector2f> boundaryPoints, VisiblePointPool pool){
+		VisiblePoint vp = anchor.visiblePoint;
+		int type = vp.getType();
+		if (type == VisiblePoint.BOUNDARY){
+			if (pool != null){
+				vp.point = boundaryPoints.get(anchor.boundaryIndex);
+			}else{
+				anchor.visiblePoint = new VPBoundary(boundaryPoints.get(anchor.boundaryIndex));
+			}
+		}else if (type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION){
+			if (pool != null){
+				vp.point.set((float)anchor.x1, (float)anchor.y1);
+			}else{
+				VPOccluderBoundaryIntersection boundaryIntersection = (VPOccluderBoundaryIntersection)vp;
+				anchor.visiblePoint = new VPOccluderBoundaryIntersection(new Vector2f((float)anchor.x1, (float)anchor.y1), boundaryIntersection.getOccluder(), boundaryIntersection.getPolygonPointNum());
+			}
+		}else if (type == VisiblePoint.OCCLUDER){
+			if (pool == null){
+				VPOccluder occluderPoint = (VPOccluder)vp;
+				anchor.visiblePoint = new VPOccluder(occluderPoint.getPoint(), occluderPoint.getOccluder(), occluderPoint.getPolygonPointNum());
+			}
+		}
+		if (anchor.hasShadow()){
+			if (pool != null){
+				anchor.shadowPoint.point.set((float)anchor.shadowX1, (float)anchor.shadowY1);
+			}else if (anchor.shadowOccluder != null){
+				anchor.shadowPoint = new VPShadowOnOccluder(new Vector2f((float)anchor.shadowX1, (float)anchor.shadowY1), anchor.shadowOccluder, anchor.shadowEdgeIndex, (VPOccluder)anchor.visiblePoint);
+			}else{
+				anchor.shadowPoint = new VPShadowOnBoundary(new Vector2f((float)anchor.shadowX1, (float)anchor.shadowY1), anchor.shadowEdgeIndex, (VPOccluder)anchor.visiblePoint);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the moving occluders haven't moved and that no fixed
+	 * occluders have been added or removed near the eye.
+	 */
+	protected boolean hasSameOccluders(IncrementalVisionState state, List<? extends Occluder> fixedOccluders, List<? extends Occluder> movingOccluders){
+		if (movingOccluders.size() != state.movingOccluders.size()){
+			return false;
+		}
+		int c = 0;
+		for (int i = 0; i < movingOccluders.size(); i++){
+			Occluder occluder = movingOccluders.get(i);
+			if (occluder != state.movingOccluders.get(i)){
+				return false;
+			}
+			ArrayList<Vector2f> points = occluder.getPolygon().getPoints();
+			if (c + points.size()*2 > state.movingOccluderCoords.length){
+				return false;
+			}
+			for (int j = 0; j < points.size(); j++){
+				if (points.get(j).x != state.movingOccluderCoords[c] || points.get(j).y != state.movingOccluderCoords[c+1]){
+					return false;
+				}
+				c += 2;
+			}
+		}
+		if (c != state.numMovingOccluderCoords){
+			return false;
+		}
+		if (queryRadius < 0 || state.queryRadius < 0){
+			// the fixed occluders were given as a list so it must be the same list.
+			if (queryRadius >= 0 || state.queryRadius >= 0 || fixedOccluders.size() != state.fixedOccluders.size()){
+				return false;
+			}
+			for (int i = 0; i < fixedOccluders.size(); i++){
+				if (fixedOccluders.get(i) != state.fixedOccluders.get(i)){
+					return false;
+				}
+			}
+			return true;
+		}
+		// An occluder that's new but would have been found last time must have been added,
+		// and an old one that should be found this time but wasn't must have been removed.
+		int numOldFound = 0;
+		for (int i = 0; i < fixedOccluders.size(); i++){
+			Occluder occluder = fixedOccluders.get(i);
+			if (state.fixedOccluderSet.contains(occluder)){
+				numOldFound++;
+			}else if (isWithin(occluder, state.queryCenter, state.queryRadius)){
+				return false;
+			}
+		}
+		int numOldWithin = 0;
+		for (int i = 0; i < state.fixedOccluders.size(); i++){
+			if (isWithin(state.fixedOccluders.get(i), queryCenter, queryRadius)){
+				numOldWithin++;
+			}
+		}
+		return numOldFound == numOldWithin;
+	}
+
+	/**
+	 * The same test that TileArrayIntersections.getAllWithin uses.
+	 */
+	protected boolean isWithin(Occluder occluder, Vector2f center, double radius){
+		KPolygon polygon = occluder.getPolygon();
+		double radiusSumSq = (radius + polygon.getRadius());
+		radiusSumSq *= radiusSumSq;
+		Vector2f polygonCenter = polygon.getCenter();
+		return Vector2fUtils.distanceSq(center.x, center.y, polygonCenter.x, polygonCenter.y) < radiusSumSq;
+	}
+
+	/**
+	 * Checks that neighbouring anchors don't line up with the eye, that the
+	 * edges of the anchors and the edges that shadows fall on keep facing the
+	 * same way, and that the shadows stay on their edges.
+	 */
+	protected boolean checkOrderAndFacing(VisionData cache, IncrementalVisionState state){
+		Vector2f eye0 = state.eye;
+		Vector2f eye = cache.eye;
+		ArrayList<Vector2f> boundaryPoints = cache.boundaryPolygon.getPoints();
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			IncrementalVisionState.Anchor anchor2 = state.getAnchor(i+1 >= state.numAnchors ? 0 : i+1);
+			if (isCrossSignConstant(anchor.x0 - eye0.x, anchor.y0 - eye0.y, anchor.x1 - eye.x, anchor.y1 - eye.y,
+					anchor2.x0 - eye0.x, anchor2.y0 - eye0.y, anchor2.x1 - eye.x, anchor2.y1 - eye.y) == false){
+				return false;
+			}
+			VisiblePoint vp = anchor.visiblePoint;
+			int type = vp.getType();
+			if (type == VisiblePoint.OCCLUDER){
+				VPOccluder occluderPoint = (VPOccluder)vp;
+				ArrayList<Vector2f> points = occluderPoint.getPolygon().getPoints();
+				int num = occluderPoint.getPolygonPointNum();
+				Vector2f p = points.get(num);
+				if (isFacingConstant(p, points.get(num+1 >= points.size() ? 0 : num+1), eye0, eye) == false ||
+						isFacingConstant(p, points.get(num-1 < 0 ? points.size()-1 : num-1), eye0, eye) == false){
+					return false;
+				}
+			}else if (type == VisiblePoint.OCCLUDER_OCCLUDER_INTERSECTION){
+				VPOccluderOccluderIntersection occluderIntersection = (VPOccluderOccluderIntersection)vp;
+				if (isEdgeFacingConstant(occluderIntersection.getPolygon(), occluderIntersection.getPolygonPointNum(), eye0, eye) == false ||
+						isEdgeFacingConstant(occluderIntersection.getPolygon2(), occluderIntersection.getPolygonPointNum2(), eye0, eye) == false){
+					return false;
+				}
+			}else if (type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION){
+				VPOccluderBoundaryIntersection boundaryIntersection = (VPOccluderBoundaryIntersection)vp;
+				if (isEdgeFacingConstant(boundaryIntersection.getPolygon(), boundaryIntersection.getPolygonPointNum(), eye0, eye) == false){
+					return false;
+				}
+			}
+			if (anchor.hasShadow()){
+				Vector2f p = vp.getPoint();
+				if (anchor.shadowOccluder != null){
+					ArrayList<Vector2f> points = anchor.shadowOccluder.getPolygon().getPoints();
+					Vector2f p3 = points.get(anchor.shadowEdgeIndex);
+					Vector2f p4 = points.get(anchor.shadowEdgeIndex+1 >= points.size() ? 0 : anchor.shadowEdgeIndex+1);
+					if (isFacingConstant(p3, p4, eye0, eye) == false || isFacingConstant(p, p3, eye0, eye) == false || isFacingConstant(p, p4, eye0, eye) == false){
+						return false;
+					}
+				}else{
+					int m = anchor.shadowEdgeIndex;
+					int mPlus = (m+1 >= boundaryPoints.size() ? 0 : m+1);
+					if (isCrossSignConstant(p.x - eye0.x, p.y - eye0.y, p.x - eye.x, p.y - eye.y,
+							state.boundaryRelX[m], state.boundaryRelY[m], boundaryPoints.get(m).x - eye.x, boundaryPoints.get(m).y - eye.y) == false ||
+							isCrossSignConstant(p.x - eye0.x, p.y - eye0.y, p.x - eye.x, p.y - eye.y,
+							state.boundaryRelX[mPlus], state.boundaryRelY[mPlus], boundaryPoints.get(mPlus).x - eye.x, boundaryPoints.get(mPlus).y - eye.y) == false){
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	protected boolean isEdgeFacingConstant(KPolygon polygon, int edgeIndex, Vector2f eye0, Vector2f eye){
+		ArrayList<Vector2f> points = polygon.getPoints();
+		return isFacingConstant(points.get(edgeIndex), points.get(edgeIndex+1 >= points.size() ? 0 : edgeIndex+1), eye0, eye);
+	}
+
+	/**
+	 * Returns true if the eye stays on the same side of the line through
+	 * the fixed points p and p2 while moving from eye0 to eye.
+	 */
+	protected boolean isFacingConstant(Vector2f p, Vector2f p2, Vector2f eye0, Vector2f eye){
+		return isCrossSignConstant(p.x - eye0.x, p.y - eye0.y, p.x - eye.x, p.y - eye.y,
+				p2.x - eye0.x, p2.y - eye0.y, p2.x - eye.x, p2.y - eye.y);
+	}
+
+	/**
+	 * Returns true if the cross product of u and v has the same sign and is
+	 * not close to zero for the whole time that u moves in a straight line
+	 * from u0 to u1 and v moves from v0 to v1.
+	 */
+	protected boolean isCrossSignConstant(double ux0, double uy0, double ux1, double uy1, double vx0, double vy0, double vx1, double vy1){
+		double dux = ux1 - ux0;
+		double duy = uy1 - uy0;
+		double dvx = vx1 - vx0;
+		double dvy = vy1 - vy0;
+		// cross(t) = a*t*t + b*t + c
+		double c = ux0*vy0 - uy0*vx0;
+		double b = ux0*dvy - uy0*dvx + dux*vy0 - duy*vx0;
+		double a = dux*dvy - duy*dvx;
+		double minCross = CROSS_EPSILON*(Math.abs(ux0) + Math.abs(uy0) + Math.abs(ux1) + Math.abs(uy1))*(Math.abs(vx0) + Math.abs(vy0) + Math.abs(vx1) + Math.abs(vy1));
+		double sign = (c > 0 ? 1 : -1);
+		if (c*sign <= minCross || (a + b + c)*sign <= minCross){
+			return false;
+		}
+		if (a != 0){
+			double t = -b/(2*a);
+			if (t > 0 && t < 1 && ((a*t + b)*t + c)*sign <= minCross){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that nothing moves into the area swept by each shadow's ray
+	 * between the casting point and the edge that the shadow falls on.
+	 */
+	protected boolean checkShadows(VisionData cache, IncrementalVisionState state, List<? extends Occluder> fixedOccluders, List<? extends Occluder> movingOccluders){
+		Vector2f eye0 = state.eye;
+		Vector2f eye = cache.eye;
+		ArrayList<Vector2f> boundaryPoints = cache.boundaryPolygon.getPoints();
+		int numBoundaryPoints = boundaryPoints.size();
+		double dx = eye.x - eye0.x;
+		double dy = eye.y - eye0.y;
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			if (anchor.hasShadow() == false){
+				continue;
+			}
+			Vector2f p = anchor.visiblePoint.getPoint();
+			if (anchor.shadowOccluder != null){
+				// The boundaryPolygon's edges must not reach the shadow, which
+				// relative to the eye stays within these points.
+				setPoint(0, anchor.shadowX0 - eye0.x, anchor.shadowY0 - eye0.y);
+				setPoint(1, anchor.shadowX1 - eye0.x, anchor.shadowY1 - eye0.y);
+				setPoint(2, anchor.shadowX0 - eye.x, anchor.shadowY0 - eye.y);
+				setPoint(3, anchor.shadowX1 - eye.x, anchor.shadowY1 - eye.y);
+				makeHull(4);
+				for (int m = 0; m < numBoundaryPoints; m++){
+					int mPlus = (m+1 >= numBoundaryPoints ? 0 : m+1);
+					if (segmentIntersectsHull(state.boundaryRelX[m], state.boundaryRelY[m], state.boundaryRelX[mPlus], state.boundaryRelY[mPlus])){
+						return false;
+					}
+				}
+				// The area swept by the shadow's ray.
+				setPoint(0, p.x, p.y);
+				setPoint(1, anchor.shadowX0, anchor.shadowY0);
+				setPoint(2, anchor.shadowX1, anchor.shadowY1);
+				makeHull(3);
+				for (int m = 0; m < numBoundaryPoints; m++){
+					if (segmentIntersectsHull(eye0.x + state.boundaryRelX[m], eye0.y + state.boundaryRelY[m], boundaryPoints.get(m).x, boundaryPoints.get(m).y)){
+						return false;
+					}
+				}
+			}else{
+				// Relative to the eye the boundaryPolygon doesn't move, so check
+				// that its other points stay out of the area swept by the ray.
+				setPoint(0, p.x - eye0.x, p.y - eye0.y);
+				setPoint(1, p.x - eye.x, p.y - eye.y);
+				setPoint(2, anchor.shadowX0 - eye0.x, anchor.shadowY0 - eye0.y);
+				setPoint(3, anchor.shadowX1 - eye.x, anchor.shadowY1 - eye.y);
+				makeHull(4);
+				int m = anchor.shadowEdgeIndex;
+				int mPlus = (m+1 >= numBoundaryPoints ? 0 : m+1);
+				for (int k = 0; k < numBoundaryPoints; k++){
+					if (k != m && k != mPlus && isInHull(state.boundaryRelX[k], state.boundaryRelY[k])){
+						return false;
+					}
+				}
+				// The area swept by the shadow's ray, where the shadow point
+				// moves along the boundaryPolygon's edge and with the eye.
+				setPoint(0, p.x, p.y);
+				setPoint(1, anchor.shadowX0, anchor.shadowY0);
+				setPoint(2, anchor.shadowX1, anchor.shadowY1);
+				setPoint(3, anchor.shadowX0 + dx, anchor.shadowY0 + dy);
+				setPoint(4, anchor.shadowX1 - dx, anchor.shadowY1 - dy);
+				makeHull(5);
+			}
+			if (edgesIntersectHull(fixedOccluders, anchor) || edgesIntersectHull(movingOccluders, anchor)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if any of the occluders' edges touch the current hull,
+	 * other than the edges of the anchor's point and the edge that its
+	 * shadow falls on.
+	 */
+	protected boolean edgesIntersectHull(List<? extends Occluder> occluders, IncrementalVisionState.Anchor anchor){
+		VPOccluder castingPoint = (VPOccluder)anchor.visiblePoint;
+		KPolygon castingPolygon = castingPoint.getPolygon();
+		int castingPointNum = castingPoint.getPolygonPointNum();
+		KPolygon shadowPolygon = (anchor.shadowOccluder != null ? anchor.shadowOccluder.getPolygon() : null);
+		for (int i = 0; i < occluders.size(); i++){
+			KPolygon polygon = occluders.get(i).getPolygon();
+			Vector2f center = polygon.getCenter();
+			double radius = polygon.getRadius();
+			if (center.x + radius < hullMinX || center.x - radius > hullMaxX || center.y + radius < hullMinY || center.y - radius > hullMaxY){
+				continue;
+			}
+			ArrayList<Vector2f> points = polygon.getPoints();
+			for (int m = 0; m < points.size(); m++){
+				int mPlus = (m+1 >= points.size() ? 0 : m+1);
+				if (polygon == castingPolygon && (m == castingPointNum || mPlus == castingPointNum)){
+					continue;
+				}
+				if (polygon == shadowPolygon && m == anchor.shadowEdgeIndex){
+					continue;
+				}
+				Vector2f p = points.get(m);
+				Vector2f p2 = points.get(mPlus);
+				if (segmentIntersectsHull(p.x, p.y, p2.x, p2.y)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks that no occluder points or intersections cross the visible parts
+	 * of the boundaryPolygon, and that the visible boundaryPolygon points don't
+	 * cross any occluder edges.
+	 */
+	protected boolean checkBoundary(VisionData cache, IncrementalVisionState state, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders){
+		Vector2f eye0 = state.eye;
+		Vector2f eye = cache.eye;
+		// list the anchors and shadows in order and relative to the eye.
+		int numItems = 0;
+		int maxItems = state.numAnchors*2;
+		if (itemX0.length < maxItems){
+			itemX0 = new double[maxItems*2];
+			itemY0 = new double[maxItems*2];
+			itemX1 = new double[maxItems*2];
+			itemY1 = new double[maxItems*2];
+			itemOnBoundary = new boolean[maxItems*2];
+		}
+		boolean anyOnBoundary = false;
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			if (anchor.hasShadow() && anchor.shadowAfter == false){
+				numItems = addShadowItem(numItems, anchor, eye0, eye);
+			}
+			int type = anchor.visiblePoint.getType();
+			itemX0[numItems] = anchor.x0 - eye0.x;
+			itemY0[numItems] = anchor.y0 - eye0.y;
+			itemX1[numItems] = anchor.x1 - eye.x;
+			itemY1[numItems] = anchor.y1 - eye.y;
+			itemOnBoundary[numItems] = (type == VisiblePoint.BOUNDARY || type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION);
+			anyOnBoundary |= itemOnBoundary[numItems];
+			numItems++;
+			if (anchor.hasShadow() && anchor.shadowAfter){
+				numItems = addShadowItem(numItems, anchor, eye0, eye);
+			}
+		}
+		double moveDist = eye.distance(eye0);
+		double minDist = Math.min(state.minEyeToBoundaryPolygonPointDist, cache.minEyeToBoundaryPolygonPointDist) - moveDist - boundaryTolerance;
+		double maxDist = Math.max(state.maxEyeToBoundaryPolygonPointDist, cache.maxEyeToBoundaryPolygonPointDist) + moveDist + boundaryTolerance;
+		// the visible occluder points and intersections must stay inside the boundaryPolygon.
+		double minDistSq = (minDist > 0 ? minDist*minDist : 0);
+		int numBoundaryPoints = state.numBoundaryPoints;
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			int type = anchor.visiblePoint.getType();
+			if (type != VisiblePoint.OCCLUDER && type != VisiblePoint.OCCLUDER_OCCLUDER_INTERSECTION){
+				continue;
+			}
+			double x = anchor.x0 - eye0.x;
+			double y = anchor.y0 - eye0.y;
+			if (x*x + y*y < minDistSq){
+				continue;
+			}
+			double x2 = anchor.x1 - eye.x;
+			double y2 = anchor.y1 - eye.y;
+			for (int m = 0; m < numBoundaryPoints; m++){
+				int mPlus = (m+1 >= numBoundaryPoints ? 0 : m+1);
+				if (Vector2fUtils.linesIntersect(x, y, x2, y2, state.boundaryRelX[m], state.boundaryRelY[m], state.boundaryRelX[mPlus], state.boundaryRelY[mPlus])){
+					return false;
+				}
+			}
+		}
+		if (anyOnBoundary == false){
+			return true;
+		}
+		findAnnulusPoints(eye0, minDist, maxDist, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders);
+		double dx = eye.x - eye0.x;
+		double dy = eye.y - eye0.y;
+		for (int k = 0; k < numItems; k++){
+			int kPlus = (k+1 >= numItems ? 0 : k+1);
+			if (itemOnBoundary[k] == false || itemOnBoundary[kPlus] == false){
+				continue;
+			}
+			// relative to the eye, this visible part of the boundaryPolygon stays within these points.
+			setPoint(0, itemX0[k], itemY0[k]);
+			setPoint(1, itemX1[k], itemY1[k]);
+			setPoint(2, itemX0[kPlus], itemY0[kPlus]);
+			setPoint(3, itemX1[kPlus], itemY1[kPlus]);
+			makeHull(4);
+			for (int i = 0; i < numAnnulusPoints; i++){
+				double x = annulusPointsX[i] - eye0.x;
+				double y = annulusPointsY[i] - eye0.y;
+				if (segmentIntersectsHull(x, y, x - dx, y - dy)){
+					return false;
+				}
+			}
+		}
+		// the visible boundaryPolygon points must not cross any occluder edges.
+		for (int i = 0; i < state.numAnchors; i++){
+			IncrementalVisionState.Anchor anchor = state.getAnchor(i);
+			if (anchor.visiblePoint.getType() != VisiblePoint.BOUNDARY){
+				continue;
+			}
+			if (segmentIntersectsEdges(anchor.x0, anchor.y0, anchor.x1, anchor.y1, fixedOccluders) || segmentIntersectsEdges(anchor.x0, anchor.y0, anchor.x1, anchor.y1, movingOccluders)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected int addShadowItem(int numItems, IncrementalVisionState.Anchor anchor, Vector2f eye0, Vector2f eye){
+		itemX0[numItems] = anchor.shadowX0 - eye0.x;
+		itemY0[numItems] = anchor.shadowY0 - eye0.y;
+		itemX1[numItems] = anchor.shadowX1 - eye.x;
+		itemY1[numItems] = anchor.shadowY1 - eye.y;
+		itemOnBoundary[numItems] = (anchor.shadowOccluder == null);
+		return numItems + 1;
+	}
+
+	/**
+	 * Finds the occluder points and the points of intersection between
+	 * occluders that are between minDist and maxDist from the eye.
+	 */
+	protected void findAnnulusPoints(Vector2f eye, double minDist, double maxDist, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders){
+		numAnnulusPoints = 0;
+		double minDistSq = (minDist > 0 ? minDist*minDist : 0);
+		double maxDistSq = maxDist*maxDist;
+		addAnnulusPoints(eye, minDist, maxDist, fixedOccluders);
+		addAnnulusPoints(eye, minDist, maxDist, movingOccluders);
+		for (int i = 0; i < fixedOccludersIntersectionPoints.size(); i++){
+			Vector2f p = fixedOccludersIntersectionPoints.get(i).getPoint();
+			double distSq = eye.distanceSquared(p);
+			if (distSq >= minDistSq && distSq <= maxDistSq){
+				addAnnulusPoint(p.x, p.y);
+			}
+		}
+		// the intersections of the moving occluders aren't stored anywhere so find them again.
+		for (int i = 0; i < movingOccluders.size(); i++){
+			Occluder occluder = movingOccluders.get(i);
+			KPolygon polygon = occluder.getPolygon();
+			if (isInAnnulus(polygon, eye, minDist, maxDist) == false){
+				continue;
+			}
+			ArrayList<Vector2f> points = polygon.getPoints();
+			for (int j = 0; j < points.size(); j++){
+				Vector2f p = points.get(j);
+				Vector2f p2 = points.get(j+1 >= points.size() ? 0 : j+1);
+				for (int k = i+1; k < movingOccluders.size(); k++){
+					addAnnulusIntersections(eye, minDistSq, maxDistSq, p, p2, movingOccluders.get(k).getPolygon());
+				}
+				for (int k = 0; k < fixedOccluders.size(); k++){
+					addAnnulusIntersections(eye, minDistSq, maxDistSq, p, p2, fixedOccluders.get(k).getPolygon());
+				}
+			}
+		}
+	}
+
+	protected void addAnnulusPoints(Vector2f eye, double minDist, double maxDist, List<? extends Occluder> occluders){
+		double minDistSq = (minDist > 0 ? minDist*minDist : 0);
+		double maxDistSq = maxDist*maxDist;
+		for (int i = 0; i < occluders.size(); i++){
+			KPolygon polygon = occluders.get(i).getPolygon();
+			if (isInAnnulus(polygon, eye, minDist, maxDist) == false){
+				continue;
+			}
+			ArrayList<Vector2f> points = polygon.getPoints();
+			for (int j = 0; j < points.size(); j++){
+				Vector2f p = points.get(j);
+				double distSq = eye.distanceSquared(p);
+				if (distSq >= minDistSq && distSq <= maxDistSq){
+					addAnnulusPoint(p.x, p.y);
+				}
+			}
+		}
+	}
+
+	protected void addAnnulusIntersections(Vector2f eye, double minDistSq, double maxDistSq, Vector2f p, Vector2f p2, KPolygon polygon2){
+		if (polygon2.intersectionPossible(p, p2) == false){
+			return;
+		}
+		ArrayList<Vector2f> points = polygon2.getPoints();
+		for (int m = 0; m < points.size(); m++){
+			int mPlus = (m+1 >= points.size() ? 0 : m+1);
+			if (Vector2fUtils.linesIntersect(p, p2, points.get(m), points.get(mPlus)) && Vector2fUtils.getLineLineIntersection(p, p2, points.get(m), points.get(mPlus), intersection) != null){
+				double distSq = eye.distanceSquared(intersection);
+				if (distSq >= minDistSq && distSq <= maxDistSq){
+					addAnnulusPoint(intersection.x, intersection.y);
+				}
+			}
+		}
+	}
+
+	protected boolean isInAnnulus(KPolygon polygon, Vector2f eye, double minDist, double maxDist){
+		double dist = eye.distance(polygon.getCenter());
+		return dist + polygon.getRadius() >= minDist && dist - polygon.getRadius() <= maxDist;
+	}
+
+	protected void addAnnulusPoint(double x, double y){
+		if (numAnnulusPoints >= annulusPointsX.length){
+			int newLength = Math.max(16, annulusPointsX.length*2);
+			annulusPointsX = Arrays.copyOf(annulusPointsX, newLength);
+			annulusPointsY = Arrays.copyOf(annulusPointsY, newLength);
+		}
+		annulusPointsX[numAnnulusPoints] = x;
+		annulusPointsY[numAnnulusPoints] = y;
+		numAnnulusPoints++;
+	}
+
+	protected boolean segmentIntersectsEdges(double x, double y, double x2, double y2, List<? extends Occluder> occluders){
+		double minX = Math.min(x, x2);
+		double minY = Math.min(y, y2);
+		double maxX = Math.max(x, x2);
+		double maxY = Math.max(y, y2);
+		for (int i = 0; i < occluders.size(); i++){
+			KPolygon polygon = occluders.get(i).getPolygon();
+			Vector2f center = polygon.getCenter();
+			double radius = polygon.getRadius();
+			if (center.x + radius < minX || center.x - radius > maxX || center.y + radius < minY || center.y - radius > maxY){
+				continue;
+			}
+			ArrayList<Vector2f> points = polygon.getPoints();
+			for (int m = 0; m < points.size(); m++){
+				Vector2f p = points.get(m);
+				Vector2f p2 = points.get(m+1 >= points.size() ? 0 : m+1);
+				if (Vector2fUtils.linesIntersect(x, y, x2, y2, p.x, p.y, p2.x, p2.y)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	protected void setPoint(int i, double x, double y){
+		ptsX[i] = x;
+		ptsY[i] = y;
+	}
+
+	/**
+	 * Makes the convex hull of the first numPoints points in ptsX and ptsY,
+	 * using the monotone chain method.
+	 */
+	protected void makeHull(int numPoints){
+		// insertion sort by x then y.
+		for (int i = 1; i < numPoints; i++){
+			double x = ptsX[i];
+			double y = ptsY[i];
+			int j = i - 1;
+			while (j >= 0 && (ptsX[j] > x || (ptsX[j] == x && ptsY[j] > y))){
+				ptsX[j+1] = ptsX[j];
+				ptsY[j+1] = ptsY[j];
+				j--;
+			}
+			ptsX[j+1] = x;
+			ptsY[j+1] = y;
+		}
+		hullMinX = ptsX[0];
+		hullMaxX = ptsX[numPoints-1];
+		hullMinY = Double.MAX_VALUE;
+		hullMaxY = -Double.MAX_VALUE;
+		for (int i = 0; i < numPoints; i++){
+			hullMinY = Math.min(hullMinY, ptsY[i]);
+			hullMaxY = Math.max(hullMaxY, ptsY[i]);
+		}
+		hullSize = 0;
+		// lower hull
+		for (int i = 0; i < numPoints; i++){
+			while (hullSize >= 2 && cross(hullX[hullSize-2], hullY[hullSize-2], hullX[hullSize-1], hullY[hullSize-1], ptsX[i], ptsY[i]) <= 0){
+				hullSize--;
+			}
+			hullX[hullSize] = ptsX[i];
+			hullY[hullSize] = ptsY[i];
+			hullSize++;
+		}
+		// upper hull
+		int lowerSize = hullSize + 1;
+		for (int i = numPoints - 2; i >= 0; i--){
+			while (hullSize >= lowerSize && cross(hullX[hullSize-2], hullY[hullSize-2], hullX[hullSize-1], hullY[hullSize-1], ptsX[i], ptsY[i]) <= 0){
+				hullSize--;
+			}
+			hullX[hullSize] = ptsX[i];
+			hullY[hullSize] = ptsY[i];
+			hullSize++;
+		}
+		// the last point is the same as the first.
+		hullSize--;
+		if (hullSize == 2 && hullX[0] == hullX[1] && hullY[0] == hullY[1]){
+			hullSize = 1;
+		}
+		hullMinX -= HULL_TOLERANCE;
+		hullMinY -= HULL_TOLERANCE;
+		hullMaxX += HULL_TOLERANCE;
+		hullMaxY += HULL_TOLERANCE;
+	}
+
+	protected double cross(double x0, double y0, double x1, double y1, double x2, double y2){
+		return (x1 - x0)*(y2 - y0) - (y1 - y0)*(x2 - x0);
+	}
+
+	/**
+	 * Returns true if the point is in the hull, or within HULL_TOLERANCE of it.
+	 */
+	protected boolean isInHull(double x, double y){
+		if (x < hullMinX || x > hullMaxX || y < hullMinY || y > hullMaxY){
+			return false;
+		}
+		if (hullSize <= 1){
+			return Vector2fUtils.distanceSq(x, y, hullX[0], hullY[0]) <= HULL_TOLERANCE*HULL_TOLERANCE;
+		}
+		if (hullSize == 2){
+			return Vector2fUtils.ptSegDistSq(hullX[0], hullY[0], hullX[1], hullY[1], x, y) <= HULL_TOLERANCE*HULL_TOLERANCE;
+		}
+		for (int i = 0; i < hullSize; i++){
+			int iPlus = (i+1 >= hullSize ? 0 : i+1);
+			double edgeX = hullX[iPlus] - hullX[i];
+			double edgeY = hullY[iPlus] - hullY[i];
+			double edgeLength = Math.sqrt(edgeX*edgeX + edgeY*edgeY);
+			if (cross(hullX[i], hullY[i], hullX[iPlus], hullY[iPlus], x, y) < -HULL_TOLERANCE*edgeLength){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected boolean segmentIntersectsHull(double x, double y, double x2, double y2){
+		if (Math.max(x, x2) < hullMinX || Math.min(x, x2) > hullMaxX || Math.max(y, y2) < hullMinY || Math.min(y, y2) > hullMaxY){
+			return false;
+		}
+		if (isInHull(x, y) || isInHull(x2, y2)){
+			return true;
+		}
+		// a segment that grazes one of the hull's points may miss its edges
+		// by rounding, so those points get the same tolerance.
+		for (int i = 0; i < hullSize; i++){
+			if (Vector2fUtils.ptSegDistSq(x, y, x2, y2, hullX[i], hullY[i]) <= HULL_TOLERANCE*HULL_TOLERANCE){
+				return true;
+			}
+		}
+		if (hullSize <= 1){
+			return false;
+		}
+		for (int i = 0; i < hullSize; i++){
+			int iPlus = (i+1 >= hullSize ? 0 : i+1);
+			if (Vector2fUtils.linesIntersect(x, y, x2, y2, hullX[i], hullY[i], hullX[iPlus], hullY[iPlus])){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public double getHitRatio(){
+		long numCalcs = numHits + numMisses;
+		return (numCalcs == 0 ? 0 : (double)numHits/numCalcs);
+	}
+
+	public void resetHitCounts(){
+		numHits = 0;
+		numMisses = 0;
+	}
+
+	public long getNumHits() {
+		return numHits;
+	}
+
+	public long getNumMisses() {
+		return numMisses;
+	}
+
+	public double getMaxMoveDist() {
+		return maxMoveDist;
+	}
+
+	public void setMaxMoveDist(double maxMoveDist) {
+		this.maxMoveDist = maxMoveDist;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * What IncrementalVisionFinder remembers about the last full calc of a
+ * VisionData: the eye, the boundaryPolygon's shape around it, the occluders
+ * that were passed in, and the visiblePoints that aren't shadows (the
+ * anchors) in the order that they were sorted, each with the shadow that it
+ * casts, if any.
+ *
+ * @author Keith Woodward
+ */
+public class IncrementalVisionState {
+	// false until a full calc has been recorded.
+	public boolean valid = false;
+	public Vector2f eye = new Vector2f();
+	public float[] boundaryRelX = new float[0];
+	public float[] boundaryRelY = new float[0];
+	public int numBoundaryPoints;
+	public double minEyeToBoundaryPolygonPointDist;
+	public double maxEyeToBoundaryPolygonPointDist;
+
+	// The circle that the fixed occluders were found within, or a negative
+	// queryRadius if the fixed occluders were passed in as a list.
+	public Vector2f queryCenter = new Vector2f();
+	public double queryRadius = -1;
+	public ArrayList<Occluder> fixedOccluders = new ArrayList<Occluder>();
+	public Set<Occluder> fixedOccluderSet = Collections.newSetFromMap(new IdentityHashMap<Occluder, Boolean>());
+	public ArrayList<Occluder> movingOccluders = new ArrayList<Occluder>();
+	public float[] movingOccluderCoords = new float[0];
+	public int numMovingOccluderCoords;
+
+	public ArrayList<Anchor> anchors = new ArrayList<Anchor>();
+	public int numAnchors;
+
+	public void reset(){
+		valid = false;
+		fixedOccluders.clear();
+		fixedOccluderSet.clear();
+		movingOccluders.clear();
+		numAnchors = 0;
+	}
+
+	public Anchor obtainAnchor(){
+		Anchor anchor;
+		if (numAnchors < anchors.size()){
+			anchor = anchors.get(numAnchors);
+		}else{
+			anchor = new Anchor();
+			anchors.add(anchor);
+		}
+		anchor.reset();
+		numAnchors++;
+		return anchor;
+	}
+
+	public Anchor getAnchor(int i){
+		return anchors.get(i);
+	}
+
+	public int getNumAnchors(){
+		return numAnchors;
+	}
+
+	public boolean isValid(){
+		return valid;
+	}
+
+	/**
+	 * A visible occluder point, boundary point or intersection point and
+	 * the shadow that it casts. The 0 coordinates are from the last calc and
+	 * the 1 coordinates are the reprojected ones being checked.
+	 */
+	public static class Anchor{
+		public VisiblePoint visiblePoint;
+		// The index of the boundaryPolygon point for VPBoundary, or the
+		// boundaryPolygon edge for VPOccluderBoundaryIntersection.
+		public int boundaryIndex;
+		public double x0;
+		public double y0;
+		public double x1;
+		public double y1;
+
+		public VisiblePoint shadowPoint;
+		public Occluder shadowOccluder;
+		public int shadowEdgeIndex;
+		// true if the shadow comes after this anchor in the visiblePoints.
+		public boolean shadowAfter;
+		public double shadowX0;
+		public double shadowY0;
+		public double shadowX1;
+		public double shadowY1;
+
+		public void reset(){
+			visiblePoint = null;
+			boundaryIndex = -1;
+			shadowPoint = null;
+			shadowOccluder = null;
+			shadowEdgeIndex = -1;
+		}
+
+		public int getType(){
+			return visiblePoint.getType();
+		}
+
+		public boolean hasShadow(){
+			return shadowPoint != null;
+		}
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Adds up the light falling on each cell of a grid from many point lights,
+ * each lighting what it can see within its radius, getting dimmer further
+ * from the light. Shadows are hard since the lights are points, but where
+ * lights overlap the intensities add up.
+ *
+ * Each light's visiblePolygon is worked out by the VisionEngine and kept until
+ * the light moves or occluderChanged is called for an occluder within its
+ * radius. Lights that aren't static are re-calculated on every update. Only
+ * the cells around the lights that changed are added up again, and update
+ * returns rectangles covering them.
+ *
+ * The grid lines up with the occluders' TileArrayIntersections like FogOfWar.
+ * A cell is lit by a light if its center is in the light's visiblePolygon.
+ *
+ * @author Keith Woodward
+ */
+public class LightMap {
+	public Vector2f botLeft;
+	public float cellWidthAndHeight;
+	public int numRows;
+	public int numCols;
+	// the light falling on each cell, row by row.
+	public float[] intensities;
+
+	public TileArrayIntersections<? extends Occluder> occluderTileArray;
+	public VisionEngine visionFinder = new VisionFinder();
+	public ArrayList<Light> lights = new ArrayList<Light>();
+	// The number of points in the polygons used as the lights' boundaryPolygons.
+	public int lightNumPoints = 24;
+	public long numLightCalcs;
+
+	public ArrayList<FogOfWar.CellRect> dirtyRects = new ArrayList<FogOfWar.CellRect>();
+	protected ArrayList<FogOfWar.CellRect> cellRectPool = new ArrayList<FogOfWar.CellRect>();
+	protected ArrayList<FogOfWar.CellRect> removedLightRects = new ArrayList<FogOfWar.CellRect>();
+	protected PolygonScanner polygonScanner;
+	protected LightSpanHandler lightSpanHandler = new LightSpanHandler();
+
+	/**
+	 * Makes a grid covering the occluderTileArray with cellsPerTile by cellsPerTile cells in each tile.
+	 */
+	public LightMap(TileArrayIntersections<? extends Occluder> occluderTileArray, int cellsPerTile){
+		this.occluderTileArray = occluderTileArray;
+		botLeft = occluderTileArray.getBotLeft().clone();
+		cellWidthAndHeight = (float)(occluderTileArray.getTileWidthAndHeight()/cellsPerTile);
+		numRows = occluderTileArray.getNumRows()*cellsPerTile;
+		numCols = occluderTileArray.getNumCols()*cellsPerTile;
+		intensities = new float[numRows*numCols];
+		polygonScanner = new PolygonScanner(botLeft, cellWidthAndHeight, numRows, numCols);
+	}
+
+	public void addLight(Light light){
+		lights.add(light);
+		light.dirty = true;
+	}
+
+	public boolean removeLight(Light light){
+		if (lights.remove(light) == false){
+			return false;
+		}
+		if (light.hasCells()){
+			// the cells that it lit are added up again by the next update.
+			FogOfWar.CellRect rect = (cellRectPool.isEmpty() ? new FogOfWar.CellRect() : cellRectPool.remove(cellRectPool.size() - 1));
+			rect.minRow = light.minRow;
+			rect.minCol = light.minCol;
+			rect.maxRow = light.maxRow;
+			rect.maxCol = light.maxCol;
+			removedLightRects.add(rect);
+		}
+		return true;
+	}
+
+	public void moveLight(Light light, float x, float y){
+		light.position.set(x, y);
+		light.dirty = true;
+	}
+
+	/**
+	 * Must be called when an occluder is added to or removed from the
+	 * occluderTileArray, or when it moves (with its old and new positions),
+	 * so that the lights within reach of the tiles it's in are re-calculated.
+	 */
+	public void occluderChanged(PolygonHolder polygonHolder){
+		KPolygon polygon = polygonHolder.getPolygon();
+		occluderChanged(polygon.getCenter().x, polygon.getCenter().y, polygon.getRadius());
+	}
+
+	public void occluderChanged(double x, double y, double radius){
+		double tileWidthAndHeight = occluderTileArray.getTileWidthAndHeight();
+		int minTileRow = TileArray.getClampedIndex(y - radius - botLeft.y, tileWidthAndHeight, occluderTileArray.getNumRows());
+		int maxTileRow = TileArray.getClampedIndex(y + radius - botLeft.y, tileWidthAndHeight, occluderTileArray.getNumRows());
+		int minTileCol = TileArray.getClampedIndex(x - radius - botLeft.x, tileWidthAndHeight, occluderTileArray.getNumCols());
+		int maxTileCol = TileArray.getClampedIndex(x + radius - botLeft.x, tileWidthAndHeight, occluderTileArray.getNumCols());
+		for (int i = 0; i < lights.size(); i++){
+			Light light = lights.get(i);
+			if (light.dirty){
+				continue;
+			}
+			int lightMinTileRow = TileArray.getClampedIndex(light.position.y - light.radius - botLeft.y, tileWidthAndHeight, occluderTileArray.getNumRows());
+			int lightMaxTileRow = TileArray.getClampedIndex(light.position.y + light.radius - botLeft.y, tileWidthAndHeight, occluderTileArray.getNumRows());
+			int lightMinTileCol = TileArray.getClampedIndex(light.position.x - light.radius - botLeft.x, tileWidthAndHeight, occluderTileArray.getNumCols());
+			int lightMaxTileCol = TileArray.getClampedIndex(light.position.x + light.radius - botLeft.x, tileWidthAndHeight, occluderTileArray.getNumCols());
+			if (lightMinTileRow <= maxTileRow && lightMaxTileRow >= minTileRow && lightMinTileCol <= maxTileCol && lightMaxTileCol >= minTileCol){
+				light.dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Re-calculates the lights that moved, aren't static, or had occluders
+	 * change near them, then adds up the light again in the cells that they
+	 * lit before or light now. Returns rectangles covering those cells, which
+	 * are re-used by the next call.
+	 */
+	public ArrayList<FogOfWar.CellRect> update(){
+		for (int i = 0; i < dirtyRects.size(); i++){
+			cellRectPool.add(dirtyRects.get(i));
+		}
+		dirtyRects.clear();
+		for (int i = 0; i < removedLightRects.size(); i++){
+			FogOfWar.CellRect rect = removedLightRects.get(i);
+			addDirtyRect(rect.minRow, rect.minCol, rect.maxRow, rect.maxCol);
+			cellRectPool.add(rect);
+		}
+		removedLightRects.clear();
+		for (int i = 0; i < lights.size(); i++){
+			Light light = lights.get(i);
+			if (light.dirty == false && light.isStatic){
+				continue;
+			}
+			if (light.hasCells()){
+				addDirtyRect(light.minRow, light.minCol, light.maxRow, light.maxCol);
+			}
+			calcLight(light);
+			if (light.hasCells()){
+				addDirtyRect(light.minRow, light.minCol, light.maxRow, light.maxCol);
+			}
+		}
+		for (int i = 0; i < dirtyRects.size(); i++){
+			FogOfWar.CellRect rect = dirtyRects.get(i);
+			for (int row = rect.minRow; row <= rect.maxRow; row++){
+				Arrays.fill(intensities, row*numCols + rect.minCol, row*numCols + rect.maxCol + 1, 0f);
+			}
+			for (int j = 0; j < lights.size(); j++){
+				Light light = lights.get(j);
+				if (light.hasCells() && light.visionData.getVisiblePolygon() != null && light.minRow <= rect.maxRow && light.maxRow >= rect.minRow && light.minCol <= rect.maxCol && light.maxCol >= rect.minCol){
+					lightSpanHandler.light = light;
+					polygonScanner.scan(light.visionData.getVisiblePolygon(), rect.minRow, rect.minCol, rect.maxRow, rect.maxCol, lightSpanHandler);
+				}
+			}
+		}
+		lightSpanHandler.light = null;
+		return dirtyRects;
+	}
+
+	protected void calcLight(Light light){
+		float boundaryRadius = (float)(light.radius/Math.cos(Math.PI/lightNumPoints));
+		KPolygon boundaryPolygon = KPolygon.createRegularPolygon(lightNumPoints, boundaryRadius);
+		boundaryPolygon.translate(light.position.x, light.position.y);
+		light.visionData = new VisionData(light.position.clone(), boundaryPolygon);
+		visionFinder.calc(light.visionData, occluderTileArray, Collections.<Occluder>emptyList());
+		numLightCalcs++;
+		light.dirty = false;
+		// the cells that the light's circle covers.
+		light.minRow = Math.max(0, polygonScanner.getRowAbove(light.position.y - light.radius));
+		light.maxRow = Math.min(numRows, polygonScanner.getRowAbove(light.position.y + light.radius)) - 1;
+		light.minCol = Math.max(0, polygonScanner.getFirstColAtOrAfter(light.position.x - light.radius));
+		light.maxCol = Math.min(numCols, polygonScanner.getFirstColAtOrAfter(light.position.x + light.radius)) - 1;
+	}
+
+	/**
+	 * Adds the rectangle to the dirtyRects, joining it with any that it overlaps.
+	 */
+	protected void addDirtyRect(int minRow, int minCol, int maxRow, int maxCol){
+		boolean joined = true;
+		while (joined){
+			joined = false;
+			for (int i = 0; i < dirtyRects.size(); i++){
+				FogOfWar.CellRect rect = dirtyRects.get(i);
+				if (rect.minRow <= maxRow && rect.maxRow >= minRow && rect.minCol <= maxCol && rect.maxCol >= minCol){
+					minRow = Math.min(minRow, rect.minRow);
+					minCol = Math.min(minCol, rect.minCol);
+					maxRow = Math.max(maxRow, rect.maxRow);
+					maxCol = Math.max(maxCol, rect.maxCol);
+					cellRectPool.add(dirtyRects.remove(i));
+					joined = true;
+					break;
+				}
+			}
+		}
+		FogOfWar.CellRect rect = (cellRectPool.isEmpty() ? new FogOfWar.CellRect() : cellRectPool.remove(cellRectPool.size() - 1));
+		rect.minRow = minRow;
+		rect.minCol = minCol;
+		rect.maxRow = maxRow;
+		rect.maxCol = maxCol;
+		dirtyRects.add(rect);
+	}
+
+	/**
+	 * How much of the light's intensity reaches a point distSq squared from
+	 * it. This is 1 at the light going down evenly to 0 at its radius.
+	 */
+	protected float getFalloff(Light light, double distSq){
+		if (distSq >= light.radius*light.radius){
+			return 0;
+		}
+		return (float)(1 - Math.sqrt(distSq)/light.radius);
+	}
+
+	public float getIntensity(int row, int col){
+		return intensities[row*numCols + col];
+	}
+
+	/**
+	 * Returns the light falling on the cell containing the point, or 0 if it's outside the grid.
+	 */
+	public float getIntensity(float x, float y){
+		int row = (int)Math.floor((y - botLeft.y)/cellWidthAndHeight);
+		int col = (int)Math.floor((x - botLeft.x)/cellWidthAndHeight);
+		if (row < 0 || row >= numRows || col < 0 || col >= numCols){
+			return 0;
+		}
+		return intensities[row*numCols + col];
+	}
+
+	public double getCellCenterX(int col){
+		return polygonScanner.getCellCenterX(col);
+	}
+
+	public double getCellCenterY(int row){
+		return polygonScanner.getCellCenterY(row);
+	}
+
+	public float[] getIntensities() {
+		return intensities;
+	}
+
+	public ArrayList<Light> getLights() {
+		return lights;
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumCols() {
+		return numCols;
+	}
+
+	/**
+	 * Adds the light's intensity to the cells in each span, dimmed by the distance from the light.
+	 */
+	protected class LightSpanHandler implements PolygonScanner.SpanHandler{
+		public Light light;
+
+		public void addSpan(int row, int startCol, int endCol){
+			double dy = getCellCenterY(row) - light.position.y;
+			double dySq = dy*dy;
+			int rowStart = row*numCols;
+			for (int col = startCol; col <= endCol; col++){
+				double dx = getCellCenterX(col) - light.position.x;
+				float falloff = getFalloff(light, dx*dx + dySq);
+				if (falloff > 0){
+					intensities[rowStart + col] += light.intensity*falloff;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A point light. Change its position with LightMap.moveLight.
+	 */
+	public static class Light{
+		public Vector2f position;
+		public float radius;
+		public float intensity;
+		// Static lights keep their visiblePolygon until they move or occluders near them change.
+		public boolean isStatic = true;
+		public boolean dirty = true;
+		public VisionData visionData;
+		// The cells that the light's radius covers, from the last calc.
+		public int minRow = 0;
+		public int minCol = 0;
+		public int maxRow = -1;
+		public int maxCol = -1;
+
+		public Light(Vector2f position, float radius, float intensity){
+			this.position = position.clone();
+			this.radius = radius;
+			this.intensity = intensity;
+		}
+
+		public boolean hasCells(){
+			return visionData != null && minRow <= maxRow && minCol <= maxCol;
+		}
+
+		public Vector2f getPosition() {
+			return position;
+		}
+
+		public float getRadius() {
+			return radius;
+		}
+
+		public float getIntensity() {
+			return intensity;
+		}
+
+		public boolean isStatic() {
+			return isStatic;
+		}
+
+		public void setStatic(boolean isStatic) {
+			this.isStatic = isStatic;
+		}
+
+		public VisionData getVisionData() {
+			return visionData;
+		}
+	}
+}
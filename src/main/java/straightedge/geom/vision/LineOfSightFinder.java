@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Answers "can A see B?" without working out a whole visiblePolygon.
+ *
+ * Only the tiles of the TileArray or TileArrayIntersections that the line from
+ * A to B passes through are looked at, walking from tile to tile with a grid
+ * DDA, and the obstacles in those tiles are tested with KPolygon.intersectsLine.
+ * Moving occluders registered with a TileArrayIntersections are tested too.
+ *
+ * Results can optionally be kept in an LRU cache keyed by the end points
+ * rounded to cacheQuantum, so points that are closer than that share a result.
+ * Each cached result remembers the tiles that it depends on. Call
+ * occluderChanged after adding, removing or moving an obstacle in the
+ * TileArray so that the results that went through its tiles are recalculated.
+ * Moving occluders are never cached.
+ *
+ * This class is not thread-safe, use one per thread.
+ *
+ * @author Keith Woodward
+ */
+public class LineOfSightFinder {
+	public TileArray<? extends PolygonHolder> tileArray;
+	public TileArrayIntersections<? extends Occluder> tileArrayIntersections;
+	public Vector2f botLeft;
+	public double tileWidthAndHeight;
+	public int numRows;
+	public int numCols;
+	// incremented when the obstacles in a tile change, indexed by row*numCols + col.
+	public int[] tileVersions;
+
+	public int maxCacheSize = 0;
+	public float cacheQuantum = 1;
+	public LinkedHashMap<CacheKey, CacheEntry> cache;
+	public long numCacheHits;
+	public long numCacheMisses;
+
+	// scratch used by each query.
+	protected int[] visitedTiles = new int[16];
+	protected int numVisitedTiles;
+	protected TileArrayQueryContext testedSharedObstacles = new TileArrayQueryContext();
+	protected CacheKey lookupKey = new CacheKey();
+
+	public LineOfSightFinder(TileArray<? extends PolygonHolder> tileArray){
+		this.tileArray = tileArray;
+		init(tileArray.getBotLeft(), tileArray.getTileWidthAndHeight(), tileArray.getNumRows(), tileArray.getNumCols());
+	}
+
+	public LineOfSightFinder(TileArrayIntersections<? extends Occluder> tileArrayIntersections){
+		this.tileArrayIntersections = tileArrayIntersections;
+		init(tileArrayIntersections.getBotLeft(), tileArrayIntersections.getTileWidthAndHeight(), tileArrayIntersections.getNumRows(), tileArrayIntersections.getNumCols());
+	}
+
+	protected void init(Vector2f botLeft, double tileWidthAndHeight, int numRows, int numCols){
+		this.botLeft = botLeft;
+		this.tileWidthAndHeight = tileWidthAndHeight;
+		this.numRows = numRows;
+		this.numCols = numCols;
+		tileVersions = new int[numRows*numCols];
+	}
+
+	/**
+	 * Turns on the cache of results.
+	 * @param maxCacheSize the number of results to keep, or 0 to turn off the cache.
+	 * @param cacheQuantum end points are rounded to a multiple of this for the cache.
+	 */
+	public void setCache(int maxCacheSize, float cacheQuantum){
+		this.maxCacheSize = maxCacheSize;
+		this.cacheQuantum = cacheQuantum;
+		if (maxCacheSize <= 0){
+			cache = null;
+			return;
+		}
+		final int maxSize = maxCacheSize;
+		cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest){
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public boolean canSee(Vector2f p, Vector2f p2){
+		return canSee(p.x, p.y, p2.x, p2.y);
+	}
+
+	/**
+	 * Returns true if the line from (x, y) to (x2, y2) doesn't cross any obstacle.
+	 */
+	public boolean canSee(float x, float y, float x2, float y2){
+		if (isBlockedByMovingOccluders(x, y, x2, y2)){
+			return false;
+		}
+		if (cache == null){
+			return isBlockedByTiles(x, y, x2, y2) == false;
+		}
+		lookupKey.set(x, y, x2, y2, cacheQuantum);
+		CacheEntry entry = cache.get(lookupKey);
+		if (entry != null){
+			if (entry.isValid(tileVersions)){
+				numCacheHits++;
+				return entry.blocked == false;
+			}
+			cache.remove(lookupKey);
+		}
+		numCacheMisses++;
+		boolean blocked = isBlockedByTiles(x, y, x2, y2);
+		entry = new CacheEntry();
+		entry.blocked = blocked;
+		entry.tiles = Arrays.copyOf(visitedTiles, numVisitedTiles);
+		entry.versions = new int[numVisitedTiles];
+		for (int i = 0; i < numVisitedTiles; i++){
+			entry.versions[i] = tileVersions[visitedTiles[i]];
+		}
+		CacheKey key = new CacheKey();
+		key.set(x, y, x2, y2, cacheQuantum);
+		cache.put(key, entry);
+		return blocked == false;
+	}
+
+	/**
+	 * Same as canSee(p, p2) but the movingObstacles, which aren't in the TileArray, can block the view too.
+	 */
+	public boolean canSee(Vector2f p, Vector2f p2, List<? extends PolygonHolder> movingObstacles){
+		for (int i = 0; i < movingObstacles.size(); i++){
+			KPolygon polygon = movingObstacles.get(i).getPolygon();
+			if (polygon.intersectionPossible(p, p2) && polygon.intersectsLine(p, p2)){
+				return false;
+			}
+		}
+		return canSee(p, p2);
+	}
+
+	/**
+	 * Works out whether each of the points in froms can see the point with
+	 * the same index in tos.
+	 * @param results the array to put the answers in, or null to make a new one.
+	 */
+	public boolean[] canSee(List<Vector2f> froms, List<Vector2f> tos, boolean[] results){
+		if (results == null || results.length < froms.size()){
+			results = new boolean[froms.size()];
+		}
+		for (int i = 0; i < froms.size(); i++){
+			results[i] = canSee(froms.get(i), tos.get(i));
+		}
+		return results;
+	}
+
+	/**
+	 * Works out whether each pair of points can see each other. The answer
+	 * for points i and j is in results[i*points.size() + j], and the
+	 * lines are only tested once for each pair.
+	 * @param results the array to put the answers in, or null to make a new one.
+	 */
+	public boolean[] canSeeEachOther(List<Vector2f> points, boolean[] results){
+		int n = points.size();
+		if (results == null || results.length < n*n){
+			results = new boolean[n*n];
+		}
+		for (int i = 0; i < n; i++){
+			results[i*n + i] = true;
+			for (int j = i+1; j < n; j++){
+				boolean canSee = canSee(points.get(i), points.get(j));
+				results[i*n + j] = canSee;
+				results[j*n + i] = canSee;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Must be called when an obstacle is added to or removed from the TileArray,
+	 * or after it moves (in which case call it with the old and new positions),
+	 * so that the cached results that went through its tiles are thrown away.
+	 */
+	public void occluderChanged(PolygonHolder polygonHolder){
+		KPolygon polygon = polygonHolder.getPolygon();
+		occluderChanged(polygon.getCenter().x, polygon.getCenter().y, polygon.getRadius());
+	}
+
+	public void occluderChanged(double x, double y, double radius){
+		int leftCol = TileArray.getClampedIndex(x - radius - botLeft.x, tileWidthAndHeight, numCols);
+		int rightCol = TileArray.getClampedIndex(x + radius - botLeft.x, tileWidthAndHeight, numCols);
+		int botRow = TileArray.getClampedIndex(y - radius - botLeft.y, tileWidthAndHeight, numRows);
+		int topRow = TileArray.getClampedIndex(y + radius - botLeft.y, tileWidthAndHeight, numRows);
+		for (int row = botRow; row <= topRow; row++){
+			for (int col = leftCol; col <= rightCol; col++){
+				tileVersions[row*numCols + col]++;
+			}
+		}
+	}
+
+	public void invalidateTile(int row, int col){
+		tileVersions[row*numCols + col]++;
+	}
+
+	public void clearCache(){
+		if (cache != null){
+			cache.clear();
+		}
+	}
+
+	protected boolean isBlockedByMovingOccluders(float x, float y, float x2, float y2){
+		if (tileArrayIntersections == null || tileArrayIntersections.hasMovingOccluders() == false){
+			return false;
+		}
+		ArrayList<? extends Occluder> movingOccluders = tileArrayIntersections.getMovingOccluders();
+		for (int i = 0; i < movingOccluders.size(); i++){
+			KPolygon polygon = movingOccluders.get(i).getPolygon();
+			if (polygon.intersectionPossible(x, y, x2, y2) && polygon.intersectsLine(x, y, x2, y2)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Walks through the tiles that the line passes through, testing their
+	 * obstacles. The tiles visited are left in visitedTiles.
+	 */
+	protected boolean isBlockedByTiles(float x, float y, float x2, float y2){
+		numVisitedTiles = 0;
+		testedSharedObstacles.reset();
+		// the line in tile coordinates
+		double tx = (x - botLeft.x)/tileWidthAndHeight;
+		double ty = (y - botLeft.y)/tileWidthAndHeight;
+		double tx2 = (x2 - botLeft.x)/tileWidthAndHeight;
+		double ty2 = (y2 - botLeft.y)/tileWidthAndHeight;
+		boolean outside = (Math.min(tx, tx2) < 0 || Math.max(tx, tx2) >= numCols || Math.min(ty, ty2) < 0 || Math.max(ty, ty2) >= numRows);
+		if (outside && isBloated()){
+			// Obstacles outside of the bounds are kept in the nearest edge tiles,
+			// so just look in all of the tiles around the line.
+			int leftCol = TileArray.getClampedIndex(Math.min(x, x2) - botLeft.x, tileWidthAndHeight, numCols);
+			int rightCol = TileArray.getClampedIndex(Math.max(x, x2) - botLeft.x, tileWidthAndHeight, numCols);
+			int botRow = TileArray.getClampedIndex(Math.min(y, y2) - botLeft.y, tileWidthAndHeight, numRows);
+			int topRow = TileArray.getClampedIndex(Math.max(y, y2) - botLeft.y, tileWidthAndHeight, numRows);
+			for (int row = botRow; row <= topRow; row++){
+				for (int col = leftCol; col <= rightCol; col++){
+					if (isBlockedInTile(row, col, x, y, x2, y2)){
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		if (outside){
+			// clip the line to the bounds, since there's nothing outside them.
+			double[] clipped = clip(tx, ty, tx2, ty2);
+			if (clipped == null){
+				return false;
+			}
+			tx = clipped[0];
+			ty = clipped[1];
+			tx2 = clipped[2];
+			ty2 = clipped[3];
+		}
+		int col = clampIndex((int)Math.floor(tx), numCols);
+		int row = clampIndex((int)Math.floor(ty), numRows);
+		int endCol = clampIndex((int)Math.floor(tx2), numCols);
+		int endRow = clampIndex((int)Math.floor(ty2), numRows);
+		double dx = tx2 - tx;
+		double dy = ty2 - ty;
+		int stepCol = (dx > 0 ? 1 : -1);
+		int stepRow = (dy > 0 ? 1 : -1);
+		double tDeltaX = (dx != 0 ? Math.abs(1/dx) : Double.POSITIVE_INFINITY);
+		double tDeltaY = (dy != 0 ? Math.abs(1/dy) : Double.POSITIVE_INFINITY);
+		double tMaxX = (dx != 0 ? ((stepCol > 0 ? col + 1 : col) - tx)/dx : Double.POSITIVE_INFINITY);
+		double tMaxY = (dy != 0 ? ((stepRow > 0 ? row + 1 : row) - ty)/dy : Double.POSITIVE_INFINITY);
+		int maxSteps = numRows + numCols + 2;
+		for (int step = 0; step < maxSteps; step++){
+			if (isBlockedInTile(row, col, x, y, x2, y2)){
+				return true;
+			}
+			if (row == endRow && col == endCol){
+				break;
+			}
+			if (tMaxX < tMaxY){
+				col += stepCol;
+				tMaxX += tDeltaX;
+			}else if (tMaxY < tMaxX){
+				row += stepRow;
+				tMaxY += tDeltaY;
+			}else{
+				// the line goes through the corner so look at a tile beside it too.
+				if (col + stepCol >= 0 && col + stepCol < numCols && isBlockedInTile(row, col + stepCol, x, y, x2, y2)){
+					return true;
+				}
+				col += stepCol;
+				row += stepRow;
+				tMaxX += tDeltaX;
+				tMaxY += tDeltaY;
+			}
+			if (col < 0 || col >= numCols || row < 0 || row >= numRows){
+				break;
+			}
+		}
+		return false;
+	}
+
+	protected boolean isBlockedInTile(int row, int col, float x, float y, float x2, float y2){
+		if (numVisitedTiles == visitedTiles.length){
+			visitedTiles = Arrays.copyOf(visitedTiles, visitedTiles.length*2);
+		}
+		visitedTiles[numVisitedTiles] = row*numCols + col;
+		numVisitedTiles++;
+		Bag<? extends PolygonHolder> containedObstacles;
+		Bag<? extends PolygonHolder> sharedObstacles;
+		if (tileArray != null){
+			containedObstacles = tileArray.getTile(row, col).getContainedObstacles();
+			sharedObstacles = tileArray.getTile(row, col).getSharedObstacles();
+		}else{
+			containedObstacles = tileArrayIntersections.getTile(row, col).getContainedObstacles();
+			sharedObstacles = tileArrayIntersections.getTile(row, col).getSharedObstacles();
+		}
+		for (int i = 0; i < containedObstacles.size(); i++){
+			KPolygon polygon = containedObstacles.get(i).getPolygon();
+			if (polygon.intersectionPossible(x, y, x2, y2) && polygon.intersectsLine(x, y, x2, y2)){
+				return true;
+			}
+		}
+		for (int i = 0; i < sharedObstacles.size(); i++){
+			PolygonHolder polygonHolder = sharedObstacles.get(i);
+			if (testedSharedObstacles.add(polygonHolder) == false){
+				continue;
+			}
+			KPolygon polygon = polygonHolder.getPolygon();
+			if (polygon.intersectionPossible(x, y, x2, y2) && polygon.intersectsLine(x, y, x2, y2)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Clips the line to the rectangle from (0, 0) to (numCols, numRows)
+	 * using the Liang-Barsky method, returning null if it's all outside.
+	 */
+	protected double[] clip(double tx, double ty, double tx2, double ty2){
+		double dx = tx2 - tx;
+		double dy = ty2 - ty;
+		double tMin = 0;
+		double tMax = 1;
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {tx, numCols - tx, ty, numRows - ty};
+		for (int i = 0; i < 4; i++){
+			if (p[i] == 0){
+				if (q[i] < 0){
+					return null;
+				}
+			}else{
+				double t = q[i]/p[i];
+				if (p[i] < 0){
+					tMin = Math.max(tMin, t);
+				}else{
+					tMax = Math.min(tMax, t);
+				}
+			}
+		}
+		if (tMin > tMax){
+			return null;
+		}
+		return new double[]{tx + tMin*dx, ty + tMin*dy, tx + tMax*dx, ty + tMax*dy};
+	}
+
+	protected boolean isBloated(){
+		return (tileArray != null ? tileArray.isBloated() : tileArrayIntersections.isBloated());
+	}
+
+	protected int clampIndex(int index, int numTiles){
+		if (index < 0){
+			return 0;
+		}else if (index >= numTiles){
+			return numTiles - 1;
+		}
+		return index;
+	}
+
+	public double getCacheHitRatio(){
+		long numLookups = numCacheHits + numCacheMisses;
+		return (numLookups == 0 ? 0 : (double)numCacheHits/numLookups);
+	}
+
+	public long getNumCacheHits() {
+		return numCacheHits;
+	}
+
+	public long getNumCacheMisses() {
+		return numCacheMisses;
+	}
+
+	/**
+	 * The end points of a line rounded to the cacheQuantum, with the lower
+	 * point first so that A to B and B to A share a result.
+	 */
+	public static class CacheKey{
+		public int x;
+		public int y;
+		public int x2;
+		public int y2;
+
+		public void set(float px, float py, float px2, float py2, float cacheQuantum){
+			int ax = Math.round(px/cacheQuantum);
+			int ay = Math.round(py/cacheQuantum);
+			int bx = Math.round(px2/cacheQuantum);
+			int by = Math.round(py2/cacheQuantum);
+			if (ax < bx || (ax == bx && ay <= by)){
+				x = ax;
+				y = ay;
+				x2 = bx;
+				y2 = by;
+			}else{
+				x = bx;
+				y = by;
+				x2 = ax;
+				y2 = ay;
+			}
+		}
+
+		public boolean equals(Object o){
+			if (o instanceof CacheKey == false){
+				return false;
+			}
+			CacheKey key = (CacheKey)o;
+			return x == key.x && y == key.y && x2 == key.x2 && y2 == key.y2;
+		}
+
+		public int hashCode(){
+			int hash = x;
+			hash = hash*31 + y;
+			hash = hash*31 + x2;
+			hash = hash*31 + y2;
+			return hash;
+		}
+	}
+
+	/**
+	 * A cached result and the versions of the tiles that it went through.
+	 */
+	public static class CacheEntry{
+		public boolean blocked;
+		public int[] tiles;
+		public int[] versions;
+
+		public boolean isValid(int[] tileVersions){
+			for (int i = 0; i < tiles.length; i++){
+				if (tileVersions[tiles[i]] != versions[i]){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
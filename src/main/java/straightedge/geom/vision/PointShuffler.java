@@ -52,22 +52,48 @@ public class PointShuffler {
 		this.maxNumTries = maxNumTries;
 	}
 	public void shufflePoint(KPolygon poly, int pointIndex){
+		shufflePoint(poly, pointIndex, findOutwardAngle(poly, pointIndex));
+	}
+	/**
+	 * Moves the point across the line through it and the polygon's point at
+	 * otherPointIndex, rather than along the bisector of its angle as
+	 * shufflePoint does. At the tip of a thin polygon the bisector runs
+	 * almost along the tip's own edges, so shufflePoint can slide the tip
+	 * along an edge without turning the edge off of any point that lies on it.
+	 */
+	public void shufflePointOffEdge(KPolygon poly, int pointIndex, int otherPointIndex){
+		Vector2f p = poly.getPoints().get(pointIndex);
+		double outwardAngle = findOutwardAngle(poly, pointIndex);
+		double angle = Vector2fUtils.findAngle(poly.getPoints().get(otherPointIndex), p) + Math.PI/2;
+		// of the two directions across the edge, start with the one away from the polygon
+		if (Math.cos(angle - outwardAngle) < 0){
+			angle += Math.PI;
+		}
+		shufflePoint(poly, pointIndex, angle);
+	}
+	protected double findOutwardAngle(KPolygon poly, int pointIndex){
 		Vector2f p = poly.getPoints().get(pointIndex);
 		Vector2f pNext = Vector2fUtils.createPointToward(p,poly.getNextPoint(pointIndex), 10);
 		Vector2f pPrev =  Vector2fUtils.createPointToward(p,poly.getPrevPoint(pointIndex), 10);
 		Vector2f mid = Vector2fUtils.midPoint(pNext,pPrev);
+		return Vector2fUtils.findAngle(mid,p);
+	}
+	protected void shufflePoint(KPolygon poly, int pointIndex, double outwardAngle){
+		Vector2f p = poly.getPoints().get(pointIndex);
 		float oldPX = p.x;
 		float oldPY = p.y;
+		// If the polygon is valid to start with then only the two edges
+		// that touch the moved point need to be checked.
+		boolean onlyCheckMovedEdges = poly.isValidNoLineIntersections();
 		boolean done = false;
 		// Here we attempt to move the point at a random angle but in
 		// the general direction away from the polygon
 		for (int j = 0; j < maxNumTries; j++){
-			double angle = Vector2fUtils.findAngle(mid,p) + ((rand.nextFloat()-0.5f)*Math.PI/5f);
+			double angle = outwardAngle + ((rand.nextFloat()-0.5f)*Math.PI/5f);
 			Vector2f newPoint = Vector2fUtils.createPointFromAngle(p.x,p.y,angle, maxPointMoveDist);
 			p.x = newPoint.x;
 			p.y = newPoint.y;
-			poly.calcAll();
-			if (poly.isValidNoLineIntersections() == true){
+			if (isValidAfterMove(poly, pointIndex, onlyCheckMovedEdges)){
 				done = true;
 				break;
 			}else{
@@ -79,12 +105,11 @@ public class PointShuffler {
 		// the general direction into the center of the polygon
 		if (done == false){
 			for (int j = 0; j < maxNumTries; j++){
-				double angle = Vector2fUtils.findAngle(mid,p) + ((rand.nextFloat()-0.5f)*Math.PI/5f) + Math.PI;
+				double angle = outwardAngle + ((rand.nextFloat()-0.5f)*Math.PI/5f) + Math.PI;
 				Vector2f newPoint = Vector2fUtils.createPointFromAngle(p.x,p.y,angle, maxPointMoveDist);
 				p.x = newPoint.x;
 				p.y = newPoint.y;
-				poly.calcAll();
-				if (poly.isValidNoLineIntersections() == true){
+				if (isValidAfterMove(poly, pointIndex, onlyCheckMovedEdges)){
 					done = true;
 					break;
 				}else{
@@ -93,7 +118,36 @@ public class PointShuffler {
 				}
 			}
 		}
+		poly.calcAll();
 	}
+	protected boolean isValidAfterMove(KPolygon poly, int pointIndex, boolean onlyCheckMovedEdges){
+		if (onlyCheckMovedEdges == false){
+			return poly.isValidNoLineIntersections();
+		}
+		ArrayList<Vector2f> points = poly.getPoints();
+		int numPoints = points.size();
+		Vector2f p = points.get(pointIndex);
+		Vector2f pNext = poly.getNextPoint(pointIndex);
+		Vector2f pPrev = poly.getPrevPoint(pointIndex);
+		// the edges that share a point with the moved edges are skipped, the
+		// same as in KPolygon.isValidNoLineIntersections.
+		for (int j = 2; j < numPoints - 1; j++){
+			int k = (pointIndex + j) % numPoints;
+			int kPlus = (k + 1) % numPoints;
+			if (Vector2fUtils.linesIntersect(p, pNext, points.get(k), points.get(kPlus))){
+				return false;
+			}
+		}
+		for (int j = 1; j < numPoints - 2; j++){
+			int k = (pointIndex + j) % numPoints;
+			int kPlus = (k + 1) % numPoints;
+			if (Vector2fUtils.linesIntersect(pPrev, p, points.get(k), points.get(kPlus))){
+				return false;
+			}
+		}
+		return true;
+	}
+
 	public void shufflePoints(KPolygon poly){
 		for (int i = 0; i < poly.getPoints().size(); i++){
 			shufflePoint(poly, i);
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Finds the cells of a grid whose centers are inside a polygon, a row at a
+ * time, using the same test as KPolygon.contains. Only the rows within the
+ * polygon's bounds are looked at, and the runs of cells inside the polygon
+ * in each row are handed to a SpanHandler. Used by FogOfWar and LightMap.
+ *
+ * The grid's row 0 is at botLeft.y and column 0 is at botLeft.x, like TileArray.
+ *
+ * @author Keith Woodward
+ */
+public class PolygonScanner {
+	public Vector2f botLeft;
+	public float cellWidthAndHeight;
+	public int numRows;
+	public int numCols;
+
+	// scratch used while scanning.
+	protected int[] rowCrossingCounts = new int[0];
+	protected int[] rowCrossingStarts = new int[0];
+	protected double[] crossings = new double[0];
+
+	public PolygonScanner(Vector2f botLeft, float cellWidthAndHeight, int numRows, int numCols){
+		this.botLeft = botLeft;
+		this.cellWidthAndHeight = cellWidthAndHeight;
+		this.numRows = numRows;
+		this.numCols = numCols;
+	}
+
+	public void scan(KPolygon polygon, SpanHandler spanHandler){
+		scan(polygon, 0, 0, numRows - 1, numCols - 1, spanHandler);
+	}
+
+	/**
+	 * Calls the spanHandler with each run of cells in a row whose centers
+	 * are inside the polygon, only looking at the cells from minRow to maxRow
+	 * and minCol to maxCol inclusive.
+	 */
+	public void scan(KPolygon polygon, int minRow, int minCol, int maxRow, int maxCol, SpanHandler spanHandler){
+		ArrayList<Vector2f> points = polygon.getPoints();
+		int numPoints = points.size();
+		if (numPoints < 3){
+			return;
+		}
+		float minY = Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int i = 0; i < numPoints; i++){
+			minY = Math.min(minY, points.get(i).y);
+			maxY = Math.max(maxY, points.get(i).y);
+		}
+		minRow = Math.max(minRow, getRowAbove(minY) - 1);
+		maxRow = Math.min(maxRow, getRowAbove(maxY) + 1);
+		if (minRow > maxRow){
+			return;
+		}
+		int numPolygonRows = maxRow - minRow + 1;
+		if (rowCrossingCounts.length < numPolygonRows + 1){
+			rowCrossingCounts = new int[numPolygonRows*2 + 1];
+			rowCrossingStarts = new int[numPolygonRows*2 + 1];
+		}
+		Arrays.fill(rowCrossingCounts, 0, numPolygonRows + 1, 0);
+		// count the edges crossing each row's centers, then put the crossings in each row's part of the array.
+		int numCrossings = 0;
+		for (int pass = 0; pass < 2; pass++){
+			Vector2f pointBefore = points.get(numPoints - 1);
+			for (int i = 0; i < numPoints; i++){
+				Vector2f point = points.get(i);
+				if (pointBefore.y != point.y){
+					float edgeMinY = Math.min(pointBefore.y, point.y);
+					float edgeMaxY = Math.max(pointBefore.y, point.y);
+					int startRow = Math.max(minRow, getRowAbove(edgeMinY) - 1);
+					int endRow = Math.min(maxRow, getRowAbove(edgeMaxY) + 1);
+					for (int row = startRow; row <= endRow; row++){
+						double y = getCellCenterY(row);
+						// the same test as KPolygon.contains
+						if ((pointBefore.y <= y && y < point.y) || (point.y <= y && y < pointBefore.y)){
+							if (pass == 0){
+								rowCrossingCounts[row - minRow]++;
+							}else{
+								crossings[rowCrossingStarts[row - minRow] + rowCrossingCounts[row - minRow]] = ((point.x - pointBefore.x)/(point.y - pointBefore.y)*(y - pointBefore.y) + pointBefore.x);
+								rowCrossingCounts[row - minRow]++;
+							}
+						}
+					}
+				}
+				pointBefore = point;
+			}
+			if (pass == 0){
+				for (int r = 0; r < numPolygonRows; r++){
+					rowCrossingStarts[r] = numCrossings;
+					numCrossings += rowCrossingCounts[r];
+					rowCrossingCounts[r] = 0;
+				}
+				if (crossings.length < numCrossings){
+					crossings = new double[numCrossings*2];
+				}
+			}
+		}
+		for (int r = 0; r < numPolygonRows; r++){
+			int start = rowCrossingStarts[r];
+			int end = start + rowCrossingCounts[r];
+			// insertion sort, there are usually only a few crossings per row.
+			for (int i = start + 1; i < end; i++){
+				double x = crossings[i];
+				int j = i - 1;
+				while (j >= start && crossings[j] > x){
+					crossings[j+1] = crossings[j];
+					j--;
+				}
+				crossings[j+1] = x;
+			}
+			// cells with centers between each pair of crossings are inside.
+			int row = minRow + r;
+			for (int i = start; i + 1 < end; i += 2){
+				int startCol = getFirstColAtOrAfter(crossings[i]);
+				int endCol = getFirstColAtOrAfter(crossings[i+1]) - 1;
+				if (startCol < minCol){
+					startCol = minCol;
+				}
+				if (endCol > maxCol){
+					endCol = maxCol;
+				}
+				if (startCol <= endCol){
+					spanHandler.addSpan(row, startCol, endCol);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the lowest row whose cell centers are at or above y, which may be outside the grid.
+	 */
+	public int getRowAbove(double y){
+		double index = Math.ceil((y - botLeft.y)/cellWidthAndHeight - 0.5);
+		return (int)Math.max(-1, Math.min(numRows, index));
+	}
+
+	/**
+	 * Returns the first column whose cell center is at or after x, which may be outside the grid.
+	 */
+	public int getFirstColAtOrAfter(double x){
+		double index = Math.ceil((x - botLeft.x)/cellWidthAndHeight - 0.5);
+		int col = (int)Math.max(-1, Math.min(numCols, index));
+		// make sure that rounding agrees with the cell centers.
+		while (col > -1 && getCellCenterX(col - 1) >= x){
+			col--;
+		}
+		while (col < numCols && getCellCenterX(col) < x){
+			col++;
+		}
+		return col;
+	}
+
+	public double getCellCenterX(int col){
+		return botLeft.x + (col + 0.5)*cellWidthAndHeight;
+	}
+
+	public double getCellCenterY(int row){
+		return botLeft.y + (row + 0.5)*cellWidthAndHeight;
+	}
+
+	/**
+	 * Is given the runs of cells found by PolygonScanner.scan.
+	 */
+	public interface SpanHandler{
+		/**
+		 * The cells from startCol to endCol inclusive in the row are inside the polygon.
+		 */
+		public void addSpan(int row, int startCol, int endCol);
+	}
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * A VisionFinder that gathers the fixed occluders from the
+ * TileArrayIntersections in rings of tiles around the eye's tile, nearest
+ * first, and stops as soon as the occluders found so far hide everything
+ * further away. Indoors that means only the tiles of the room that the eye is
+ * in are looked at and sorted, rather than everything within the
+ * boundaryPolygon.
+ *
+ * After each ring, every occluder found is in the tiles visited, and every
+ * occluder not found is wholly outside them, so it's at least nearDist from
+ * the eye, the distance to the nearest tile not visited. Each occluder that is
+ * completely within nearDist blocks the angles that it covers, beyond itself.
+ * Once those angles go all the way around the eye, nothing further than
+ * nearDist can be seen, so the result is the same as VisionFinder's.
+ * The occluders found that are wholly beyond the nearest distance at which
+ * the view is closed in (hiddenDist) are left out of the calc too.
+ *
+ * The counts show how often the search stopped early and how many occluders
+ * were found and used, to see if it's worth it for a world. Outdoors, where
+ * the view is seldom closed in, it's a little slower than VisionFinder.
+ *
+ * @author Keith Woodward
+ */
+public class RingVisionFinder extends VisionFinder {
+	public long numEarlyOuts;
+	public long numCalcs;
+	public long numOccludersGathered;
+	public long numOccludersUsed;
+
+	static final double FULL_TURN = 4;
+	static final double HALF_TURN = 2;
+
+	// scratch used by each calc.
+	protected TileArrayQueryContext addedSharedOccluders = new TileArrayQueryContext();
+	protected ArrayList<Occluder> ringOccluders = new ArrayList<Occluder>();
+	// For each of the fixedOccludersWithin: the nearest and furthest distance
+	// of its edges from the eye, and the angles that it covers.
+	protected double[] minDists = new double[0];
+	protected double[] maxDists = new double[0];
+	protected double[] angleStarts = new double[0];
+	// NO_ANGLES if the occluder doesn't block any whole range of angles, or 4 or more if it surrounds the eye.
+	protected double[] angleLengths = new double[0];
+	protected double[] sortedMaxDists = new double[0];
+	// the angle ranges sorted by where they start, see findHiddenDist.
+	protected long[] intervalKeys = new long[0];
+	protected int numIntervalKeys;
+
+	static final double NO_ANGLES = -1;
+	static final int INDEX_BITS = 24;
+	static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+	static final double KEY_SCALE = (double)(1L << 36);
+
+	public RingVisionFinder(){
+	}
+
+	public VisionData calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		TileArrayIntersections<? extends Occluder> tileArray = fixedOccludersTileArrayIntersections;
+		KPolygon boundaryPolygon = cache.getBoundaryPolygon();
+		Vector2f center = boundaryPolygon.getCenter();
+		double radius = boundaryPolygon.getRadius();
+		Vector2f eye = cache.getEye();
+		fixedOccludersWithin.clear();
+		fixedOccludersIntersectionPointsWithin.clear();
+		addedSharedOccluders.reset();
+		numCalcs++;
+
+		// Beyond the furthest boundaryPolygon point nothing can be seen anyway.
+		double maxBoundaryDistSq = 0;
+		ArrayList<Vector2f> boundaryPoints = boundaryPolygon.getPoints();
+		for (int i = 0; i < boundaryPoints.size(); i++){
+			maxBoundaryDistSq = Math.max(maxBoundaryDistSq, eye.distanceSquared(boundaryPoints.get(i)));
+		}
+		double maxBoundaryDist = Math.sqrt(maxBoundaryDistSq);
+
+		// The moving occluders registered with the TileArrayIntersections block the view too.
+		tileArray.getMovingOccludersWithin(center.x, center.y, radius, ringOccluders);
+		addOccluders(ringOccluders, eye);
+		ringOccluders.clear();
+		int numIndexedMoving = fixedOccludersWithin.size();
+
+		// The tiles that TileArrayIntersections.getAllWithin would look at.
+		Vector2f botLeft = tileArray.getBotLeft();
+		double tileWidthAndHeight = tileArray.getTileWidthAndHeight();
+		int numRows = tileArray.getNumRows();
+		int numCols = tileArray.getNumCols();
+		int leftCol = TileArray.getClampedIndex(center.x - radius - botLeft.x, tileWidthAndHeight, numCols);
+		int rightCol = TileArray.getClampedIndex(center.x + radius - botLeft.x, tileWidthAndHeight, numCols);
+		int botRow = TileArray.getClampedIndex(center.y - radius - botLeft.y, tileWidthAndHeight, numRows);
+		int topRow = TileArray.getClampedIndex(center.y + radius - botLeft.y, tileWidthAndHeight, numRows);
+		int eyeCol = Math.min(Math.max(TileArray.getClampedIndex(eye.x - botLeft.x, tileWidthAndHeight, numCols), leftCol), rightCol);
+		int eyeRow = Math.min(Math.max(TileArray.getClampedIndex(eye.y - botLeft.y, tileWidthAndHeight, numRows), botRow), topRow);
+		int maxRing = Math.max(Math.max(eyeCol - leftCol, rightCol - eyeCol), Math.max(eyeRow - botRow, topRow - eyeRow));
+		// How far from the eye anything could be seen.
+		double hiddenDist = maxBoundaryDist;
+		boolean hiddenDistFound = false;
+		for (int ring = 0; ring <= maxRing; ring++){
+			for (int row = eyeRow - ring; row <= eyeRow + ring; row++){
+				if (row < botRow || row > topRow){
+					continue;
+				}
+				// only the first and last rows of the ring go all the way across.
+				int colStep = (row == eyeRow - ring || row == eyeRow + ring ? 1 : Math.max(2*ring, 1));
+				for (int col = eyeCol - ring; col <= eyeCol + ring; col += colStep){
+					if (col < leftCol || col > rightCol){
+						continue;
+					}
+					addTile(tileArray.getTile(row, col), center, radius);
+				}
+			}
+			addOccluders(ringOccluders, eye);
+			ringOccluders.clear();
+			if (ring == maxRing){
+				break;
+			}
+			// The distance from the eye to the nearest tile that hasn't been visited.
+			// Sides of the visited square that reach the edge of the searched tiles don't count.
+			double nearDist = Double.MAX_VALUE;
+			if (eyeCol - ring > leftCol){
+				nearDist = Math.min(nearDist, eye.x - (botLeft.x + (eyeCol - ring)*tileWidthAndHeight));
+			}
+			if (eyeCol + ring < rightCol){
+				nearDist = Math.min(nearDist, botLeft.x + (eyeCol + ring + 1)*tileWidthAndHeight - eye.x);
+			}
+			if (eyeRow - ring > botRow){
+				nearDist = Math.min(nearDist, eye.y - (botLeft.y + (eyeRow - ring)*tileWidthAndHeight));
+			}
+			if (eyeRow + ring < topRow){
+				nearDist = Math.min(nearDist, botLeft.y + (eyeRow + ring + 1)*tileWidthAndHeight - eye.y);
+			}
+			if (nearDist <= 0){
+				continue;
+			}
+			if (nearDist >= maxBoundaryDist){
+				numEarlyOuts++;
+				break;
+			}
+			hiddenDist = Math.min(maxBoundaryDist, findHiddenDist());
+			if (hiddenDist <= nearDist){
+				// everything not found yet is further away than hiddenDist.
+				hiddenDistFound = true;
+				numEarlyOuts++;
+				break;
+			}
+		}
+		if (hiddenDistFound == false){
+			hiddenDist = Math.min(maxBoundaryDist, findHiddenDist());
+		}
+
+		// Leave out the occluders that are all beyond hiddenDist, they can't be seen.
+		int numUsed = 0;
+		for (int i = 0; i < fixedOccludersWithin.size(); i++){
+			if (i < numIndexedMoving || minDists[i] <= hiddenDist){
+				fixedOccludersWithin.set(numUsed, fixedOccludersWithin.get(i));
+				numUsed++;
+			}
+		}
+		numOccludersGathered += fixedOccludersWithin.size();
+		while (fixedOccludersWithin.size() > numUsed){
+			fixedOccludersWithin.remove(fixedOccludersWithin.size() - 1);
+		}
+		numOccludersUsed += numUsed;
+		if (hiddenDist < radius){
+			// intersections further than hiddenDist are hidden too.
+			tileArray.getIntersectionsWithinAtLeast(eye, hiddenDist, fixedOccludersIntersectionPointsWithin);
+		}else{
+			tileArray.getIntersectionsWithinAtLeast(center, radius, fixedOccludersIntersectionPointsWithin);
+		}
+		return calc(cache, fixedOccludersWithin, fixedOccludersIntersectionPointsWithin, movingOccluders);
+	}
+
+	protected void addTile(TileArrayIntersections<?>.Tile<? extends Occluder> tile, Vector2f center, double radius){
+		Bag<? extends Occluder> containedObstacles = tile.getContainedObstacles();
+		for (int i = 0; i < containedObstacles.size(); i++){
+			Occluder occluder = containedObstacles.get(i);
+			if (isWithin(occluder, center, radius)){
+				ringOccluders.add(occluder);
+			}
+		}
+		Bag<? extends Occluder> sharedObstacles = tile.getSharedObstacles();
+		for (int i = 0; i < sharedObstacles.size(); i++){
+			Occluder occluder = sharedObstacles.get(i);
+			if (addedSharedOccluders.add(occluder) && isWithin(occluder, center, radius)){
+				ringOccluders.add(occluder);
+			}
+		}
+	}
+
+	/**
+	 * The same test that TileArrayIntersections.getAllWithin uses.
+	 */
+	protected boolean isWithin(Occluder occluder, Vector2f center, double radius){
+		KPolygon polygon = occluder.getPolygon();
+		double radiusSumSq = (radius + polygon.getRadius());
+		radiusSumSq *= radiusSumSq;
+		Vector2f polygonCenter = polygon.getCenter();
+		return Vector2fUtils.distanceSq(center.x, center.y, polygonCenter.x, polygonCenter.y) < radiusSumSq;
+	}
+
+	/**
+	 * Adds the occluders to fixedOccludersWithin along with their distances
+	 * from the eye and the angles that they cover.
+	 */
+	protected void addOccluders(List<? extends Occluder> occluders, Vector2f eye){
+		int size = fixedOccludersWithin.size() + occluders.size();
+		if (minDists.length < size){
+			minDists = Arrays.copyOf(minDists, size*2);
+			maxDists = Arrays.copyOf(maxDists, size*2);
+			angleStarts = Arrays.copyOf(angleStarts, size*2);
+			angleLengths = Arrays.copyOf(angleLengths, size*2);
+		}
+		for (int i = 0; i < occluders.size(); i++){
+			int index = fixedOccludersWithin.size();
+			KPolygon polygon = occluders.get(i).getPolygon();
+			calcAngles(polygon, eye, index);
+			fixedOccludersWithin.add(occluders.get(i));
+		}
+	}
+
+	/**
+	 * Finds the nearest and furthest distance of the polygon from the eye,
+	 * and the range of angles that it covers as seen from the eye by
+	 * following its points around and adding up the change in angle.
+	 * The angles are pseudo-angles from 0 to 4, see getPseudoAngle.
+	 */
+	protected void calcAngles(KPolygon polygon, Vector2f eye, int index){
+		angleLengths[index] = NO_ANGLES;
+		ArrayList<Vector2f> points = polygon.getPoints();
+		double minDistSq = Double.MAX_VALUE;
+		double maxDistSq = 0;
+		for (int i = 0; i < points.size(); i++){
+			Vector2f p = points.get(i);
+			minDistSq = Math.min(minDistSq, Vector2fUtils.ptSegDistSq(p, polygon.getNextPoint(i), eye));
+			maxDistSq = Math.max(maxDistSq, eye.distanceSquared(p));
+		}
+		minDists[index] = Math.sqrt(minDistSq);
+		maxDists[index] = Math.sqrt(maxDistSq);
+		if (minDistSq == 0){
+			// the eye is on the polygon's edge.
+			return;
+		}
+		double firstAngle = getPseudoAngle(points.get(0).x - eye.x, points.get(0).y - eye.y);
+		double lastAngle = firstAngle;
+		double angle = 0;
+		double minAngle = 0;
+		double maxAngle = 0;
+		for (int i = 1; i <= points.size(); i++){
+			Vector2f p = points.get(i == points.size() ? 0 : i);
+			double pointAngle = getPseudoAngle(p.x - eye.x, p.y - eye.y);
+			double delta = pointAngle - lastAngle;
+			if (delta > HALF_TURN){
+				delta -= FULL_TURN;
+			}else if (delta < -HALF_TURN){
+				delta += FULL_TURN;
+			}
+			if (Math.abs(delta) >= HALF_TURN - 1e-9){
+				// an edge goes through the eye.
+				return;
+			}
+			angle += delta;
+			minAngle = Math.min(minAngle, angle);
+			maxAngle = Math.max(maxAngle, angle);
+			lastAngle = pointAngle;
+		}
+		if (Math.abs(angle) > HALF_TURN){
+			// the eye is inside the polygon.
+			minDists[index] = 0;
+			return;
+		}
+		double start = firstAngle + minAngle;
+		angleStarts[index] = start - Math.floor(start/FULL_TURN)*FULL_TURN;
+		angleLengths[index] = maxAngle - minAngle;
+	}
+
+	/**
+	 * Returns a number from 0 to 4 that goes up with the angle of (x, y)
+	 * like atan2 does, but much quicker. Half a turn is always 2.
+	 */
+	public static double getPseudoAngle(double x, double y){
+		double p = y/(Math.abs(x) + Math.abs(y));
+		if (x < 0){
+			return 2 - p;
+		}else if (y < 0){
+			return 4 + p;
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the smallest distance beyond which the occluders found hide
+	 * everything, or Double.MAX_VALUE if they don't go all the way around.
+	 */
+	protected double findHiddenDist(){
+		int numOccluders = fixedOccludersWithin.size();
+		if (sortedMaxDists.length < numOccluders){
+			sortedMaxDists = new double[minDists.length];
+			intervalKeys = new long[minDists.length*2];
+		}
+		// Sort the angle ranges by where they start, splitting the ones that
+		// go past 4. The index of the occluder is kept in the low bits.
+		int numSorted = 0;
+		numIntervalKeys = 0;
+		for (int i = 0; i < numOccluders; i++){
+			if (angleLengths[i] == NO_ANGLES){
+				continue;
+			}
+			sortedMaxDists[numSorted] = maxDists[i];
+			numSorted++;
+			intervalKeys[numIntervalKeys] = ((long)(angleStarts[i]*KEY_SCALE) << INDEX_BITS) | (i << 1);
+			numIntervalKeys++;
+			if (angleStarts[i] + angleLengths[i] > FULL_TURN){
+				// the part after 4 starts again at 0, the low bit marks it.
+				intervalKeys[numIntervalKeys] = (i << 1) | 1;
+				numIntervalKeys++;
+			}
+		}
+		Arrays.sort(intervalKeys, 0, numIntervalKeys);
+		if (numSorted == 0 || isCovered(Double.MAX_VALUE) == false){
+			return Double.MAX_VALUE;
+		}
+		Arrays.sort(sortedMaxDists, 0, numSorted);
+		// isCovered only gets true-er as the distance goes up, so binary search for the first.
+		int low = 0;
+		int high = numSorted - 1;
+		while (low < high){
+			int mid = (low + high) >>> 1;
+			if (isCovered(sortedMaxDists[mid])){
+				high = mid;
+			}else{
+				low = mid + 1;
+			}
+		}
+		return sortedMaxDists[low];
+	}
+
+	/**
+	 * Returns true if the angle ranges of the occluders that are completely
+	 * within dist of the eye go all the way around. Ranges that only touch
+	 * leave a gap, since a ray could get through where they meet.
+	 */
+	protected boolean isCovered(double dist){
+		double reach = 0;
+		boolean started = false;
+		for (int i = 0; i < numIntervalKeys; i++){
+			long key = intervalKeys[i];
+			int index = (int)(key & INDEX_MASK) >> 1;
+			if (maxDists[index] > dist){
+				continue;
+			}
+			if (angleLengths[index] >= FULL_TURN){
+				return true;
+			}
+			double start;
+			double end;
+			if ((key & 1) == 0){
+				start = angleStarts[index];
+				end = Math.min(start + angleLengths[index], FULL_TURN);
+			}else{
+				start = 0;
+				end = angleStarts[index] + angleLengths[index] - FULL_TURN;
+			}
+			if (started == false){
+				if (start > 0){
+					return false;
+				}
+				started = true;
+			}else if (start >= reach){
+				return false;
+			}
+			reach = Math.max(reach, end);
+		}
+		return reach >= FULL_TURN;
+	}
+
+	public double getEarlyOutRatio(){
+		return (numCalcs == 0 ? 0 : (double)numEarlyOuts/numCalcs);
+	}
+
+	public void resetCounts(){
+		numEarlyOuts = 0;
+		numCalcs = 0;
+		numOccludersGathered = 0;
+		numOccludersUsed = 0;
+	}
+}
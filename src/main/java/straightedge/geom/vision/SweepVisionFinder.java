@@ -0,0 +1,605 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Finds the visible area by sweeping a ray around the eye, rather than by
+ * testing every candidate point against the other occluders like VisionFinder.
+ *
+ * The occluder edges and the boundaryPolygon's edges are split where they
+ * intersect so that no two edges cross. Then the edges that the sweep ray
+ * passes through are kept in a TreeSet ordered by which is in
+ * front, so the closest edge is always the first one. Wherever the closest
+ * edge changes the end of the old one and the start of the new one are added
+ * to the visiblePoints, along with a shadow point where the ray hits the
+ * edge behind. This takes O(n log n) time in the number of edges
+ * plus intersections, rather than O(n^2).
+ *
+ * The visiblePoints are the same types that VisionFinder makes and are in
+ * the same order, and shadows are calculated the same way, so the two give
+ * the same visiblePolygon except for rounding, or where the vertices of
+ * different occluders are so close together that one finds a gap between
+ * them and the other doesn't. Like VisionFinder, this class is not
+ * thread-safe so each thread needs its own.
+ *
+ * @author Keith Woodward
+ */
+public class SweepVisionFinder implements VisionEngine {
+	public ArrayList<OccluderEdges> occluderEdgesList = new ArrayList<OccluderEdges>();
+	public IdentityHashMap<Occluder, OccluderEdges> occluderEdgesMap = new IdentityHashMap<Occluder, OccluderEdges>();
+	public ArrayList<Segment> segments = new ArrayList<Segment>();
+	public ArrayList<Event> events = new ArrayList<Event>();
+	public TreeSet<Segment> activeSegments = new TreeSet<Segment>(new SegmentComparator());
+	public Vector2f intersection = new Vector2f();
+	public Vector2f endOfRayPoint = new Vector2f();
+	public ArrayList<Occluder> indexedOccludersWithin = new ArrayList<Occluder>();
+	public TileArrayQueryContext queryContext = new TileArrayQueryContext();
+	Vector2f eye;
+	KPolygon boundaryPolygon;
+	double maxEyeToBoundaryPolygonPointDistSq;
+	VisiblePointPool pool;
+
+	public VisionData calc(VisionData cache, List<? extends Occluder> allOccluders){
+		return calc(cache, Collections.<Occluder>emptyList(), Collections.<VPOccluderOccluderIntersection>emptyList(), allOccluders);
+	}
+	public VisionData calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		KPolygon boundaryPolygon = cache.getBoundaryPolygon();
+		ArrayList<Occluder> fixedOccluders = fixedOccludersTileArrayIntersections.getAllWithin(boundaryPolygon.getCenter().x, boundaryPolygon.getCenter().y, boundaryPolygon.getRadius(), new ArrayList<Occluder>());
+		fixedOccludersTileArrayIntersections.getMovingOccludersWithin(boundaryPolygon.getCenter().x, boundaryPolygon.getCenter().y, boundaryPolygon.getRadius(), fixedOccluders);
+		ArrayList<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints = fixedOccludersTileArrayIntersections.getIntersectionsWithinAtLeast(boundaryPolygon.getCenter(), boundaryPolygon.getRadius());
+		return calc(cache, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders);
+	}
+	public VisionData calc(VisionData cache, SpatialIndex<? extends Occluder> fixedOccluderIndex, List<? extends Occluder> movingOccluders){
+		KPolygon boundaryPolygon = cache.getBoundaryPolygon();
+		Vector2f center = boundaryPolygon.getCenter();
+		indexedOccludersWithin.clear();
+		fixedOccluderIndex.getAllWithin(center.x, center.y, boundaryPolygon.getRadius(), indexedOccludersWithin, queryContext);
+		indexedOccludersWithin.addAll(movingOccluders);
+		return calc(cache, indexedOccludersWithin);
+	}
+
+	public VisionData calc(VisionData cache, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders){
+		eye = cache.eye;
+		boundaryPolygon = cache.boundaryPolygon;
+		maxEyeToBoundaryPolygonPointDistSq = cache.maxEyeToBoundaryPolygonPointDistSq;
+		cache.visiblePoints = null;
+		cache.visiblePolygon = null;
+		pool = null;
+		if (cache.reuseResults){
+			if (cache.visiblePointPool == null){
+				cache.visiblePointPool = new VisiblePointPool();
+			}
+			pool = cache.visiblePointPool;
+			pool.reset();
+		}
+		occluderEdgesList.clear();
+		occluderEdgesMap.clear();
+		segments.clear();
+		events.clear();
+		activeSegments.clear();
+
+		// Only occluders that might be inside the boundaryPolygon are needed.
+		boolean anyMoving = false;
+		for (int i = 0; i < fixedOccluders.size(); i++){
+			addOccluder(cache, fixedOccluders.get(i), false);
+		}
+		for (int i = 0; i < movingOccluders.size(); i++){
+			anyMoving |= addOccluder(cache, movingOccluders.get(i), true);
+		}
+		for (int i = 0; i < fixedOccludersIntersectionPoints.size(); i++){
+			VPOccluderOccluderIntersection vp = fixedOccludersIntersectionPoints.get(i);
+			OccluderEdges occluderEdges = occluderEdgesMap.get(vp.getOccluder());
+			OccluderEdges occluderEdges2 = occluderEdgesMap.get(vp.getOccluder2());
+			if (occluderEdges == null || occluderEdges2 == null){
+				continue;
+			}
+			vp.preSortCalcs(eye);
+			occluderEdges.addSplitPoint(vp.getPolygonPointNum(), vp);
+			occluderEdges2.addSplitPoint(vp.getPolygonPointNum2(), vp);
+		}
+		if (anyMoving){
+			addMovingOccluderIntersections();
+		}
+		OccluderEdges boundaryEdges = new OccluderEdges(null, boundaryPolygon, false);
+		ArrayList<Vector2f> boundaryPolygonPoints = boundaryPolygon.getPoints();
+		for (int j = 0; j < boundaryPolygonPoints.size(); j++){
+			VisiblePoint vp = (pool != null ? pool.obtainBoundaryPoint(boundaryPolygonPoints.get(j)) : new VPBoundary(boundaryPolygonPoints.get(j)));
+			vp.preSortCalcs(eye);
+			boundaryEdges.points[j] = vp;
+		}
+		addBoundaryIntersections(cache, boundaryEdges);
+
+		for (int i = 0; i < occluderEdgesList.size(); i++){
+			addSegments(occluderEdgesList.get(i));
+		}
+		addSegments(boundaryEdges);
+
+		ArrayList<VisiblePoint> visiblePoints;
+		if (pool != null){
+			visiblePoints = pool.visiblePoints;
+		}else{
+			visiblePoints = new ArrayList<VisiblePoint>(boundaryPolygonPoints.size());
+		}
+		sweep(visiblePoints);
+
+		cache.visiblePoints = visiblePoints;
+		if (pool != null){
+			cache.visiblePolygon = pool.makeVisiblePolygon(visiblePoints);
+		}else if (visiblePoints.size() >= 3){
+			ArrayList<Vector2f> pointList = new ArrayList<Vector2f>(visiblePoints.size());
+			for (int i = 0; i < visiblePoints.size(); i++){
+				pointList.add(visiblePoints.get(i).getPoint());
+			}
+			// The KPolygon constructor copies the points.
+			cache.visiblePolygon = new KPolygon(pointList);
+		}
+		occluderEdgesMap.clear();
+		activeSegments.clear();
+		eye = null;
+		boundaryPolygon = null;
+		pool = null;
+		return cache;
+	}
+
+	/**
+	 * Makes the VPOccluders for an occluder that might be inside the boundaryPolygon.
+	 * Returns true if the occluder was added.
+	 */
+	protected boolean addOccluder(VisionData cache, Occluder occluder, boolean moving){
+		KPolygon polygon = occluder.getPolygon();
+		if (eye.distance(polygon.getCenter()) - polygon.getRadius() > cache.maxEyeToBoundaryPolygonPointDist){
+			return false;
+		}
+		if (occluderEdgesMap.containsKey(occluder)){
+			return false;
+		}
+		OccluderEdges occluderEdges = new OccluderEdges(occluder, polygon, moving);
+		ArrayList<Vector2f> points = polygon.getPoints();
+		for (int j = 0; j < points.size(); j++){
+			VisiblePoint vp = (pool != null ? pool.obtainOccluderPoint(points.get(j), occluder, j) : new VPOccluder(points.get(j), occluder, j));
+			vp.preSortCalcs(eye);
+			occluderEdges.points[j] = vp;
+		}
+		occluderEdgesList.add(occluderEdges);
+		occluderEdgesMap.put(occluder, occluderEdges);
+		return true;
+	}
+
+	/**
+	 * Finds the intersections between the moving occluders and the other
+	 * occluders by sorting the occluders on their left x coordinate and only
+	 * testing the ones that overlap along the x axis.
+	 */
+	protected void addMovingOccluderIntersections(){
+		Collections.sort(occluderEdgesList);
+		for (int i = 0; i < occluderEdgesList.size(); i++){
+			OccluderEdges occluderEdges = occluderEdgesList.get(i);
+			for (int j = i+1; j < occluderEdgesList.size(); j++){
+				OccluderEdges occluderEdges2 = occluderEdgesList.get(j);
+				if (occluderEdges2.minX > occluderEdges.maxX){
+					break;
+				}
+				if (occluderEdges.moving == false && occluderEdges2.moving == false){
+					continue;
+				}
+				KPolygon polygon = occluderEdges.polygon;
+				KPolygon polygon2 = occluderEdges2.polygon;
+				if (polygon.getCenter().distance(polygon2.getCenter()) > polygon.getRadius() + polygon2.getRadius()){
+					continue;
+				}
+				// Put the moving occluder first like VisionFinder does.
+				if (occluderEdges.moving){
+					addIntersections(occluderEdges, occluderEdges2);
+				}else{
+					addIntersections(occluderEdges2, occluderEdges);
+				}
+			}
+		}
+	}
+
+	protected void addIntersections(OccluderEdges occluderEdges, OccluderEdges occluderEdges2){
+		ArrayList<Vector2f> points = occluderEdges.polygon.getPoints();
+		ArrayList<Vector2f> points2 = occluderEdges2.polygon.getPoints();
+		for (int j = 0; j < points.size(); j++){
+			Vector2f p = points.get(j);
+			Vector2f p2 = points.get(j+1 >= points.size() ? 0 : j+1);
+			if (occluderEdges2.polygon.intersectionPossible(p, p2) == false){
+				continue;
+			}
+			for (int m = 0; m < points2.size(); m++){
+				Vector2f p3 = points2.get(m);
+				Vector2f p4 = points2.get(m+1 >= points2.size() ? 0 : m+1);
+				if (Vector2fUtils.linesIntersect(p, p2, p3, p4) && Vector2fUtils.getLineLineIntersection(p, p2, p3, p4, intersection) != null){
+					VPOccluderOccluderIntersection vp;
+					if (pool != null){
+						vp = pool.obtainOccluderOccluderIntersection(pool.obtainCoordinates(intersection), occluderEdges.occluder, j, occluderEdges2.occluder, m);
+					}else{
+						vp = new VPOccluderOccluderIntersection(new Vector2f(intersection), occluderEdges.occluder, j, occluderEdges2.occluder, m);
+					}
+					vp.preSortCalcs(eye);
+					occluderEdges.addSplitPoint(j, vp);
+					occluderEdges2.addSplitPoint(m, vp);
+				}
+			}
+		}
+	}
+
+	protected void addBoundaryIntersections(VisionData cache, OccluderEdges boundaryEdges){
+		ArrayList<Vector2f> boundaryPolygonPoints = boundaryPolygon.getPoints();
+		for (int i = 0; i < occluderEdgesList.size(); i++){
+			OccluderEdges occluderEdges = occluderEdgesList.get(i);
+			KPolygon polygon = occluderEdges.polygon;
+			if (eye.distance(polygon.getCenter()) + polygon.getRadius() < cache.minEyeToBoundaryPolygonPointDist){
+				// all of the polygon is inside the boundaryPolygon.
+				continue;
+			}
+			ArrayList<Vector2f> points = polygon.getPoints();
+			for (int j = 0; j < points.size(); j++){
+				Vector2f p = points.get(j);
+				Vector2f p2 = points.get(j+1 >= points.size() ? 0 : j+1);
+				for (int m = 0; m < boundaryPolygonPoints.size(); m++){
+					Vector2f p3 = boundaryPolygonPoints.get(m);
+					Vector2f p4 = boundaryPolygonPoints.get(m+1 >= boundaryPolygonPoints.size() ? 0 : m+1);
+					if (Vector2fUtils.linesIntersect(p, p2, p3, p4) && Vector2fUtils.getLineLineIntersection(p3, p4, p, p2, intersection) != null){
+						VPOccluderBoundaryIntersection vp;
+						if (pool != null){
+							vp = pool.obtainOccluderBoundaryIntersection(pool.obtainCoordinates(intersection), occluderEdges.occluder, j);
+						}else{
+							vp = new VPOccluderBoundaryIntersection(new Vector2f(intersection), occluderEdges.occluder, j);
+						}
+						vp.preSortCalcs(eye);
+						occluderEdges.addSplitPoint(j, vp);
+						boundaryEdges.addSplitPoint(m, vp);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the Segments of each edge, split at the intersection points along the edge.
+	 * Edges facing away from the eye are kept since their end points are shared
+	 * with the front edges, which keeps the sweep stable where occluders touch.
+	 */
+	protected void addSegments(OccluderEdges occluderEdges){
+		KPolygon polygon = occluderEdges.polygon;
+		ArrayList<Vector2f> points = polygon.getPoints();
+		for (int j = 0; j < points.size(); j++){
+			int jPlus = (j+1 >= points.size() ? 0 : j+1);
+			Vector2f p = points.get(j);
+			Vector2f p2 = points.get(jPlus);
+			if (occluderEdges.occluder != null){
+				if (Vector2fUtils.ptSegDistSq(p.x, p.y, p2.x, p2.y, eye.x, eye.y) > maxEyeToBoundaryPolygonPointDistSq){
+					continue;
+				}
+			}
+			ArrayList<VisiblePoint> splitPoints = occluderEdges.splitPoints[j];
+			if (splitPoints == null){
+				addSegment(occluderEdges.points[j], occluderEdges.points[jPlus], occluderEdges.occluder, j, p, p2);
+				continue;
+			}
+			// sort the split points by their distance along the edge.
+			for (int i = 1; i < splitPoints.size(); i++){
+				VisiblePoint vp = splitPoints.get(i);
+				double dist = vp.getPoint().distanceSquared(p);
+				int k = i - 1;
+				while (k >= 0 && splitPoints.get(k).getPoint().distanceSquared(p) > dist){
+					splitPoints.set(k + 1, splitPoints.get(k));
+					k--;
+				}
+				splitPoints.set(k + 1, vp);
+			}
+			VisiblePoint last = occluderEdges.points[j];
+			for (int i = 0; i < splitPoints.size(); i++){
+				VisiblePoint vp = splitPoints.get(i);
+				addSegment(last, vp, occluderEdges.occluder, j, p, p2);
+				last = vp;
+			}
+			addSegment(last, occluderEdges.points[jPlus], occluderEdges.occluder, j, p, p2);
+		}
+	}
+
+	protected void addSegment(VisiblePoint vp, VisiblePoint vp2, Occluder occluder, int edgeIndex, Vector2f edgeStart, Vector2f edgeEnd){
+		Vector2f p = vp.getPoint();
+		Vector2f p2 = vp2.getPoint();
+		double cross = (p.x - eye.x)*(p2.y - eye.y) - (p.y - eye.y)*(p2.x - eye.x);
+		if (cross == 0){
+			// the segment points straight at the eye so it can't hide anything.
+			return;
+		}
+		VisiblePoint start = vp;
+		VisiblePoint end = vp2;
+		if (cross < 0){
+			start = vp2;
+			end = vp;
+		}
+		int order = start.compareTo(end);
+		if (order == 0){
+			return;
+		}
+		// The sweep starts and ends on the ray pointing along the negative x axis.
+		boolean wrapsAround = (start.posY == true && end.posY == false);
+		if (wrapsAround == false && order > 0){
+			// the segment is so thin that rounding swapped the ends.
+			VisiblePoint temp = start;
+			start = end;
+			end = temp;
+		}
+		Segment segment = new Segment(segments.size(), start, end, occluder, edgeIndex, edgeStart, edgeEnd, wrapsAround);
+		segments.add(segment);
+		events.add(new Event(segment, start, true));
+		events.add(new Event(segment, end, false));
+	}
+
+	protected void sweep(ArrayList<VisiblePoint> visiblePoints){
+		Collections.sort(events);
+		for (int i = 0; i < segments.size(); i++){
+			Segment segment = segments.get(i);
+			if (segment.wrapsAround){
+				addActive(segment, -1);
+			}
+		}
+		int groupStart = 0;
+		while (groupStart < events.size()){
+			int groupEnd = groupStart + 1;
+			while (groupEnd < events.size() && events.get(groupEnd).point.compareTo(events.get(groupStart).point) == 0){
+				groupEnd++;
+			}
+			Segment oldClosest = (activeSegments.isEmpty() ? null : activeSegments.first());
+			for (int i = groupStart; i < groupEnd; i++){
+				Event event = events.get(i);
+				if (event.start == false){
+					removeActive(event.segment);
+				}
+			}
+			for (int i = groupStart; i < groupEnd; i++){
+				Event event = events.get(i);
+				if (event.start == true){
+					addActive(event.segment, i);
+				}
+			}
+			Segment newClosest = (activeSegments.isEmpty() ? null : activeSegments.first());
+			if (oldClosest != newClosest){
+				boolean oldEnded = (oldClosest != null && oldClosest.active == false);
+				boolean newStarted = (newClosest != null && newClosest.startedAtEvent >= groupStart);
+				if (oldEnded && newStarted){
+					addVisiblePoint(visiblePoints, oldClosest.end);
+					addVisiblePoint(visiblePoints, newClosest.start);
+				}else if (oldEnded){
+					addVisiblePoint(visiblePoints, oldClosest.end);
+					if (newClosest != null){
+						addVisiblePoint(visiblePoints, makeShadowPoint(newClosest, oldClosest.end));
+					}
+				}else if (newStarted){
+					if (oldClosest != null){
+						addVisiblePoint(visiblePoints, makeShadowPoint(oldClosest, newClosest.start));
+					}
+					addVisiblePoint(visiblePoints, newClosest.start);
+				}
+			}
+			groupStart = groupEnd;
+		}
+		// the sweep ends where it started so the last point may be the same as the first.
+		if (visiblePoints.size() > 1 && visiblePoints.get(visiblePoints.size() - 1).getPoint().equals(visiblePoints.get(0).getPoint())){
+			visiblePoints.remove(visiblePoints.size() - 1);
+		}
+	}
+
+	protected void addActive(Segment segment, int eventIndex){
+		segment.startedAtEvent = eventIndex;
+		activeSegments.add(segment);
+		segment.active = true;
+	}
+
+	protected void removeActive(Segment segment){
+		if (segment.active == false){
+			return;
+		}
+		if (activeSegments.remove(segment) == false){
+			// Rounding made the ordering inconsistent, so search for the segment instead.
+			for (Iterator<Segment> it = activeSegments.iterator(); it.hasNext();){
+				if (it.next() == segment){
+					it.remove();
+					break;
+				}
+			}
+		}
+		segment.active = false;
+	}
+
+	protected void addVisiblePoint(ArrayList<VisiblePoint> visiblePoints, VisiblePoint vp){
+		if (vp == null){
+			return;
+		}
+		if (visiblePoints.size() > 0 && visiblePoints.get(visiblePoints.size() - 1).getPoint().equals(vp.getPoint())){
+			return;
+		}
+		visiblePoints.add(vp);
+	}
+
+	/**
+	 * Makes the point where the ray from the eye through the castingPoint hits
+	 * the segment behind it, in the same way as VisionFinder.
+	 */
+	protected VisiblePoint makeShadowPoint(Segment segment, VisiblePoint castingPoint){
+		Vector2f p = castingPoint.getPoint();
+		double pToEyeDist = p.distance(eye);
+		Vector2fUtils.createPointToward(eye, p, pToEyeDist + boundaryPolygon.getRadius()*2, endOfRayPoint);
+		if (Vector2fUtils.getLineLineIntersection(p, endOfRayPoint, segment.edgeStart, segment.edgeEnd, intersection) == null){
+			return null;
+		}
+		Vector2f shadowPoint = (pool != null ? pool.obtainCoordinates(intersection) : new Vector2f(intersection));
+		VPOccluder castingOccluderPoint = (castingPoint.getType() == VisiblePoint.OCCLUDER ? (VPOccluder)castingPoint : null);
+		VisiblePoint vp;
+		if (segment.occluder != null){
+			vp = (pool != null ? pool.obtainShadowOnOccluder(shadowPoint, segment.occluder, segment.edgeIndex, castingOccluderPoint) : new VPShadowOnOccluder(shadowPoint, segment.occluder, segment.edgeIndex, castingOccluderPoint));
+		}else{
+			vp = (pool != null ? pool.obtainShadowOnBoundary(shadowPoint, segment.edgeIndex, castingOccluderPoint) : new VPShadowOnBoundary(shadowPoint, segment.edgeIndex, castingOccluderPoint));
+		}
+		vp.preSortCalcs(eye);
+		return vp;
+	}
+
+	/**
+	 * The VisiblePoints of an occluder's polygon, or of the boundaryPolygon if
+	 * the occluder is null, and the intersection points along each edge.
+	 */
+	public static class OccluderEdges implements Comparable<OccluderEdges>{
+		public Occluder occluder;
+		public KPolygon polygon;
+		public boolean moving;
+		public VisiblePoint[] points;
+		public ArrayList<VisiblePoint>[] splitPoints;
+		public float minX;
+		public float maxX;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public OccluderEdges(Occluder occluder, KPolygon polygon, boolean moving){
+			this.occluder = occluder;
+			this.polygon = polygon;
+			this.moving = moving;
+			points = new VisiblePoint[polygon.getPoints().size()];
+			splitPoints = new ArrayList[points.length];
+			minX = polygon.getCenter().x - polygon.getRadius();
+			maxX = polygon.getCenter().x + polygon.getRadius();
+		}
+
+		public void addSplitPoint(int edgeIndex, VisiblePoint vp){
+			if (splitPoints[edgeIndex] == null){
+				splitPoints[edgeIndex] = new ArrayList<VisiblePoint>(2);
+			}
+			splitPoints[edgeIndex].add(vp);
+		}
+
+		public int compareTo(OccluderEdges other){
+			return Float.compare(minX, other.minX);
+		}
+	}
+
+	/**
+	 * Part of an edge between two VisiblePoints, with start before end going
+	 * anti-clockwise around the eye.
+	 */
+	public static class Segment{
+		public int id;
+		public VisiblePoint start;
+		public VisiblePoint end;
+		public Occluder occluder;
+		public int edgeIndex;
+		public Vector2f edgeStart;
+		public Vector2f edgeEnd;
+		public boolean wrapsAround;
+		public boolean active;
+		public int startedAtEvent;
+
+		public Segment(int id, VisiblePoint start, VisiblePoint end, Occluder occluder, int edgeIndex, Vector2f edgeStart, Vector2f edgeEnd, boolean wrapsAround){
+			this.id = id;
+			this.start = start;
+			this.end = end;
+			this.occluder = occluder;
+			this.edgeIndex = edgeIndex;
+			this.edgeStart = edgeStart;
+			this.edgeEnd = edgeEnd;
+			this.wrapsAround = wrapsAround;
+		}
+
+		/**
+		 * Returns 1 if p is on the same side of this segment as the eye, -1 if
+		 * it's on the other side and 0 if it's on the line.
+		 * Since start is before end going anti-clockwise, the eye is on the left.
+		 */
+		public int side(Vector2f p){
+			Vector2f s = start.getPoint();
+			Vector2f e = end.getPoint();
+			double cross = ((double)e.x - s.x)*((double)p.y - s.y) - ((double)e.y - s.y)*((double)p.x - s.x);
+			if (cross > 0){
+				return 1;
+			}else if (cross < 0){
+				return -1;
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Orders segments that the sweep ray passes through from closest to the eye
+	 * to furthest. Since the segments don't cross, one of them must be entirely
+	 * on one side of the other's line.
+	 */
+	public static class SegmentComparator implements Comparator<Segment>{
+		public int compare(Segment a, Segment b){
+			if (a == b){
+				return 0;
+			}
+			int side = a.side(b.start.getPoint());
+			int side2 = a.side(b.end.getPoint());
+			if (side >= 0 && side2 >= 0 && (side != 0 || side2 != 0)){
+				// b is in front of a
+				return 1;
+			}
+			if (side <= 0 && side2 <= 0 && (side != 0 || side2 != 0)){
+				return -1;
+			}
+			side = b.side(a.start.getPoint());
+			side2 = b.side(a.end.getPoint());
+			if (side >= 0 && side2 >= 0 && (side != 0 || side2 != 0)){
+				// a is in front of b
+				return -1;
+			}
+			if (side <= 0 && side2 <= 0 && (side != 0 || side2 != 0)){
+				return 1;
+			}
+			return (a.id < b.id ? -1 : 1);
+		}
+	}
+
+	public static class Event implements Comparable<Event>{
+		public Segment segment;
+		public VisiblePoint point;
+		public boolean start;
+
+		public Event(Segment segment, VisiblePoint point, boolean start){
+			this.segment = segment;
+			this.point = point;
+			this.start = start;
+		}
+
+		public int compareTo(Event other){
+			return point.compareTo(other.point);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Growable pools of VisiblePoints and the Vector2f coordinates of the points
+ * that VisionFinder.calc makes, plus the visiblePolygon which is rewritten in
+ * place. A VisionData with reuseResults set owns one of these so that once the
+ * pools have grown big enough, calc makes no garbage.
+ * Everything handed out by the pool is only valid until the next reset().
+ *
+ * @author Keith Woodward
+ */
+public class VisiblePointPool {
+	protected ArrayList<VisiblePoint> visiblePoints = new ArrayList<VisiblePoint>();
+	protected KPolygon visiblePolygon;
+	protected ArrayList<Vector2f> visiblePolygonPoints = new ArrayList<Vector2f>();
+
+	protected ArrayList<VPOccluder> occluderPoints = new ArrayList<VPOccluder>();
+	protected int numOccluderPoints = 0;
+	protected ArrayList<VPBoundary> boundaryPoints = new ArrayList<VPBoundary>();
+	protected int numBoundaryPoints = 0;
+	protected ArrayList<VPOccluderBoundaryIntersection> occluderBoundaryIntersections = new ArrayList<VPOccluderBoundaryIntersection>();
+	protected int numOccluderBoundaryIntersections = 0;
+	protected ArrayList<VPOccluderOccluderIntersection> occluderOccluderIntersections = new ArrayList<VPOccluderOccluderIntersection>();
+	protected int numOccluderOccluderIntersections = 0;
+	protected ArrayList<VPShadowOnOccluder> shadowsOnOccluders = new ArrayList<VPShadowOnOccluder>();
+	protected int numShadowsOnOccluders = 0;
+	protected ArrayList<VPShadowOnBoundary> shadowsOnBoundary = new ArrayList<VPShadowOnBoundary>();
+	protected int numShadowsOnBoundary = 0;
+	protected ArrayList<Vector2f> coordinates = new ArrayList<Vector2f>();
+	protected int numCoordinates = 0;
+
+	public VisiblePointPool(){
+	}
+
+	/**
+	 * Makes all of the pooled objects available again. Note that this
+	 * invalidates the visiblePoints and visiblePolygon of the last calc.
+	 */
+	public void reset(){
+		visiblePoints.clear();
+		numOccluderPoints = 0;
+		numBoundaryPoints = 0;
+		numOccluderBoundaryIntersections = 0;
+		numOccluderOccluderIntersections = 0;
+		numShadowsOnOccluders = 0;
+		numShadowsOnBoundary = 0;
+		numCoordinates = 0;
+	}
+
+	public Vector2f obtainCoordinates(Vector2f point){
+		Vector2f coords;
+		if (numCoordinates < coordinates.size()){
+			coords = coordinates.get(numCoordinates);
+			coords.set(point);
+		}else{
+			coords = new Vector2f(point);
+			coordinates.add(coords);
+		}
+		numCoordinates++;
+		return coords;
+	}
+
+	public VPOccluder obtainOccluderPoint(Vector2f point, Occluder occluder, int polygonPointNum){
+		VPOccluder vp;
+		if (numOccluderPoints < occluderPoints.size()){
+			vp = occluderPoints.get(numOccluderPoints);
+			vp.point = point;
+			vp.occluder = occluder;
+			vp.polygonPointNum = polygonPointNum;
+		}else{
+			vp = new VPOccluder(point, occluder, polygonPointNum);
+			occluderPoints.add(vp);
+		}
+		numOccluderPoints++;
+		return vp;
+	}
+
+	public VPBoundary obtainBoundaryPoint(Vector2f point){
+		VPBoundary vp;
+		if (numBoundaryPoints < boundaryPoints.size()){
+			vp = boundaryPoints.get(numBoundaryPoints);
+			vp.point = point;
+		}else{
+			vp = new VPBoundary(point);
+			boundaryPoints.add(vp);
+		}
+		numBoundaryPoints++;
+		return vp;
+	}
+
+	public VPOccluderBoundaryIntersection obtainOccluderBoundaryIntersection(Vector2f point, Occluder occluder, int polygonPointNum){
+		VPOccluderBoundaryIntersection vp;
+		if (numOccluderBoundaryIntersections < occluderBoundaryIntersections.size()){
+			vp = occluderBoundaryIntersections.get(numOccluderBoundaryIntersections);
+			vp.point = point;
+			vp.occluder = occluder;
+			vp.polygonPointNum = polygonPointNum;
+		}else{
+			vp = new VPOccluderBoundaryIntersection(point, occluder, polygonPointNum);
+			occluderBoundaryIntersections.add(vp);
+		}
+		numOccluderBoundaryIntersections++;
+		return vp;
+	}
+
+	public VPOccluderOccluderIntersection obtainOccluderOccluderIntersection(Vector2f point, Occluder occluder, int polygonPointNum, Occluder occluder2, int polygonPointNum2){
+		VPOccluderOccluderIntersection vp;
+		if (numOccluderOccluderIntersections < occluderOccluderIntersections.size()){
+			vp = occluderOccluderIntersections.get(numOccluderOccluderIntersections);
+			vp.point = point;
+			vp.occluder = occluder;
+			vp.polygonPointNum = polygonPointNum;
+			vp.occluder2 = occluder2;
+			vp.polygonPointNum2 = polygonPointNum2;
+		}else{
+			vp = new VPOccluderOccluderIntersection(point, occluder, polygonPointNum, occluder2, polygonPointNum2);
+			occluderOccluderIntersections.add(vp);
+		}
+		numOccluderOccluderIntersections++;
+		return vp;
+	}
+
+	public VPShadowOnOccluder obtainShadowOnOccluder(Vector2f point, Occluder occluder, int edgeIndex, VPOccluder castingOccluderPoint){
+		VPShadowOnOccluder vp;
+		if (numShadowsOnOccluders < shadowsOnOccluders.size()){
+			vp = shadowsOnOccluders.get(numShadowsOnOccluders);
+			vp.point = point;
+			vp.occluder = occluder;
+			vp.edgeIndex = edgeIndex;
+			vp.castingOccluderPoint = castingOccluderPoint;
+		}else{
+			vp = new VPShadowOnOccluder(point, occluder, edgeIndex, castingOccluderPoint);
+			shadowsOnOccluders.add(vp);
+		}
+		numShadowsOnOccluders++;
+		return vp;
+	}
+
+	public VPShadowOnBoundary obtainShadowOnBoundary(Vector2f point, int edgeIndex, VPOccluder castingOccluderPoint){
+		VPShadowOnBoundary vp;
+		if (numShadowsOnBoundary < shadowsOnBoundary.size()){
+			vp = shadowsOnBoundary.get(numShadowsOnBoundary);
+			vp.point = point;
+			vp.edgeIndex = edgeIndex;
+			vp.castingOccluderPoint = castingOccluderPoint;
+		}else{
+			vp = new VPShadowOnBoundary(point, edgeIndex, castingOccluderPoint);
+			shadowsOnBoundary.add(vp);
+		}
+		numShadowsOnBoundary++;
+		return vp;
+	}
+
+	/**
+	 * Copies the coordinates of the visiblePoints into the pooled
+	 * visiblePolygon, re-using its Vector2fs. Returns null if there are
+	 * fewer than 3 points, like VisionFinder.createPolygonFromVisiblePoints.
+	 */
+	public KPolygon makeVisiblePolygon(ArrayList<VisiblePoint> visiblePoints){
+		int numPoints = visiblePoints.size();
+		if (numPoints < 3){
+			return null;
+		}
+		while (visiblePolygonPoints.size() < numPoints){
+			visiblePolygonPoints.add(new Vector2f());
+		}
+		if (visiblePolygon == null){
+			visiblePolygon = new KPolygon();
+			visiblePolygon.points = new ArrayList<Vector2f>(numPoints);
+		}
+		ArrayList<Vector2f> points = visiblePolygon.getPoints();
+		points.clear();
+		for (int i = 0; i < numPoints; i++){
+			Vector2f p = visiblePolygonPoints.get(i);
+			p.set(visiblePoints.get(i).getPoint());
+			points.add(p);
+		}
+		visiblePolygon.calcAll();
+		return visiblePolygon;
+	}
+}
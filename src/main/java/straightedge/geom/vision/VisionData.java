@@ -57,6 +57,14 @@ public class VisionData{
 	public double minEyeToBoundaryPolygonPointDistSq = Double.MAX_VALUE;
 	//public double[] boundaryPolygonPointAngles;
 
+	// If reuseResults is true then VisionFinder.calc takes the VisiblePoints, their coordinates
+	// and the visiblePolygon from visiblePointPool instead of making new ones each time,
+	// so visiblePoints and visiblePolygon are overwritten by the next call to calc.
+	public boolean reuseResults = false;
+	public VisiblePointPool visiblePointPool;
+	// Used by IncrementalVisionFinder to remember what the last visiblePolygon depended on.
+	public IncrementalVisionState incrementalState;
+
 	protected VisionData(){
 	}
 
@@ -101,6 +109,21 @@ public class VisionData{
 		reset(eye, boundaryPolygon);
 	}
 
+	public boolean isReuseResults() {
+		return reuseResults;
+	}
+
+	public void setReuseResults(boolean reuseResults) {
+		this.reuseResults = reuseResults;
+		if (reuseResults && visiblePointPool == null){
+			visiblePointPool = new VisiblePointPool();
+		}
+	}
+
+	public VisiblePointPool getVisiblePointPool() {
+		return visiblePointPool;
+	}
+
 	public KPolygon getBoundaryPolygon() {
 		return boundaryPolygon;
 	}
@@ -31,12 +31,22 @@
 package straightedge.geom.vision;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import com.jme3.math.Vector2f;
 
 import straightedge.geom.KPolygon;
+import straightedge.geom.Vector2fUtils;
+import straightedge.geom.util.TileArrayIntersections;
 
 /**
+ * For eyes that stay put and only turn, like turrets and sentries, call
+ * calcFullVision once to find everything that can be seen all the way around
+ * the eye, then rotateAndClip for each new facing. That just turns the
+ * boundaryPolygon and clips the cached 360 degree visiblePolygon with it,
+ * without looking at any occluders. Calling calcFullVision again is needed
+ * when the eye moves or the occluders change. The originalBoundaryPolygon must
+ * be convex and the eye must be inside it or on its edge.
  *
  * @author Keith
  */
@@ -44,6 +54,32 @@ public class VisionDataRotation extends VisionData{
 	public Vector2f originalEye;
 	public KPolygon originalBoundaryPolygon;
 	public double boundaryPolygonRotationAroundEye = 0;
+
+	// The number of points in the boundaryPolygon used for the 360 degree view.
+	public int fullVisionNumPoints = 32;
+	// The 360 degree view around the eye used by rotateAndClip, or null if calcFullVision hasn't been called.
+	public VisionData fullVisionData;
+	public boolean originalBoundaryPolygonConvex;
+
+	// scratch used by rotateAndClip.
+	protected double[] clipX = new double[0];
+	protected double[] clipY = new double[0];
+	protected double[] clipX2 = new double[0];
+	protected double[] clipY2 = new double[0];
+	// For each point: the index of its VisiblePoint in fullVisionData, or -1 if it's new.
+	protected int[] clipVisiblePointIndex = new int[0];
+	protected int[] clipVisiblePointIndex2 = new int[0];
+	// For each new point: the fullVisionData edge that it's on, or -1 if it's a boundaryPolygon point.
+	protected int[] clipFullEdge = new int[0];
+	protected int[] clipFullEdge2 = new int[0];
+	// For each new point: the boundaryPolygon edge that it's on.
+	protected int[] clipBoundaryEdge = new int[0];
+	protected int[] clipBoundaryEdge2 = new int[0];
+	// For each point: the edge that leads to the next point, fullVisionData edges are
+	// numbered from 0 and boundaryPolygon edges are numbered from -1 down.
+	protected int[] clipNextEdge = new int[0];
+	protected int[] clipNextEdge2 = new int[0];
+	protected int numClipPoints;
 	
 	public VisionDataRotation(Vector2f originalEye, KPolygon originalBoundaryPolygon){
 		super();
@@ -56,6 +92,8 @@ public class VisionDataRotation extends VisionData{
 		this.boundaryPolygonRotationAroundEye = 0;
 
 		super.reset(originalEye.clone(), originalBoundaryPolygon.copy());
+		originalBoundaryPolygonConvex = isConvex(originalBoundaryPolygon);
+		fullVisionData = null;
 	}
 
 	public void reset(){
@@ -77,6 +115,304 @@ public class VisionDataRotation extends VisionData{
 		boundaryPolygon.rotate(boundaryPolygonRotationAroundEye, eye);
 	}
 
+	/**
+	 * Calculates everything that can be seen from the eye out to the furthest
+	 * point of the boundaryPolygon, whatever way it's turned, for rotateAndClip to use.
+	 */
+	public VisionData calcFullVision(VisionEngine visionFinder, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
+		resetFullVisionData();
+		return visionFinder.calc(fullVisionData, fixedOccludersTileArrayIntersections, movingOccluders);
+	}
+
+	public VisionData calcFullVision(VisionEngine visionFinder, List<? extends Occluder> allOccluders){
+		resetFullVisionData();
+		return visionFinder.calc(fullVisionData, allOccluders);
+	}
+
+	protected void resetFullVisionData(){
+		double maxDistSq = 0;
+		ArrayList<Vector2f> points = originalBoundaryPolygon.getPoints();
+		for (int i = 0; i < points.size(); i++){
+			maxDistSq = Math.max(maxDistSq, originalEye.distanceSquared(points.get(i)));
+		}
+		// Make the polygon's edges a bit further away than the furthest boundaryPolygon
+		// point so that none of its points or shadows are left after clipping.
+		double radius = (Math.sqrt(maxDistSq)*1.01 + 1)/Math.cos(Math.PI/fullVisionNumPoints);
+		KPolygon fullBoundaryPolygon = KPolygon.createRegularPolygon(fullVisionNumPoints, radius);
+		fullBoundaryPolygon.translate(eye.x, eye.y);
+		if (fullVisionData == null){
+			fullVisionData = new VisionData(eye.clone(), fullBoundaryPolygon);
+		}else{
+			fullVisionData.reset(eye.clone(), fullBoundaryPolygon);
+		}
+		fullVisionData.setReuseResults(reuseResults);
+	}
+
+	public boolean isFullVisionCalculated(){
+		return fullVisionData != null && fullVisionData.visiblePoints != null;
+	}
+
+	/**
+	 * Turns the boundaryPolygon around the eye used by the last calcFullVision
+	 * and sets the visiblePolygon and visiblePoints to the part of the full
+	 * 360 degree view inside it. The visiblePoints that came from the full
+	 * view are shared with it. The points where the boundaryPolygon cuts the
+	 * full view are VPOccluderBoundaryIntersections if they're on an occluder
+	 * and VPShadowOnBoundarys if they're on the edge of a shadow.
+	 */
+	public void rotateAndClip(double boundaryPolygonRotationAroundEye){
+		if (isFullVisionCalculated() == false){
+			throw new IllegalStateException("calcFullVision must be called before rotateAndClip.");
+		}
+		if (originalBoundaryPolygonConvex == false){
+			throw new IllegalStateException("The originalBoundaryPolygon must be convex to use rotateAndClip.");
+		}
+		this.boundaryPolygonRotationAroundEye = boundaryPolygonRotationAroundEye;
+		Vector2f fullEye = fullVisionData.eye;
+		eye.set(fullEye);
+		// Turn the boundaryPolygon in place, it's our own copy of the originalBoundaryPolygon.
+		double cos = Math.cos(boundaryPolygonRotationAroundEye);
+		double sin = Math.sin(boundaryPolygonRotationAroundEye);
+		ArrayList<Vector2f> originalPoints = originalBoundaryPolygon.getPoints();
+		ArrayList<Vector2f> points = boundaryPolygon.getPoints();
+		for (int i = 0; i < originalPoints.size(); i++){
+			double relX = originalPoints.get(i).x - originalEye.x;
+			double relY = originalPoints.get(i).y - originalEye.y;
+			points.get(i).set((float)(fullEye.x + relX*cos - relY*sin), (float)(fullEye.y + relX*sin + relY*cos));
+		}
+		boundaryPolygon.calcAll();
+		clipFullVision();
+		makeClippedVisiblePoints();
+	}
+
+	/**
+	 * Clips the full visiblePolygon with each edge of the boundaryPolygon in
+	 * turn (Sutherland-Hodgman). The full visiblePolygon is star-shaped around
+	 * the eye and the boundaryPolygon is convex and contains the eye, so the
+	 * result is exactly the part of the full view inside the boundaryPolygon.
+	 */
+	protected void clipFullVision(){
+		ArrayList<VisiblePoint> fullVisiblePoints = fullVisionData.visiblePoints;
+		int numFullPoints = fullVisiblePoints.size();
+		ArrayList<Vector2f> boundaryPoints = boundaryPolygon.getPoints();
+		int numBoundaryPoints = boundaryPoints.size();
+		ensureClipCapacity(numFullPoints + 2*numBoundaryPoints);
+		for (int i = 0; i < numFullPoints; i++){
+			Vector2f p = fullVisiblePoints.get(i).getPoint();
+			clipX[i] = p.x;
+			clipY[i] = p.y;
+			clipVisiblePointIndex[i] = i;
+			clipFullEdge[i] = -1;
+			clipBoundaryEdge[i] = -1;
+			clipNextEdge[i] = i;
+		}
+		numClipPoints = (numFullPoints >= 3 ? numFullPoints : 0);
+		double orientation = (boundaryPolygon.isCounterClockWise() ? 1 : -1);
+		for (int j = 0; j < numBoundaryPoints && numClipPoints > 0; j++){
+			Vector2f a = boundaryPoints.get(j);
+			Vector2f b = boundaryPoints.get(j+1 >= numBoundaryPoints ? 0 : j+1);
+			double edgeX = b.x - a.x;
+			double edgeY = b.y - a.y;
+			int numOut = 0;
+			int prev = numClipPoints - 1;
+			double prevSide = orientation*(edgeX*(clipY[prev] - a.y) - edgeY*(clipX[prev] - a.x));
+			for (int i = 0; i < numClipPoints; i++){
+				double side = orientation*(edgeX*(clipY[i] - a.y) - edgeY*(clipX[i] - a.x));
+				boolean inside = (side >= 0);
+				boolean prevInside = (prevSide >= 0);
+				if (inside != prevInside){
+					// add the point where the edge from prev to i crosses the boundary edge.
+					double t = prevSide/(prevSide - side);
+					clipX2[numOut] = clipX[prev] + t*(clipX[i] - clipX[prev]);
+					clipY2[numOut] = clipY[prev] + t*(clipY[i] - clipY[prev]);
+					clipVisiblePointIndex2[numOut] = -1;
+					int crossedEdge = clipNextEdge[prev];
+					clipFullEdge2[numOut] = (crossedEdge >= 0 ? crossedEdge : -1);
+					clipBoundaryEdge2[numOut] = j;
+					// leaving, the result follows the boundary edge until it comes back in.
+					clipNextEdge2[numOut] = (prevInside ? -1 - j : crossedEdge);
+					numOut++;
+				}
+				if (inside){
+					clipX2[numOut] = clipX[i];
+					clipY2[numOut] = clipY[i];
+					clipVisiblePointIndex2[numOut] = clipVisiblePointIndex[i];
+					clipFullEdge2[numOut] = clipFullEdge[i];
+					clipBoundaryEdge2[numOut] = clipBoundaryEdge[i];
+					clipNextEdge2[numOut] = clipNextEdge[i];
+					numOut++;
+				}
+				prev = i;
+				prevSide = side;
+			}
+			swapClipArrays();
+			numClipPoints = numOut;
+		}
+	}
+
+	protected void makeClippedVisiblePoints(){
+		ArrayList<VisiblePoint> fullVisiblePoints = fullVisionData.visiblePoints;
+		int numFullPoints = fullVisiblePoints.size();
+		VisiblePointPool pool = null;
+		if (reuseResults){
+			pool = visiblePointPool;
+			pool.reset();
+			visiblePoints = pool.visiblePoints;
+		}else{
+			visiblePoints = new ArrayList<VisiblePoint>(numClipPoints);
+		}
+		for (int i = 0; i < numClipPoints; i++){
+			if (clipVisiblePointIndex[i] >= 0){
+				visiblePoints.add(fullVisiblePoints.get(clipVisiblePointIndex[i]));
+				continue;
+			}
+			Vector2f point;
+			if (pool != null){
+				point = pool.obtainCoordinates(eye);
+				point.set((float)clipX[i], (float)clipY[i]);
+			}else{
+				point = new Vector2f((float)clipX[i], (float)clipY[i]);
+			}
+			int fullEdge = clipFullEdge[i];
+			if (fullEdge < 0){
+				visiblePoints.add(pool != null ? pool.obtainBoundaryPoint(point) : new VPBoundary(point));
+				continue;
+			}
+			VisiblePoint vp = fullVisiblePoints.get(fullEdge);
+			VisiblePoint vp2 = fullVisiblePoints.get(fullEdge+1 >= numFullPoints ? 0 : fullEdge+1);
+			double relX = vp.getPoint().x - eye.x;
+			double relY = vp.getPoint().y - eye.y;
+			double relX2 = vp2.getPoint().x - eye.x;
+			double relY2 = vp2.getPoint().y - eye.y;
+			double cross = relX*relY2 - relY*relX2;
+			if (Math.abs(cross) <= 1e-6*(relX*relX + relY*relY + relX2*relX2 + relY2*relY2)){
+				// the edge points at the eye so it's the side of a shadow.
+				VPOccluder castingOccluderPoint = null;
+				if (vp.getType() == VisiblePoint.OCCLUDER && (vp2.getType() != VisiblePoint.OCCLUDER || relX*relX + relY*relY < relX2*relX2 + relY2*relY2)){
+					castingOccluderPoint = (VPOccluder)vp;
+				}else if (vp2.getType() == VisiblePoint.OCCLUDER){
+					castingOccluderPoint = (VPOccluder)vp2;
+				}
+				visiblePoints.add(pool != null ? pool.obtainShadowOnBoundary(point, clipBoundaryEdge[i], castingOccluderPoint) : new VPShadowOnBoundary(point, clipBoundaryEdge[i], castingOccluderPoint));
+				continue;
+			}
+			Occluder occluder = getCommonOccluder(vp, vp2);
+			if (occluder == null){
+				visiblePoints.add(pool != null ? pool.obtainBoundaryPoint(point) : new VPBoundary(point));
+				continue;
+			}
+			int polygonPointNum = getClosestEdgeIndex(occluder.getPolygon(), point);
+			visiblePoints.add(pool != null ? pool.obtainOccluderBoundaryIntersection(point, occluder, polygonPointNum) : new VPOccluderBoundaryIntersection(point, occluder, polygonPointNum));
+		}
+		if (pool != null){
+			visiblePolygon = pool.makeVisiblePolygon(visiblePoints);
+		}else{
+			ArrayList<Vector2f> pointList = new ArrayList<Vector2f>(visiblePoints.size());
+			for (int i = 0; i < visiblePoints.size(); i++){
+				pointList.add(visiblePoints.get(i).getPoint().clone());
+			}
+			visiblePolygon = (pointList.size() >= 3 ? new KPolygon(pointList) : null);
+		}
+	}
+
+	protected Occluder getCommonOccluder(VisiblePoint vp, VisiblePoint vp2){
+		Occluder occluder = getOccluder(vp, false);
+		Occluder occluder2 = getOccluder(vp, true);
+		Occluder otherOccluder = getOccluder(vp2, false);
+		Occluder otherOccluder2 = getOccluder(vp2, true);
+		if (occluder != null && (occluder == otherOccluder || occluder == otherOccluder2)){
+			return occluder;
+		}
+		if (occluder2 != null && (occluder2 == otherOccluder || occluder2 == otherOccluder2)){
+			return occluder2;
+		}
+		return null;
+	}
+
+	protected Occluder getOccluder(VisiblePoint vp, boolean second){
+		int type = vp.getType();
+		if (second){
+			return (type == VisiblePoint.OCCLUDER_OCCLUDER_INTERSECTION ? ((VPOccluderOccluderIntersection)vp).getOccluder2() : null);
+		}
+		if (type == VisiblePoint.OCCLUDER){
+			return ((VPOccluder)vp).getOccluder();
+		}else if (type == VisiblePoint.OCCLUDER_OCCLUDER_INTERSECTION){
+			return ((VPOccluderOccluderIntersection)vp).getOccluder();
+		}else if (type == VisiblePoint.OCCLUDER_BOUNDARY_INTERSECTION){
+			return ((VPOccluderBoundaryIntersection)vp).getOccluder();
+		}else if (type == VisiblePoint.SHADOW_ON_OCCLUDER){
+			return ((VPShadowOnOccluder)vp).getOccluder();
+		}
+		return null;
+	}
+
+	protected int getClosestEdgeIndex(KPolygon polygon, Vector2f p){
+		ArrayList<Vector2f> points = polygon.getPoints();
+		int closestIndex = 0;
+		double closestDistSq = Double.MAX_VALUE;
+		for (int i = 0; i < points.size(); i++){
+			double distSq = Vector2fUtils.ptSegDistSq(points.get(i), polygon.getNextPoint(i), p);
+			if (distSq < closestDistSq){
+				closestDistSq = distSq;
+				closestIndex = i;
+			}
+		}
+		return closestIndex;
+	}
+
+	protected void ensureClipCapacity(int capacity){
+		if (clipX.length >= capacity){
+			return;
+		}
+		clipX = new double[capacity];
+		clipY = new double[capacity];
+		clipX2 = new double[capacity];
+		clipY2 = new double[capacity];
+		clipVisiblePointIndex = new int[capacity];
+		clipVisiblePointIndex2 = new int[capacity];
+		clipFullEdge = new int[capacity];
+		clipFullEdge2 = new int[capacity];
+		clipBoundaryEdge = new int[capacity];
+		clipBoundaryEdge2 = new int[capacity];
+		clipNextEdge = new int[capacity];
+		clipNextEdge2 = new int[capacity];
+	}
+
+	protected void swapClipArrays(){
+		double[] tempDoubles = clipX; clipX = clipX2; clipX2 = tempDoubles;
+		tempDoubles = clipY; clipY = clipY2; clipY2 = tempDoubles;
+		int[] tempInts = clipVisiblePointIndex; clipVisiblePointIndex = clipVisiblePointIndex2; clipVisiblePointIndex2 = tempInts;
+		tempInts = clipFullEdge; clipFullEdge = clipFullEdge2; clipFullEdge2 = tempInts;
+		tempInts = clipBoundaryEdge; clipBoundaryEdge = clipBoundaryEdge2; clipBoundaryEdge2 = tempInts;
+		tempInts = clipNextEdge; clipNextEdge = clipNextEdge2; clipNextEdge2 = tempInts;
+	}
+
+	/**
+	 * Returns true if the polygon doesn't turn both ways.
+	 */
+	public static boolean isConvex(KPolygon polygon){
+		ArrayList<Vector2f> points = polygon.getPoints();
+		int sign = 0;
+		for (int i = 0; i < points.size(); i++){
+			Vector2f p = points.get(i);
+			Vector2f p2 = polygon.getNextPoint(i);
+			Vector2f p3 = polygon.getNextPoint(i+1 >= points.size() ? 0 : i+1);
+			double cross = (p2.x - p.x)*(p3.y - p2.y) - (p2.y - p.y)*(p3.x - p2.x);
+			if (cross > 0){
+				if (sign < 0){
+					return false;
+				}
+				sign = 1;
+			}else if (cross < 0){
+				if (sign > 0){
+					return false;
+				}
+				sign = -1;
+			}
+		}
+		return true;
+	}
+
 	public double getBoundaryPolygonRotationAroundEye() {
 		return boundaryPolygonRotationAroundEye;
 	}
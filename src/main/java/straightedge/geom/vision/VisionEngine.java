@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.util.*;
+import java.util.*;
+
+/**
+ * Calculates what can be seen from a VisionData's eye within its boundaryPolygon.
+ * After calc the VisionData's visiblePoints are sorted around the eye and
+ * its visiblePolygon is made from them, or is null if there are fewer than 3.
+ *
+ * VisionFinder tests each candidate point against the nearby occluders, which is
+ * quick when there are only a few occluders near the eye.
+ * SweepVisionFinder sweeps a ray around the eye, which is quicker when there are
+ * many occluder edges in sight.
+ *
+ * The fixed occluders can be in any SpatialIndex, but only a
+ * TileArrayIntersections caches the points where they intersect, so with the
+ * others those points are found again on every calc.
+ *
+ * @author Keith Woodward
+ */
+public interface VisionEngine {
+	public VisionData calc(VisionData cache, List<? extends Occluder> allOccluders);
+	public VisionData calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders);
+	public VisionData calc(VisionData cache, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders);
+
+	/**
+	 * Finds the fixed occluders within the boundaryPolygon's circle using the
+	 * fixedOccluderIndex and calcs with them and the movingOccluders.
+	 */
+	public VisionData calc(VisionData cache, SpatialIndex<? extends Occluder> fixedOccluderIndex, List<? extends Occluder> movingOccluders);
+}
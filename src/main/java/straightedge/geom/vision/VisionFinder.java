@@ -41,19 +41,33 @@ import com.jme3.math.Vector2f;
  *
  * @author Keith
  */
-public class VisionFinder {
+public class VisionFinder implements VisionEngine {
 	public ArrayList<OccluderDistAndQuad> polygonAndDists = new ArrayList<OccluderDistAndQuad>();
 	public ArrayList<VPOccluderOccluderIntersection> occluderIntersectionPoints = new ArrayList<VPOccluderOccluderIntersection>();
 	public ArrayList<VPOccluderBoundaryIntersection> boundaryOccluderIntersectionPoints = new ArrayList<VPOccluderBoundaryIntersection>();
 
+	// These are re-used between calls so that calc doesn't make garbage.
+	public ArrayList<OccluderDistAndQuad> polygonAndDistsPool = new ArrayList<OccluderDistAndQuad>();
+	public ArrayList<Occluder> fixedOccludersWithin = new ArrayList<Occluder>();
+	public ArrayList<VPOccluderOccluderIntersection> fixedOccludersIntersectionPointsWithin = new ArrayList<VPOccluderOccluderIntersection>();
+	public ArrayList<Occluder> indexedOccludersWithin = new ArrayList<Occluder>();
+	public TileArrayQueryContext queryContext = new TileArrayQueryContext();
+	public Vector2f intersection = new Vector2f();
+	public Vector2f closestIntersection = new Vector2f();
+	public Vector2f endOfRayPoint = new Vector2f();
+	public Object[] sortArray = new Object[0];
+	public Object[] sortBuffer = new Object[0];
+
 	public VisionData calc(Vector2f eye, KPolygon boundaryPolygon, List<? extends Occluder> allOccluders){
 		return calc(eye, boundaryPolygon, new ArrayList<Occluder>(0), new ArrayList<VPOccluderOccluderIntersection>(0), allOccluders);
 	}
 	public VisionData calc(VisionData cache, List<? extends Occluder> allOccluders){
-		return calc(cache, new ArrayList<Occluder>(0), new ArrayList<VPOccluderOccluderIntersection>(0), allOccluders);
+		return calc(cache, Collections.<Occluder>emptyList(), Collections.<VPOccluderOccluderIntersection>emptyList(), allOccluders);
 	}
 	public VisionData calc(Vector2f eye, KPolygon boundaryPolygon, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, ArrayList<? extends Occluder> movingOccluders){
-		List<? extends Occluder> fixedOccluders = fixedOccludersTileArrayIntersections.getAllWithin(boundaryPolygon.getCenter(), boundaryPolygon.getRadius());
+		ArrayList<Occluder> fixedOccluders = fixedOccludersTileArrayIntersections.getAllWithin(boundaryPolygon.getCenter().x, boundaryPolygon.getCenter().y, boundaryPolygon.getRadius(), new ArrayList<Occluder>());
+		// moving occluders registered with the TileArrayIntersections have their intersections in it already
+		fixedOccludersTileArrayIntersections.getMovingOccludersWithin(boundaryPolygon.getCenter().x, boundaryPolygon.getCenter().y, boundaryPolygon.getRadius(), fixedOccluders);
 		List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints = fixedOccludersTileArrayIntersections.getIntersectionsWithinAtLeast(boundaryPolygon.getCenter(), boundaryPolygon.getRadius());
 		return calc(eye, boundaryPolygon, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders);
 	}
@@ -68,18 +82,31 @@ public class VisionFinder {
 	}
 	public VisionData calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections, List<? extends Occluder> movingOccluders){
 		KPolygon boundaryPolygon = cache.getBoundaryPolygon();
-		ArrayList<? extends Occluder> fixedOccluders = fixedOccludersTileArrayIntersections.getAllWithin(boundaryPolygon.getCenter(), boundaryPolygon.getRadius());
-		ArrayList<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints = fixedOccludersTileArrayIntersections.getIntersectionsWithinAtLeast(boundaryPolygon.getCenter(), boundaryPolygon.getRadius());
-		return calc(cache, fixedOccluders, fixedOccludersIntersectionPoints, movingOccluders);
+		Vector2f center = boundaryPolygon.getCenter();
+		fixedOccludersWithin.clear();
+		fixedOccludersIntersectionPointsWithin.clear();
+		fixedOccludersTileArrayIntersections.getAllWithin(center.x, center.y, boundaryPolygon.getRadius(), fixedOccludersWithin);
+		// moving occluders registered with the TileArrayIntersections have their intersections in it already
+		fixedOccludersTileArrayIntersections.getMovingOccludersWithin(center.x, center.y, boundaryPolygon.getRadius(), fixedOccludersWithin);
+		fixedOccludersTileArrayIntersections.getIntersectionsWithinAtLeast(center, boundaryPolygon.getRadius(), fixedOccludersIntersectionPointsWithin);
+		return calc(cache, fixedOccludersWithin, fixedOccludersIntersectionPointsWithin, movingOccluders);
 	}
 	public VisionData calc(VisionData cache, TileBagIntersections<? extends Occluder> fixedOccludersTileBagIntersections, List<? extends Occluder> movingOccluders){
 		return calc(cache, fixedOccludersTileBagIntersections.getTileArray(), movingOccluders);
 	}
+	public VisionData calc(VisionData cache, SpatialIndex<? extends Occluder> fixedOccluderIndex, List<? extends Occluder> movingOccluders){
+		KPolygon boundaryPolygon = cache.getBoundaryPolygon();
+		Vector2f center = boundaryPolygon.getCenter();
+		indexedOccludersWithin.clear();
+		fixedOccluderIndex.getAllWithin(center.x, center.y, boundaryPolygon.getRadius(), indexedOccludersWithin, queryContext);
+		indexedOccludersWithin.addAll(movingOccluders);
+		return calc(cache, indexedOccludersWithin);
+	}
 	public VisionData calc(VisionData cache, TileBagIntersections<? extends Occluder> fixedOccludersTileBagIntersections){
-		return calc(cache, fixedOccludersTileBagIntersections.getTileArray(), new ArrayList<Occluder>(0));
+		return calc(cache, fixedOccludersTileBagIntersections.getTileArray(), Collections.<Occluder>emptyList());
 	}
 	public VisionData calc(VisionData cache, TileArrayIntersections<? extends Occluder> fixedOccludersTileArrayIntersections){
-		return calc(cache, fixedOccludersTileArrayIntersections, new ArrayList<Occluder>(0));
+		return calc(cache, fixedOccludersTileArrayIntersections, Collections.<Occluder>emptyList());
 	}
 	public VisionData calc(Vector2f eye, KPolygon boundaryPolygon, List<? extends Occluder> fixedOccluders, List<VPOccluderOccluderIntersection> fixedOccludersIntersectionPoints, List<? extends Occluder> movingOccluders){
 		VisionData cache = new VisionData(eye, boundaryPolygon);
@@ -95,6 +122,14 @@ public class VisionFinder {
 		KPolygon boundaryPolygon = cache.boundaryPolygon;
 		cache.visiblePoints = null;
 		cache.visiblePolygon = null;
+		VisiblePointPool pool = null;
+		if (cache.reuseResults){
+			if (cache.visiblePointPool == null){
+				cache.visiblePointPool = new VisiblePointPool();
+			}
+			pool = cache.visiblePointPool;
+			pool.reset();
+		}
 		int[] boundaryPolygonXIndicators = cache.boundaryPolygonXIndicators;
 		int[] boundaryPolygonYIndicators = cache.boundaryPolygonYIndicators;
 		double maxEyeToBoundaryPolygonPointDist = cache.maxEyeToBoundaryPolygonPointDist;
@@ -105,7 +140,12 @@ public class VisionFinder {
 		//double boundaryPolygonRotationAroundEye = cache.getBoundaryPolygonRotationAroundEye();
 
 		ArrayList<Vector2f> boundaryPolygonPoints = boundaryPolygon.getPoints();
-		ArrayList<VisiblePoint> visiblePoints = new ArrayList<VisiblePoint>(boundaryPolygonPoints.size());	// size is likely to be boundaryPolygon.size() or more.
+		ArrayList<VisiblePoint> visiblePoints;
+		if (pool != null){
+			visiblePoints = pool.visiblePoints;
+		}else{
+			visiblePoints = new ArrayList<VisiblePoint>(boundaryPolygonPoints.size());	// size is likely to be boundaryPolygon.size() or more.
+		}
 //		codeTimer.click("polygonAndDists clear");
 		polygonAndDists.clear();
 //		codeTimer.click("polygonAndDists");
@@ -120,8 +160,7 @@ public class VisionFinder {
 			}
 			int xIndicator = getXIndicator(poly, eye);
 			int yIndicator = getYIndicator(poly, eye);
-			OccluderDistAndQuad polygonAndDist = new OccluderDistAndQuad(occluder, distCenterToEyeLessCircBound, distCenterToEyeLessCircBoundSq, xIndicator, yIndicator);
-			polygonAndDists.add(polygonAndDist);
+			addPolygonAndDist(occluder, distCenterToEyeLessCircBound, distCenterToEyeLessCircBoundSq, xIndicator, yIndicator);
 		}
 		// add the movingPolygons to polygonAndDists
 		for (int n = 0; n < movingOccluders.size(); n++){
@@ -134,12 +173,11 @@ public class VisionFinder {
 			}
 			int xIndicator = getXIndicator(poly, eye);
 			int yIndicator = getYIndicator(poly, eye);
-			OccluderDistAndQuad polygonAndDist = new OccluderDistAndQuad(occluder, distCenterToEyeLessCircBound, distCenterToEyeLessCircBoundSq, xIndicator, yIndicator);
-			polygonAndDists.add(polygonAndDist);
+			addPolygonAndDist(occluder, distCenterToEyeLessCircBound, distCenterToEyeLessCircBoundSq, xIndicator, yIndicator);
 		}
 //		codeTimer.click("sort");
 		// Sort the list.
-		Collections.sort(polygonAndDists);
+		sort(polygonAndDists);
 		//codeTimer.click();
 
 //		codeTimer.click("visiblePoints clear");
@@ -212,7 +250,7 @@ public class VisionFinder {
 				}
 				//double angleRelativeToEye = eye.findAngle(p);
 				//VisiblePoint vp = new VPOccluder(p, polygonAndDist.getOccluder(), j, angleRelativeToEye);
-				VisiblePoint vp = new VPOccluder(p, polygonAndDist.getOccluder(), j);
+				VisiblePoint vp = (pool != null ? pool.obtainOccluderPoint(p, polygonAndDist.getOccluder(), j) : new VPOccluder(p, polygonAndDist.getOccluder(), j));
 				visiblePoints.add(vp);
 			}
 		}
@@ -245,9 +283,12 @@ public class VisionFinder {
 						Vector2f p3 = points.get(i);
 						Vector2f p4 = points.get(nextI);
 						if (Vector2fUtils.linesIntersect(p, p2, p3, p4)){
-							Vector2f intersection = Vector2fUtils.getLineLineIntersection(p, p2, p3, p4);
-							if (intersection != null){
-								boundaryOccluderIntersectionPoints.add(new VPOccluderBoundaryIntersection(intersection, polygonAndDist.getOccluder(), i));
+							if (Vector2fUtils.getLineLineIntersection(p, p2, p3, p4, intersection) != null){
+								if (pool != null){
+									boundaryOccluderIntersectionPoints.add(pool.obtainOccluderBoundaryIntersection(pool.obtainCoordinates(intersection), polygonAndDist.getOccluder(), i));
+								}else{
+									boundaryOccluderIntersectionPoints.add(new VPOccluderBoundaryIntersection(new Vector2f(intersection), polygonAndDist.getOccluder(), i));
+								}
 							}
 						}
 					}
@@ -297,7 +338,9 @@ public class VisionFinder {
 		boundaryOccluderIntersectionPoints.clear();
 		// Add all points of intersection between movingOccluders and fixedOccluders and other movingOccluders
 		occluderIntersectionPoints.clear();
-		occluderIntersectionPoints.addAll(fixedOccludersIntersectionPoints);
+		for (int i = 0; i < fixedOccludersIntersectionPoints.size(); i++){
+			occluderIntersectionPoints.add(fixedOccludersIntersectionPoints.get(i));
+		}
 		for (int i = 0; i < movingOccluders.size(); i++){
 			Occluder occluder = movingOccluders.get(i);
 			KPolygon polygon = occluder.getPolygon();
@@ -320,9 +363,12 @@ public class VisionFinder {
 					for (int m = 0; m < points.size(); m++){
 						int nextM = (m+1 >= points.size() ? 0 : m+1);
 						if (Vector2fUtils.linesIntersect(p, p2, points.get(m),points.get(nextM))){
-							Vector2f intersection = Vector2fUtils.getLineLineIntersection(p, p2, points.get(m), points.get(nextM));
-							if (intersection != null){
-								occluderIntersectionPoints.add(new VPOccluderOccluderIntersection(intersection, occluder, j, occluder2, m));
+							if (Vector2fUtils.getLineLineIntersection(p, p2, points.get(m), points.get(nextM), intersection) != null){
+								if (pool != null){
+									occluderIntersectionPoints.add(pool.obtainOccluderOccluderIntersection(pool.obtainCoordinates(intersection), occluder, j, occluder2, m));
+								}else{
+									occluderIntersectionPoints.add(new VPOccluderOccluderIntersection(new Vector2f(intersection), occluder, j, occluder2, m));
+								}
 							}
 						}
 					}
@@ -339,9 +385,12 @@ public class VisionFinder {
 					for (int m = 0; m < points.size(); m++){
 						int nextM = (m+1 >= points.size() ? 0 : m+1);
 						if (Vector2fUtils.linesIntersect(p, p2, points.get(m),points.get(nextM))){
-							Vector2f intersection = Vector2fUtils.getLineLineIntersection(p, p2, points.get(m), points.get(nextM));
-							if (intersection != null){
-								occluderIntersectionPoints.add(new VPOccluderOccluderIntersection(intersection, occluder, j, occluder2, m));
+							if (Vector2fUtils.getLineLineIntersection(p, p2, points.get(m), points.get(nextM), intersection) != null){
+								if (pool != null){
+									occluderIntersectionPoints.add(pool.obtainOccluderOccluderIntersection(pool.obtainCoordinates(intersection), occluder, j, occluder2, m));
+								}else{
+									occluderIntersectionPoints.add(new VPOccluderOccluderIntersection(new Vector2f(intersection), occluder, j, occluder2, m));
+								}
 							}
 						}
 					}
@@ -423,14 +472,14 @@ public class VisionFinder {
 					continue OuterLoop;
 				}
 			}
-			VPBoundary vp = new VPBoundary(p);
+			VPBoundary vp = (pool != null ? pool.obtainBoundaryPoint(p) : new VPBoundary(p));
 			visiblePoints.add(vp);
 		}
 //		codeTimer.click("sort visiblePoints");
 		for (int i = 0; i < visiblePoints.size(); i++){
 			visiblePoints.get(i).preSortCalcs(eye);
 		}
-		Collections.sort(visiblePoints);
+		sort(visiblePoints);
 //		codeTimer.click("add shadow points");
 		// Make new points by casting a ray from the eye thru each occluder end point and finding the closest intersection.
 		for (int j = 0; j < visiblePoints.size(); j++){
@@ -449,8 +498,8 @@ public class VisionFinder {
 				int pMinusRCCW = Vector2fUtils.relCCW(eye, p,pMinus.x,pMinus.y);
 				if (pPlusRCCW == pMinusRCCW){
 					double pToEyeDist = p.distance(eye);
-					Vector2f endOfRayPoint = Vector2fUtils.createPointToward(eye,p, pToEyeDist + boundaryPolygon.getRadius()*2);	//p.createPointFromAngle(angleRelativeToEye, getOriginalSightPolygon().getRadius()*2);
-					Vector2f closestIntersectionPoint = null;
+					Vector2fUtils.createPointToward(eye,p, pToEyeDist + boundaryPolygon.getRadius()*2, endOfRayPoint);	//p.createPointFromAngle(angleRelativeToEye, getOriginalSightPolygon().getRadius()*2);
+					boolean foundIntersection = false;
 					double closestDist = Double.MAX_VALUE;
 					Occluder closestOccluder = null;
 					int closestObstPolygonEdgeIndex = -1;
@@ -486,12 +535,12 @@ public class VisionFinder {
 							}
 
 							if (Vector2fUtils.linesIntersect(p, endOfRayPoint, points.get(m), points.get(mPlus))){
-								Vector2f intersection = Vector2fUtils.getLineLineIntersection(p, endOfRayPoint, points.get(m), points.get(mPlus));
-								if (intersection != null){
+								if (Vector2fUtils.getLineLineIntersection(p, endOfRayPoint, points.get(m), points.get(mPlus), intersection) != null){
 									double dist = eye.distance(intersection);
 									if (dist < closestDist){
 										closestDist = dist;
-										closestIntersectionPoint = intersection;
+										closestIntersection.set(intersection);
+										foundIntersection = true;
 										closestOccluder = polygonAndDist.getOccluder();
 										closestObstPolygonEdgeIndex = m;
 										obstCloser = true;
@@ -502,7 +551,7 @@ public class VisionFinder {
 					}
 					int closestBoundaryPolygonEdgeIndex = -1;
 					// also see if the closest intersection is with the boundaryPolygon
-					if (closestIntersectionPoint == null || closestDist > minEyeToBoundaryPolygonPointDist){
+					if (foundIntersection == false || closestDist > minEyeToBoundaryPolygonPointDist){
 						ArrayList<Vector2f> points = boundaryPolygon.getPoints();
 						for (int m = 0; m < points.size(); m++){
 							if (xIndicator*boundaryPolygonXIndicators[m] == -1 || yIndicator*boundaryPolygonYIndicators[m] == -1){
@@ -513,12 +562,12 @@ public class VisionFinder {
 							int mPlus = (m+1 >= points.size() ? 0 : m+1);
 							if (Vector2fUtils.linesIntersect(p, endOfRayPoint, points.get(m), points.get(mPlus))){
 //								atLeastOneIntersection = true;
-								Vector2f intersection = Vector2fUtils.getLineLineIntersection(p, endOfRayPoint, points.get(m), points.get(mPlus));
-								if (intersection != null){
+								if (Vector2fUtils.getLineLineIntersection(p, endOfRayPoint, points.get(m), points.get(mPlus), intersection) != null){
 									double dist = eye.distance(intersection);
 									if (dist < closestDist){
 										closestDist = dist;
-										closestIntersectionPoint = intersection;
+										closestIntersection.set(intersection);
+										foundIntersection = true;
 										closestBoundaryPolygonEdgeIndex = m;
 										obstCloser = false;
 										// There should only be one intersection with the boundaryPolygon, so we can break.
@@ -534,14 +583,15 @@ public class VisionFinder {
 //							System.out.println(this.getClass().getSimpleName()+": atLeastOneIntersection == "+atLeastOneIntersection+", closestIntersectionPoint != null, closestDist == "+closestDist+", maxEyeToBoundaryPolygonPointDist == "+maxEyeToBoundaryPolygonPointDist+", minEyeToBoundaryPolygonPointDist == "+minEyeToBoundaryPolygonPointDist+", boundaryPolygon.contains(p) == "+boundaryPolygon.contains(p)+", eye.distance(p) == "+eye.distance(p));
 //						}
 					}
-					if (closestIntersectionPoint != null){
+					if (foundIntersection){
 						VisiblePoint newSightPoint = null;
+						Vector2f closestIntersectionPoint = (pool != null ? pool.obtainCoordinates(closestIntersection) : new Vector2f(closestIntersection));
 						if (obstCloser){
-							newSightPoint = new VPShadowOnOccluder(closestIntersectionPoint, closestOccluder, closestObstPolygonEdgeIndex, sp);
+							newSightPoint = (pool != null ? pool.obtainShadowOnOccluder(closestIntersectionPoint, closestOccluder, closestObstPolygonEdgeIndex, sp) : new VPShadowOnOccluder(closestIntersectionPoint, closestOccluder, closestObstPolygonEdgeIndex, sp));
 //							newSightPoint.quadrant = sp.quadrant;
 //							newSightPoint.xOnY = sp.xOnY;
 						}else{
-							newSightPoint = new VPShadowOnBoundary(closestIntersectionPoint, closestBoundaryPolygonEdgeIndex, sp);
+							newSightPoint = (pool != null ? pool.obtainShadowOnBoundary(closestIntersectionPoint, closestBoundaryPolygonEdgeIndex, sp) : new VPShadowOnBoundary(closestIntersectionPoint, closestBoundaryPolygonEdgeIndex, sp));
 //							newSightPoint.quadrant = sp.quadrant;
 //							newSightPoint.xOnY = sp.xOnY;
 						}
@@ -597,7 +647,11 @@ public class VisionFinder {
 //		codeTimer.click("make polygon");
 		polygonAndDists.clear();
 		cache.visiblePoints = visiblePoints;
-		cache.visiblePolygon = createPolygonFromVisiblePoints(visiblePoints);
+		if (pool != null){
+			cache.visiblePolygon = pool.makeVisiblePolygon(visiblePoints);
+		}else{
+			cache.visiblePolygon = createPolygonFromVisiblePoints(visiblePoints);
+		}
 //		codeTimer.lastClick();
 		return cache;
 		
@@ -619,6 +673,79 @@ public class VisionFinder {
 		return visiblePolygon;
 	}
 
+	protected void addPolygonAndDist(Occluder occluder, double distCenterToEyeLessCircBound, double distCenterToEyeLessCircBoundSq, int xIndicator, int yIndicator){
+		OccluderDistAndQuad polygonAndDist;
+		if (polygonAndDists.size() < polygonAndDistsPool.size()){
+			polygonAndDist = polygonAndDistsPool.get(polygonAndDists.size());
+			polygonAndDist.occluder = occluder;
+			polygonAndDist.distEyeToCenterLessRadius = distCenterToEyeLessCircBound;
+			polygonAndDist.distEyeToCenterLessRadiusSqSigned = distCenterToEyeLessCircBoundSq;
+			polygonAndDist.xIndicator = xIndicator;
+			polygonAndDist.yIndicator = yIndicator;
+		}else{
+			polygonAndDist = new OccluderDistAndQuad(occluder, distCenterToEyeLessCircBound, distCenterToEyeLessCircBoundSq, xIndicator, yIndicator);
+			polygonAndDistsPool.add(polygonAndDist);
+		}
+		polygonAndDists.add(polygonAndDist);
+	}
+
+	/**
+	 * A stable merge sort that gives the same order as Collections.sort, but
+	 * re-uses sortArray and sortBuffer rather than making new arrays each time.
+	 */
+	@SuppressWarnings("unchecked")
+	protected <E extends Comparable<?>> void sort(ArrayList<E> list){
+		int n = list.size();
+		if (sortArray.length < n){
+			sortArray = new Object[n*2];
+			sortBuffer = new Object[n*2];
+		}
+		Object[] src = sortArray;
+		Object[] dst = sortBuffer;
+		for (int i = 0; i < n; i++){
+			src[i] = list.get(i);
+		}
+		// insertion sort small runs, then merge them bottom-up.
+		int runLength = 8;
+		for (int lo = 0; lo < n; lo += runLength){
+			int hi = Math.min(lo + runLength, n);
+			for (int i = lo + 1; i < hi; i++){
+				Object o = src[i];
+				int j = i - 1;
+				while (j >= lo && ((Comparable<Object>)src[j]).compareTo(o) > 0){
+					src[j + 1] = src[j];
+					j--;
+				}
+				src[j + 1] = o;
+			}
+		}
+		for (int width = runLength; width < n; width *= 2){
+			for (int lo = 0; lo < n; lo += width*2){
+				int mid = Math.min(lo + width, n);
+				int hi = Math.min(lo + width*2, n);
+				int i = lo;
+				int j = mid;
+				for (int k = lo; k < hi; k++){
+					if (i < mid && (j >= hi || ((Comparable<Object>)src[j]).compareTo(src[i]) >= 0)){
+						dst[k] = src[i];
+						i++;
+					}else{
+						dst[k] = src[j];
+						j++;
+					}
+				}
+			}
+			Object[] temp = src;
+			src = dst;
+			dst = temp;
+		}
+		for (int i = 0; i < n; i++){
+			list.set(i, (E)src[i]);
+			sortArray[i] = null;
+			sortBuffer[i] = null;
+		}
+	}
+
 	protected int getXIndicator(KPolygon poly, Vector2f p2){
 		int xIndicator;
 		double relX = poly.getCenter().x - p2.getX();
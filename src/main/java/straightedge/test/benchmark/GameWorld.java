@@ -246,11 +246,11 @@ public class GameWorld {
 		}
 	}
 
-	public ObstacleManager getObstacleManager() {
+	public ObstacleManager<PathBlockingObstacleImpl> getObstacleManager() {
 		return obstacleManager;
 	}
 
-	public NodeConnector getNodeConnector() {
+	public NodeConnector<PathBlockingObstacleImpl> getNodeConnector() {
 		return getObstacleManager().getNodeConnector();
 	}
 
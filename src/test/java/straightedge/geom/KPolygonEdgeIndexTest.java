@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom;
+
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that intersectsLine, contains and
+ * getClosestIntersectionToFirstFromSecond give the same results with a
+ * KPolygonEdgeIndex as without one, on a big jagged polygon, including after
+ * it's moved.
+ *
+ * @author Keith Woodward
+ */
+public class KPolygonEdgeIndexTest extends TestCase {
+	static final int NUM_QUERIES = 2000;
+
+	public void testSameAsTestingAllEdges(){
+		KPolygon polygon = makeCaveWall(3000, 0);
+		polygon.setEdgeIndexEnabled(true);
+		assertSameResults(polygon, 1);
+		assertNotNull(polygon.edgeIndex);
+		assertTrue(polygon.copy().isEdgeIndexEnabled());
+	}
+
+	public void testMovedPolygon(){
+		KPolygon polygon = makeCaveWall(1000, 2);
+		polygon.setEdgeIndexEnabled(true);
+		assertSameResults(polygon, 3);
+		polygon.translate(37.5f, -12f);
+		assertNull(polygon.edgeIndex);
+		assertSameResults(polygon, 4);
+		polygon.rotate(0.7f);
+		assertNull(polygon.edgeIndex);
+		assertSameResults(polygon, 5);
+		polygon.getPoints().get(10).x += 50;
+		polygon.calcAll();
+		assertNull(polygon.edgeIndex);
+		assertSameResults(polygon, 6);
+	}
+
+	public void testOffByDefault(){
+		KPolygon polygon = makeCaveWall(1000, 7);
+		assertFalse(polygon.isEdgeIndexEnabled());
+		polygon.contains(500, 400);
+		polygon.intersectsLine(0, 0, 1000, 1000);
+		assertNull(polygon.edgeIndex);
+		assertNull(polygon.getEdgeIndex());
+	}
+
+	/**
+	 * Points changed in place without calling calcAll. Without the index the
+	 * results follow the points straight away. With it, adding or removing
+	 * points is noticed, but points moved in place need resetEdgeIndex.
+	 */
+	public void testPointsChangedInPlace(){
+		KPolygon polygon = makeCaveWall(1000, 8);
+		polygon.contains(500, 400);
+		ArrayList<Vector2f> points = polygon.getPoints();
+		for (int i = 0; i < points.size(); i += 10){
+			points.get(i).x += 80;
+		}
+		assertSameResults(polygon, 9);
+
+		polygon.setEdgeIndexEnabled(true);
+		assertSameResults(polygon, 10);
+		KPolygonEdgeIndex index = polygon.edgeIndex;
+		points.add(500, new Vector2f(points.get(500).x + 100, points.get(500).y + 100));
+		points.remove(10);
+		points.remove(20);
+		assertSameResults(polygon, 11);
+		assertNotSame(index, polygon.edgeIndex);
+
+		for (int i = 5; i < points.size(); i += 10){
+			points.get(i).y -= 80;
+		}
+		polygon.resetEdgeIndex();
+		assertSameResults(polygon, 12);
+	}
+
+	protected void assertSameResults(KPolygon polygon, long seed){
+		Random random = new Random(seed);
+		ArrayList<Vector2f> points = polygon.getPoints();
+		float r = polygon.getRadius()*1.2f;
+		Vector2f c = polygon.getCenter();
+		int numIntersections = 0;
+		int numContained = 0;
+		for (int i = 0; i < NUM_QUERIES; i++){
+			float x = c.x + (random.nextFloat()*2 - 1)*r;
+			float y = c.y + (random.nextFloat()*2 - 1)*r;
+			float x2;
+			float y2;
+			int type = i % 4;
+			if (type == 0){
+				// short lines
+				x2 = x + (random.nextFloat()*2 - 1)*r*0.1f;
+				y2 = y + (random.nextFloat()*2 - 1)*r*0.1f;
+			}else if (type == 1){
+				// from a vertex to another
+				Vector2f p = points.get(random.nextInt(points.size()));
+				Vector2f p2 = points.get(random.nextInt(points.size()));
+				x = p.x;
+				y = p.y;
+				x2 = p2.x;
+				y2 = p2.y;
+			}else if (type == 2){
+				// horizontal and vertical
+				x2 = (random.nextBoolean() ? x : c.x + (random.nextFloat()*2 - 1)*r);
+				y2 = (x2 == x ? c.y + (random.nextFloat()*2 - 1)*r : y);
+			}else{
+				x2 = c.x + (random.nextFloat()*2 - 1)*r;
+				y2 = c.y + (random.nextFloat()*2 - 1)*r;
+			}
+			boolean intersects = polygon.intersectsLine(x, y, x2, y2);
+			assertEquals(intersectsLineTestingAll(polygon, x, y, x2, y2), intersects);
+			Vector2f closest = polygon.getClosestIntersectionToFirstFromSecond(x, y, x2, y2);
+			assertEquals(getClosestIntersectionTestingAll(polygon, x, y, x2, y2), closest);
+			boolean contains = polygon.contains(x, y);
+			assertEquals(containsTestingAll(polygon, x, y), contains);
+			if (type == 1){
+				assertEquals(containsTestingAll(polygon, x, y), polygon.contains(x, y));
+			}
+			if (intersects){
+				numIntersections++;
+			}
+			if (contains){
+				numContained++;
+			}
+		}
+		assertTrue(numIntersections > NUM_QUERIES/10);
+		assertTrue(numContained > NUM_QUERIES/10);
+	}
+
+	protected boolean intersectsLineTestingAll(KPolygon polygon, float x1, float y1, float x2, float y2){
+		boolean edgeIndexEnabled = polygon.edgeIndexEnabled;
+		polygon.edgeIndexEnabled = false;
+		boolean result = polygon.intersectsLine(x1, y1, x2, y2);
+		polygon.edgeIndexEnabled = edgeIndexEnabled;
+		return result;
+	}
+
+	protected Vector2f getClosestIntersectionTestingAll(KPolygon polygon, float x1, float y1, float x2, float y2){
+		boolean edgeIndexEnabled = polygon.edgeIndexEnabled;
+		polygon.edgeIndexEnabled = false;
+		Vector2f result = polygon.getClosestIntersectionToFirstFromSecond(x1, y1, x2, y2);
+		polygon.edgeIndexEnabled = edgeIndexEnabled;
+		return result;
+	}
+
+	protected boolean containsTestingAll(KPolygon polygon, double x, double y){
+		boolean edgeIndexEnabled = polygon.edgeIndexEnabled;
+		polygon.edgeIndexEnabled = false;
+		boolean result = polygon.contains(x, y);
+		polygon.edgeIndexEnabled = edgeIndexEnabled;
+		return result;
+	}
+
+	/**
+	 * A star-shaped polygon whose distance from the center jumps around, like
+	 * a cave wall.
+	 */
+	protected KPolygon makeCaveWall(int numPoints, long seed){
+		Random random = new Random(seed);
+		ArrayList<Vector2f> points = new ArrayList<Vector2f>();
+		for (int i = 0; i < numPoints; i++){
+			double angle = i*Math.PI*2/numPoints;
+			double dist = 300 + random.nextDouble()*200;
+			points.add(new Vector2f(500 + (float)(Math.cos(angle)*dist), 400 + (float)(Math.sin(angle)*dist)));
+		}
+		return new KPolygon(points);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that BatchPathFinder gives the same paths as PathFinder, and that
+ * merged requests get paths from their own start point to their own end point
+ * which don't cross any obstacles.
+ *
+ * @author Keith Woodward
+ */
+public class BatchPathFinderTest extends TestCase {
+	static final double MAX_CONNECTION_DIST = 150;
+	ForkJoinPool pool;
+	ObstacleManager<PathBlockingObstacleImpl> obstacleManager;
+	ArrayList<PathBlockingObstacleImpl> obstacles;
+
+	protected void setUp(){
+		pool = new ForkJoinPool(4);
+		obstacleManager = PathTestUtils.makeObstacleManager(MAX_CONNECTION_DIST);
+		obstacles = PathTestUtils.makeObstacles(1);
+		obstacleManager.addObstacles(obstacles);
+	}
+
+	protected void tearDown(){
+		pool.shutdown();
+	}
+
+	public void testSameAsPathFinder(){
+		ArrayList<PathRequest> requests = makeRequests(2, 0);
+		BatchPathFinder<PathBlockingObstacleImpl> batchPathFinder = new BatchPathFinder<PathBlockingObstacleImpl>(pool);
+		ArrayList<PathData> pathDatas = batchPathFinder.calc(requests, obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+		assertEquals(0, batchPathFinder.getNumDedupedRequests());
+		PathFinder pathFinder = new PathFinder();
+		for (int i = 0; i < requests.size(); i++){
+			PathRequest request = requests.get(i);
+			PathData pathData = pathFinder.calc(request.getStart(), request.getEnd(), request.getMaxTempNodeConnectionDist(), obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+			assertEquals(pathData.getResult(), pathDatas.get(i).getResult());
+			assertEquals(pathData.getPoints(), pathDatas.get(i).getPoints());
+		}
+	}
+
+	public void testMergedRequestsGetTheirOwnPaths(){
+		double dedupeDist = 20;
+		ArrayList<PathRequest> requests = makeRequests(3, dedupeDist);
+		BatchPathFinder<PathBlockingObstacleImpl> batchPathFinder = new BatchPathFinder<PathBlockingObstacleImpl>(pool);
+		batchPathFinder.setDedupeDist(dedupeDist);
+		ArrayList<PathData> pathDatas = batchPathFinder.calc(requests, obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+		assertEquals(requests.size(), pathDatas.size());
+		assertTrue(batchPathFinder.getNumDedupedRequests() > requests.size()/4);
+		Set<PathData> distinctPathDatas = Collections.newSetFromMap(new IdentityHashMap<PathData, Boolean>());
+		int numSuccesses = 0;
+		for (int i = 0; i < requests.size(); i++){
+			PathData pathData = pathDatas.get(i);
+			assertTrue(distinctPathDatas.add(pathData));
+			if (pathData.isError()){
+				continue;
+			}
+			ArrayList<Vector2f> points = pathData.getPoints();
+			assertEquals(requests.get(i).getStart(), points.get(0));
+			assertEquals(requests.get(i).getEnd(), points.get(points.size() - 1));
+			assertEquals(points.size(), pathData.getNodes().size());
+			for (int j = 1; j < points.size(); j++){
+				assertFalse("request "+i+" leg "+j, lineBlocked(points.get(j - 1), points.get(j)));
+			}
+			numSuccesses++;
+		}
+		assertTrue(numSuccesses > requests.size()/2);
+	}
+
+	public void testEachPathHasItsOwnEndNodes(){
+		double dedupeDist = 20;
+		ArrayList<PathRequest> requests = makeRequests(4, dedupeDist);
+		BatchPathFinder<PathBlockingObstacleImpl> batchPathFinder = new BatchPathFinder<PathBlockingObstacleImpl>(pool);
+		batchPathFinder.setDedupeDist(dedupeDist);
+		ArrayList<PathData> pathDatas = batchPathFinder.calc(requests, obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+		Set<KNode> endNodes = Collections.newSetFromMap(new IdentityHashMap<KNode, Boolean>());
+		int numSuccesses = 0;
+		for (int i = 0; i < requests.size(); i++){
+			PathData pathData = pathDatas.get(i);
+			if (pathData.isError()){
+				continue;
+			}
+			ArrayList<KNode> nodes = pathData.getNodes();
+			KNode firstNode = nodes.get(0);
+			KNode lastNode = nodes.get(nodes.size() - 1);
+			assertEquals("request "+i, requests.get(i).getStart(), firstNode.getPoint());
+			assertEquals("request "+i, requests.get(i).getEnd(), lastNode.getPoint());
+			// the nodes of the later searches mustn't be written into this path.
+			assertTrue(endNodes.add(firstNode));
+			assertTrue(endNodes.add(lastNode));
+			numSuccesses++;
+		}
+		assertTrue(numSuccesses > requests.size()/2);
+	}
+
+	public void testMergesByDistance(){
+		BatchPathFinder<PathBlockingObstacleImpl> batchPathFinder = new BatchPathFinder<PathBlockingObstacleImpl>(pool);
+		batchPathFinder.setDedupeDist(10);
+		ArrayList<PathRequest> requests = new ArrayList<PathRequest>();
+		Vector2f end = new Vector2f(300, 300);
+		// Either side of a cell edge, so merged.
+		requests.add(new PathRequest(new Vector2f(99.999f, 50), end, MAX_CONNECTION_DIST));
+		requests.add(new PathRequest(new Vector2f(100.001f, 50), end, MAX_CONNECTION_DIST));
+		// In the same cell but too far away, so not merged.
+		requests.add(new PathRequest(new Vector2f(200.5f, 200.5f), end, MAX_CONNECTION_DIST));
+		requests.add(new PathRequest(new Vector2f(209.5f, 209.5f), end, MAX_CONNECTION_DIST));
+		// Close, but with different max distances.
+		requests.add(new PathRequest(new Vector2f(400, 400), end, MAX_CONNECTION_DIST));
+		requests.add(new PathRequest(new Vector2f(401, 400), end, MAX_CONNECTION_DIST*2));
+		int[] leaderIndexes = new int[requests.size()];
+		assertEquals(5, batchPathFinder.findLeaders(requests, leaderIndexes));
+		assertTrue(Arrays.equals(new int[]{0, 0, 2, 3, 4, 5}, leaderIndexes));
+
+		batchPathFinder.setDedupeDist(0);
+		requests.add(new PathRequest(new Vector2f(400, 400), end, MAX_CONNECTION_DIST));
+		leaderIndexes = new int[requests.size()];
+		assertEquals(6, batchPathFinder.findLeaders(requests, leaderIndexes));
+		assertTrue(Arrays.equals(new int[]{0, 1, 2, 3, 4, 5, 4}, leaderIndexes));
+	}
+
+	/**
+	 * Makes groups of requests whose start and end points are within
+	 * dedupeDist of the group's first request. Some of the followers' points
+	 * end up behind or inside obstacles.
+	 */
+	protected ArrayList<PathRequest> makeRequests(long seed, double dedupeDist){
+		Random random = new Random(seed);
+		ArrayList<PathRequest> requests = new ArrayList<PathRequest>();
+		for (int i = 0; i < 40; i++){
+			Vector2f start = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			Vector2f end = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			requests.add(new PathRequest(start, end, MAX_CONNECTION_DIST));
+			int numFollowers = (dedupeDist > 0 ? 1 + random.nextInt(5) : 0);
+			for (int j = 0; j < numFollowers; j++){
+				requests.add(new PathRequest(offset(start, dedupeDist, random), offset(end, dedupeDist, random), MAX_CONNECTION_DIST));
+			}
+		}
+		return requests;
+	}
+
+	protected Vector2f offset(Vector2f p, double maxDist, Random random){
+		double angle = random.nextDouble()*Math.PI*2;
+		double dist = random.nextDouble()*maxDist;
+		return new Vector2f(p.x + (float)(Math.cos(angle)*dist), p.y + (float)(Math.sin(angle)*dist));
+	}
+
+	protected boolean lineBlocked(Vector2f p, Vector2f p2){
+		for (PathBlockingObstacleImpl obst : obstacles){
+			KPolygon innerPolygon = obst.getInnerPolygon();
+			if (innerPolygon.intersectsLine(p, p2) || innerPolygon.contains(p) || innerPolygon.contains(p2)){
+				return true;
+			}
+		}
+		return false;
+	}
+}
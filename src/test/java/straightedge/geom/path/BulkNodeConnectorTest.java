@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that BulkNodeConnector makes exactly the same node connections and
+ * contained flags as adding the obstacles one by one with NodeConnector.
+ *
+ * @author Keith Woodward
+ */
+public class BulkNodeConnectorTest extends TestCase {
+
+	public void testBulkConnectionsSameAsSequential(){
+		for (long seed = 0; seed < 3; seed++){
+			double maxConnectionDistance = 150;
+			ObstacleManager<PathBlockingObstacleImpl> sequentialManager = PathTestUtils.makeObstacleManager(maxConnectionDistance);
+			ArrayList<PathBlockingObstacleImpl> sequentialObstacles = PathTestUtils.makeObstacles(seed);
+			sequentialManager.addObstacles(sequentialObstacles);
+
+			ObstacleManager<PathBlockingObstacleImpl> bulkManager = PathTestUtils.makeObstacleManager(maxConnectionDistance);
+			ArrayList<PathBlockingObstacleImpl> bulkObstacles = PathTestUtils.makeObstacles(seed);
+			bulkManager.addObstaclesInBulk(bulkObstacles);
+
+			PathTestUtils.assertSameConnections(sequentialObstacles, bulkObstacles);
+		}
+	}
+
+	public void testBulkRemakeSameAsSequentialRemake(){
+		double maxConnectionDistance = 100;
+		ObstacleManager<PathBlockingObstacleImpl> sequentialManager = PathTestUtils.makeObstacleManager(maxConnectionDistance);
+		ArrayList<PathBlockingObstacleImpl> sequentialObstacles = PathTestUtils.makeObstacles(7);
+		sequentialManager.addObstacles(sequentialObstacles);
+		sequentialManager.remakeConnectionsBetweenAllObstacles(200);
+
+		ObstacleManager<PathBlockingObstacleImpl> bulkManager = PathTestUtils.makeObstacleManager(maxConnectionDistance);
+		ArrayList<PathBlockingObstacleImpl> bulkObstacles = PathTestUtils.makeObstacles(7);
+		bulkManager.addObstacles(bulkObstacles);
+		bulkManager.remakeConnectionsBetweenAllObstaclesInBulk(200);
+
+		PathTestUtils.assertSameConnections(sequentialObstacles, bulkObstacles);
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that CompactPathFinder finds exactly the same paths as PathFinder
+ * on each of the benchmark worlds.
+ *
+ * @author Keith Woodward
+ */
+public class CompactPathFinderTest extends TestCase {
+	static final int NUM_QUERIES = 100;
+
+	public void testSameAsPathFinder(){
+		String[] worldNames = {BenchmarkWorlds.MAZE, BenchmarkWorlds.PILLAR, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.CORNER_CASE};
+		for (String worldName : worldNames){
+			GameWorld world = BenchmarkWorlds.makeWorld(worldName, 0);
+			@SuppressWarnings("unchecked")
+			NodeConnector<PathBlockingObstacleImpl> nodeConnector = world.getNodeConnector();
+			CompactNavigationGraph<PathBlockingObstacleImpl> graph = new CompactNavigationGraph<PathBlockingObstacleImpl>(world.getObstacles());
+			assertTrue(graph.getNumEdges() > 0);
+			CompactPathFinder<PathBlockingObstacleImpl> compactPathFinder = new CompactPathFinder<PathBlockingObstacleImpl>(graph);
+			PathFinder pathFinder = new PathFinder();
+			Vector2f[] starts = BenchmarkWorlds.makeFreePoints(world, NUM_QUERIES, 1);
+			Vector2f[] ends = BenchmarkWorlds.makeFreePoints(world, NUM_QUERIES, 2);
+			int numSearched = 0;
+			for (int i = 0; i < NUM_QUERIES; i++){
+				PathData pathData = pathFinder.calc(starts[i], ends[i], BenchmarkWorlds.PLAYER_MAX_CONNECTION_DIST, nodeConnector, world.getObstacleTileArray());
+				PathData compactPathData = compactPathFinder.calc(starts[i], ends[i], BenchmarkWorlds.PLAYER_MAX_CONNECTION_DIST, nodeConnector, world.getObstacleTileArray());
+				assertEquals(worldName+" query "+i, pathData.getResult(), compactPathData.getResult());
+				assertEquals(worldName+" query "+i, pathData.getPoints(), compactPathData.getPoints());
+				if (pathData.getPoints().size() > 2){
+					numSearched++;
+				}
+			}
+			assertTrue(worldName, numSearched > 0);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that HierarchicalPathFinder finds paths as short as PathFinder's,
+ * including after obstacles are moved and removed.
+ *
+ * @author Keith Woodward
+ */
+public class HierarchicalPathFinderTest extends TestCase {
+
+	public void testSameLengthsAsPathFinder(){
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = makeObstacleManager(1);
+		HierarchicalGraph<PathBlockingObstacleImpl> graph = new HierarchicalGraph<PathBlockingObstacleImpl>(obstacleManager, 1);
+		obstacleManager.setHierarchicalGraph(graph);
+		graph.update();
+		assertSameLengths(obstacleManager, graph, 2);
+		assertTrue(graph.getNumPortals() > 0);
+	}
+
+	public void testSameLengthsWithTooManyPortals(){
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = makeObstacleManager(1);
+		HierarchicalGraph<PathBlockingObstacleImpl> graph = new HierarchicalGraph<PathBlockingObstacleImpl>(obstacleManager, 2);
+		obstacleManager.setHierarchicalGraph(graph);
+		graph.update();
+		// Abstract only the clusters with up to half of the most portals.
+		int maxNumPortals = 0;
+		for (int i = 0; i < graph.numClusterRows; i++){
+			for (int j = 0; j < graph.numClusterCols; j++){
+				maxNumPortals = Math.max(maxNumPortals, graph.clusters[i][j].numPortals);
+			}
+		}
+		graph.setMaxPortalsPerCluster(maxNumPortals/2);
+		graph.update();
+		int numTooManyPortals = 0;
+		int numAbstracted = 0;
+		for (int i = 0; i < graph.numClusterRows; i++){
+			for (int j = 0; j < graph.numClusterCols; j++){
+				HierarchicalGraph.Cluster cluster = graph.clusters[i][j];
+				if (cluster.tooManyPortals){
+					assertEquals(0, cluster.portalDists.length);
+					numTooManyPortals++;
+				}else if (cluster.numPortals > 0){
+					numAbstracted++;
+				}
+			}
+		}
+		assertTrue(numTooManyPortals > 0);
+		assertTrue(numAbstracted > 0);
+		assertSameLengths(obstacleManager, graph, 6);
+	}
+
+	public void testSearchDoesNotUpdateGraph(){
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = makeObstacleManager(3);
+		HierarchicalGraph<PathBlockingObstacleImpl> graph = new HierarchicalGraph<PathBlockingObstacleImpl>(obstacleManager, 2);
+		obstacleManager.setHierarchicalGraph(graph);
+		graph.update();
+		Bag<PathBlockingObstacleImpl> obstacles = obstacleManager.getTileBag().getBag();
+		obstacleManager.moveObstacle(obstacles.get(0), 30, 30, 0.5f);
+		assertTrue(graph.isDirty());
+		long numClustersRebuilt = graph.getNumClustersRebuilt();
+		HierarchicalPathFinder<PathBlockingObstacleImpl> hierarchicalPathFinder = new HierarchicalPathFinder<PathBlockingObstacleImpl>(graph);
+		PathFinder pathFinder = new PathFinder();
+		Random random = new Random(7);
+		for (int i = 0; i < 20; i++){
+			Vector2f start = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			Vector2f end = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			PathData pathData = pathFinder.calc(start, end, obstacleManager.getMaxConnectionDistance(), obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+			PathData pathData2 = hierarchicalPathFinder.calc(start, end, obstacleManager.getMaxConnectionDistance(), obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+			assertEquals(pathData.getResult(), pathData2.getResult());
+			if (pathData.isError() == false){
+				assertEquals(getLength(pathData), getLength(pathData2), 0.0001);
+			}
+		}
+		// The dirty graph is left alone and the normal search is used instead.
+		assertTrue(graph.isDirty());
+		assertEquals(numClustersRebuilt, graph.getNumClustersRebuilt());
+		assertEquals(0, hierarchicalPathFinder.getNumAbstractNodesExpanded());
+	}
+
+	public void testSameLengthsAfterObstaclesChange(){
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = makeObstacleManager(2);
+		HierarchicalGraph<PathBlockingObstacleImpl> graph = new HierarchicalGraph<PathBlockingObstacleImpl>(obstacleManager, 2);
+		obstacleManager.setHierarchicalGraph(graph);
+		graph.update();
+		assertSameLengths(obstacleManager, graph, 3);
+
+		Random random = new Random(5);
+		Bag<PathBlockingObstacleImpl> obstacles = obstacleManager.getTileBag().getBag();
+		for (int i = 0; i < 5; i++){
+			PathBlockingObstacleImpl obst = obstacles.get(random.nextInt(obstacles.size()));
+			obstacleManager.moveObstacle(obst, (random.nextFloat() - 0.5f)*40, (random.nextFloat() - 0.5f)*40, random.nextFloat());
+		}
+		obstacleManager.removeObstacle(obstacles.get(random.nextInt(obstacles.size())));
+		long numClustersRebuilt = graph.getNumClustersRebuilt();
+		graph.update();
+		assertSameLengths(obstacleManager, graph, 4);
+		assertTrue(graph.getNumClustersRebuilt() > numClustersRebuilt);
+	}
+
+	protected void assertSameLengths(ObstacleManager<PathBlockingObstacleImpl> obstacleManager, HierarchicalGraph<PathBlockingObstacleImpl> graph, long seed){
+		double maxTempNodeConnectionDist = obstacleManager.getMaxConnectionDistance();
+		NodeConnector<PathBlockingObstacleImpl> nodeConnector = obstacleManager.getNodeConnector();
+		PathFinder pathFinder = new PathFinder();
+		HierarchicalPathFinder<PathBlockingObstacleImpl> hierarchicalPathFinder = new HierarchicalPathFinder<PathBlockingObstacleImpl>(graph);
+		Random random = new Random(seed);
+		int numRefined = 0;
+		for (int i = 0; i < 100; i++){
+			Vector2f start = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			Vector2f end = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			PathData pathData = pathFinder.calc(start, end, maxTempNodeConnectionDist, nodeConnector, obstacleManager.getTileBag().getTileArray());
+			PathData pathData2 = hierarchicalPathFinder.calc(start, end, maxTempNodeConnectionDist, nodeConnector, obstacleManager.getTileBag().getTileArray());
+			assertEquals(pathData.getResult(), pathData2.getResult());
+			if (pathData.isError()){
+				continue;
+			}
+			assertEquals(getLength(pathData), getLength(pathData2), 0.0001);
+			// Consecutive obstacle nodes in the path must be connected.
+			for (int j = 2; j < pathData2.nodes.size() - 1; j++){
+				assertTrue(pathData2.nodes.get(j - 1).getConnectedNodes().contains(pathData2.nodes.get(j)));
+			}
+			numRefined++;
+		}
+		assertTrue(numRefined > 0);
+		assertTrue(hierarchicalPathFinder.getNumAbstractNodesExpanded() > 0);
+	}
+
+	protected double getLength(PathData pathData){
+		double length = 0;
+		for (int i = 1; i < pathData.points.size(); i++){
+			length += pathData.points.get(i - 1).distance(pathData.points.get(i));
+		}
+		return length;
+	}
+
+	protected ObstacleManager<PathBlockingObstacleImpl> makeObstacleManager(long seed){
+		TileBag<PathBlockingObstacleImpl> tileBag = new TileBag<PathBlockingObstacleImpl>(new Vector2f(0, 0), new Vector2f(600, 600), 50);
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = new ObstacleManager<PathBlockingObstacleImpl>(tileBag, 100);
+		Random random = new Random(seed);
+		ArrayList<PathBlockingObstacleImpl> obstacles = new ArrayList<PathBlockingObstacleImpl>();
+		for (int i = 0; i < 80; i++){
+			KPolygon poly = KPolygon.createRect(0, 0, 10 + random.nextFloat()*60, 5 + random.nextFloat()*10);
+			poly.rotate(random.nextFloat()*6f);
+			poly.translateTo(20 + random.nextFloat()*560, 20 + random.nextFloat()*560);
+			PathBlockingObstacleImpl obst = PathBlockingObstacleImpl.createObstacleFromOuterPolygon(poly);
+			if (obst != null){
+				obstacles.add(obst);
+			}
+		}
+		obstacleManager.addObstacles(obstacles);
+		return obstacleManager;
+	}
+}
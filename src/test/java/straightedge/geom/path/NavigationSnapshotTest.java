@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import java.io.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that a NavigationSnapshot reads back the same obstacles, nodes and
+ * connections that were written, and that damaged snapshots are rejected.
+ *
+ * @author Keith Woodward
+ */
+public class NavigationSnapshotTest extends TestCase {
+	File file;
+	ObstacleManager<PathBlockingObstacleImpl> obstacleManager;
+
+	protected void setUp() throws IOException{
+		file = File.createTempFile("navigationSnapshot", ".bin");
+		file.deleteOnExit();
+		obstacleManager = PathTestUtils.makeObstacleManager(150);
+		obstacleManager.addObstacles(PathTestUtils.makeObstacles(4));
+		NavigationSnapshot.write(obstacleManager, file);
+	}
+
+	protected void tearDown(){
+		file.delete();
+	}
+
+	public void testReadSameAsWritten() throws IOException{
+		ObstacleManager<PathBlockingObstacleImpl> readManager = NavigationSnapshot.read(file);
+		assertEquals(obstacleManager.getMaxConnectionDistance(), readManager.getMaxConnectionDistance());
+		ArrayList<PathBlockingObstacleImpl> obstacles = getObstacles(obstacleManager);
+		ArrayList<PathBlockingObstacleImpl> readObstacles = getObstacles(readManager);
+		assertEquals(obstacles.size(), readObstacles.size());
+		for (int i = 0; i < obstacles.size(); i++){
+			assertEquals(obstacles.get(i).getOuterPolygon().getPoints(), readObstacles.get(i).getOuterPolygon().getPoints());
+			assertEquals(obstacles.get(i).getInnerPolygon().getPoints(), readObstacles.get(i).getInnerPolygon().getPoints());
+			for (int j = 0; j < obstacles.get(i).getNodes().size(); j++){
+				assertEquals(obstacles.get(i).getNodes().get(j).isConcave(), readObstacles.get(i).getNodes().get(j).isConcave());
+			}
+		}
+		PathTestUtils.assertSameConnections(obstacles, readObstacles);
+
+		PathFinder pathFinder = new PathFinder();
+		Random random = new Random(0);
+		int numSuccesses = 0;
+		for (int i = 0; i < 100; i++){
+			Vector2f start = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			Vector2f end = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			PathData pathData = pathFinder.calc(start, end, 150, obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+			PathData readPathData = pathFinder.calc(start, end, 150, readManager.getNodeConnector(), readManager.getTileBag().getTileArray());
+			assertEquals(pathData.getResult(), readPathData.getResult());
+			assertEquals(pathData.getPoints(), readPathData.getPoints());
+			if (pathData.isError() == false){
+				numSuccesses++;
+			}
+		}
+		assertTrue(numSuccesses > 50);
+	}
+
+	public void testWrongMagicNumber() throws IOException{
+		overwriteInt(0, 0x12345678);
+		assertReadFails("magic number");
+	}
+
+	public void testWrongVersion() throws IOException{
+		overwriteInt(4, NavigationSnapshot.VERSION + 1);
+		assertReadFails("version");
+	}
+
+	public void testTruncated() throws IOException{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try{
+			randomAccessFile.setLength(randomAccessFile.length() - 10);
+		}finally{
+			randomAccessFile.close();
+		}
+		assertReadFails("bytes but");
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		try{
+			randomAccessFile.setLength(NavigationSnapshot.HEADER_LENGTH - 1);
+		}finally{
+			randomAccessFile.close();
+		}
+		assertReadFails("too short");
+	}
+
+	public void testBadChecksum() throws IOException{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try{
+			long pos = NavigationSnapshot.HEADER_LENGTH + 40;
+			randomAccessFile.seek(pos);
+			int b = randomAccessFile.read();
+			randomAccessFile.seek(pos);
+			randomAccessFile.write(b ^ 0xFF);
+		}finally{
+			randomAccessFile.close();
+		}
+		assertReadFails("checksum");
+	}
+
+	protected void overwriteInt(long pos, int value) throws IOException{
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try{
+			randomAccessFile.seek(pos);
+			randomAccessFile.writeInt(value);
+		}finally{
+			randomAccessFile.close();
+		}
+	}
+
+	protected void assertReadFails(String messagePart){
+		try{
+			NavigationSnapshot.read(file);
+			fail("Expected an IOException");
+		}catch (IOException e){
+			assertTrue(e.getMessage(), e.getMessage().contains(messagePart));
+		}
+	}
+
+	protected ArrayList<PathBlockingObstacleImpl> getObstacles(ObstacleManager<PathBlockingObstacleImpl> obstacleManager){
+		ArrayList<PathBlockingObstacleImpl> obstacles = new ArrayList<PathBlockingObstacleImpl>();
+		for (int i = 0; i < obstacleManager.getTileBag().size(); i++){
+			obstacles.add(obstacleManager.getTileBag().get(i));
+		}
+		return obstacles;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that ObstacleManager.moveObstacle makes the same node connections as
+ * adding the moved obstacle to a fresh ObstacleManager, while only re-testing
+ * the node pairs near the obstacle.
+ *
+ * @author Keith Woodward
+ */
+public class ObstacleManagerTest extends TestCase {
+
+	public void testMoveObstacleSameAsReAdding(){
+		double maxConnectionDistance = 150;
+		Random random = new Random(3);
+		for (long seed = 0; seed < 12; seed++){
+			ArrayList<PathBlockingObstacleImpl> movedObstacles = PathTestUtils.makeObstacles(seed);
+			ObstacleManager<PathBlockingObstacleImpl> movedManager = PathTestUtils.makeObstacleManager(maxConnectionDistance);
+			RetestRecordingNodeConnector nodeConnector = new RetestRecordingNodeConnector();
+			movedManager.nodeConnector = nodeConnector;
+			movedManager.addObstacles(movedObstacles);
+			int obstIndex = random.nextInt(movedObstacles.size());
+			PathBlockingObstacleImpl movedObst = movedObstacles.get(obstIndex);
+			float dx = (random.nextFloat() - 0.5f)*60;
+			float dy = (random.nextFloat() - 0.5f)*60;
+			float dRotation = (random.nextFloat() - 0.5f)*2;
+			KPolygon oldInnerPolygon = movedObst.getInnerPolygon().copy();
+			// Removing and re-adding every obstacle would drop all of the
+			// edges and test every pair of nodes within maxConnectionDistance.
+			long numEdges = countEdges(movedObstacles);
+			long numPairsInRange = countPairsInRange(movedObstacles, maxConnectionDistance);
+			movedManager.resetMoveCounters();
+			movedManager.moveObstacle(movedObst, dx, dy, dRotation);
+			assertTrue(movedManager.getNumNodesReconnected() >= movedObst.getNodes().size());
+			String message = "seed "+seed+", numEdgesInvalidated == "+movedManager.getNumEdgesInvalidated()+", numEdgesRetested == "+movedManager.getNumEdgesRetested()+", numEdges == "+numEdges+", numPairsInRange == "+numPairsInRange;
+			assertTrue(message, movedManager.getNumEdgesInvalidated() > 0);
+			assertTrue(message, movedManager.getNumEdgesInvalidated()*10 < numEdges);
+			assertTrue(message, movedManager.getNumEdgesRetested()*10 < numPairsInRange);
+			// Only the pairs whose line crossed the old innerPolygon are re-tested.
+			assertEquals(message, movedManager.getNumEdgesRetested(), nodeConnector.retestedPairs.size()/2);
+			Vector2f oldCenter = oldInnerPolygon.getCenter();
+			for (int j = 0; j < nodeConnector.retestedPairs.size(); j += 2){
+				Vector2f p = nodeConnector.retestedPairs.get(j).getPoint();
+				Vector2f p2 = nodeConnector.retestedPairs.get(j+1).getPoint();
+				assertTrue(message, Vector2fUtils.ptSegDistSq(p.x, p.y, p2.x, p2.y, oldCenter.x, oldCenter.y) <= oldInnerPolygon.getRadiusSq());
+			}
+
+			// The moved obstacle is added last so that its nodes' connections
+			// are tested from the same side as in moveObstacle.
+			ArrayList<PathBlockingObstacleImpl> obstacles = new ArrayList<PathBlockingObstacleImpl>();
+			for (PathBlockingObstacleImpl obst : movedObstacles){
+				obstacles.add(new PathBlockingObstacleImpl(obst.getOuterPolygon().copy(), obst.getInnerPolygon().copy()));
+			}
+			ObstacleManager<PathBlockingObstacleImpl> manager = PathTestUtils.makeObstacleManager(maxConnectionDistance);
+			for (int j = 0; j < obstacles.size(); j++){
+				if (j != obstIndex){
+					manager.addObstacle(obstacles.get(j));
+				}
+			}
+			manager.addObstacle(obstacles.get(obstIndex));
+			PathTestUtils.assertSameConnections(obstacles, movedObstacles);
+		}
+	}
+
+	protected long countEdges(ArrayList<PathBlockingObstacleImpl> obstacles){
+		long numEdges = 0;
+		for (PathBlockingObstacleImpl obst : obstacles){
+			for (KNodeOfObstacle node : obst.getNodes()){
+				numEdges += node.getConnectedNodes().size();
+			}
+		}
+		return numEdges/2;
+	}
+
+	protected long countPairsInRange(ArrayList<PathBlockingObstacleImpl> obstacles, double maxConnectionDistance){
+		ArrayList<KNodeOfObstacle> nodes = new ArrayList<KNodeOfObstacle>();
+		for (PathBlockingObstacleImpl obst : obstacles){
+			nodes.addAll(obst.getNodes());
+		}
+		long numPairs = 0;
+		for (int i = 0; i < nodes.size(); i++){
+			for (int j = i + 1; j < nodes.size(); j++){
+				if (nodes.get(i).getPoint().distance(nodes.get(j).getPoint()) <= maxConnectionDistance){
+					numPairs++;
+				}
+			}
+		}
+		return numPairs;
+	}
+
+	/**
+	 * Remembers each pair of nodes that moveObstacle re-tests.
+	 */
+	static class RetestRecordingNodeConnector extends NodeConnector<PathBlockingObstacleImpl>{
+		ArrayList<KNodeOfObstacle> retestedPairs = new ArrayList<KNodeOfObstacle>();
+
+		public void reConnectNode(KNodeOfObstacle node, ArrayList<KNodeOfObstacle> otherNodes, ArrayList<PathBlockingObstacleImpl> obstaclesToIntersect){
+			for (KNodeOfObstacle node2 : otherNodes){
+				retestedPairs.add(node);
+				retestedPairs.add(node2);
+			}
+			super.reConnectNode(node, otherNodes, obstaclesToIntersect);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that PathSearchContexts searching one shared graph on several
+ * threads at once give the same paths as PathFinder, including after
+ * obstacles are removed and their node IDs are given to new obstacles.
+ *
+ * @author Keith Woodward
+ */
+public class PathSearchContextTest extends TestCase {
+	static final double MAX_CONNECTION_DIST = 150;
+	static final int NUM_THREADS = 4;
+	static final int NUM_QUERIES = 200;
+
+	public void testConcurrentSearchesSameAsPathFinder() throws Exception{
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = PathTestUtils.makeObstacleManager(MAX_CONNECTION_DIST);
+		obstacleManager.addObstacles(PathTestUtils.makeObstacles(5));
+		assertConcurrentSearchesSameAsPathFinder(obstacleManager, 6);
+	}
+
+	public void testNodeIDsReused() throws Exception{
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = PathTestUtils.makeObstacleManager(MAX_CONNECTION_DIST);
+		ArrayList<PathBlockingObstacleImpl> obstacles = PathTestUtils.makeObstacles(7);
+		obstacleManager.addObstacles(obstacles);
+		assertConcurrentSearchesSameAsPathFinder(obstacleManager, 8);
+
+		int nodeIDCapacity = obstacleManager.getNodeConnector().getNodeIDCapacity();
+		int numNodesRemoved = 0;
+		for (int i = 0; i < 10; i++){
+			PathBlockingObstacleImpl obst = obstacles.remove(obstacles.size() - 1);
+			numNodesRemoved += obst.getNodes().size();
+			obstacleManager.removeObstacle(obst);
+		}
+		// The new obstacles have no more nodes than the removed ones, so they
+		// should only be given the released IDs.
+		ArrayList<PathBlockingObstacleImpl> newObstacles = PathTestUtils.makeObstacles(9);
+		int numNodesAdded = 0;
+		for (PathBlockingObstacleImpl obst : newObstacles){
+			if (numNodesAdded + obst.getNodes().size() > numNodesRemoved){
+				break;
+			}
+			obstacleManager.addObstacle(obst);
+			numNodesAdded += obst.getNodes().size();
+		}
+		assertTrue(numNodesAdded > 0);
+		assertEquals(nodeIDCapacity, obstacleManager.getNodeConnector().getNodeIDCapacity());
+		HashSet<Integer> nodeIDs = new HashSet<Integer>();
+		for (int i = 0; i < obstacleManager.getTileBag().size(); i++){
+			for (KNodeOfObstacle node : obstacleManager.getTileBag().get(i).getNodes()){
+				assertTrue(node.getNodeID() >= 0 && node.getNodeID() < nodeIDCapacity);
+				assertTrue(nodeIDs.add(node.getNodeID()));
+			}
+		}
+		assertConcurrentSearchesSameAsPathFinder(obstacleManager, 10);
+	}
+
+	/**
+	 * Works out the expected paths with PathFinder first, since it writes to
+	 * the KNodes, then has each thread search all of the queries three times
+	 * in its own order with its own PathSearchContext, so the context's
+	 * arrays are reused from one search to the next.
+	 */
+	protected void assertConcurrentSearchesSameAsPathFinder(final ObstacleManager<PathBlockingObstacleImpl> obstacleManager, long seed) throws Exception{
+		Random random = new Random(seed);
+		final Vector2f[] starts = new Vector2f[NUM_QUERIES];
+		final Vector2f[] ends = new Vector2f[NUM_QUERIES];
+		final PathData[] expectedPathDatas = new PathData[NUM_QUERIES];
+		PathFinder pathFinder = new PathFinder();
+		int numSuccesses = 0;
+		for (int i = 0; i < NUM_QUERIES; i++){
+			starts[i] = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			ends[i] = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			expectedPathDatas[i] = pathFinder.calc(starts[i], ends[i], MAX_CONNECTION_DIST, obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+			if (expectedPathDatas[i].isError() == false){
+				numSuccesses++;
+			}
+		}
+		assertTrue(numSuccesses > NUM_QUERIES/2);
+
+		final CyclicBarrier barrier = new CyclicBarrier(NUM_THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try{
+			ArrayList<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int t = 0; t < NUM_THREADS; t++){
+				final int threadNum = t;
+				futures.add(executor.submit(new Callable<String>(){
+					public String call() throws Exception{
+						PathSearchContext<PathBlockingObstacleImpl> context = new PathSearchContext<PathBlockingObstacleImpl>();
+						barrier.await();
+						for (int round = 0; round < 3; round++){
+							for (int j = 0; j < NUM_QUERIES; j++){
+								int i = (j*(threadNum*2 + 1) + round*7) % NUM_QUERIES;
+								PathData pathData = context.calc(starts[i], ends[i], MAX_CONNECTION_DIST, obstacleManager.getNodeConnector(), obstacleManager.getTileBag().getTileArray());
+								if (pathData.getResult() != expectedPathDatas[i].getResult() || pathData.getPoints().equals(expectedPathDatas[i].getPoints()) == false){
+									return "thread "+threadNum+" query "+i+": expected "+expectedPathDatas[i].getPoints()+" but was "+pathData.getPoints();
+								}
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<String> future : futures){
+				assertNull(future.get());
+			}
+		}finally{
+			executor.shutdown();
+		}
+	}
+}
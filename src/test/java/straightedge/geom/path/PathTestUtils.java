@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.path;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.Assert;
+
+/**
+ * Obstacle fixtures and node connection checks shared by the path tests.
+ *
+ * @author Keith Woodward
+ */
+public class PathTestUtils {
+
+	public static ObstacleManager<PathBlockingObstacleImpl> makeObstacleManager(double maxConnectionDistance){
+		TileBag<PathBlockingObstacleImpl> tileBag = new TileBag<PathBlockingObstacleImpl>(new Vector2f(0, 0), new Vector2f(600, 600), 100);
+		return new ObstacleManager<PathBlockingObstacleImpl>(tileBag, maxConnectionDistance);
+	}
+
+	/**
+	 * Random rotated rectangles and regular polygons in a 600 by 600 square,
+	 * some of which overlap.
+	 */
+	public static ArrayList<PathBlockingObstacleImpl> makeObstacles(long seed){
+		Random random = new Random(seed);
+		ArrayList<PathBlockingObstacleImpl> obstacles = new ArrayList<PathBlockingObstacleImpl>();
+		for (int i = 0; i < 60; i++){
+			KPolygon poly;
+			if (random.nextBoolean()){
+				poly = KPolygon.createRect(0, 0, 10 + random.nextFloat()*40, 5 + random.nextFloat()*20);
+			}else{
+				poly = KPolygon.createRegularPolygon(3 + random.nextInt(6), 5 + random.nextFloat()*20);
+			}
+			poly.rotate(random.nextFloat()*6f);
+			poly.translateTo(20 + random.nextFloat()*560, 20 + random.nextFloat()*560);
+			PathBlockingObstacleImpl obst = PathBlockingObstacleImpl.createObstacleFromOuterPolygon(poly);
+			if (obst != null){
+				obstacles.add(obst);
+			}
+		}
+		return obstacles;
+	}
+
+	/**
+	 * Asserts that the obstacles at the same index in each list have the same
+	 * contained flags and node connections, naming each connected node by its
+	 * obstacle's index and its point number.
+	 */
+	public static void assertSameConnections(ArrayList<PathBlockingObstacleImpl> obstacles, ArrayList<PathBlockingObstacleImpl> obstacles2){
+		Assert.assertEquals(obstacles.size(), obstacles2.size());
+		IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes = new IdentityHashMap<PathBlockingObstacle, Integer>();
+		IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes2 = new IdentityHashMap<PathBlockingObstacle, Integer>();
+		for (int i = 0; i < obstacles.size(); i++){
+			obstacleIndexes.put(obstacles.get(i), i);
+			obstacleIndexes2.put(obstacles2.get(i), i);
+		}
+		int numConnections = 0;
+		for (int i = 0; i < obstacles.size(); i++){
+			ArrayList<KNodeOfObstacle> nodes = obstacles.get(i).getNodes();
+			ArrayList<KNodeOfObstacle> nodes2 = obstacles2.get(i).getNodes();
+			Assert.assertEquals(nodes.size(), nodes2.size());
+			for (int j = 0; j < nodes.size(); j++){
+				KNodeOfObstacle node = nodes.get(j);
+				KNodeOfObstacle node2 = nodes2.get(j);
+				Assert.assertEquals("obstacle "+i+" node "+j, node.getContained(), node2.getContained());
+				Set<String> connections = getConnectionNames(node, obstacleIndexes);
+				Set<String> connections2 = getConnectionNames(node2, obstacleIndexes2);
+				Assert.assertEquals("obstacle "+i+" node "+j, connections, connections2);
+				numConnections += connections.size();
+			}
+		}
+		Assert.assertTrue(numConnections > 0);
+	}
+
+	public static Set<String> getConnectionNames(KNodeOfObstacle node, IdentityHashMap<PathBlockingObstacle, Integer> obstacleIndexes){
+		TreeSet<String> names = new TreeSet<String>();
+		for (KNode connectedNode : node.getConnectedNodes()){
+			KNodeOfObstacle connectedNodeOfObstacle = (KNodeOfObstacle)connectedNode;
+			names.add(obstacleIndexes.get(connectedNodeOfObstacle.getObstacle())+":"+connectedNodeOfObstacle.getPointNum());
+		}
+		return names;
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks ConcurrentTileBag against testing every object, then hammers it with
+ * threads that add, remove and move obstacles while other threads query it.
+ *
+ * @author Keith Woodward
+ */
+public class ConcurrentTileBagTest extends TestCase {
+	static final int NUM_QUERIES = 300;
+
+	public void testGetAllWithin(){
+		ConcurrentTileBag<OccluderImpl> tileBag = new ConcurrentTileBag<OccluderImpl>(new Vector2f(0, 0), 50, 10, 10);
+		ArrayList<OccluderImpl> occluders = SpatialTestUtils.makeOccluders(0, 200);
+		for (int i = 0; i < occluders.size(); i++){
+			assertTrue(tileBag.add(occluders.get(i)));
+		}
+		assertFalse(tileBag.add(occluders.get(0)));
+		assertEquals(occluders.size(), tileBag.size());
+		assertTrue(tileBag.isBloated());
+		// every other one is removed, and the rest are moved.
+		for (int i = 0; i < occluders.size(); i += 2){
+			assertTrue(tileBag.remove(occluders.get(i)));
+			assertFalse(tileBag.contains(occluders.get(i)));
+		}
+		assertFalse(tileBag.remove(occluders.get(0)));
+		ArrayList<OccluderImpl> remaining = new ArrayList<OccluderImpl>();
+		Random random = new Random(1);
+		for (int i = 1; i < occluders.size(); i += 2){
+			OccluderImpl occluder = occluders.get(i);
+			KPolygon polygon = occluder.getPolygon().copy();
+			polygon.translate(random.nextFloat()*100 - 50, random.nextFloat()*100 - 50);
+			occluder.setPolygon(polygon);
+			assertTrue(tileBag.update(occluder));
+			remaining.add(occluder);
+		}
+		assertFalse(tileBag.update(occluders.get(0)));
+		assertEquals(remaining.size(), tileBag.size());
+
+		TileArrayQueryContext context = new TileArrayQueryContext();
+		Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+		for (int i = 0; i < NUM_QUERIES; i++){
+			double x = random.nextDouble()*700 - 100;
+			double y = random.nextDouble()*700 - 100;
+			double radius = random.nextDouble()*(i % 2 == 0 ? 20 : 200);
+			ArrayList<OccluderImpl> expected = SpatialTestUtils.getAllWithinByTestingAll(remaining, x, y, radius);
+			bag.clear();
+			assertSame(bag, tileBag.getAllWithin(x, y, radius, bag, context));
+			SpatialTestUtils.assertSameElements(expected, bag);
+			SpatialTestUtils.assertSameElements(expected, tileBag.getAllWithin(x, y, radius));
+			assertEquals(expected.size(), tileBag.countAllWithin(x, y, radius, context));
+		}
+	}
+
+	/**
+	 * Writers add, remove and move their own obstacles while readers check
+	 * that the obstacles which never change are always found and that nothing
+	 * is found twice. The obstacles that are changing may or may not be found.
+	 */
+	public void testConcurrentMutationAndQueries() throws Exception{
+		final ConcurrentTileBag<OccluderImpl> tileBag = new ConcurrentTileBag<OccluderImpl>(new Vector2f(0, 0), 50, 10, 10, 1);
+		final ArrayList<OccluderImpl> fixedOccluders = SpatialTestUtils.makeOccluders(2, 100);
+		for (int i = 0; i < fixedOccluders.size(); i++){
+			tileBag.add(fixedOccluders.get(i));
+		}
+		final int numWriters = 3;
+		final int numReaders = 3;
+		final ArrayList<ArrayList<OccluderImpl>> writerOccluders = new ArrayList<ArrayList<OccluderImpl>>();
+		for (int w = 0; w < numWriters; w++){
+			// The writers swap the polygons while readers call getPolygon.
+			ArrayList<OccluderImpl> occluders = new ArrayList<OccluderImpl>();
+			for (OccluderImpl occluder : SpatialTestUtils.makeOccluders(10 + w, 50)){
+				occluders.add(new VolatileOccluder(occluder.getPolygon()));
+			}
+			writerOccluders.add(occluders);
+		}
+		final AtomicBoolean writersDone = new AtomicBoolean(false);
+		final ArrayList<Throwable> failures = new ArrayList<Throwable>();
+		ArrayList<Thread> writers = new ArrayList<Thread>();
+		ArrayList<Thread> readers = new ArrayList<Thread>();
+		for (int w = 0; w < numWriters; w++){
+			final long seed = w;
+			final ArrayList<OccluderImpl> occluders = writerOccluders.get(w);
+			Thread thread = new Thread(){
+				public void run(){
+					try{
+						Random random = new Random(seed);
+						for (int i = 0; i < NUM_QUERIES*50; i++){
+							OccluderImpl occluder = occluders.get(random.nextInt(occluders.size()));
+							int op = random.nextInt(3);
+							if (op == 0){
+								tileBag.add(occluder);
+								assertTrue(tileBag.contains(occluder));
+							}else if (op == 1){
+								tileBag.remove(occluder);
+								assertFalse(tileBag.contains(occluder));
+							}else{
+								KPolygon polygon = occluder.getPolygon().copy();
+								polygon.translateTo(random.nextFloat()*600 - 50, random.nextFloat()*600 - 50);
+								occluder.setPolygon(polygon);
+								if (tileBag.update(occluder) == false){
+									tileBag.add(occluder);
+								}
+							}
+						}
+					}catch(Throwable e){
+						synchronized (failures){
+							failures.add(e);
+						}
+					}
+				}
+			};
+			writers.add(thread);
+		}
+		for (int r = 0; r < numReaders; r++){
+			final long seed = 100 + r;
+			Thread thread = new Thread(){
+				public void run(){
+					try{
+						Random random = new Random(seed);
+						TileArrayQueryContext context = new TileArrayQueryContext(1);
+						Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+						Set<OccluderImpl> found = Collections.newSetFromMap(new IdentityHashMap<OccluderImpl, Boolean>());
+						do{
+							double x = random.nextDouble()*700 - 100;
+							double y = random.nextDouble()*700 - 100;
+							double radius = random.nextDouble()*200;
+							bag.clear();
+							tileBag.getAllWithin(x, y, radius, bag, context);
+							found.clear();
+							for (int i = 0; i < bag.size(); i++){
+								assertTrue(found.add(bag.get(i)));
+							}
+							ArrayList<OccluderImpl> expectedFixed = SpatialTestUtils.getAllWithinByTestingAll(fixedOccluders, x, y, radius);
+							for (int i = 0; i < expectedFixed.size(); i++){
+								assertTrue(found.contains(expectedFixed.get(i)));
+							}
+						}while (writersDone.get() == false);
+					}catch(Throwable e){
+						synchronized (failures){
+							failures.add(e);
+						}
+					}
+				}
+			};
+			readers.add(thread);
+		}
+		for (int i = 0; i < readers.size(); i++){
+			readers.get(i).start();
+		}
+		for (int i = 0; i < writers.size(); i++){
+			writers.get(i).start();
+		}
+		for (int i = 0; i < writers.size(); i++){
+			writers.get(i).join();
+		}
+		writersDone.set(true);
+		for (int i = 0; i < readers.size(); i++){
+			readers.get(i).join();
+		}
+		if (failures.size() > 0){
+			throw new AssertionError(failures.get(0));
+		}
+
+		ArrayList<OccluderImpl> contents = new ArrayList<OccluderImpl>(fixedOccluders);
+		for (int w = 0; w < numWriters; w++){
+			ArrayList<OccluderImpl> occluders = writerOccluders.get(w);
+			for (int i = 0; i < occluders.size(); i++){
+				if (tileBag.contains(occluders.get(i))){
+					contents.add(occluders.get(i));
+				}
+			}
+		}
+		assertEquals(contents.size(), tileBag.size());
+		Random random = new Random(3);
+		for (int i = 0; i < NUM_QUERIES; i++){
+			double x = random.nextDouble()*700 - 100;
+			double y = random.nextDouble()*700 - 100;
+			double radius = random.nextDouble()*200;
+			SpatialTestUtils.assertSameElements(SpatialTestUtils.getAllWithinByTestingAll(contents, x, y, radius), tileBag.getAllWithin(x, y, radius));
+		}
+	}
+
+	/**
+	 * Moves an obstacle from a tile near the top of a query to a tile near
+	 * the bottom, while the query is paused between the two. The reader has
+	 * already looked at the new tile and the obstacle is gone from the old
+	 * one by the time it gets there, so it isn't found even though it's within
+	 * the query both before and after the move.
+	 */
+	public void testQueryCanMissObstacleMovedDuringIt() throws Exception{
+		final ConcurrentTileBag<OccluderImpl> tileBag = new ConcurrentTileBag<OccluderImpl>(new Vector2f(0, 0), 50, 10, 10, 1);
+		final VolatileOccluder moved = new VolatileOccluder(KPolygon.createRegularPolygon(5, 3));
+		moved.getPolygon().translateTo(275, 275);
+		final OccluderImpl pause = new OccluderImpl(KPolygon.createRegularPolygon(5, 3));
+		pause.getPolygon().translateTo(275, 175);
+		tileBag.add(moved);
+		tileBag.add(pause);
+		final CountDownLatch readerPaused = new CountDownLatch(1);
+		final CountDownLatch moveDone = new CountDownLatch(1);
+		Thread writer = new Thread(){
+			public void run(){
+				try{
+					readerPaused.await();
+					KPolygon polygon = moved.getPolygon().copy();
+					polygon.translateTo(275, 75);
+					moved.setPolygon(polygon);
+					tileBag.update(moved);
+				}catch (InterruptedException e){
+				}finally{
+					moveDone.countDown();
+				}
+			}
+		};
+		writer.start();
+		final ArrayList<OccluderImpl> found = new ArrayList<OccluderImpl>();
+		// Rows are looked at from the bottom up, so the moved obstacle's new
+		// tile in row 1 comes before the pause in row 3 and its old tile in row 5.
+		tileBag.getAllWithin(275, 175, 150, new TileArrayVisitor<OccluderImpl>(){
+			public void visit(OccluderImpl occluder){
+				found.add(occluder);
+				if (occluder == pause){
+					readerPaused.countDown();
+					try{
+						moveDone.await();
+					}catch (InterruptedException e){
+						throw new RuntimeException(e);
+					}
+				}
+			}
+		}, new TileArrayQueryContext());
+		writer.join();
+		assertEquals(Arrays.asList(pause), found);
+		// Once the move is over it's found again.
+		SpatialTestUtils.assertSameElements(Arrays.asList(moved, pause), tileBag.getAllWithin(275, 175, 150));
+	}
+
+	/**
+	 * An OccluderImpl whose polygon can be swapped while other threads are
+	 * querying, since it's kept in a volatile field.
+	 */
+	static class VolatileOccluder extends OccluderImpl{
+		volatile KPolygon volatilePolygon;
+
+		public VolatileOccluder(KPolygon polygon){
+			super(polygon);
+			volatilePolygon = polygon;
+		}
+
+		public KPolygon getPolygon(){
+			return volatilePolygon;
+		}
+
+		public void setPolygon(KPolygon polygon){
+			volatilePolygon = polygon;
+		}
+	}
+}
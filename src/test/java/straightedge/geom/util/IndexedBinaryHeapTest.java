@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks IndexedBinaryHeap's ordering, decreaseKey and position bookkeeping
+ * against a brute force list of keys.
+ *
+ * @author Keith Woodward
+ */
+public class IndexedBinaryHeapTest extends TestCase {
+
+	public void testDeleteMinInKeyOrder(){
+		IndexedBinaryHeap heap = new IndexedBinaryHeap(4);
+		Random random = new Random(0);
+		double[] keys = new double[200];
+		for (int id = 0; id < keys.length; id++){
+			// Few distinct keys so that there are lots of ties.
+			keys[id] = random.nextInt(50);
+			heap.add(id, keys[id]);
+			assertValid(heap);
+		}
+		double[] sortedKeys = keys.clone();
+		Arrays.sort(sortedKeys);
+		for (int i = 0; i < sortedKeys.length; i++){
+			assertEquals(sortedKeys[i], heap.peekMinKey());
+			int id = heap.deleteMin();
+			assertEquals(sortedKeys[i], keys[id]);
+			assertFalse(heap.contains(id));
+			assertValid(heap);
+		}
+		assertTrue(heap.isEmpty());
+		try{
+			heap.deleteMin();
+			fail("Expected a NoSuchElementException");
+		}catch (NoSuchElementException e){
+		}
+	}
+
+	public void testDecreaseKey(){
+		IndexedBinaryHeap heap = new IndexedBinaryHeap();
+		Random random = new Random(1);
+		HashMap<Integer, Double> keysByID = new HashMap<Integer, Double>();
+		for (int step = 0; step < 5000; step++){
+			int op = random.nextInt(3);
+			int id = random.nextInt(300);
+			if (op == 0 && keysByID.containsKey(id) == false){
+				double key = random.nextDouble()*1000;
+				heap.add(id, key);
+				keysByID.put(id, key);
+			}else if (op == 1 && keysByID.containsKey(id)){
+				double key = keysByID.get(id) - random.nextDouble()*500;
+				heap.decreaseKey(id, key);
+				keysByID.put(id, key);
+				assertEquals(key, heap.getKey(id));
+				// A bigger key is ignored.
+				heap.decreaseKey(id, key + 1);
+				assertEquals(key, heap.getKey(id));
+			}else if (op == 2 && heap.isEmpty() == false){
+				double minKey = Collections.min(keysByID.values());
+				assertEquals(minKey, heap.peekMinKey());
+				int minID = heap.deleteMin();
+				assertEquals(minKey, keysByID.remove(minID).doubleValue());
+			}
+			assertEquals(keysByID.size(), heap.size());
+			for (int i = 0; i < 300; i++){
+				assertEquals(keysByID.containsKey(i), heap.contains(i));
+			}
+			assertValid(heap);
+		}
+	}
+
+	public void testReuseAfterMakeEmpty(){
+		IndexedBinaryHeap heap = new IndexedBinaryHeap(2);
+		for (int round = 0; round < 3; round++){
+			// Ids bigger than the capacity make the positions array grow.
+			for (int id = 100; id >= 0; id -= 3){
+				heap.add(id, id % 7);
+			}
+			assertEquals(34, heap.size());
+			assertValid(heap);
+			heap.makeEmpty();
+			assertTrue(heap.isEmpty());
+			for (int id = 0; id < heap.positions.length; id++){
+				assertFalse(heap.contains(id));
+			}
+			assertFalse(heap.contains(heap.positions.length + 10));
+		}
+		heap.add(5, 2);
+		heap.add(1, 1);
+		assertEquals(1, heap.deleteMin());
+		assertEquals(5, heap.deleteMin());
+	}
+
+	/**
+	 * Checks the heap order and that positions[id] is the index of each id
+	 * in the heap and -1 for every other id.
+	 */
+	protected void assertValid(IndexedBinaryHeap heap){
+		for (int i = 1; i < heap.size; i++){
+			assertTrue(heap.keys[(i - 1)/2] <= heap.keys[i]);
+		}
+		int numInHeap = 0;
+		for (int id = 0; id < heap.positions.length; id++){
+			int index = heap.positions[id];
+			if (index != -1){
+				assertTrue(index < heap.size);
+				assertEquals(id, heap.ids[index]);
+				numInHeap++;
+			}
+		}
+		assertEquals(heap.size, numInHeap);
+	}
+}
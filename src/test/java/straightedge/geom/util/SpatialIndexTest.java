@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import straightedge.geom.path.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that LooseQuadTree and BoundingVolumeHierarchy find the same
+ * obstacles as testing every object, on a map mixing huge and tiny polygons,
+ * and that PathFinder finds the same paths with them as with a TileArray.
+ *
+ * @author Keith Woodward
+ */
+public class SpatialIndexTest extends TestCase {
+	static final int NUM_QUERIES = 300;
+
+	public void testLooseQuadTree(){
+		assertSameAsTestingAll(new LooseQuadTree<OccluderImpl>(new AABB(0, 0, 500, 500), 10), 0);
+	}
+
+	public void testBoundingVolumeHierarchy(){
+		assertSameAsTestingAll(new BoundingVolumeHierarchy<OccluderImpl>(), 1);
+	}
+
+	public void testBulkLoadedBoundingVolumeHierarchy(){
+		ArrayList<OccluderImpl> occluders = makeOccluders(2);
+		BoundingVolumeHierarchy<OccluderImpl> bvh = new BoundingVolumeHierarchy<OccluderImpl>(occluders, 4);
+		assertEquals(occluders.size(), bvh.size());
+		assertTrue(bvh.getNumNodes() > occluders.size()/4);
+		assertQueries(bvh, occluders, 3);
+		for (int i = 0; i < occluders.size(); i += 3){
+			assertTrue(bvh.remove(occluders.get(i)));
+			assertFalse(bvh.remove(occluders.get(i)));
+		}
+		ArrayList<OccluderImpl> remaining = new ArrayList<OccluderImpl>();
+		for (int i = 0; i < occluders.size(); i++){
+			if (i % 3 != 0){
+				remaining.add(occluders.get(i));
+			}
+		}
+		assertEquals(remaining.size(), bvh.size());
+		assertQueries(bvh, remaining, 4);
+		bvh.rebuild();
+		assertEquals(remaining.size(), bvh.size());
+		assertQueries(bvh, remaining, 5);
+	}
+
+	public void testPathFinder(){
+		TileBag<PathBlockingObstacleImpl> tileBag = new TileBag<PathBlockingObstacleImpl>(new Vector2f(0, 0), new Vector2f(600, 600), 50);
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = new ObstacleManager<PathBlockingObstacleImpl>(tileBag, 100);
+		Random random = new Random(6);
+		ArrayList<PathBlockingObstacleImpl> obstacles = new ArrayList<PathBlockingObstacleImpl>();
+		for (int i = 0; i < 80; i++){
+			KPolygon poly = KPolygon.createRect(0, 0, 10 + random.nextFloat()*60, 5 + random.nextFloat()*10);
+			poly.rotate(random.nextFloat()*6f);
+			poly.translateTo(20 + random.nextFloat()*560, 20 + random.nextFloat()*560);
+			PathBlockingObstacleImpl obst = PathBlockingObstacleImpl.createObstacleFromOuterPolygon(poly);
+			if (obst != null){
+				obstacles.add(obst);
+			}
+		}
+		obstacleManager.addObstacles(obstacles);
+		LooseQuadTree<PathBlockingObstacleImpl> quadTree = new LooseQuadTree<PathBlockingObstacleImpl>(new AABB(0, 0, 600, 600), 20);
+		for (int i = 0; i < obstacles.size(); i++){
+			quadTree.add(obstacles.get(i));
+		}
+		BoundingVolumeHierarchy<PathBlockingObstacleImpl> bvh = new BoundingVolumeHierarchy<PathBlockingObstacleImpl>(obstacles, 4);
+		double maxTempNodeConnectionDist = obstacleManager.getMaxConnectionDistance();
+		NodeConnector<PathBlockingObstacleImpl> nodeConnector = obstacleManager.getNodeConnector();
+		PathFinder pathFinder = new PathFinder();
+		int numPaths = 0;
+		for (int i = 0; i < 100; i++){
+			Vector2f start = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			Vector2f end = new Vector2f(random.nextFloat()*600, random.nextFloat()*600);
+			ArrayList<Vector2f> expected = new ArrayList<Vector2f>(pathFinder.calc(start, end, maxTempNodeConnectionDist, nodeConnector, tileBag.getTileArray()).points);
+			assertEquals(expected, pathFinder.calc(start, end, maxTempNodeConnectionDist, nodeConnector, quadTree).points);
+			assertEquals(expected, pathFinder.calc(start, end, maxTempNodeConnectionDist, nodeConnector, bvh).points);
+			if (expected.size() > 2){
+				numPaths++;
+			}
+		}
+		assertTrue(numPaths > 0);
+	}
+
+	protected void assertSameAsTestingAll(SpatialIndex<OccluderImpl> index, long seed){
+		ArrayList<OccluderImpl> occluders = makeOccluders(seed);
+		for (int i = 0; i < occluders.size(); i++){
+			index.add(occluders.get(i));
+		}
+		assertQueries(index, occluders, seed + 10);
+		ArrayList<OccluderImpl> remaining = new ArrayList<OccluderImpl>();
+		for (int i = 0; i < occluders.size(); i++){
+			if (i % 2 == 0){
+				assertTrue(index.remove(occluders.get(i)));
+				assertFalse(index.remove(occluders.get(i)));
+			}else{
+				remaining.add(occluders.get(i));
+			}
+		}
+		assertQueries(index, remaining, seed + 20);
+		index.clear();
+		assertEquals(0, index.countAllWithin(250, 250, 1000));
+	}
+
+	protected void assertQueries(SpatialIndex<OccluderImpl> index, ArrayList<OccluderImpl> occluders, long seed){
+		Random random = new Random(seed);
+		Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+		TileArrayQueryContext context = new TileArrayQueryContext();
+		for (int i = 0; i < NUM_QUERIES; i++){
+			double x = random.nextDouble()*700 - 100;
+			double y = random.nextDouble()*700 - 100;
+			double radius = random.nextDouble()*(i % 2 == 0 ? 20 : 200);
+			ArrayList<OccluderImpl> expected = SpatialTestUtils.getAllWithinByTestingAll(occluders, x, y, radius);
+			SpatialTestUtils.assertSameElements(expected, index.getAllWithin(x, y, radius));
+			bag.clear();
+			SpatialTestUtils.assertSameElements(expected, index.getAllWithin(x, y, radius, bag));
+			bag.clear();
+			SpatialTestUtils.assertSameElements(expected, index.getAllWithin(x, y, radius, bag, context));
+			assertEquals(expected.size(), index.countAllWithin(x, y, radius));
+			assertEquals(expected.size(), index.countAllWithin(x, y, radius, context));
+		}
+	}
+
+	/**
+	 * Mostly tiny polygons, some huge ones, and some outside of the 500 by
+	 * 500 area.
+	 */
+	protected ArrayList<OccluderImpl> makeOccluders(long seed){
+		Random random = new Random(seed);
+		ArrayList<OccluderImpl> occluders = new ArrayList<OccluderImpl>();
+		for (int i = 0; i < 300; i++){
+			float radius = (i % 50 == 0 ? 150 : (i % 10 == 0 ? 30 : 0.5f)) + random.nextFloat()*2;
+			KPolygon polygon = KPolygon.createRegularPolygon(3 + random.nextInt(5), radius);
+			polygon.translateTo(random.nextFloat()*600 - 50, random.nextFloat()*600 - 50);
+			occluders.add(new OccluderImpl(polygon));
+		}
+		return occluders;
+	}
+}
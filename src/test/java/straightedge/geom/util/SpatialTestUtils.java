@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+
+import junit.framework.Assert;
+
+/**
+ * Occluder fixtures and brute force checks shared by the TileArray,
+ * ConcurrentTileBag and SpatialIndex tests.
+ *
+ * @author Keith Woodward
+ */
+public class SpatialTestUtils {
+
+	/**
+	 * Regular polygons, every tenth one big, with some of them outside of
+	 * the 500 by 500 area that the tests' tile arrays cover.
+	 */
+	public static ArrayList<OccluderImpl> makeOccluders(long seed, int numOccluders){
+		Random random = new Random(seed);
+		ArrayList<OccluderImpl> occluders = new ArrayList<OccluderImpl>();
+		for (int i = 0; i < numOccluders; i++){
+			KPolygon polygon = KPolygon.createRegularPolygon(3 + random.nextInt(5), (i % 10 == 0 ? 60 : 3) + random.nextFloat()*10);
+			polygon.translateTo(random.nextFloat()*600 - 50, random.nextFloat()*600 - 50);
+			occluders.add(new OccluderImpl(polygon));
+		}
+		return occluders;
+	}
+
+	/**
+	 * The same test as TileArray.getAllWithin, done on every holder.
+	 */
+	public static <T extends PolygonHolder> ArrayList<T> getAllWithinByTestingAll(List<T> holders, double x, double y, double radius){
+		ArrayList<T> within = new ArrayList<T>();
+		for (int i = 0; i < holders.size(); i++){
+			KPolygon polygon = holders.get(i).getPolygon();
+			double radiusSum = radius + polygon.getRadius();
+			if (Vector2fUtils.distanceSq(x, y, polygon.getCenter().x, polygon.getCenter().y) < radiusSum*radiusSum){
+				within.add(holders.get(i));
+			}
+		}
+		return within;
+	}
+
+	/**
+	 * Asserts that actual holds exactly the objects in expected, by identity
+	 * and in any order, with no duplicates.
+	 */
+	public static <T> void assertSameElements(Collection<? extends T> expected, Collection<? extends T> actual){
+		Assert.assertEquals(expected.size(), actual.size());
+		Set<T> expectedSet = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+		expectedSet.addAll(expected);
+		Assert.assertEquals(expected.size(), expectedSet.size());
+		for (T t : actual){
+			Assert.assertTrue(expectedSet.contains(t));
+		}
+	}
+}
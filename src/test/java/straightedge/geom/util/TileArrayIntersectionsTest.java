@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import straightedge.geom.vision.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that moving occluders registered with a TileArrayIntersections give
+ * the same visiblePolygons as passing them to VisionFinder.calc in a list,
+ * as they move around.
+ *
+ * @author Keith Woodward
+ */
+public class TileArrayIntersectionsTest extends TestCase {
+	static final int NUM_EYES = 40;
+	static final int NUM_MOVING = 10;
+
+	public void testMovingOccluders(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		TileArrayIntersections<OccluderImpl> tileArray = world.getOccluderTileArray();
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 1);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(eyes, 0, NUM_MOVING);
+		for (int i = 0; i < NUM_MOVING; i++){
+			tileArray.addMoving(movingOccluders.get(i));
+		}
+		checkMatchesUnregistered(world, eyes, movingOccluders);
+
+		Random random = new Random(0);
+		for (int i = 0; i < NUM_MOVING; i++){
+			movingOccluders.get(i).getPolygon().translate(random.nextFloat()*20 - 10, random.nextFloat()*20 - 10);
+			movingOccluders.get(i).getPolygon().rotate(random.nextFloat());
+			if (i % 2 == 0){
+				assertTrue(tileArray.updateMoving(movingOccluders.get(i)));
+			}
+		}
+		tileArray.updateAllMoving();
+		checkMatchesUnregistered(world, eyes, movingOccluders);
+
+		// remove a fixed occluder that a moving one crosses
+		OccluderImpl fixedOccluder = tileArray.getAllWithin(movingOccluders.get(0).getPolygon().getCenter(), movingOccluders.get(0).getPolygon().getRadius()).get(0);
+		tileArray.remove(fixedOccluder);
+		checkMatchesUnregistered(world, eyes, movingOccluders);
+		tileArray.add(fixedOccluder);
+		checkMatchesUnregistered(world, eyes, movingOccluders);
+
+		for (int i = 0; i < NUM_MOVING; i++){
+			assertTrue(tileArray.removeMoving(movingOccluders.get(i)));
+		}
+		assertFalse(tileArray.removeMoving(movingOccluders.get(0)));
+		assertFalse(tileArray.hasMovingOccluders());
+		for (int i = 0; i < tileArray.getNumRows(); i++){
+			for (int j = 0; j < tileArray.getNumCols(); j++){
+				assertEquals(0, tileArray.getTile(i, j).getMovingIntersections().size());
+			}
+		}
+	}
+
+	protected void checkMatchesUnregistered(GameWorld world, Vector2f[] eyes, ArrayList<OccluderImpl> movingOccluders){
+		TileArrayIntersections<OccluderImpl> tileArray = world.getOccluderTileArray();
+		VisionFinder visionFinder = new VisionFinder();
+		for (int i = 0; i < NUM_EYES; i++){
+			KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, 300);
+			boundaryPolygon.translateTo(eyes[i]);
+			VisionData actual = new VisionData(eyes[i], boundaryPolygon);
+			visionFinder.calc(actual, tileArray, Collections.<Occluder>emptyList());
+
+			// the same thing with the moving occluders taken out of the TileArrayIntersections.
+			ArrayList<Occluder> fixedOccluders = new ArrayList<Occluder>(tileArray.getAllWithin(boundaryPolygon.getCenter(), boundaryPolygon.getRadius()));
+			ArrayList<VPOccluderOccluderIntersection> fixedIntersections = new ArrayList<VPOccluderOccluderIntersection>();
+			for (VPOccluderOccluderIntersection intersection : tileArray.getIntersectionsWithinAtLeast(boundaryPolygon.getCenter(), boundaryPolygon.getRadius())){
+				if (tileArray.getMovingOccluders().contains(intersection.getOccluder()) == false && tileArray.getMovingOccluders().contains(intersection.getOccluder2()) == false){
+					fixedIntersections.add(intersection);
+				}
+			}
+			VisionData expected = new VisionData(eyes[i], boundaryPolygon);
+			visionFinder.calc(expected, fixedOccluders, fixedIntersections, movingOccluders);
+
+			String message = "eye "+i;
+			ArrayList<Vector2f> expectedPoints = expected.getVisiblePolygon().getPoints();
+			ArrayList<Vector2f> actualPoints = actual.getVisiblePolygon().getPoints();
+			assertEquals(message, expectedPoints.size(), actualPoints.size());
+			for (int j = 0; j < expectedPoints.size(); j++){
+				assertEquals(message, expectedPoints.get(j), actualPoints.get(j));
+			}
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.util;
+
+import straightedge.geom.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the Bag, visitor, count and TileArrayQueryContext versions of
+ * getAllWithin find the same objects as the ArrayList version, which is
+ * checked against testing every object.
+ *
+ * @author Keith Woodward
+ */
+public class TileArrayTest extends TestCase {
+	static final int NUM_QUERIES = 300;
+
+	public void testGetAllWithin(){
+		TileArray<OccluderImpl> tileArray = new TileArray<OccluderImpl>(new Vector2f(0, 0), 50, 10, 10);
+		ArrayList<OccluderImpl> occluders = SpatialTestUtils.makeOccluders(0, 200);
+		for (int i = 0; i < occluders.size(); i++){
+			tileArray.add(occluders.get(i));
+		}
+		assertTrue(tileArray.isBloated());
+		Random random = new Random(1);
+		Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+		final Bag<OccluderImpl> visited = new Bag<OccluderImpl>();
+		TileArrayVisitor<Occluder> visitor = new TileArrayVisitor<Occluder>(){
+			public void visit(Occluder occluder){
+				visited.add((OccluderImpl)occluder);
+			}
+		};
+		for (int i = 0; i < NUM_QUERIES; i++){
+			double x = random.nextDouble()*700 - 100;
+			double y = random.nextDouble()*700 - 100;
+			double radius = random.nextDouble()*(i % 2 == 0 ? 20 : 200);
+			ArrayList<OccluderImpl> expected = tileArray.getAllWithin(x, y, radius);
+			SpatialTestUtils.assertSameElements(SpatialTestUtils.getAllWithinByTestingAll(occluders, x, y, radius), expected);
+
+			bag.clear();
+			assertSame(bag, tileArray.getAllWithin(x, y, radius, bag));
+			SpatialTestUtils.assertSameElements(expected, bag);
+			visited.clear();
+			assertEquals(expected.size(), tileArray.getAllWithin(x, y, radius, visitor));
+			SpatialTestUtils.assertSameElements(expected, visited);
+			assertEquals(expected.size(), tileArray.countAllWithin(x, y, radius));
+		}
+	}
+
+	public void testGetAllWithinIntersections(){
+		TileArrayIntersections<OccluderImpl> tileArray = new TileArrayIntersections<OccluderImpl>(new Vector2f(0, 0), 50, 10, 10);
+		ArrayList<OccluderImpl> occluders = SpatialTestUtils.makeOccluders(2, 200);
+		for (int i = 0; i < occluders.size(); i++){
+			tileArray.add(occluders.get(i));
+		}
+		Random random = new Random(3);
+		Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+		final Bag<OccluderImpl> visited = new Bag<OccluderImpl>();
+		TileArrayVisitor<OccluderImpl> visitor = new TileArrayVisitor<OccluderImpl>(){
+			public void visit(OccluderImpl occluder){
+				visited.add(occluder);
+			}
+		};
+		for (int i = 0; i < NUM_QUERIES; i++){
+			double x = random.nextDouble()*700 - 100;
+			double y = random.nextDouble()*700 - 100;
+			double radius = random.nextDouble()*(i % 2 == 0 ? 20 : 200);
+			ArrayList<OccluderImpl> expected = tileArray.getAllWithin(x, y, radius);
+			SpatialTestUtils.assertSameElements(SpatialTestUtils.getAllWithinByTestingAll(occluders, x, y, radius), expected);
+
+			bag.clear();
+			tileArray.getAllWithin(x, y, radius, bag);
+			SpatialTestUtils.assertSameElements(expected, bag);
+			visited.clear();
+			assertEquals(expected.size(), tileArray.getAllWithin(x, y, radius, visitor));
+			SpatialTestUtils.assertSameElements(expected, visited);
+			assertEquals(expected.size(), tileArray.countAllWithin(x, y, radius));
+		}
+	}
+
+	public void testConcurrentQueries() throws Exception{
+		final TileArray<OccluderImpl> tileArray = new TileArray<OccluderImpl>(new Vector2f(0, 0), 50, 10, 10);
+		final ArrayList<OccluderImpl> occluders = SpatialTestUtils.makeOccluders(4, 200);
+		for (int i = 0; i < occluders.size(); i++){
+			tileArray.add(occluders.get(i));
+		}
+		int numThreads = 4;
+		final ArrayList<Throwable> failures = new ArrayList<Throwable>();
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < numThreads; t++){
+			final long seed = t;
+			Thread thread = new Thread(){
+				public void run(){
+					try{
+						Random random = new Random(seed);
+						// start small so that the context's set has to grow.
+						TileArrayQueryContext context = new TileArrayQueryContext(1);
+						Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+						for (int i = 0; i < NUM_QUERIES*10; i++){
+							double x = random.nextDouble()*700 - 100;
+							double y = random.nextDouble()*700 - 100;
+							double radius = random.nextDouble()*200;
+							ArrayList<OccluderImpl> expected = SpatialTestUtils.getAllWithinByTestingAll(occluders, x, y, radius);
+							bag.clear();
+							tileArray.getAllWithin(x, y, radius, bag, context);
+							SpatialTestUtils.assertSameElements(expected, bag);
+							assertEquals(expected.size(), tileArray.countAllWithin(x, y, radius, context));
+						}
+					}catch(Throwable e){
+						synchronized (failures){
+							failures.add(e);
+						}
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (int t = 0; t < numThreads; t++){
+			threads.get(t).join();
+		}
+		if (failures.size() > 0){
+			throw new AssertionError(failures.get(0));
+		}
+	}
+
+	public void testQueryContext(){
+		TileArrayQueryContext context = new TileArrayQueryContext(2);
+		ArrayList<Object> objects = new ArrayList<Object>();
+		for (int i = 0; i < 100; i++){
+			objects.add(new Object());
+		}
+		for (int round = 0; round < 3; round++){
+			context.reset();
+			for (int i = 0; i < objects.size(); i += (round + 1)){
+				assertTrue(context.add(objects.get(i)));
+				assertFalse(context.add(objects.get(i)));
+			}
+			for (int i = 0; i < objects.size(); i++){
+				assertEquals(i % (round + 1) == 0, context.contains(objects.get(i)));
+			}
+		}
+		context.clear();
+		assertEquals(0, context.size());
+		assertFalse(context.contains(objects.get(0)));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that BatchVisionFinder gives the same visiblePolygons as calling
+ * VisionFinder.calc for each eye in turn.
+ *
+ * @author Keith Woodward
+ */
+public class BatchVisionFinderTest extends TestCase {
+	static final int NUM_EYES = 100;
+
+	public void testMatchesVisionFinder(){
+		checkMatchesVisionFinder(BenchmarkWorlds.OBSTACLE);
+		checkMatchesVisionFinder(BenchmarkWorlds.MAZE);
+	}
+
+	protected void checkMatchesVisionFinder(String worldName){
+		GameWorld world = BenchmarkWorlds.makeWorld(worldName, 0);
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 1);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(eyes, 0, 10);
+		ArrayList<Vector2f> eyeList = new ArrayList<Vector2f>();
+		ArrayList<KPolygon> boundaryPolygons = new ArrayList<KPolygon>();
+		for (int i = 0; i < NUM_EYES; i++){
+			KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, 300);
+			boundaryPolygon.translateTo(eyes[i]);
+			eyeList.add(eyes[i]);
+			boundaryPolygons.add(boundaryPolygon);
+		}
+		ForkJoinPool pool = new ForkJoinPool(4);
+		BatchVisionFinder batchVisionFinder = new BatchVisionFinder(pool);
+		ArrayList<VisionData> visionDatas = batchVisionFinder.calc(eyeList, boundaryPolygons, world.getOccluderTileArray(), movingOccluders);
+		pool.shutdown();
+		assertEquals(NUM_EYES, visionDatas.size());
+
+		VisionFinder visionFinder = new VisionFinder();
+		for (int i = 0; i < NUM_EYES; i++){
+			VisionData expected = new VisionData(eyes[i], boundaryPolygons.get(i));
+			visionFinder.calc(expected, world.getOccluderTileArray(), movingOccluders);
+			String message = worldName+" eye "+i;
+			VisionData actual = visionDatas.get(i);
+			assertSame(message, eyes[i], actual.getEye());
+			ArrayList<Vector2f> expectedPoints = expected.getVisiblePolygon().getPoints();
+			ArrayList<Vector2f> actualPoints = actual.getVisiblePolygon().getPoints();
+			assertEquals(message, expectedPoints.size(), actualPoints.size());
+			for (int j = 0; j < expectedPoints.size(); j++){
+				assertEquals(message, expectedPoints.get(j), actualPoints.get(j));
+			}
+			assertEquals(message, expected.getVisiblePolygon().getArea(), actual.getVisiblePolygon().getArea());
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that BulkCollinearOverlapChecker finds the same overlaps as the
+ * all-pairs CollinearOverlapChecker, that its in-order fix moves the same
+ * points and that its parallel fixes leave none behind.
+ *
+ * @author Keith Woodward
+ */
+public class BulkCollinearOverlapCheckerTest extends TestCase {
+
+	public void testSameOverlapsAsAllPairs(){
+		for (long seed = 0; seed < 3; seed++){
+			ArrayList<KPolygon> polygons = makePolygons(seed, 400);
+			ArrayList<CollinearOverlap> expected = getAllPairsOverlaps(polygons);
+			ArrayList<CollinearOverlap> overlaps = new BulkCollinearOverlapChecker().getCollinearOverlaps(polygons);
+			assertTrue(expected.size() > 0);
+			assertEquals(expected.size(), overlaps.size());
+			for (int i = 0; i < expected.size(); i++){
+				CollinearOverlap co = expected.get(i);
+				CollinearOverlap co2 = overlaps.get(i);
+				assertSame(co.getPolygon(), co2.getPolygon());
+				assertEquals(co.getPointIndex(), co2.getPointIndex());
+				assertEquals(co.getNextPointIndex(), co2.getNextPointIndex());
+				assertSame(co.getPolygon2(), co2.getPolygon2());
+				assertEquals(co.getPoint2Index(), co2.getPoint2Index());
+			}
+		}
+	}
+
+	public void testFixCollinearOverlaps(){
+		ArrayList<KPolygon> polygons = makePolygons(7, 400);
+		ArrayList<KPolygon> polygons2 = makePolygons(7, 400);
+		// a point near the middle of a long edge needs a bigger move than the
+		// default pointMoveDist to get it out of the minDistDifference band.
+		CollinearOverlapChecker checker = new CollinearOverlapChecker();
+		checker.setPointMoveDist(0.5f);
+		BulkCollinearOverlapChecker bulkChecker = new BulkCollinearOverlapChecker(checker);
+		bulkChecker.maxNumPasses = 4;
+		bulkChecker.fixCollinearOverlaps(polygons);
+		assertTrue(bulkChecker.getNumOverlapsFound() > 0);
+		assertEquals(0, getAllPairsOverlaps(polygons).size());
+		for (int i = 0; i < polygons.size(); i++){
+			assertTrue(polygons.get(i).isValidNoLineIntersections());
+		}
+		// the result doesn't depend on the thread scheduling.
+		BulkCollinearOverlapChecker bulkChecker2 = new BulkCollinearOverlapChecker(checker);
+		bulkChecker2.maxNumPasses = 4;
+		bulkChecker2.fixCollinearOverlaps(polygons2);
+		for (int i = 0; i < polygons.size(); i++){
+			ArrayList<Vector2f> points = polygons.get(i).getPoints();
+			ArrayList<Vector2f> points2 = polygons2.get(i).getPoints();
+			for (int j = 0; j < points.size(); j++){
+				assertEquals(points.get(j), points2.get(j));
+			}
+		}
+	}
+
+	public void testFixInOrderMovesTheSamePointsAsAllPairs(){
+		CollinearOverlapChecker checker = new CollinearOverlapChecker();
+		// big moves, so that the moved points leave their grid cells.
+		checker.setPointMoveDist(0.5f);
+		for (long seed = 0; seed < 3; seed++){
+			ArrayList<KPolygon> polygons = makePolygons(seed, 400);
+			ArrayList<KPolygon> polygons2 = makePolygons(seed, 400);
+			PointShuffler pointShuffler = new PointShuffler(checker.getPointMoveDist(), 100);
+			pointShuffler.rand = new Random(seed);
+			for (int i = 0; i < polygons.size(); i++){
+				ArrayList<KPolygon> otherPolygons = new ArrayList<KPolygon>(polygons);
+				otherPolygons.remove(i);
+				ArrayList<CollinearOverlap> collinearOverlaps = checker.getCollinearOverlaps(polygons.get(i), otherPolygons);
+				for (int j = 0; j < collinearOverlaps.size(); j++){
+					pointShuffler.shufflePoint(collinearOverlaps.get(j).getPolygon(), collinearOverlaps.get(j).getPointIndex());
+				}
+			}
+			PointShuffler pointShuffler2 = new PointShuffler(checker.getPointMoveDist(), 100);
+			pointShuffler2.rand = new Random(seed);
+			BulkCollinearOverlapChecker bulkChecker = new BulkCollinearOverlapChecker(checker);
+			bulkChecker.fixCollinearOverlapsInOrder(polygons2, pointShuffler2);
+			assertTrue(bulkChecker.getNumOverlapsFound() > 0);
+			for (int i = 0; i < polygons.size(); i++){
+				ArrayList<Vector2f> points = polygons.get(i).getPoints();
+				ArrayList<Vector2f> points2 = polygons2.get(i).getPoints();
+				for (int j = 0; j < points.size(); j++){
+					assertEquals("seed "+seed+" polygon "+i, points.get(j), points2.get(j));
+				}
+			}
+		}
+	}
+
+	public void testSearchFindsPointsMovedOutOfTheirCells(){
+		ArrayList<KPolygon> polygons = new ArrayList<KPolygon>();
+		polygons.add(new KPolygon(new Vector2f(5, 8), new Vector2f(6, 7), new Vector2f(4, 7)));
+		polygons.add(KPolygon.createRect(0, 10, 20, 20));
+		BulkCollinearOverlapChecker bulkChecker = new BulkCollinearOverlapChecker();
+		BulkCollinearOverlapChecker.PointGrid pointGrid = new BulkCollinearOverlapChecker.PointGrid(polygons, 0.01);
+		// move the triangle's tip onto the rectangle's bottom edge, two rows of cells up.
+		polygons.get(0).getPoint(0).set(5, 10);
+		polygons.get(0).calcAll();
+		assertTrue(pointGrid.cellWidthAndHeight < 1);
+		BulkCollinearOverlapChecker.LongList candidates = new BulkCollinearOverlapChecker.LongList();
+		assertNull(bulkChecker.findCollinearOverlaps(1, polygons, pointGrid, 0, candidates));
+		ArrayList<CollinearOverlap> collinearOverlaps = bulkChecker.findCollinearOverlaps(1, polygons, pointGrid, 2, candidates);
+		assertEquals(1, collinearOverlaps.size());
+		assertSame(polygons.get(0), collinearOverlaps.get(0).getPolygon2());
+		assertEquals(0, collinearOverlaps.get(0).getPoint2Index());
+	}
+
+	public void testShufflePointKeepsPolygonsValid(){
+		Random random = new Random(0);
+		PointShuffler pointShuffler = new PointShuffler(2, 5);
+		pointShuffler.rand = new Random(0);
+		for (int i = 0; i < 200; i++){
+			// a jagged star, where moving a point can easily make edges cross.
+			int numPoints = 4 + random.nextInt(12);
+			ArrayList<Vector2f> points = new ArrayList<Vector2f>();
+			for (int j = 0; j < numPoints; j++){
+				double angle = j*Math.PI*2/numPoints;
+				double radius = (j % 2 == 0 ? 10 : 1 + random.nextDouble()*2);
+				points.add(new Vector2f((float)(Math.cos(angle)*radius), (float)(Math.sin(angle)*radius)));
+			}
+			KPolygon polygon = new KPolygon(points);
+			assertTrue(polygon.isValidNoLineIntersections());
+			for (int j = 0; j < numPoints; j++){
+				pointShuffler.shufflePoint(polygon, j);
+				assertTrue(polygon.isValidNoLineIntersections());
+			}
+		}
+	}
+
+	public void testShufflePointOffEdgeOfThinTriangle(){
+		PointShuffler pointShuffler = new PointShuffler(0.5, 100);
+		pointShuffler.rand = new Random(0);
+		for (int i = 0; i < 50; i++){
+			// the tip's bisector runs almost along the edge that the point is on.
+			KPolygon triangle = new KPolygon(new Vector2f(0, 0), new Vector2f(100, 1), new Vector2f(100, -1));
+			ArrayList<KPolygon> otherPolygons = new ArrayList<KPolygon>();
+			otherPolygons.add(KPolygon.createRect(50, 0.5f, 60, 10));
+			assertEquals(1, new CollinearOverlapChecker().getCollinearOverlaps(triangle, otherPolygons).size());
+			pointShuffler.shufflePointOffEdge(triangle, 0, 1);
+			assertTrue(triangle.isValidNoLineIntersections());
+			assertEquals(0, new CollinearOverlapChecker().getCollinearOverlaps(triangle, otherPolygons).size());
+		}
+	}
+
+	protected ArrayList<CollinearOverlap> getAllPairsOverlaps(ArrayList<KPolygon> polygons){
+		CollinearOverlapChecker checker = new CollinearOverlapChecker();
+		ArrayList<CollinearOverlap> overlaps = new ArrayList<CollinearOverlap>();
+		for (int i = 0; i < polygons.size(); i++){
+			ArrayList<KPolygon> otherPolygons = new ArrayList<KPolygon>(polygons);
+			otherPolygons.remove(i);
+			overlaps.addAll(checker.getCollinearOverlaps(polygons.get(i), otherPolygons));
+		}
+		return overlaps;
+	}
+
+	/**
+	 * Rectangles and triangles with whole number coordinates, so lots of
+	 * their points lie on each other's edges.
+	 */
+	protected ArrayList<KPolygon> makePolygons(long seed, int numPolygons){
+		Random random = new Random(seed);
+		ArrayList<KPolygon> polygons = new ArrayList<KPolygon>();
+		while (polygons.size() < numPolygons){
+			int x = random.nextInt(200);
+			int y = random.nextInt(200);
+			if (random.nextBoolean()){
+				polygons.add(KPolygon.createRect(x, y, x + 1 + random.nextInt(20), y + 1 + random.nextInt(20)));
+			}else{
+				int x2 = x + random.nextInt(21) - 10;
+				int y2 = y + random.nextInt(21) - 10;
+				int x3 = x + random.nextInt(21) - 10;
+				int y3 = y + random.nextInt(21) - 10;
+				if ((x2 - x)*(y3 - y) - (y2 - y)*(x3 - x) == 0){
+					continue;
+				}
+				polygons.add(new KPolygon(new Vector2f(x, y), new Vector2f(x2, y2), new Vector2f(x3, y3)));
+			}
+		}
+		return polygons;
+	}
+}
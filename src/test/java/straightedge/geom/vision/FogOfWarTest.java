@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks FogOfWar's filled cells against KPolygon.contains and that the dirty
+ * rectangles cover all of the cells that changed.
+ *
+ * @author Keith Woodward
+ */
+public class FogOfWarTest extends TestCase {
+
+	public void testMatchesContains(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, 30, 1);
+		FogOfWar fogOfWar = new FogOfWar(world.getOccluderTileArray(), 4);
+		VisionFinder visionFinder = new VisionFinder();
+		ArrayList<KPolygon> polygons = new ArrayList<KPolygon>();
+		for (int tick = 0; tick < 3; tick++){
+			fogOfWar.beginTick();
+			polygons.clear();
+			for (int i = tick*10; i < tick*10 + 10; i++){
+				KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, 300);
+				boundaryPolygon.translateTo(eyes[i]);
+				VisionData visionData = new VisionData(eyes[i], boundaryPolygon);
+				visionFinder.calc(visionData, world.getOccluderTileArray(), Collections.<Occluder>emptyList());
+				fogOfWar.addVisionData(visionData);
+				polygons.add(visionData.getVisiblePolygon());
+			}
+			ArrayList<FogOfWar.CellRect> dirtyRects = fogOfWar.endTick();
+			int numVisible = 0;
+			for (int row = 0; row < fogOfWar.getNumRows(); row++){
+				for (int col = 0; col < fogOfWar.getNumCols(); col++){
+					boolean expected = false;
+					for (int i = 0; i < polygons.size() && expected == false; i++){
+						expected = polygons.get(i).contains(fogOfWar.getCellCenterX(col), fogOfWar.getCellCenterY(row));
+					}
+					assertEquals("tick "+tick+" row "+row+" col "+col, expected, fogOfWar.isVisible(row, col));
+					if (expected){
+						numVisible++;
+						assertTrue(fogOfWar.isExplored(row, col));
+					}
+					if (fogOfWar.isVisible(row, col) != fogOfWar.wasVisibleLastTick(row, col)){
+						boolean covered = false;
+						for (int i = 0; i < dirtyRects.size() && covered == false; i++){
+							covered = dirtyRects.get(i).contains(row, col);
+						}
+						assertTrue("tick "+tick+" row "+row+" col "+col, covered);
+					}
+				}
+			}
+			assertTrue(numVisible > 0);
+			assertFalse(dirtyRects.isEmpty());
+		}
+	}
+
+	public void testSmallPolygon(){
+		FogOfWar fogOfWar = new FogOfWar(new Vector2f(0, 0), 1, 100, 130);
+		fogOfWar.beginTick();
+		fogOfWar.addVisiblePolygon(KPolygon.createRect(40.2f, 10.2f, 50.8f, 12.8f));
+		ArrayList<FogOfWar.CellRect> dirtyRects = fogOfWar.endTick();
+		assertEquals(1, dirtyRects.size());
+		FogOfWar.CellRect rect = dirtyRects.get(0);
+		assertEquals(10, rect.minRow);
+		assertEquals(12, rect.maxRow);
+		assertEquals(40, rect.minCol);
+		assertEquals(50, rect.maxCol);
+		assertTrue(fogOfWar.isVisible(45.5f, 11.5f));
+
+		// nothing visible next tick, so the same cells are dirty but stay explored.
+		fogOfWar.beginTick();
+		dirtyRects = fogOfWar.endTick();
+		assertEquals(1, dirtyRects.size());
+		assertFalse(fogOfWar.isVisible(45.5f, 11.5f));
+		assertTrue(fogOfWar.isExplored(45.5f, 11.5f));
+		fogOfWar.beginTick();
+		assertTrue(fogOfWar.endTick().isEmpty());
+	}
+}
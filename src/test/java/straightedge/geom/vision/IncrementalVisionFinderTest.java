@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Walks eyes around in small steps and checks that IncrementalVisionFinder
+ * gives exactly the same visiblePoints as VisionFinder, whether it reprojects
+ * or does a full calc.
+ *
+ * @author Keith Woodward
+ */
+public class IncrementalVisionFinderTest extends TestCase {
+	static final int NUM_WALKS = 8;
+	static final int NUM_STEPS = 100;
+
+	public void testMatchesVisionFinder(){
+		checkMatchesVisionFinder(BenchmarkWorlds.OBSTACLE, 3, NUM_WALKS, NUM_STEPS, 2, false);
+		checkMatchesVisionFinder(BenchmarkWorlds.MAZE, 3, NUM_WALKS, NUM_STEPS, 2, true);
+	}
+
+	/**
+	 * The cornerCase world's occluders nearly touch and overlap, and the walks
+	 * start around the ones at x 300..450, away from its circle whose many
+	 * edges would mean a full calc at every step.
+	 */
+	public void testMatchesVisionFinderInSmallSteps(){
+		checkMatchesVisionFinder(BenchmarkWorlds.CORNER_CASE, 2, 3, 60, 0.5, false);
+	}
+
+	/**
+	 * Walks the eye along the line of the bottom edge of the occluder at
+	 * (300..400, 190..210) in the cornerCase world, so that the shadows of
+	 * the corners along that line fall right on the occluder intersections
+	 * along it.
+	 */
+	public void testWalkAlongOccluderEdge(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.CORNER_CASE, 0);
+		ArrayList<Occluder> movingOccluders = new ArrayList<Occluder>();
+		VisionFinder visionFinder = new VisionFinder();
+		IncrementalVisionFinder incrementalVisionFinder = new IncrementalVisionFinder();
+		float[] offsets = {-0.01f, -0.001f, 0, 0.001f};
+		for (int i = 0; i < offsets.length; i++){
+			VisionData expected = new VisionData(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+			VisionData actual = new VisionData(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+			for (int j = 0; j < 40; j++){
+				Vector2f eye = new Vector2f(330 - j*0.5f, 190.01f + offsets[i] + (j/3)*0.001f);
+				expected.eye.set(eye);
+				expected.boundaryPolygon.translateTo(eye);
+				actual.eye.set(eye);
+				actual.boundaryPolygon.translateTo(eye);
+				visionFinder.calc(expected, world.getOccluderTileArray(), movingOccluders);
+				incrementalVisionFinder.calc(actual, world.getOccluderTileArray(), movingOccluders);
+				assertSameVisiblePoints("offset "+offsets[i]+" step "+j, expected, actual);
+			}
+		}
+		assertTrue(incrementalVisionFinder.getNumHits() > 0);
+	}
+
+	public void testEyeNotMoving(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		Vector2f eye = BenchmarkWorlds.makeFreePoints(world, 1, 1)[0];
+		ArrayList<Occluder> movingOccluders = new ArrayList<Occluder>();
+		IncrementalVisionFinder visionFinder = new IncrementalVisionFinder();
+		KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, 300);
+		boundaryPolygon.translateTo(eye);
+		VisionData visionData = new VisionData(eye, boundaryPolygon);
+		visionFinder.calc(visionData, world.getOccluderTileArray(), movingOccluders);
+		ArrayList<Vector2f> points = new ArrayList<Vector2f>();
+		for (Vector2f p : visionData.getVisiblePolygon().getPoints()){
+			points.add(p.clone());
+		}
+		visionFinder.calc(visionData, world.getOccluderTileArray(), movingOccluders);
+		assertEquals(1, visionFinder.getNumHits());
+		assertEquals(1, visionFinder.getNumMisses());
+		assertEquals(points, visionData.getVisiblePolygon().getPoints());
+
+		// A moving occluder turning up means a full calc.
+		KPolygon polygon = KPolygon.createRegularPolygon(5, 20);
+		polygon.translateTo(eye.x + 50, eye.y);
+		movingOccluders.add(new OccluderImpl(polygon));
+		visionFinder.calc(visionData, world.getOccluderTileArray(), movingOccluders);
+		assertEquals(2, visionFinder.getNumMisses());
+		assertEquals(1.0/3, visionFinder.getHitRatio(), 1e-9);
+	}
+
+	protected void checkMatchesVisionFinder(String worldName, long seed, int numWalks, int numSteps, double stepLength, boolean reuseResults){
+		GameWorld world = BenchmarkWorlds.makeWorld(worldName, 0);
+		Vector2f[] starts = BenchmarkWorlds.makeFreePoints(world, numWalks + 5, seed);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(starts, numWalks, 5);
+		VisionFinder visionFinder = new VisionFinder();
+		IncrementalVisionFinder incrementalVisionFinder = new IncrementalVisionFinder();
+		Random random = new Random(7);
+		for (int i = 0; i < numWalks; i++){
+			Vector2f eye = new Vector2f(starts[i]);
+			double direction = random.nextDouble()*Math.PI*2;
+			VisionDataRotation expected = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+			VisionDataRotation actual = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+			actual.setReuseResults(reuseResults);
+			for (int j = 0; j < numSteps; j++){
+				direction += (random.nextDouble() - 0.5)*0.5;
+				eye.x += (float)(Math.cos(direction)*stepLength);
+				eye.y += (float)(Math.sin(direction)*stepLength);
+				if (j % 10 == 0){
+					movingOccluders.get(random.nextInt(movingOccluders.size())).getPolygon().translate(1, 0);
+				}
+				expected.copyAndTransformEyeAndBoundaryPolygon(eye, 0.3);
+				actual.copyAndTransformEyeAndBoundaryPolygon(eye, 0.3);
+				visionFinder.calc(expected, world.getOccluderTileArray(), movingOccluders);
+				incrementalVisionFinder.calc(actual, world.getOccluderTileArray(), movingOccluders);
+				assertSameVisiblePoints(worldName+" walk "+i+" step "+j, expected, actual);
+			}
+		}
+		assertTrue(worldName, incrementalVisionFinder.getNumHits() > 0);
+	}
+
+	protected void assertSameVisiblePoints(String message, VisionData expected, VisionData actual){
+		assertEquals(message, expected.getVisiblePoints().size(), actual.getVisiblePoints().size());
+		for (int k = 0; k < expected.getVisiblePoints().size(); k++){
+			VisiblePoint expectedPoint = expected.getVisiblePoints().get(k);
+			VisiblePoint actualPoint = actual.getVisiblePoints().get(k);
+			assertEquals(message, expectedPoint.getType(), actualPoint.getType());
+			assertEquals(message, expectedPoint.getPoint(), actualPoint.getPoint());
+		}
+		assertEquals(message, expected.getVisiblePolygon().getPoints(), actual.getVisiblePolygon().getPoints());
+	}
+}
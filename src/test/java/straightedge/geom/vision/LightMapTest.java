@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks LightMap's intensities against lighting every cell from freshly
+ * calculated visiblePolygons, and that only the lights near a changed
+ * occluder are re-calculated.
+ *
+ * @author Keith Woodward
+ */
+public class LightMapTest extends TestCase {
+	static final int NUM_LIGHTS = 20;
+
+	public void testUpdates(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		TileArrayIntersections<OccluderImpl> tileArray = world.getOccluderTileArray();
+		Vector2f[] points = BenchmarkWorlds.makeFreePoints(world, NUM_LIGHTS + 1, 6);
+		LightMap lightMap = new LightMap(tileArray, 10);
+		for (int i = 0; i < NUM_LIGHTS; i++){
+			lightMap.addLight(new LightMap.Light(points[i], 150, 0.5f + i*0.05f));
+		}
+		assertFalse(lightMap.update().isEmpty());
+		assertEquals(NUM_LIGHTS, lightMap.numLightCalcs);
+		checkIntensities(lightMap);
+
+		// nothing changed
+		assertTrue(lightMap.update().isEmpty());
+		assertEquals(NUM_LIGHTS, lightMap.numLightCalcs);
+
+		// take out an occluder near the first light
+		LightMap.Light light = lightMap.getLights().get(0);
+		OccluderImpl occluder = tileArray.getAllWithin(light.getPosition(), light.getRadius()).get(0);
+		tileArray.remove(occluder);
+		lightMap.occluderChanged(occluder);
+		assertFalse(lightMap.update().isEmpty());
+		long numRecalculated = lightMap.numLightCalcs - NUM_LIGHTS;
+		assertTrue(numRecalculated >= 1);
+		assertTrue(numRecalculated < NUM_LIGHTS);
+		checkIntensities(lightMap);
+
+		// move one light, remove another and add a moving one
+		lightMap.moveLight(lightMap.getLights().get(1), points[NUM_LIGHTS].x, points[NUM_LIGHTS].y);
+		lightMap.removeLight(lightMap.getLights().get(2));
+		LightMap.Light movingLight = new LightMap.Light(points[2], 100, 1);
+		movingLight.setStatic(false);
+		lightMap.addLight(movingLight);
+		lightMap.update();
+		checkIntensities(lightMap);
+		long numLightCalcs = lightMap.numLightCalcs;
+		lightMap.update();
+		assertEquals(numLightCalcs + 1, lightMap.numLightCalcs);
+		checkIntensities(lightMap);
+	}
+
+	protected void checkIntensities(LightMap lightMap){
+		VisionFinder visionFinder = new VisionFinder();
+		ArrayList<KPolygon> polygons = new ArrayList<KPolygon>();
+		for (int i = 0; i < lightMap.getLights().size(); i++){
+			LightMap.Light light = lightMap.getLights().get(i);
+			KPolygon boundaryPolygon = KPolygon.createRegularPolygon(lightMap.lightNumPoints, (float)(light.getRadius()/Math.cos(Math.PI/lightMap.lightNumPoints)));
+			boundaryPolygon.translate(light.getPosition().x, light.getPosition().y);
+			VisionData visionData = new VisionData(light.getPosition().clone(), boundaryPolygon);
+			visionFinder.calc(visionData, lightMap.occluderTileArray, Collections.<Occluder>emptyList());
+			polygons.add(visionData.getVisiblePolygon());
+		}
+		for (int row = 0; row < lightMap.getNumRows(); row++){
+			for (int col = 0; col < lightMap.getNumCols(); col++){
+				double x = lightMap.getCellCenterX(col);
+				double y = lightMap.getCellCenterY(row);
+				float expected = 0;
+				for (int i = 0; i < polygons.size(); i++){
+					LightMap.Light light = lightMap.getLights().get(i);
+					double dist = Math.sqrt(light.getPosition().distanceSquared((float)x, (float)y));
+					if (polygons.get(i) != null && dist < light.getRadius() && polygons.get(i).contains(x, y)){
+						expected += light.getIntensity()*(1 - dist/light.getRadius());
+					}
+				}
+				assertEquals("row "+row+", col "+col, expected, lightMap.getIntensity(row, col), 0.001f);
+			}
+		}
+	}
+}
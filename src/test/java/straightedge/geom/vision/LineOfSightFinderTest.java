@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks LineOfSightFinder against testing every occluder in the world, with
+ * and without the cache, and that the cache is recalculated after an occluder
+ * is removed.
+ *
+ * @author Keith Woodward
+ */
+public class LineOfSightFinderTest extends TestCase {
+	static final int NUM_POINTS = 30;
+
+	public void testMatchesBruteForce(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		TileArrayIntersections<OccluderImpl> tileArray = world.getOccluderTileArray();
+		ArrayList<Vector2f> points = new ArrayList<Vector2f>(Arrays.asList(BenchmarkWorlds.makeFreePoints(world, NUM_POINTS, 2)));
+		ArrayList<OccluderImpl> occluders = getAllOccluders(tileArray);
+
+		LineOfSightFinder lineOfSightFinder = new LineOfSightFinder(tileArray);
+		boolean[] results = lineOfSightFinder.canSeeEachOther(points, null);
+		int numVisible = checkMatches(points, occluders, results);
+		assertTrue(numVisible > 0);
+		assertTrue(numVisible < NUM_POINTS*NUM_POINTS);
+
+		lineOfSightFinder.setCache(1000, 0.001f);
+		lineOfSightFinder.canSeeEachOther(points, results);
+		checkMatches(points, occluders, results);
+		assertEquals(0, lineOfSightFinder.getNumCacheHits());
+		lineOfSightFinder.canSeeEachOther(points, results);
+		checkMatches(points, occluders, results);
+		assertEquals(NUM_POINTS*(NUM_POINTS - 1)/2, lineOfSightFinder.getNumCacheHits());
+
+		// take out an occluder that blocks some of the lines.
+		OccluderImpl removed = null;
+		for (int i = 0; i < NUM_POINTS && removed == null; i++){
+			for (int j = 0; j < NUM_POINTS && removed == null; j++){
+				if (results[i*NUM_POINTS + j] == false){
+					removed = getBlockingOccluder(points.get(i), points.get(j), occluders);
+				}
+			}
+		}
+		tileArray.remove(removed);
+		occluders.remove(removed);
+		lineOfSightFinder.occluderChanged(removed);
+		lineOfSightFinder.canSeeEachOther(points, results);
+		checkMatches(points, occluders, results);
+		tileArray.add(removed);
+		occluders.add(removed);
+		lineOfSightFinder.occluderChanged(removed);
+		lineOfSightFinder.canSeeEachOther(points, results);
+		checkMatches(points, occluders, results);
+	}
+
+	public void testMovingOccluders(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		TileArrayIntersections<OccluderImpl> tileArray = world.getOccluderTileArray();
+		Vector2f[] points = BenchmarkWorlds.makeFreePoints(world, 2, 3);
+		LineOfSightFinder lineOfSightFinder = new LineOfSightFinder(tileArray);
+		lineOfSightFinder.setCache(100, 1);
+		KPolygon polygon = KPolygon.createRegularPolygon(6, 5);
+		polygon.translateTo(points[0].add(points[1]).multLocal(0.5f));
+		OccluderImpl movingOccluder = new OccluderImpl(polygon);
+		ArrayList<OccluderImpl> movingOccluders = new ArrayList<OccluderImpl>();
+		movingOccluders.add(movingOccluder);
+		assertFalse(lineOfSightFinder.canSee(points[0], points[1], movingOccluders));
+		tileArray.addMoving(movingOccluder);
+		assertFalse(lineOfSightFinder.canSee(points[0], points[1]));
+		tileArray.removeMoving(movingOccluder);
+		assertEquals(getBlockingOccluder(points[0], points[1], getAllOccluders(tileArray)) == null, lineOfSightFinder.canSee(points[0], points[1]));
+	}
+
+	protected ArrayList<OccluderImpl> getAllOccluders(TileArrayIntersections<OccluderImpl> tileArray){
+		Vector2f center = tileArray.getBotLeft().add(tileArray.getTopRight()).multLocal(0.5f);
+		return new ArrayList<OccluderImpl>(tileArray.getAllWithin(center, tileArray.getBotLeft().distance(tileArray.getTopRight())*10));
+	}
+
+	protected int checkMatches(ArrayList<Vector2f> points, ArrayList<OccluderImpl> occluders, boolean[] results){
+		int numVisible = 0;
+		for (int i = 0; i < points.size(); i++){
+			for (int j = 0; j < points.size(); j++){
+				boolean expected = (i == j || getBlockingOccluder(points.get(i), points.get(j), occluders) == null);
+				assertEquals("points "+i+" and "+j, expected, results[i*points.size() + j]);
+				if (expected){
+					numVisible++;
+				}
+			}
+		}
+		return numVisible;
+	}
+
+	protected OccluderImpl getBlockingOccluder(Vector2f p, Vector2f p2, ArrayList<OccluderImpl> occluders){
+		for (int i = 0; i < occluders.size(); i++){
+			if (occluders.get(i).getPolygon().intersectsLine(p, p2)){
+				return occluders.get(i);
+			}
+		}
+		return null;
+	}
+}
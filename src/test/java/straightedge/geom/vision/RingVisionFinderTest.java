@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that RingVisionFinder gives the same visiblePoints as VisionFinder,
+ * and that it stops early in closed rooms.
+ *
+ * @author Keith Woodward
+ */
+public class RingVisionFinderTest extends TestCase {
+	static final int NUM_EYES = 60;
+
+	public void testMatchesVisionFinder(){
+		String[] worldNames = {BenchmarkWorlds.MAZE, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.PILLAR};
+		for (int i = 0; i < worldNames.length; i++){
+			GameWorld world = BenchmarkWorlds.makeWorld(worldNames[i], 0);
+			Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 5);
+			checkMatches(worldNames[i], world.getOccluderTileArray(), eyes, 300);
+			checkMatches(worldNames[i], world.getOccluderTileArray(), eyes, 1000);
+		}
+	}
+
+	public void testClosedRooms(){
+		// a 20 by 20 grid of closed rooms, 100 wide
+		TileArrayIntersections<OccluderImpl> tileArray = new TileArrayIntersections<OccluderImpl>(new Vector2f(0, 0), new Vector2f(2000, 2000), 50);
+		for (int i = 0; i <= 20; i++){
+			for (int j = 0; j < 20; j++){
+				tileArray.add(new OccluderImpl(KPolygon.createRect(j*100 - 2, i*100 - 2, j*100 + 102, i*100 + 2)));
+				tileArray.add(new OccluderImpl(KPolygon.createRect(i*100 - 2, j*100 - 2, i*100 + 2, j*100 + 102)));
+			}
+		}
+		Random random = new Random(0);
+		Vector2f[] eyes = new Vector2f[NUM_EYES];
+		for (int i = 0; i < NUM_EYES; i++){
+			eyes[i] = new Vector2f(random.nextInt(20)*100 + 10 + random.nextFloat()*80, random.nextInt(20)*100 + 10 + random.nextFloat()*80);
+		}
+		RingVisionFinder ringVisionFinder = checkMatches("rooms", tileArray, eyes, 1000);
+		assertEquals(1.0, ringVisionFinder.getEarlyOutRatio());
+		// each room has 4 walls, plus the ones that their corners overlap.
+		assertTrue(ringVisionFinder.numOccludersUsed <= 12*NUM_EYES + NUM_EYES/2);
+	}
+
+	protected RingVisionFinder checkMatches(String worldName, TileArrayIntersections<OccluderImpl> tileArray, Vector2f[] eyes, float radius){
+		VisionFinder visionFinder = new VisionFinder();
+		RingVisionFinder ringVisionFinder = new RingVisionFinder();
+		for (int i = 0; i < eyes.length; i++){
+			KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, radius);
+			boundaryPolygon.translateTo(eyes[i]);
+			VisionData expected = new VisionData(eyes[i], boundaryPolygon);
+			visionFinder.calc(expected, tileArray, Collections.<Occluder>emptyList());
+			VisionData actual = new VisionData(eyes[i], boundaryPolygon);
+			ringVisionFinder.calc(actual, tileArray, Collections.<Occluder>emptyList());
+
+			String message = worldName+", radius "+radius+", eye "+i;
+			ArrayList<VisiblePoint> expectedPoints = expected.getVisiblePoints();
+			ArrayList<VisiblePoint> actualPoints = actual.getVisiblePoints();
+			assertEquals(message, expectedPoints.size(), actualPoints.size());
+			for (int j = 0; j < expectedPoints.size(); j++){
+				assertEquals(message, expectedPoints.get(j).getType(), actualPoints.get(j).getType());
+				assertEquals(message, expectedPoints.get(j).getPoint(), actualPoints.get(j).getPoint());
+			}
+		}
+		return ringVisionFinder;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that SweepVisionFinder gives the same visiblePolygon as VisionFinder.
+ * The points may start at a different index and the polygons are compared
+ * by the distance of each point to the other polygon's boundary.
+ *
+ * @author Keith Woodward
+ */
+public class SweepVisionFinderTest extends TestCase {
+	static final int NUM_EYES = 100;
+	static final double TOLERANCE = 0.01;
+
+	public void testNoOccluders(){
+		KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, 300);
+		VisionData visionData = new VisionData(new Vector2f(0, 0), boundaryPolygon.copy());
+		new SweepVisionFinder().calc(visionData, new ArrayList<Occluder>());
+		assertEquals(boundaryPolygon.getPoints().size(), visionData.getVisiblePoints().size());
+		assertEquals(boundaryPolygon.getArea(), visionData.getVisiblePolygon().getArea(), 0.01);
+	}
+
+	public void testMatchesVisionFinder(){
+		checkMatchesVisionFinder(BenchmarkWorlds.OBSTACLE, false);
+		checkMatchesVisionFinder(BenchmarkWorlds.PILLAR, false);
+		checkMatchesVisionFinder(BenchmarkWorlds.MAZE, true);
+	}
+
+	public void testSpatialIndexMatchesTileArrayIntersections(){
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.OBSTACLE, 0);
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 2);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(eyes, 0, 5);
+		SpatialIndex<? extends Occluder> occluderIndex = world.getOccluderTileArray();
+		VisionFinder visionFinder = new VisionFinder();
+		SweepVisionFinder sweepVisionFinder = new SweepVisionFinder();
+		ArrayList<Occluder> visionFinderOccluders = visionFinder.indexedOccludersWithin;
+		ArrayList<Occluder> sweepVisionFinderOccluders = sweepVisionFinder.indexedOccludersWithin;
+		for (int i = 0; i < NUM_EYES; i++){
+			KPolygon boundaryPolygon = KPolygon.createRegularPolygon(20, 300);
+			boundaryPolygon.translateTo(eyes[i]);
+			VisionData visionData = new VisionData(eyes[i], boundaryPolygon.copy());
+			VisionData indexVisionData = new VisionData(eyes[i], boundaryPolygon.copy());
+			VisionData sweepIndexVisionData = new VisionData(eyes[i], boundaryPolygon.copy());
+			visionFinder.calc(visionData, world.getOccluderTileArray(), movingOccluders);
+			visionFinder.calc(indexVisionData, occluderIndex, movingOccluders);
+			sweepVisionFinder.calc(sweepIndexVisionData, occluderIndex, movingOccluders);
+			String message = "eye "+i;
+			KPolygon expected = visionData.getVisiblePolygon();
+			assertEquals(message, expected.getPoints(), indexVisionData.getVisiblePolygon().getPoints());
+			KPolygon actual = sweepIndexVisionData.getVisiblePolygon();
+			assertTrue(message, getMaxDistToBoundary(expected, actual) < TOLERANCE);
+			assertTrue(message, getMaxDistToBoundary(actual, expected) < TOLERANCE);
+		}
+		// the scratch lists are kept rather than made again for each calc.
+		assertSame(visionFinderOccluders, visionFinder.indexedOccludersWithin);
+		assertSame(sweepVisionFinderOccluders, sweepVisionFinder.indexedOccludersWithin);
+	}
+
+	protected void checkMatchesVisionFinder(String worldName, boolean reuseResults){
+		GameWorld world = BenchmarkWorlds.makeWorld(worldName, 0);
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 1);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(eyes, 0, 5);
+		VisionFinder visionFinder = new VisionFinder();
+		SweepVisionFinder sweepVisionFinder = new SweepVisionFinder();
+		VisionDataRotation sweepVisionData = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+		sweepVisionData.setReuseResults(reuseResults);
+		for (int i = 0; i < NUM_EYES; i++){
+			VisionDataRotation visionData = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+			visionData.copyAndTransformEyeAndBoundaryPolygon(eyes[i], i*0.1);
+			sweepVisionData.copyAndTransformEyeAndBoundaryPolygon(eyes[i], i*0.1);
+			visionFinder.calc(visionData, world.getOccluderTileArray(), movingOccluders);
+			sweepVisionFinder.calc(sweepVisionData, world.getOccluderTileArray(), movingOccluders);
+			String message = worldName+" eye "+i;
+			KPolygon expected = visionData.getVisiblePolygon();
+			KPolygon actual = sweepVisionData.getVisiblePolygon();
+			assertNotNull(message, actual);
+			assertTrue(message, getMaxDistToBoundary(expected, actual) < TOLERANCE);
+			assertTrue(message, getMaxDistToBoundary(actual, expected) < TOLERANCE);
+			assertEquals(message, expected.getArea(), actual.getArea(), expected.getArea()*0.0001);
+		}
+	}
+
+	protected double getMaxDistToBoundary(KPolygon polygon, KPolygon boundary){
+		ArrayList<Vector2f> boundaryPoints = boundary.getPoints();
+		double maxDistSq = 0;
+		for (Vector2f p : polygon.getPoints()){
+			double minDistSq = Double.MAX_VALUE;
+			for (int j = 0; j < boundaryPoints.size(); j++){
+				Vector2f p2 = boundaryPoints.get(j);
+				Vector2f p3 = boundaryPoints.get(j+1 >= boundaryPoints.size() ? 0 : j+1);
+				double distSq = Vector2fUtils.ptSegDistSq(p2, p3, p);
+				if (distSq < minDistSq){
+					minDistSq = distSq;
+				}
+			}
+			if (minDistSq > maxDistSq){
+				maxDistSq = minDistSq;
+			}
+		}
+		return Math.sqrt(maxDistSq);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.geom.util.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that VisionDataRotation.rotateAndClip gives the same visiblePolygon
+ * as VisionFinder.calc with the turned boundaryPolygon.
+ *
+ * @author Keith Woodward
+ */
+public class VisionDataRotationTest extends TestCase {
+	static final int NUM_EYES = 20;
+	static final int NUM_ANGLES = 16;
+
+	public void testRotateAndClip(){
+		checkRotateAndClip(BenchmarkWorlds.OBSTACLE, false);
+	}
+
+	public void testRotateAndClipReuseResults(){
+		checkRotateAndClip(BenchmarkWorlds.OBSTACLE, true);
+	}
+
+	protected void checkRotateAndClip(String worldName, boolean reuseResults){
+		GameWorld world = BenchmarkWorlds.makeWorld(worldName, 0);
+		TileArrayIntersections<OccluderImpl> tileArray = world.getOccluderTileArray();
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 4);
+		VisionFinder visionFinder = new VisionFinder();
+		KPolygon cone = makeCone(300, Math.PI/3);
+		for (int i = 0; i < NUM_EYES; i++){
+			VisionDataRotation rotating = new VisionDataRotation(new Vector2f(0, 0), cone);
+			rotating.setReuseResults(reuseResults);
+			rotating.copyAndTransformEyeAndBoundaryPolygon(eyes[i], 0);
+			rotating.calcFullVision(visionFinder, tileArray, Collections.<Occluder>emptyList());
+			VisionDataRotation expected = new VisionDataRotation(new Vector2f(0, 0), cone);
+			for (int j = 0; j < NUM_ANGLES; j++){
+				double angle = j*Math.PI*2/NUM_ANGLES + 0.1;
+				rotating.rotateAndClip(angle);
+				expected.copyAndTransformEyeAndBoundaryPolygon(eyes[i], angle);
+				visionFinder.calc(expected, tileArray, Collections.<Occluder>emptyList());
+
+				String message = "eye "+i+", angle "+j;
+				ArrayList<VisiblePoint> expectedPoints = expected.getVisiblePoints();
+				ArrayList<VisiblePoint> actualPoints = rotating.getVisiblePoints();
+				assertEquals(message, expectedPoints.size(), actualPoints.size());
+				int offset = findOffset(expectedPoints, actualPoints);
+				assertTrue(message, offset >= 0);
+				for (int k = 0; k < expectedPoints.size(); k++){
+					VisiblePoint expectedPoint = expectedPoints.get(k);
+					VisiblePoint actualPoint = actualPoints.get((k + offset) % actualPoints.size());
+					assertTrue(message+", point "+k, expectedPoint.getPoint().distance(actualPoint.getPoint()) < 0.01f);
+					assertEquals(message+", point "+k, expectedPoint.getType(), actualPoint.getType());
+				}
+				assertEquals(message, expected.getVisiblePolygon().getArea(), rotating.getVisiblePolygon().getArea(), 0.1f);
+			}
+		}
+	}
+
+	protected int findOffset(ArrayList<VisiblePoint> expectedPoints, ArrayList<VisiblePoint> actualPoints){
+		Vector2f first = expectedPoints.get(0).getPoint();
+		for (int i = 0; i < actualPoints.size(); i++){
+			if (first.distance(actualPoints.get(i).getPoint()) < 0.01f){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A view cone facing along the x axis with the eye just inside its tip.
+	 */
+	protected KPolygon makeCone(float radius, double halfAngle){
+		ArrayList<Vector2f> points = new ArrayList<Vector2f>();
+		points.add(new Vector2f(-5, 0));
+		int numArcPoints = 9;
+		for (int i = 0; i < numArcPoints; i++){
+			double angle = -halfAngle + 2*halfAngle*i/(numArcPoints - 1);
+			points.add(new Vector2f((float)(radius*Math.cos(angle)), (float)(radius*Math.sin(angle))));
+		}
+		return new KPolygon(points);
+	}
+}
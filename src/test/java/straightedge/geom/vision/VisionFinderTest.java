@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.geom.vision;
+
+import straightedge.geom.*;
+import straightedge.test.benchmark.*;
+import java.util.*;
+import java.lang.management.ManagementFactory;
+
+import com.jme3.math.Vector2f;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that VisionFinder.calc with a VisionData that re-uses its results
+ * gives the same visiblePolygon as with a new VisionData each time, that
+ * its pools stop growing once they've been used and that calc then doesn't
+ * allocate anything.
+ *
+ * @author Keith Woodward
+ */
+public class VisionFinderTest extends TestCase {
+	static final int NUM_EYES = 100;
+
+	public void testReuseResultsMatchesNewResults(){
+		checkReuseResults(BenchmarkWorlds.OBSTACLE);
+		checkReuseResults(BenchmarkWorlds.MAZE);
+	}
+
+	protected void checkReuseResults(String worldName){
+		GameWorld world = BenchmarkWorlds.makeWorld(worldName, 0);
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 1);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(eyes, 0, 5);
+		VisionFinder visionFinder = new VisionFinder();
+		VisionDataRotation reusedVisionData = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+		reusedVisionData.setReuseResults(true);
+		int numPooledCoordinates = -1;
+		int numPooledVisiblePoints = -1;
+		for (int pass = 0; pass < 2; pass++){
+			for (int i = 0; i < NUM_EYES; i++){
+				VisionDataRotation newVisionData = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+				newVisionData.copyAndTransformEyeAndBoundaryPolygon(eyes[i], i*0.1);
+				reusedVisionData.copyAndTransformEyeAndBoundaryPolygon(eyes[i], i*0.1);
+				visionFinder.calc(newVisionData, world.getOccluderTileArray(), movingOccluders);
+				visionFinder.calc(reusedVisionData, world.getOccluderTileArray(), movingOccluders);
+				assertSamePolygon(worldName+" eye "+i, newVisionData.getVisiblePolygon(), reusedVisionData.getVisiblePolygon());
+				assertEquals(newVisionData.getVisiblePoints().size(), reusedVisionData.getVisiblePoints().size());
+				for (int j = 0; j < newVisionData.getVisiblePoints().size(); j++){
+					assertEquals(newVisionData.getVisiblePoints().get(j).getType(), reusedVisionData.getVisiblePoints().get(j).getType());
+				}
+			}
+			VisiblePointPool pool = reusedVisionData.getVisiblePointPool();
+			int numVisiblePoints = pool.occluderPoints.size() + pool.boundaryPoints.size() + pool.occluderBoundaryIntersections.size()
+					+ pool.occluderOccluderIntersections.size() + pool.shadowsOnOccluders.size() + pool.shadowsOnBoundary.size();
+			if (pass == 1){
+				assertEquals(numPooledCoordinates, pool.coordinates.size());
+				assertEquals(numPooledVisiblePoints, numVisiblePoints);
+			}
+			numPooledCoordinates = pool.coordinates.size();
+			numPooledVisiblePoints = numVisiblePoints;
+		}
+	}
+
+	public void testReuseResultsDoesNotAllocate(){
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean == false){
+			return;
+		}
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		if (threadMXBean.isThreadAllocatedMemorySupported() == false || threadMXBean.isThreadAllocatedMemoryEnabled() == false){
+			return;
+		}
+		long threadID = Thread.currentThread().getId();
+		GameWorld world = BenchmarkWorlds.makeWorld(BenchmarkWorlds.MAZE, 0);
+		Vector2f[] eyes = BenchmarkWorlds.makeFreePoints(world, NUM_EYES, 1);
+		ArrayList<OccluderImpl> movingOccluders = BenchmarkWorlds.makeMovingOccluders(eyes, 0, 5);
+		VisionFinder visionFinder = new VisionFinder();
+		VisionDataRotation visionData = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, 300));
+		visionData.setReuseResults(true);
+		long numBytes = 0;
+		// the first pass grows the pools and the sort arrays.
+		for (int pass = 0; pass < 3; pass++){
+			numBytes = 0;
+			for (int i = 0; i < NUM_EYES; i++){
+				visionData.copyAndTransformEyeAndBoundaryPolygon(eyes[i], i*0.1);
+				long numBytesBefore = threadMXBean.getThreadAllocatedBytes(threadID);
+				visionFinder.calc(visionData, world.getOccluderTileArray(), movingOccluders);
+				numBytes += threadMXBean.getThreadAllocatedBytes(threadID) - numBytesBefore;
+			}
+		}
+		// allow for the odd stray allocation by the JVM, but not one per call.
+		assertTrue("bytes allocated = "+numBytes, numBytes < NUM_EYES*8);
+	}
+
+	protected void assertSamePolygon(String message, KPolygon expected, KPolygon actual){
+		if (expected == null){
+			assertNull(message, actual);
+			return;
+		}
+		assertNotNull(message, actual);
+		ArrayList<Vector2f> expectedPoints = expected.getPoints();
+		ArrayList<Vector2f> actualPoints = actual.getPoints();
+		assertEquals(message, expectedPoints.size(), actualPoints.size());
+		for (int i = 0; i < expectedPoints.size(); i++){
+			assertEquals(message, expectedPoints.get(i), actualPoints.get(i));
+		}
+		assertEquals(message, expected.getArea(), actual.getArea());
+		assertEquals(message, expected.getCenter(), actual.getCenter());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Compares the serial path calculation done for each player in
+ * Player.beforeLastUpdate with BatchPathFinder, using many agents walking
+ * around a MazeWorld. Doesn't need a display.
+ *
+ * Usage: BatchPathBenchmark [numAgents] [numTicks] [dedupeDist]
+ *
+ * @author Keith Woodward
+ */
+public class BatchPathBenchmark {
+
+	public static void main(String[] args){
+		int numAgents = (args.length > 0 ? Integer.parseInt(args[0]) : 500);
+		int numTicks = (args.length > 1 ? Integer.parseInt(args[1]) : 20);
+		double dedupeDist = (args.length > 2 ? Double.parseDouble(args[2]) : -1);
+		float maxConnectionDist = 600;
+		float playerMaxConnectionDist = 300;
+		MazeWorld world = new MazeWorld(0, 30, 17, 12, 4f);
+		world.init(maxConnectionDist, 150);
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = world.getObstacleManager();
+		NodeConnector<PathBlockingObstacleImpl> nodeConnector = obstacleManager.getNodeConnector();
+		TileArray<PathBlockingObstacleImpl> tileArray = obstacleManager.getTileBag().getTileArray();
+
+		// Agents start at random points and all head to one of a few targets,
+		// the same as a group of monsters chasing players.
+		Random random = new Random(0);
+		ArrayList<PathRequest> requests = new ArrayList<PathRequest>();
+		Vector2f[] targets = new Vector2f[4];
+		for (int i = 0; i < targets.length; i++){
+			targets[i] = new Vector2f(random.nextFloat()*510, random.nextFloat()*360);
+		}
+		for (int i = 0; i < numAgents; i++){
+			Vector2f start = new Vector2f(random.nextFloat()*510, random.nextFloat()*360);
+			requests.add(new PathRequest(start, targets[i % targets.length], playerMaxConnectionDist));
+		}
+
+		ArrayList<PathFinder> pathFinders = new ArrayList<PathFinder>();
+		for (int i = 0; i < numAgents; i++){
+			pathFinders.add(new PathFinder());
+		}
+		BatchPathFinder<PathBlockingObstacleImpl> batchPathFinder = new BatchPathFinder<PathBlockingObstacleImpl>();
+		batchPathFinder.setDedupeDist(dedupeDist);
+
+		// warm up
+		for (int tick = 0; tick < 3; tick++){
+			calcSerial(requests, pathFinders, nodeConnector, tileArray);
+			batchPathFinder.calc(requests, nodeConnector, tileArray);
+		}
+
+		long serialNanos = 0;
+		long batchNanos = 0;
+		int numMismatches = 0;
+		for (int tick = 0; tick < numTicks; tick++){
+			long startTime = System.nanoTime();
+			ArrayList<PathData> serialPathDatas = calcSerial(requests, pathFinders, nodeConnector, tileArray);
+			long midTime = System.nanoTime();
+			ArrayList<PathData> batchPathDatas = batchPathFinder.calc(requests, nodeConnector, tileArray);
+			long endTime = System.nanoTime();
+			serialNanos += midTime - startTime;
+			batchNanos += endTime - midTime;
+			if (dedupeDist < 0){
+				for (int i = 0; i < numAgents; i++){
+					if (serialPathDatas.get(i).getResult() != batchPathDatas.get(i).getResult() || serialPathDatas.get(i).getPoints().size() != batchPathDatas.get(i).getPoints().size()){
+						numMismatches++;
+					}
+				}
+			}
+		}
+		System.out.println(BatchPathBenchmark.class.getSimpleName()+": numAgents == "+numAgents+", numTicks == "+numTicks+", parallelism == "+batchPathFinder.getPool().getParallelism());
+		System.out.println("serial loop:       "+(serialNanos/1000000f/numTicks)+"ms per tick");
+		System.out.println("BatchPathFinder:   "+(batchNanos/1000000f/numTicks)+"ms per tick, speed-up == "+((double)serialNanos/batchNanos));
+		System.out.println("deduped requests:  "+batchPathFinder.getNumDedupedRequests()+", mismatched results == "+numMismatches);
+	}
+
+	// The same as every Player calling calcPath in Player.beforeLastUpdate.
+	protected static ArrayList<PathData> calcSerial(ArrayList<PathRequest> requests, ArrayList<PathFinder> pathFinders, NodeConnector<PathBlockingObstacleImpl> nodeConnector, TileArray<PathBlockingObstacleImpl> tileArray){
+		ArrayList<PathData> pathDatas = new ArrayList<PathData>(requests.size());
+		for (int i = 0; i < requests.size(); i++){
+			PathRequest request = requests.get(i);
+			pathDatas.add(pathFinders.get(i).calc(request.getStart(), request.getEnd(), request.getMaxTempNodeConnectionDist(), nodeConnector, tileArray));
+		}
+		return pathDatas;
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.*;
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+
+import com.jme3.math.Vector2f;
+
+/**
+ * Makes the same worlds as the GameFrame's buttons, without a display, for
+ * the JMH benchmarks in this package. Everything that is random is seeded so
+ * that each benchmark run measures the same work.
+ *
+ * Run the benchmarks with: mvn -Pjmh test
+ * or just some of them with: mvn -Pjmh test -Djmh.includes=PathFinderBenchmark
+ *
+ * @author Keith Woodward
+ */
+public class BenchmarkWorlds {
+	public static final String MAZE = "maze";
+	public static final String PILLAR = "pillar";
+	public static final String OBSTACLE = "obstacle";
+	public static final String CORNER_CASE = "cornerCase";
+
+	// The GameFrame's default connection distance and tile size.
+	public static final float MAX_CONNECTION_DIST = 600;
+	public static final float TILE_WIDTH_AND_HEIGHT = 150;
+	public static final float PLAYER_MAX_CONNECTION_DIST = 300;
+
+	public static GameWorld makeWorld(String worldName, long seed){
+		GameWorld world;
+		if (MAZE.equals(worldName)){
+			world = new MazeWorld(seed, 30, 17, 12, 4f);
+		}else if (PILLAR.equals(worldName)){
+			world = new PillarWorld();
+		}else if (OBSTACLE.equals(worldName)){
+			world = new ObstacleWorld();
+		}else if (CORNER_CASE.equals(worldName)){
+			world = new CornerCaseWorld();
+		}else{
+			throw new IllegalArgumentException("Unknown world: "+worldName);
+		}
+		world.init(MAX_CONNECTION_DIST, TILE_WIDTH_AND_HEIGHT);
+		return world;
+	}
+
+	/**
+	 * Returns the bounding rectangle of the world's obstacles, grown by the margin.
+	 */
+	public static AABB getBounds(GameWorld world, float margin){
+		AABB bounds = null;
+		for (PathBlockingObstacleImpl obst : world.getObstacles()){
+			AABB aabb = obst.getOuterPolygon().getAABB();
+			if (bounds == null){
+				bounds = aabb;
+			}else{
+				bounds.setFromDiagonal(Math.min(bounds.p.x, aabb.p.x), Math.min(bounds.p.y, aabb.p.y), Math.max(bounds.p2.x, aabb.p2.x), Math.max(bounds.p2.y, aabb.p2.y));
+			}
+		}
+		bounds.setFromDiagonal(bounds.p.x - margin, bounds.p.y - margin, bounds.p2.x + margin, bounds.p2.y + margin);
+		return bounds;
+	}
+
+	/**
+	 * Returns random points within the world's bounds which aren't inside any obstacle,
+	 * so they can be used as path start and end points and as eyes.
+	 */
+	public static Vector2f[] makeFreePoints(GameWorld world, int numPoints, long seed){
+		AABB bounds = getBounds(world, 20);
+		TileArray<PathBlockingObstacleImpl> tileArray = world.getObstacleTileArray();
+		Random random = new Random(seed);
+		Vector2f[] points = new Vector2f[numPoints];
+		int numMade = 0;
+		PointLoop:
+		while (numMade < numPoints){
+			Vector2f p = new Vector2f(bounds.p.x + random.nextFloat()*(bounds.p2.x - bounds.p.x), bounds.p.y + random.nextFloat()*(bounds.p2.y - bounds.p.y));
+			ArrayList<PathBlockingObstacleImpl> obstacles = tileArray.getAllWithin(p, 1);
+			for (int i = 0; i < obstacles.size(); i++){
+				if (obstacles.get(i).getOuterPolygon().contains(p)){
+					continue PointLoop;
+				}
+			}
+			points[numMade] = p;
+			numMade++;
+		}
+		return points;
+	}
+
+	/**
+	 * Makes a moving occluder next to each of numOccluders points, starting
+	 * at points[firstIndex]: a pentagon of radius 40 centred 30 to the right
+	 * of the point, so that an eye at the point is right next to it.
+	 */
+	public static ArrayList<OccluderImpl> makeMovingOccluders(Vector2f[] points, int firstIndex, int numOccluders){
+		ArrayList<OccluderImpl> movingOccluders = new ArrayList<OccluderImpl>();
+		for (int i = firstIndex; i < firstIndex + numOccluders; i++){
+			KPolygon polygon = KPolygon.createRegularPolygon(5, 40);
+			polygon.translateTo(points[i].x + 30, points[i].y);
+			movingOccluders.add(new OccluderImpl(polygon));
+		}
+		return movingOccluders;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.*;
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.jme3.math.Vector2f;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the throughput of readers querying the world's obstacles while a
+ * writer moves small obstacles around, with a ConcurrentTileBag and with a
+ * TileBag that every thread synchronizes on.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Group)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentTileBagBenchmark {
+	@Param({BenchmarkWorlds.MAZE, BenchmarkWorlds.OBSTACLE})
+	public String world;
+	@Param({"0"})
+	public long seed;
+	@Param({"300"})
+	public double radius;
+	@Param({"200"})
+	public int numMovers;
+
+	static final int NUM_POINTS = 256;
+	static final int NUM_MOVER_POSITIONS = 8;
+	Vector2f[] points;
+	ConcurrentTileBag<OccluderImpl> concurrentTileBag;
+	TileBag<OccluderImpl> tileBag;
+	ArrayList<OccluderImpl> movers;
+	// Each mover's polygon at each of its positions, made up front so that
+	// the writer doesn't make garbage.
+	KPolygon[][] moverPolygons;
+	int moveIndex;
+
+	@Setup
+	public void setUp(){
+		GameWorld gameWorld = BenchmarkWorlds.makeWorld(world, seed);
+		points = BenchmarkWorlds.makeFreePoints(gameWorld, NUM_POINTS, seed);
+		AABB bounds = BenchmarkWorlds.getBounds(gameWorld, 20);
+		float tileWidthAndHeight = BenchmarkWorlds.TILE_WIDTH_AND_HEIGHT;
+		int numRows = (int)Math.ceil((bounds.p2.y - bounds.p.y)/tileWidthAndHeight);
+		int numCols = (int)Math.ceil((bounds.p2.x - bounds.p.x)/tileWidthAndHeight);
+		concurrentTileBag = new ConcurrentTileBag<OccluderImpl>(bounds.p, tileWidthAndHeight, numRows, numCols);
+		tileBag = new TileBag<OccluderImpl>(bounds.p, tileWidthAndHeight, numRows, numCols);
+		Bag<PathBlockingObstacleImpl> obstacles = gameWorld.getObstacles();
+		for (int i = 0; i < obstacles.size(); i++){
+			OccluderImpl occluder = new OccluderImpl(obstacles.get(i).getPolygon());
+			concurrentTileBag.add(occluder);
+			tileBag.add(occluder);
+		}
+		Random random = new Random(seed);
+		movers = new ArrayList<OccluderImpl>();
+		moverPolygons = new KPolygon[numMovers][NUM_MOVER_POSITIONS];
+		for (int i = 0; i < numMovers; i++){
+			for (int j = 0; j < NUM_MOVER_POSITIONS; j++){
+				KPolygon polygon = KPolygon.createRect(0f, 0f, 10f, 10f);
+				polygon.translateTo(bounds.p.x + random.nextFloat()*(bounds.p2.x - bounds.p.x), bounds.p.y + random.nextFloat()*(bounds.p2.y - bounds.p.y));
+				moverPolygons[i][j] = polygon;
+			}
+			OccluderImpl mover = new OccluderImpl(moverPolygons[i][0]);
+			movers.add(mover);
+			concurrentTileBag.add(mover);
+			tileBag.add(mover);
+		}
+		moveIndex = 0;
+	}
+
+	@State(Scope.Thread)
+	public static class Reader{
+		int pointIndex;
+		TileArrayQueryContext context = new TileArrayQueryContext();
+		Bag<OccluderImpl> bag = new Bag<OccluderImpl>();
+	}
+
+	@Benchmark
+	@Group("concurrentTileBag")
+	@GroupThreads(3)
+	public int concurrentQuery(Reader reader){
+		reader.pointIndex = (reader.pointIndex + 1) % NUM_POINTS;
+		Vector2f p = points[reader.pointIndex];
+		reader.bag.clear();
+		return concurrentTileBag.getAllWithin(p.x, p.y, radius, reader.bag, reader.context).size();
+	}
+
+	@Benchmark
+	@Group("concurrentTileBag")
+	@GroupThreads(1)
+	public boolean concurrentMove(){
+		moveIndex++;
+		OccluderImpl mover = movers.get(moveIndex % numMovers);
+		mover.setPolygon(moverPolygons[moveIndex % numMovers][(moveIndex/numMovers) % NUM_MOVER_POSITIONS]);
+		return concurrentTileBag.update(mover);
+	}
+
+	@Benchmark
+	@Group("synchronizedTileBag")
+	@GroupThreads(3)
+	public int synchronizedQuery(Reader reader){
+		reader.pointIndex = (reader.pointIndex + 1) % NUM_POINTS;
+		Vector2f p = points[reader.pointIndex];
+		reader.bag.clear();
+		synchronized (tileBag){
+			return tileBag.getAllWithin(p.x, p.y, radius, reader.bag).size();
+		}
+	}
+
+	@Benchmark
+	@Group("synchronizedTileBag")
+	@GroupThreads(1)
+	public boolean synchronizedMove(){
+		moveIndex++;
+		OccluderImpl mover = movers.get(moveIndex % numMovers);
+		synchronized (tileBag){
+			// TileBag.remove finds the tiles from the polygon, so it has to
+			// be removed before the polygon is moved.
+			tileBag.remove(mover);
+			mover.setPolygon(moverPolygons[moveIndex % numMovers][(moveIndex/numMovers) % NUM_MOVER_POSITIONS]);
+			return tileBag.add(mover);
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(ConcurrentTileBagBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
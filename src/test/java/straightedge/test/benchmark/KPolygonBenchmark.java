@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.*;
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.jme3.math.Vector2f;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures KPolygon.intersectsLine and KPolygon.contains on the world's
+ * obstacle polygons, using seeded points near each polygon so that about
+ * half of the tests are hits.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KPolygonBenchmark {
+	@Param({BenchmarkWorlds.MAZE, BenchmarkWorlds.PILLAR, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.CORNER_CASE})
+	public String world;
+	@Param({"0"})
+	public long seed;
+
+	static final int NUM_TESTS = 1024;
+	KPolygon[] polygons;
+	Vector2f[] points;
+	Vector2f[] points2;
+	int testIndex;
+
+	@Setup
+	public void setUp(){
+		GameWorld gameWorld = BenchmarkWorlds.makeWorld(world, seed);
+		Bag<PathBlockingObstacleImpl> obstacles = gameWorld.getObstacles();
+		Random random = new Random(seed);
+		polygons = new KPolygon[NUM_TESTS];
+		points = new Vector2f[NUM_TESTS];
+		points2 = new Vector2f[NUM_TESTS];
+		for (int i = 0; i < NUM_TESTS; i++){
+			KPolygon polygon = obstacles.get(random.nextInt(obstacles.size())).getInnerPolygon();
+			polygons[i] = polygon;
+			points[i] = makePointNear(polygon, random);
+			points2[i] = makePointNear(polygon, random);
+		}
+		testIndex = 0;
+	}
+
+	protected Vector2f makePointNear(KPolygon polygon, Random random){
+		double angle = random.nextDouble()*Math.PI*2;
+		double dist = random.nextDouble()*polygon.getRadius()*1.5;
+		Vector2f center = polygon.getCenter();
+		return new Vector2f((float)(center.x + Math.cos(angle)*dist), (float)(center.y + Math.sin(angle)*dist));
+	}
+
+	@Benchmark
+	public boolean intersectsLine(){
+		testIndex = (testIndex + 1) & (NUM_TESTS - 1);
+		return polygons[testIndex].intersectsLine(points[testIndex], points2[testIndex]);
+	}
+
+	@Benchmark
+	public boolean contains(){
+		testIndex = (testIndex + 1) & (NUM_TESTS - 1);
+		return polygons[testIndex].contains(points[testIndex]);
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(KPolygonBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
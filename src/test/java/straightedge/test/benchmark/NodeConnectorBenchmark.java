@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures NodeConnector.addObstacle. Before each invocation the next
+ * obstacle is taken out of the TileBag and its connections are cleared,
+ * then the invocation adds it back.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeConnectorBenchmark {
+	@Param({BenchmarkWorlds.MAZE, BenchmarkWorlds.PILLAR, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.CORNER_CASE})
+	public String world;
+	@Param({"0"})
+	public long seed;
+
+	NodeConnector<PathBlockingObstacleImpl> nodeConnector;
+	TileBag<PathBlockingObstacleImpl> tileBag;
+	double maxConnectionDistance;
+	PathBlockingObstacleImpl[] obstacles;
+	int obstacleIndex;
+	PathBlockingObstacleImpl removedObstacle;
+
+	@Setup(Level.Trial)
+	public void setUp(){
+		GameWorld gameWorld = BenchmarkWorlds.makeWorld(world, seed);
+		ObstacleManager<PathBlockingObstacleImpl> obstacleManager = gameWorld.getObstacleManager();
+		nodeConnector = obstacleManager.getNodeConnector();
+		tileBag = obstacleManager.getTileBag();
+		maxConnectionDistance = obstacleManager.getMaxConnectionDistance();
+		obstacles = tileBag.getBag().toArray(new PathBlockingObstacleImpl[tileBag.size()]);
+		obstacleIndex = 0;
+	}
+
+	@Setup(Level.Invocation)
+	public void removeNextObstacle(){
+		obstacleIndex = (obstacleIndex + 1) % obstacles.length;
+		removedObstacle = obstacles[obstacleIndex];
+		nodeConnector.clearConnectionsToRemovedObstacleNodes(removedObstacle);
+		tileBag.remove(removedObstacle);
+	}
+
+	@Benchmark
+	public PathBlockingObstacleImpl addObstacle(){
+		tileBag.add(removedObstacle);
+		nodeConnector.addObstacle(removedObstacle, tileBag, maxConnectionDistance);
+		return removedObstacle;
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(NodeConnectorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
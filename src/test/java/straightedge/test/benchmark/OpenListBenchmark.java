@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.path.KNode;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the open list operations done by PathFinder using the old
+ * BinaryHeap&lt;KNode&gt;, where decreasing a node's f-cost needs
+ * BinaryHeap.indexOf, with IndexedBinaryHeap.
+ *
+ * Each invocation adds all of the nodes, lowers the f-cost of some of them
+ * (like A* does when it finds a shorter route to an open node) and then
+ * removes them all.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenListBenchmark {
+	@Param({"100", "1000", "10000"})
+	public int numNodes;
+
+	KNode[] nodes;
+	double[] fCosts;
+	int[] decreasedNodeIndexes;
+	double[] decreasedFCosts;
+	BinaryHeap<KNode> binaryHeap;
+	IndexedBinaryHeap indexedBinaryHeap;
+
+	@Setup
+	public void setUp(){
+		Random random = new Random(0);
+		nodes = new KNode[numNodes];
+		fCosts = new double[numNodes];
+		for (int i = 0; i < numNodes; i++){
+			nodes[i] = new KNode();
+			fCosts[i] = 100 + random.nextDouble()*1000;
+		}
+		decreasedNodeIndexes = new int[numNodes/2];
+		decreasedFCosts = new double[numNodes/2];
+		for (int i = 0; i < decreasedNodeIndexes.length; i++){
+			decreasedNodeIndexes[i] = random.nextInt(numNodes);
+			decreasedFCosts[i] = random.nextDouble()*100;
+		}
+		binaryHeap = new BinaryHeap<KNode>(numNodes);
+		indexedBinaryHeap = new IndexedBinaryHeap(numNodes);
+	}
+
+	@Benchmark
+	public double binaryHeap(){
+		binaryHeap.makeEmpty();
+		for (int i = 0; i < numNodes; i++){
+			nodes[i].fCost = fCosts[i];
+			binaryHeap.add(nodes[i]);
+		}
+		for (int i = 0; i < decreasedNodeIndexes.length; i++){
+			KNode node = nodes[decreasedNodeIndexes[i]];
+			if (decreasedFCosts[i] < node.fCost){
+				node.fCost = decreasedFCosts[i];
+				binaryHeap.percolateUp(binaryHeap.indexOf(node));
+			}
+		}
+		double sum = 0;
+		while (binaryHeap.isEmpty() == false){
+			sum += binaryHeap.deleteMin().fCost;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double indexedBinaryHeap(){
+		indexedBinaryHeap.makeEmpty();
+		for (int i = 0; i < numNodes; i++){
+			indexedBinaryHeap.add(i, fCosts[i]);
+		}
+		for (int i = 0; i < decreasedNodeIndexes.length; i++){
+			indexedBinaryHeap.decreaseKey(decreasedNodeIndexes[i], decreasedFCosts[i]);
+		}
+		double sum = 0;
+		while (indexedBinaryHeap.isEmpty() == false){
+			sum += indexedBinaryHeap.peekMinKey();
+			indexedBinaryHeap.deleteMin();
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(OpenListBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
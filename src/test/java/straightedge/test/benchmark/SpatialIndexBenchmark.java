@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.*;
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.jme3.math.Vector2f;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures getAllWithin on each world's obstacle polygons with a TileArray,
+ * a LooseQuadTree and a BoundingVolumeHierarchy. The mixedScale world has a
+ * few huge polygons among thousands of tiny ones. Running main prints which
+ * index was quickest for each world and radius.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialIndexBenchmark {
+	public static final String MIXED_SCALE = "mixedScale";
+	public static final String TILE_ARRAY = "TileArray";
+	public static final String LOOSE_QUAD_TREE = "LooseQuadTree";
+	public static final String BOUNDING_VOLUME_HIERARCHY = "BoundingVolumeHierarchy";
+
+	@Param({BenchmarkWorlds.MAZE, BenchmarkWorlds.PILLAR, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.CORNER_CASE, MIXED_SCALE})
+	public String world;
+	@Param({TILE_ARRAY, LOOSE_QUAD_TREE, BOUNDING_VOLUME_HIERARCHY})
+	public String index;
+	@Param({"0"})
+	public long seed;
+	@Param({"50", "300"})
+	public double radius;
+
+	static final int NUM_POINTS = 256;
+	Vector2f[] points;
+	int pointIndex;
+	SpatialIndex<KPolygon> spatialIndex;
+	Bag<KPolygon> bag = new Bag<KPolygon>();
+
+	@Setup
+	public void setUp(){
+		ArrayList<KPolygon> polygons = new ArrayList<KPolygon>();
+		AABB bounds;
+		if (world.equals(MIXED_SCALE)){
+			bounds = new AABB(0, 0, 4000, 4000);
+			points = makeMixedScalePolygons(polygons, bounds, NUM_POINTS, seed);
+		}else{
+			GameWorld gameWorld = BenchmarkWorlds.makeWorld(world, seed);
+			points = BenchmarkWorlds.makeFreePoints(gameWorld, NUM_POINTS, seed);
+			bounds = BenchmarkWorlds.getBounds(gameWorld, 20);
+			Bag<PathBlockingObstacleImpl> obstacles = gameWorld.getObstacles();
+			for (int i = 0; i < obstacles.size(); i++){
+				polygons.add(obstacles.get(i).getPolygon());
+			}
+		}
+		spatialIndex = makeIndex(index, polygons, bounds);
+		pointIndex = 0;
+	}
+
+	public static SpatialIndex<KPolygon> makeIndex(String index, ArrayList<KPolygon> polygons, AABB bounds){
+		if (index.equals(TILE_ARRAY)){
+			float tileWidthAndHeight = BenchmarkWorlds.TILE_WIDTH_AND_HEIGHT;
+			int numRows = (int)Math.ceil(bounds.getHeight()/tileWidthAndHeight);
+			int numCols = (int)Math.ceil(bounds.getWidth()/tileWidthAndHeight);
+			TileArray<KPolygon> tileArray = new TileArray<KPolygon>(bounds.p, tileWidthAndHeight, numRows, numCols);
+			for (int i = 0; i < polygons.size(); i++){
+				tileArray.add(polygons.get(i));
+			}
+			return tileArray;
+		}else if (index.equals(LOOSE_QUAD_TREE)){
+			LooseQuadTree<KPolygon> quadTree = new LooseQuadTree<KPolygon>(bounds, BenchmarkWorlds.TILE_WIDTH_AND_HEIGHT);
+			for (int i = 0; i < polygons.size(); i++){
+				quadTree.add(polygons.get(i));
+			}
+			return quadTree;
+		}else if (index.equals(BOUNDING_VOLUME_HIERARCHY)){
+			return new BoundingVolumeHierarchy<KPolygon>(polygons, 4);
+		}
+		throw new IllegalArgumentException("Unknown index: "+index);
+	}
+
+	/**
+	 * Adds a few huge polygons, like terrain, and thousands of tiny ones, like
+	 * props, and returns the query points.
+	 */
+	public static Vector2f[] makeMixedScalePolygons(ArrayList<KPolygon> polygons, AABB bounds, int numPoints, long seed){
+		Random random = new Random(seed);
+		for (int i = 0; i < 5000; i++){
+			float radius = (i % 500 == 0 ? 800 : 2) + random.nextFloat()*4;
+			KPolygon polygon = KPolygon.createRegularPolygon(3 + random.nextInt(6), radius);
+			polygon.translateTo(bounds.p.x + random.nextFloat()*bounds.getWidth(), bounds.p.y + random.nextFloat()*bounds.getHeight());
+			polygons.add(polygon);
+		}
+		Vector2f[] points = new Vector2f[numPoints];
+		for (int i = 0; i < numPoints; i++){
+			points[i] = new Vector2f(bounds.p.x + random.nextFloat()*bounds.getWidth(), bounds.p.y + random.nextFloat()*bounds.getHeight());
+		}
+		return points;
+	}
+
+	@Benchmark
+	public Bag<KPolygon> getAllWithin(){
+		pointIndex = (pointIndex + 1) % NUM_POINTS;
+		bag.clear();
+		return spatialIndex.getAllWithin(points[pointIndex].x, points[pointIndex].y, radius, bag);
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(SpatialIndexBenchmark.class.getSimpleName())
+				.build();
+		Collection<RunResult> results = new Runner(options).run();
+		// the quickest index for each world and radius.
+		TreeMap<String, RunResult> best = new TreeMap<String, RunResult>();
+		for (RunResult result : results){
+			String key = result.getParams().getParam("world")+", radius "+result.getParams().getParam("radius");
+			RunResult bestResult = best.get(key);
+			if (bestResult == null || result.getPrimaryResult().getScore() < bestResult.getPrimaryResult().getScore()){
+				best.put(key, result);
+			}
+		}
+		for (Map.Entry<String, RunResult> entry : best.entrySet()){
+			System.out.println(entry.getKey()+": "+entry.getValue().getParams().getParam("index")+" ("+entry.getValue().getPrimaryResult().getScore()+" "+entry.getValue().getPrimaryResult().getScoreUnit()+")");
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.path.*;
+import straightedge.geom.util.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.jme3.math.Vector2f;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures TileArray.getAllWithin on the world's obstacles around a fixed
+ * set of seeded points, returning a new ArrayList, appending to a re-used
+ * Bag, and only counting.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileArrayBenchmark {
+	@Param({BenchmarkWorlds.MAZE, BenchmarkWorlds.PILLAR, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.CORNER_CASE})
+	public String world;
+	@Param({"0"})
+	public long seed;
+	@Param({"50", "300"})
+	public double radius;
+
+	static final int NUM_POINTS = 256;
+	Vector2f[] points;
+	int pointIndex;
+	TileArray<PathBlockingObstacleImpl> tileArray;
+	Bag<PathBlockingObstacleImpl> bag = new Bag<PathBlockingObstacleImpl>();
+
+	@Setup
+	public void setUp(){
+		GameWorld gameWorld = BenchmarkWorlds.makeWorld(world, seed);
+		points = BenchmarkWorlds.makeFreePoints(gameWorld, NUM_POINTS, seed);
+		tileArray = gameWorld.getObstacleTileArray();
+		pointIndex = 0;
+	}
+
+	@Benchmark
+	public ArrayList<PathBlockingObstacleImpl> getAllWithin(){
+		pointIndex = (pointIndex + 1) % NUM_POINTS;
+		return tileArray.getAllWithin(points[pointIndex], radius);
+	}
+
+	@Benchmark
+	public Bag<PathBlockingObstacleImpl> getAllWithinBag(){
+		pointIndex = (pointIndex + 1) % NUM_POINTS;
+		bag.clear();
+		return tileArray.getAllWithin(points[pointIndex].x, points[pointIndex].y, radius, bag);
+	}
+
+	@Benchmark
+	public int countAllWithin(){
+		pointIndex = (pointIndex + 1) % NUM_POINTS;
+		return tileArray.countAllWithin(points[pointIndex].x, points[pointIndex].y, radius);
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(TileArrayBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
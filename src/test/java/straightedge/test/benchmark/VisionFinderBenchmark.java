@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2008, Keith Woodward
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 3. Neither the name of Keith Woodward nor the names
+ *    of its contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+package straightedge.test.benchmark;
+
+import straightedge.geom.*;
+import straightedge.geom.vision.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.jme3.math.Vector2f;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures VisionFinder.calc with the world's occluder TileArrayIntersections,
+ * the same way that Player.afterLastUpdate does, from a fixed set of seeded
+ * eye positions and look angles. The engine param swaps in SweepVisionFinder.
+ *
+ * @author Keith Woodward
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisionFinderBenchmark {
+	@Param({BenchmarkWorlds.MAZE, BenchmarkWorlds.PILLAR, BenchmarkWorlds.OBSTACLE, BenchmarkWorlds.CORNER_CASE})
+	public String world;
+	@Param({"0"})
+	public long seed;
+	@Param({"300"})
+	public float sightRadius;
+	@Param({"false", "true"})
+	public boolean reuseResults;
+	@Param({"VisionFinder", "SweepVisionFinder"})
+	public String engine;
+
+	static final int NUM_EYES = 64;
+	Vector2f[] eyes;
+	double[] lookAngles;
+	int eyeIndex;
+	GameWorld gameWorld;
+	VisionEngine visionFinder;
+	VisionDataRotation visionData;
+
+	@Setup
+	public void setUp(){
+		gameWorld = BenchmarkWorlds.makeWorld(world, seed);
+		eyes = BenchmarkWorlds.makeFreePoints(gameWorld, NUM_EYES, seed);
+		Random random = new Random(seed);
+		lookAngles = new double[NUM_EYES];
+		for (int i = 0; i < NUM_EYES; i++){
+			lookAngles[i] = random.nextDouble()*Math.PI*2;
+		}
+		if (engine.equals("SweepVisionFinder")){
+			visionFinder = new SweepVisionFinder();
+		}else{
+			visionFinder = new VisionFinder();
+		}
+		visionData = new VisionDataRotation(new Vector2f(0, 0), KPolygon.createRegularPolygon(20, sightRadius));
+		visionData.setReuseResults(reuseResults);
+		eyeIndex = 0;
+	}
+
+	@Benchmark
+	public VisionData calc(){
+		eyeIndex = (eyeIndex + 1) % NUM_EYES;
+		visionData.copyAndTransformEyeAndBoundaryPolygon(eyes[eyeIndex], lookAngles[eyeIndex]);
+		return visionFinder.calc(visionData, gameWorld.getOccluderTileArray(), gameWorld.movingOccluders);
+	}
+
+	public static void main(String[] args) throws RunnerException{
+		Options options = new OptionsBuilder()
+				.include(VisionFinderBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}